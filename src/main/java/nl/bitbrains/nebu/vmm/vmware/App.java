@@ -4,20 +4,44 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.core.Application;
 
 import nl.bitbrains.nebu.common.config.AuthenticationConfiguration;
 import nl.bitbrains.nebu.common.config.ClientConfiguration;
 import nl.bitbrains.nebu.common.config.Configuration;
 import nl.bitbrains.nebu.common.config.InvalidConfigurationException;
+import nl.bitbrains.nebu.vmm.vmware.api.BackendExecutors;
 import nl.bitbrains.nebu.vmm.vmware.api.DefaultVMware;
 import nl.bitbrains.nebu.vmm.vmware.api.Singleton;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.BackendGuard;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.RetryPolicy;
+import nl.bitbrains.nebu.vmm.vmware.api.simulator.SimulatedVMware;
+import nl.bitbrains.nebu.vmm.vmware.api.simulator.SimulatorConfiguration;
+import nl.bitbrains.nebu.vmm.vmware.config.ConfigurationElements;
+import nl.bitbrains.nebu.vmm.vmware.config.IsolationTuning;
+import nl.bitbrains.nebu.vmm.vmware.config.RetryTuning;
+import nl.bitbrains.nebu.vmm.vmware.config.ServerTuning;
+import nl.bitbrains.nebu.vmm.vmware.config.VCloudTuning;
+import nl.bitbrains.nebu.vmm.vmware.config.VSphereTuning;
+import nl.bitbrains.nebu.vmm.vmware.provider.ResponseCache;
+import nl.bitbrains.nebu.vmm.vmware.provider.ResponseCompression;
+import nl.bitbrains.nebu.vmm.vmware.provider.VMTemplateProvider;
+import nl.bitbrains.nebu.vmm.vmware.server.WorkerQueueMonitor;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyFeed;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.glassfish.grizzly.http.CompressionConfig.CompressionMode;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
 
 /**
  * Setting up the server side of the application.
@@ -29,25 +53,102 @@ public class App extends Application {
 
     private static Logger logger = LogManager.getRootLogger();
 
+    /**
+     * Starts Grizzly HTTP server exposing JAX-RS resources defined in this
+     * application, using the default {@link ServerTuning}.
+     * 
+     * @param port
+     *            The port on which to put this server.
+     * @return Grizzly HTTP server.
+     */
+    public static HttpServer startServer(final int port) {
+        return App.startServer(port, new ServerTuning());
+    }
+
     /**
      * Starts Grizzly HTTP server exposing JAX-RS resources defined in this
      * application.
      * 
      * @param port
      *            The port on which to put this server.
+     * @param tuning
+     *            The worker pool and connection settings of the server.
      * @return Grizzly HTTP server.
      */
-    private static HttpServer startServer(final int port) {
+    public static HttpServer startServer(final int port, final ServerTuning tuning) {
         // create a resource config that scans for JAX-RS resources and
         // providers
         // in com.example package
-        final ResourceConfig rc = new ResourceConfig().packages("nl.bitbrains.nebu.vmm.vmware");
+        final ResourceConfig rc = new ResourceConfig().packages("nl.bitbrains.nebu.vmm.vmware")
+                .register(SseFeature.class);
 
-        // create and start a new instance of grizzly http server
+        // create a new instance of grizzly http server
         // exposing the Jersey application at BASE_URI
-        return GrizzlyHttpServerFactory.createHttpServer(URI.create("http://0.0.0.0:"
-                                                                 + Integer.toString(port)),
-                                                         rc);
+        final HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI
+                .create("http://0.0.0.0:" + Integer.toString(port)), rc, false);
+        App.tuneServer(server, tuning);
+        try {
+            server.start();
+        } catch (final IOException e) {
+            server.shutdownNow();
+            throw new ProcessingException("Could not start server on port " + port, e);
+        }
+        return server;
+    }
+
+    /**
+     * Applies the worker pool, keep-alive and timeout settings to all
+     * listeners of a server that has not been started yet, and sizes the
+     * {@link ResponseCache} and {@link ResponseCompression}. Responses are
+     * compressed by the {@link nl.bitbrains.nebu.vmm.vmware.provider.Compressed}
+     * endpoints only; compression by the listeners is turned off.
+     * 
+     * @param server
+     *            The {@link HttpServer} to configure.
+     * @param tuning
+     *            The settings to apply.
+     */
+    static void tuneServer(final HttpServer server, final ServerTuning tuning) {
+        WorkerQueueMonitor.getInstance().configure(tuning.getMaxPending(),
+                                                   tuning.getRetryAfterSeconds());
+        ResponseCompression.getInstance().configure(tuning.isCompression(),
+                                                    tuning.getCompressionMinSize());
+        final ResponseCache cache = ResponseCache.getInstance();
+        cache.configure(tuning.getCacheTtlMillis(), tuning.getCacheSize());
+        TopologyFeed.getInstance().unsubscribe(cache);
+        if (cache.isEnabled()) {
+            TopologyFeed.getInstance().subscribe(cache, null);
+        }
+        for (final NetworkListener listener : server.getListeners()) {
+            final TCPNIOTransport transport = listener.getTransport();
+            transport.setSelectorRunnersCount(tuning.getSelectors());
+
+            final ThreadPoolConfig workers = ThreadPoolConfig.defaultConfig().copy()
+                    .setPoolName("nebu-vmm-worker").setCorePoolSize(tuning.getWorkers())
+                    .setMaxPoolSize(tuning.getWorkers());
+            if (tuning.getMaxPending() > 0) {
+                // Requests above maxPending are answered with a 503 by the
+                // OverloadFilter, the hard limit only protects the heap.
+                workers.setQueueLimit(2 * tuning.getMaxPending());
+            }
+            if (BackendExecutors.isVirtualThreads()) {
+                workers.setThreadFactory(BackendExecutors.newThreadFactory("nebu-vmm-worker"));
+            }
+            workers.getInitialMonitoringConfig().addProbes(WorkerQueueMonitor.getInstance());
+            transport.setWorkerThreadPoolConfig(workers);
+
+            listener.getKeepAlive().setIdleTimeoutInSeconds(tuning.getKeepAliveSeconds());
+            listener.getKeepAlive().setMaxRequestsCount(tuning.getKeepAliveRequests());
+            listener.setTransactionTimeout(tuning.getRequestTimeoutSeconds());
+
+            // Grizzly only recognizes gzip as an existing coding, so it would
+            // gzip a response that the CompressionInterceptor deflated.
+            listener.getCompressionConfig().setCompressionMode(CompressionMode.OFF);
+        }
+        App.logger.info("Server uses {} workers and {} selectors, rejects above {} queued.",
+                        tuning.getWorkers(),
+                        tuning.getSelectors(),
+                        tuning.getMaxPending());
     }
 
     /**
@@ -59,19 +160,67 @@ public class App extends Application {
      *             When the config file cannot be accessed.
      * @throws InvalidConfigurationException
      *             if invalid config is encountered.
+     * @throws JDOMException
+     *             if the config file does not contain valid XML.
      */
-    @SuppressWarnings("deprecation")
-    public static void main(final String[] args) throws IOException, InvalidConfigurationException {
+    public static void main(final String[] args) throws IOException,
+            InvalidConfigurationException, JDOMException {
         App.logger.info("Nebu VMM VMware Extension starting.");
 
         // Parsing configuration file.
-        final Configuration config = Configuration.parseConfigurationFile(new File(args[0]));
+        final File configFile = new File(args[0]);
+        final Configuration config = Configuration.parseConfigurationFile(configFile);
+        final Element configRoot = ConfigurationElements.load(configFile);
+        final ServerTuning tuning = ServerTuning.fromXML(ConfigurationElements
+                .getServerElement(configRoot));
+        if (BackendExecutors.setVirtualThreads(tuning.isVirtualThreads())) {
+            App.logger.info("Running requests and VMware calls on virtual threads.");
+        }
+        final Element simulatorElem = ConfigurationElements
+                .getClientElement(configRoot, SimulatorConfiguration.CLIENT_TYPE);
+        if (simulatorElem != null) {
+            App.logger.warn("Using simulated VMware back end.");
+            final SimulatedVMware simulator = new SimulatedVMware(SimulatorConfiguration
+                    .fromXML(simulatorElem));
+            App.configureVMware(simulator, configRoot);
+            simulator.init();
+            Singleton.setVmware(simulator);
+        } else {
+            App.initVMware(config, configRoot);
+        }
+        if (tuning.getTemplateJournal() != null) {
+            VMTemplateProvider.openTemplateJournal(new File(tuning.getTemplateJournal()));
+        }
+
+        // Starting REST server.
+        final HttpServer server = App.startServer(config.getServerConfig().getPort(), tuning);
+        System.in.read();
+        server.stop();
+
+        App.logger.info("Nebu VMM VMware Extension stopping.");
+    }
+
+    /**
+     * Connects to vCloud and vSphere and registers the resulting
+     * {@link DefaultVMware} with the {@link Singleton}.
+     * 
+     * @param config
+     *            The parsed configuration file.
+     * @param configRoot
+     *            The root element of the configuration file.
+     * @throws IOException
+     *             When the connection cannot be set up.
+     */
+    @SuppressWarnings("deprecation")
+    private static void initVMware(final Configuration config, final Element configRoot)
+            throws IOException {
         final ClientConfiguration vcloudConfig = config.getClientConfig("vcloud");
         final AuthenticationConfiguration vcloudAuth = vcloudConfig.getAuthenticationConfig();
         final ClientConfiguration vsphereConfig = config.getClientConfig("vsphere");
         final AuthenticationConfiguration vsphereAuth = vsphereConfig.getAuthenticationConfig();
 
         final DefaultVMware dvmware = new DefaultVMware();
+        App.configureVMware(dvmware, configRoot);
         dvmware.init(vcloudAuth.getUsername(),
                      vcloudAuth.getPassword(),
                      vcloudConfig.getIpAddress(),
@@ -80,12 +229,30 @@ public class App extends Application {
                      vsphereConfig.getIpAddress(),
                      vsphereConfig.getPort());
         Singleton.setVmware(dvmware);
+    }
 
-        // Starting REST server.
-        final HttpServer server = App.startServer(config.getServerConfig().getPort());
-        System.in.read();
-        server.stop();
-
-        App.logger.info("Nebu VMM VMware Extension stopping.");
+    /**
+     * Applies the retry policy, connection settings and isolation settings of
+     * the configuration file to a {@link DefaultVMware} that has not been
+     * initialized yet. Used for the real and the simulated back end alike.
+     * 
+     * @param vmware
+     *            The {@link DefaultVMware} to configure.
+     * @param configRoot
+     *            The root element of the configuration file.
+     */
+    public static void configureVMware(final DefaultVMware vmware, final Element configRoot) {
+        vmware.setRetryPolicy(new RetryPolicy(RetryTuning.fromXML(configRoot
+                .getChild(RetryTuning.TAG_RETRY))));
+        final Element vcloudElement = ConfigurationElements
+                .getClientElement(configRoot, VCloudTuning.CLIENT_TYPE);
+        final Element vsphereElement = ConfigurationElements
+                .getClientElement(configRoot, VSphereTuning.CLIENT_TYPE);
+        vmware.setVCloudTuning(VCloudTuning.fromXML(vcloudElement));
+        vmware.setVSphereTuning(VSphereTuning.fromXML(vsphereElement));
+        vmware.setVCloudGuard(new BackendGuard(VCloudTuning.CLIENT_TYPE, IsolationTuning
+                .fromXML(vcloudElement)));
+        vmware.setVSphereGuard(new BackendGuard(VSphereTuning.CLIENT_TYPE, IsolationTuning
+                .fromXML(vsphereElement)));
     }
 }
@@ -0,0 +1,152 @@
+package nl.bitbrains.nebu.vmm.vmware.api;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Provides the threads that run blocking VMware calls. By default these are
+ * platform threads. When virtual threads are enabled and the JVM supports
+ * them, every task gets its own virtual thread instead, so thousands of slow
+ * backend operations can wait concurrently at the cost of a small heap-based
+ * stack each.
+ * 
+ * <p>
+ * Virtual threads are looked up reflectively, the code base is compiled for
+ * Java 7.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class BackendExecutors {
+
+    /**
+     * Logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    private static volatile boolean virtualThreads;
+    private static volatile ExecutorService taskExecutor;
+
+    /**
+     * Private constructor. This class only has static methods.
+     */
+    private BackendExecutors() {
+    }
+
+    /**
+     * Enables or disables virtual threads for backend work. Falls back to
+     * platform threads when the JVM does not support virtual threads.
+     * 
+     * @param enabled
+     *            Whether to use virtual threads.
+     * @return <code>true</code> iff virtual threads are used from now on.
+     */
+    public static synchronized boolean setVirtualThreads(final boolean enabled) {
+        final boolean supported = BackendExecutors.isVirtualThreadSupported();
+        if (enabled && !supported) {
+            BackendExecutors.logger.warn("Virtual threads are not supported by this JVM, "
+                    + "using platform threads.");
+        }
+        final boolean use = enabled && supported;
+        if (use != BackendExecutors.virtualThreads && BackendExecutors.taskExecutor != null) {
+            BackendExecutors.taskExecutor.shutdown();
+            BackendExecutors.taskExecutor = null;
+        }
+        BackendExecutors.virtualThreads = use;
+        return use;
+    }
+
+    /**
+     * @return <code>true</code> iff backend work runs on virtual threads.
+     */
+    public static boolean isVirtualThreads() {
+        return BackendExecutors.virtualThreads;
+    }
+
+    /**
+     * @return <code>true</code> iff the JVM supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The {@link ExecutorService} for backend tasks such as VM
+     *         deployments and parallel topology requests. Unbounded, callers
+     *         limit their own concurrency.
+     */
+    public static ExecutorService getTaskExecutor() {
+        ExecutorService executor = BackendExecutors.taskExecutor;
+        if (executor == null) {
+            synchronized (BackendExecutors.class) {
+                executor = BackendExecutors.taskExecutor;
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool(BackendExecutors
+                            .newThreadFactory("nebu-vmm-backend"));
+                    BackendExecutors.taskExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Starts a long running thread, for example a keep-alive loop.
+     * 
+     * @param name
+     *            The name of the thread.
+     * @param task
+     *            The task to run.
+     * @return The started {@link Thread}.
+     */
+    public static Thread startThread(final String name, final Runnable task) {
+        final Thread thread = BackendExecutors.newThreadFactory(name).newThread(task);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Creates a {@link ThreadFactory} that creates virtual threads if enabled,
+     * and daemon platform threads otherwise.
+     * 
+     * @param prefix
+     *            The prefix of the thread names.
+     * @return The {@link ThreadFactory}.
+     */
+    public static ThreadFactory newThreadFactory(final String prefix) {
+        if (BackendExecutors.virtualThreads) {
+            try {
+                final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                final Method name = builderClass.getMethod("name", String.class, long.class);
+                builder = name.invoke(builder, prefix + "-", 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+                    | InvocationTargetException e) {
+                BackendExecutors.logger.catching(Level.WARN, e);
+            }
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, prefix + "-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
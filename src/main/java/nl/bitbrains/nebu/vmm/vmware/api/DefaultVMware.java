@@ -3,31 +3,59 @@ package nl.bitbrains.nebu.vmm.vmware.api;
 import java.net.MalformedURLException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import nl.bitbrains.nebu.common.VirtualMachine;
 import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
 import nl.bitbrains.nebu.common.topology.PhysicalTopology;
 import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.BackendGuard;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.Deadline;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.RetryPolicy;
+import nl.bitbrains.nebu.vmm.vmware.api.session.RefreshableSession;
+import nl.bitbrains.nebu.vmm.vmware.api.session.SessionManager;
 import nl.bitbrains.nebu.vmm.vmware.api.vcloud.VCloud;
+import nl.bitbrains.nebu.vmm.vmware.api.vcloud.VCloudSessionRefresher;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.DatastoreSample;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.DatastoreTelemetry;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.HostPerformance;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.HostPerformanceHistory;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.InventoryWatcher;
 import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphere;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphereSession;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphereSessionRefresher;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VappHostIndex;
+import nl.bitbrains.nebu.vmm.vmware.config.VCloudTuning;
+import nl.bitbrains.nebu.vmm.vmware.config.VSphereTuning;
 import nl.bitbrains.nebu.vmm.vmware.converter.PhysicalResourceConverter;
 import nl.bitbrains.nebu.vmm.vmware.converter.VirtualConverter;
 import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
 import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
 import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMLaunchException;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEventDetector;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyFeed;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.vmware.vcloud.sdk.VCloudException;
-import com.vmware.vim25.mo.Datastore;
-import com.vmware.vim25.mo.HostSystem;
-import com.vmware.vim25.mo.ManagedEntity;
 
 /**
  * Default implementation of the {@link VMware} interface.
@@ -57,6 +85,93 @@ public class DefaultVMware implements VMware {
      */
     private VSphere vsphere;
 
+    /**
+     * Connection settings for vSphere.
+     */
+    private VSphereTuning vsphereTuning = new VSphereTuning();
+
+    /**
+     * Connection settings for vCloud.
+     */
+    private VCloudTuning vcloudTuning = new VCloudTuning();
+
+    /**
+     * Number of threads that run the periodic background work.
+     */
+    private static final int SCHEDULER_THREADS = 2;
+
+    /**
+     * Runs the periodic background work, such as session refreshes and
+     * connection eviction, <code>null</code> until {@link #init} is called.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * The periodic tasks on the {@link #scheduler}, cancelled by
+     * {@link #shutdown()}.
+     */
+    private final List<ScheduledFuture<?>> scheduledTasks =
+            new CopyOnWriteArrayList<ScheduledFuture<?>>();
+
+    /**
+     * Keeps the vCloud and vSphere sessions alive, <code>null</code> until
+     * {@link #init} is called.
+     */
+    private SessionManager sessionManager;
+
+    /**
+     * The vCloud session, <code>null</code> until {@link #init} is called.
+     */
+    private RefreshableSession vcloudSession;
+
+    /**
+     * The vSphere session, <code>null</code> until {@link #init} is called.
+     */
+    private RefreshableSession vsphereSession;
+
+    /**
+     * Retries idempotent calls that fail with a transient error.
+     */
+    private RetryPolicy retryPolicy = RetryPolicy.none();
+
+    /**
+     * Hosts that each vApp can run on, <code>null</code> if not indexed.
+     */
+    private VappHostIndex vappIndex;
+
+    /**
+     * Recent performance of the hosts, <code>null</code> if not sampled.
+     */
+    private HostPerformanceHistory performanceHistory;
+
+    /**
+     * Recent space and latency of the datastores, <code>null</code> if not
+     * sampled.
+     */
+    private DatastoreTelemetry datastoreTelemetry;
+
+    /**
+     * Age in milliseconds up to which a datastore sample is used instead of
+     * calling vSphere.
+     */
+    private long datastoreSampleMaxAgeMillis;
+
+    /**
+     * Isolates calls to vCloud.
+     */
+    private BackendGuard vcloudGuard = BackendGuard.unlimited(VCloudTuning.CLIENT_TYPE);
+
+    /**
+     * Isolates calls to vSphere.
+     */
+    private BackendGuard vsphereGuard = BackendGuard.unlimited(VSphereTuning.CLIENT_TYPE);
+
+    /**
+     * Isolates migrations in vSphere, which take long without vSphere being
+     * slow.
+     */
+    private BackendGuard vsphereMoveGuard = this.vsphereGuard.withoutSlowCalls();
+
     /**
      * Sets up the connection to vCloud and vSphere.
      * 
@@ -83,94 +198,485 @@ public class DefaultVMware implements VMware {
             final String vcloudurl, final String vsphereusername, final String vspherepassword,
             final String vsphereurl, final int vsphereport) throws RemoteException,
             MalformedURLException {
-        this.vcloud = new VCloud();
-        this.vsphere = new VSphere();
-        this.vcloud.initAndKeepAlive(vcloudusername, vloudpassword, vcloudurl);
-        this.vsphere.initAndKeepAlive(vsphereusername, vspherepassword, vsphereurl, vsphereport);
+        this.vcloud = this.newVCloud();
+        this.vsphere = this.newVSphere();
+        this.vcloud.setTuning(this.vcloudTuning);
+        this.vsphere.setTuning(this.vsphereTuning);
+        this.vcloud.init(vcloudusername, vloudpassword, vcloudurl);
+        this.vsphere.init(vsphereusername, vspherepassword, vsphereurl, vsphereport);
+        this.scheduler = Executors.newScheduledThreadPool(DefaultVMware.SCHEDULER_THREADS,
+                BackendExecutors.newThreadFactory("nebu-vmm-scheduler"));
+        this.vcloud.startConnectionEvictor(this.scheduler);
+
+        this.sessionManager = new SessionManager(this.scheduler);
+        this.vcloudSession = new VCloudSessionRefresher(this.vcloud, vcloudusername,
+                vloudpassword, vcloudurl);
+        this.vsphereSession = new VSphereSessionRefresher(this.vsphere, vsphereusername,
+                vspherepassword, vsphereurl, vsphereport);
+        this.sessionManager.register(this.vcloudSession, TimeUnit.SECONDS
+                .toMillis(this.vcloudTuning.getSessionRefreshSeconds()));
+        this.sessionManager.register(this.vsphereSession, TimeUnit.SECONDS
+                .toMillis(this.vsphereTuning.getSessionRefreshSeconds()));
+        if (this.vsphereTuning.getVappIndexRefreshSeconds() > 0) {
+            this.vappIndex = new VappHostIndex();
+            this.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    DefaultVMware.this.refreshVappIndex();
+                }
+            }, this.vsphereTuning.getVappIndexRefreshSeconds());
+        }
+        if (this.vsphereTuning.getPerfSampleSeconds() > 0) {
+            this.setPerformanceHistory(new HostPerformanceHistory(this.vsphereTuning
+                    .getPerfWindow()));
+            this.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    DefaultVMware.this.sampleHostPerformance();
+                }
+            }, this.vsphereTuning.getPerfSampleSeconds());
+        }
+        if (this.vsphereTuning.getStoreSampleSeconds() > 0) {
+            this.setDatastoreTelemetry(new DatastoreTelemetry(this.vsphereTuning.getStoreWindow()),
+                                       2 * TimeUnit.SECONDS.toMillis(this.vsphereTuning
+                                               .getStoreSampleSeconds()));
+            this.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    DefaultVMware.this.sampleDatastores();
+                }
+            }, this.vsphereTuning.getStoreSampleSeconds());
+        }
+        if (this.vsphereTuning.getTopologyFeedSeconds() > 0) {
+            this.startInventoryWatcher(vsphereusername, vspherepassword, vsphereurl);
+        }
+    }
+
+    /**
+     * Stops the periodic background work started by {@link #init}. Work that
+     * is in progress is interrupted.
+     */
+    public void shutdown() {
+        for (final ScheduledFuture<?> task : this.scheduledTasks) {
+            task.cancel(true);
+        }
+        this.scheduledTasks.clear();
+        if (this.vcloud != null) {
+            this.vcloud.stopConnectionEvictor();
+        }
+        final ScheduledExecutorService executor = this.scheduler;
+        if (executor != null) {
+            executor.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Runs a task on the scheduler, first right away and then the given time
+     * after each run finishes. The task should not throw, an exception stops
+     * the repetition.
+     * 
+     * @param task
+     *            The task to run.
+     * @param delaySeconds
+     *            The time in seconds between the end of a run and the start
+     *            of the next.
+     */
+    private void scheduleWithFixedDelay(final Runnable task, final long delaySeconds) {
+        this.scheduledTasks.add(this.scheduler.scheduleWithFixedDelay(task,
+                                                                      0,
+                                                                      delaySeconds,
+                                                                      TimeUnit.SECONDS));
+    }
+
+    /**
+     * @return A new {@link VCloud} that is not connected yet.
+     */
+    protected VCloud newVCloud() {
+        return new VCloud();
+    }
+
+    /**
+     * @return A new {@link VSphere} that is not connected yet.
+     */
+    protected VSphere newVSphere() {
+        return new VSphere();
+    }
+
+    /**
+     * Starts a thread that publishes the changes of the hosts and datastores
+     * in the inventory on the {@link TopologyFeed}. The thread logs in with a
+     * session of its own.
+     * 
+     * @param username
+     *            The vSphere username.
+     * @param password
+     *            The vSphere password.
+     * @param url
+     *            The URL of the vSphere API.
+     * @throws RemoteException
+     *             If something goes wrong at the remote.
+     * @throws MalformedURLException
+     *             If the URL is malformed.
+     */
+    private void startInventoryWatcher(final String username, final String password,
+            final String url) throws RemoteException, MalformedURLException {
+        final int waitSeconds = this.vsphereTuning.getTopologyFeedSeconds();
+        final VSphereSession session = this.vsphere.createSession(username, password, url);
+        if (this.vsphereTuning.getReadTimeoutSeconds() > 0) {
+            // A wait for updates legitimately blocks for up to waitSeconds.
+            session.setReadTimeoutSeconds(this.vsphereTuning.getReadTimeoutSeconds()
+                    + waitSeconds);
+        }
+        session.connect();
+        final TopologyEventDetector detector = new TopologyEventDetector(TopologyFeed
+                .getInstance(), this.vsphereTuning.getLoadThreshold(),
+                this.vsphereTuning.getSpaceChange());
+        BackendExecutors.startThread("inventory-watcher", new InventoryWatcher(session,
+                detector, waitSeconds));
+    }
+
+    /**
+     * Runs a call against a backend. Every attempt goes through the
+     * {@link BackendGuard} of the backend, which rejects it when the backend
+     * is overloaded or failing. If the call fails because the session of the
+     * backend expired, it is retried once after logging in again. Idempotent
+     * calls that fail with a transient error are also retried as allowed by
+     * the {@link RetryPolicy}. If the current request has a {@link Deadline},
+     * the caller stops waiting for the call when it passes.
+     * 
+     * @param <T>
+     *            The result type of the call.
+     * @param guard
+     *            The guard of the backend.
+     * @param session
+     *            The session used by the call, may be <code>null</code>.
+     * @param message
+     *            The message of the {@link VMwareException} that wraps
+     *            checked exceptions of the call.
+     * @param idempotent
+     *            Whether the call may be repeated without side effects.
+     * @param call
+     *            The call to run.
+     * @return The result of the call.
+     * @throws VMwareException
+     *             If the call fails.
+     * @throws NoSuchVMException
+     *             If the call throws a {@link NoSuchVMException}.
+     */
+    private <T> T invoke(final BackendGuard guard, final RefreshableSession session,
+            final String message, final boolean idempotent, final Callable<T> call)
+            throws VMwareException, NoSuchVMException {
+        final SessionManager manager = this.sessionManager;
+        final Callable<T> attempt = new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return guard.call(manager == null ? call : new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        return manager.callWithReauth(session, call);
+                    }
+                });
+            }
+        };
+        final RetryPolicy retry = this.retryPolicy;
+        final Callable<T> run = !idempotent ? attempt : new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return retry.call(attempt);
+            }
+        };
+        final Deadline deadline = Deadline.current();
+        try {
+            return deadline == null ? run.call() : DefaultVMware.callBefore(deadline, run);
+        } catch (final VMwareException | NoSuchVMException | RuntimeException e) {
+            throw e;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VMwareException(message, e);
+        } catch (final Exception e) {
+            throw new VMwareException(message, e);
+        }
+    }
+
+    /**
+     * Runs a call on a backend thread and waits for it until the deadline.
+     * If the deadline passes first, the call is interrupted and the waiting
+     * thread is freed.
+     * 
+     * @param <T>
+     *            The result type of the call.
+     * @param deadline
+     *            The deadline of the current request.
+     * @param call
+     *            The call to run.
+     * @return The result of the call.
+     * @throws DeadlineExceededException
+     *             If the deadline passes before the call finishes.
+     * @throws Exception
+     *             The exception thrown by the call.
+     */
+    private static <T> T callBefore(final Deadline deadline, final Callable<T> call)
+            throws Exception {
+        deadline.check();
+        final Future<T> future = BackendExecutors.getTaskExecutor().submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Deadline.set(deadline);
+                try {
+                    return call.call();
+                } finally {
+                    Deadline.set(null);
+                }
+            }
+        });
+        try {
+            return future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            throw new DeadlineExceededException("VMware did not answer before the deadline.");
+        } catch (final InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    /**
+     * Runs an idempotent call that looks up a virtual machine, see
+     * {@link #invoke(BackendGuard, RefreshableSession, String, boolean, Callable)}.
+     * 
+     * @param <T>
+     *            The result type of the call.
+     * @param guard
+     *            The guard of the backend.
+     * @param session
+     *            The session used by the call, may be <code>null</code>.
+     * @param message
+     *            The message of the {@link VMwareException} that wraps
+     *            checked exceptions of the call.
+     * @param call
+     *            The call to run.
+     * @return The result of the call.
+     * @throws VMwareException
+     *             If the call fails.
+     * @throws NoSuchVMException
+     *             If the virtual machine does not exist.
+     */
+    private <T> T lookup(final BackendGuard guard, final RefreshableSession session,
+            final String message, final Callable<T> call) throws VMwareException,
+            NoSuchVMException {
+        return this.invoke(guard, session, message, true, call);
+    }
+
+    /**
+     * Runs an idempotent call, see
+     * {@link #invoke(BackendGuard, RefreshableSession, String, boolean, Callable)}.
+     * 
+     * @param <T>
+     *            The result type of the call.
+     * @param guard
+     *            The guard of the backend.
+     * @param session
+     *            The session used by the call, may be <code>null</code>.
+     * @param message
+     *            The message of the {@link VMwareException} that wraps
+     *            checked exceptions of the call.
+     * @param call
+     *            The call to run.
+     * @return The result of the call.
+     * @throws VMwareException
+     *             If the call fails.
+     */
+    private <T> T read(final BackendGuard guard, final RefreshableSession session,
+            final String message, final Callable<T> call) throws VMwareException {
+        try {
+            return this.invoke(guard, session, message, true, call);
+        } catch (final NoSuchVMException e) {
+            throw new VMwareException(message, e);
+        }
+    }
+
+    /**
+     * Runs a call that changes state and is therefore not retried on
+     * transient errors, see
+     * {@link #invoke(BackendGuard, RefreshableSession, String, boolean, Callable)}.
+     * 
+     * @param <T>
+     *            The result type of the call.
+     * @param guard
+     *            The guard of the backend.
+     * @param session
+     *            The session used by the call, may be <code>null</code>.
+     * @param message
+     *            The message of the {@link VMwareException} that wraps
+     *            checked exceptions of the call.
+     * @param call
+     *            The call to run.
+     * @return The result of the call.
+     * @throws VMwareException
+     *             If the call fails.
+     */
+    private <T> T call(final BackendGuard guard, final RefreshableSession session,
+            final String message, final Callable<T> call) throws VMwareException {
+        try {
+            return this.invoke(guard, session, message, false, call);
+        } catch (final NoSuchVMException e) {
+            throw new VMwareException(message, e);
+        }
     }
 
     @Override
     public PhysicalTopology getPhysicalTopologyFromResourcePool(final String poolname)
             throws VMwareException {
-        try {
-            return this.vsphere.getPhysicalTopologyFromResourcePoolName(poolname);
-        } catch (final RemoteException e) {
-            throw new VMwareException("Could not get topologt from Resource Pool name", e);
-        }
+        return this.read(this.vsphereGuard,
+                         this.vsphereSession,
+                         "Could not get topologt from Resource Pool name",
+                         new Callable<PhysicalTopology>() {
+                             @Override
+                             public PhysicalTopology call() throws RemoteException,
+                                     VMwareException {
+                                 return DefaultVMware.this.vsphere
+                                         .getPhysicalTopologyFromResourcePoolName(poolname);
+                             }
+                         });
     }
 
     @Override
     public PhysicalStore getStoreInfo(final String uuid) throws VMwareException {
-        final ManagedEntity entity = this.vsphere.searchItemsById(VSphere.TYPE_DATASTORE, uuid);
-        if (entity instanceof Datastore) {
-            final Datastore store = (Datastore) entity;
-            return PhysicalResourceConverter.toPhysicalStore(store);
+        final DatastoreTelemetry telemetry = this.datastoreTelemetry;
+        if (telemetry != null
+                && System.currentTimeMillis() - telemetry.getLatestTime(uuid)
+                        <= this.datastoreSampleMaxAgeMillis) {
+            final DatastoreSample sample = telemetry.getLatest(uuid);
+            if (sample != null) {
+                return PhysicalResourceConverter.toPhysicalStore(uuid, sample);
+            }
+        }
+        final PhysicalStore store = this.read(this.vsphereGuard,
+                                              this.vsphereSession,
+                                              "Could not find PhysicalStore " + uuid,
+                                              new Callable<PhysicalStore>() {
+                                                  @Override
+                                                  public PhysicalStore call()
+                                                          throws VMwareException {
+                                                      return DefaultVMware.this.vsphere
+                                                              .getPhysicalStore(uuid);
+                                                  }
+                                              });
+        if (store == null) {
+            throw new VMwareException("Could not find PhysicalStore " + uuid);
         }
-        throw new VMwareException("Could not find PhysicalStore " + uuid);
+        return store;
     }
 
     @Override
     public PhysicalHost getHostInfo(final String uuid) throws VMwareException {
-        final ManagedEntity entity = this.vsphere.searchItemsById(VSphere.TYPE_HOST, uuid);
-        if (entity instanceof HostSystem) {
-            final HostSystem system = (HostSystem) entity;
-            return PhysicalResourceConverter.toPhysicalHost(system, true);
+        final PhysicalHost host = this.read(this.vsphereGuard,
+                                            this.vsphereSession,
+                                            "Could not find PhysicalHost " + uuid,
+                                            new Callable<PhysicalHost>() {
+                                                @Override
+                                                public PhysicalHost call()
+                                                        throws VMwareException {
+                                                    return DefaultVMware.this.vsphere
+                                                            .getPhysicalHost(uuid);
+                                                }
+                                            });
+        if (host == null) {
+            throw new VMwareException("Could not find PhysicalHost " + uuid);
         }
-        throw new VMwareException("Could not find PhysicalHost " + uuid);
+        return host;
     }
 
     @Override
     public List<VirtualApplication> getAllVapps() throws VMwareException {
-        try {
-            return this.vcloud.getAllVapps();
-        } catch (final VCloudException e) {
-            throw new VMwareException("Could not get all vApps.", e);
-        }
+        return this.read(this.vcloudGuard,
+                         this.vcloudSession,
+                         "Could not get all vApps.",
+                         new Callable<List<VirtualApplication>>() {
+                             @Override
+                             public List<VirtualApplication> call() throws VCloudException {
+                                 return DefaultVMware.this.vcloud.getAllVapps();
+                             }
+                         });
     }
 
     @Override
     public List<String> getVirtualResourceList() throws VMwareException {
-        try {
-            return this.vcloud.getVirtualResourceList();
-        } catch (final VCloudException e) {
-            throw new VMwareException("Could not get virtual resource list.", e);
-        }
+        return this.read(this.vcloudGuard,
+                         this.vcloudSession,
+                         "Could not get virtual resource list.",
+                         new Callable<List<String>>() {
+                             @Override
+                             public List<String> call() throws VCloudException {
+                                 return DefaultVMware.this.vcloud.getVirtualResourceList();
+                             }
+                         });
     }
 
     @Override
     public List<String> getVmIdsFromNames(final List<String> vmIds, final List<String> vmNames)
             throws NoSuchVMException, VMwareException {
-        try {
-            return this.vcloud.getVmIdsFromNames(vmIds, vmNames);
-        } catch (final VCloudException e) {
-            throw new VMwareException("Could not get VM Ids from names.", e);
-        }
+        return this.lookup(this.vcloudGuard,
+                           this.vcloudSession,
+                           "Could not get VM Ids from names.",
+                           new Callable<List<String>>() {
+                               @Override
+                               public List<String> call() throws VCloudException,
+                                       NoSuchVMException {
+                                   return DefaultVMware.this.vcloud.getVmIdsFromNames(vmIds,
+                                                                                      vmNames);
+                               }
+                           });
     }
 
     @Override
     public String getVmIdFromName(final List<String> vmIds, final String vmName)
             throws NoSuchVMException, VMwareException {
-        try {
-            return this.vcloud.getVmIdFromName(vmIds, vmName);
-        } catch (final VCloudException e) {
-            throw new VMwareException("Could not get VM id from name.", e);
-        }
+        return this.lookup(this.vcloudGuard,
+                           this.vcloudSession,
+                           "Could not get VM id from name.",
+                           new Callable<String>() {
+                               @Override
+                               public String call() throws VCloudException, NoSuchVMException {
+                                   return DefaultVMware.this.vcloud.getVmIdFromName(vmIds, vmName);
+                               }
+                           });
     }
 
     @Override
     public VirtualMachine getVirtualMachineInfo(final String uuid) throws VMwareException,
             NoSuchVMException {
-        VirtualMachine vm;
-        try {
-            vm = this.vcloud.getVirtualMachineInfo(uuid);
-            final String vmName = VirtualConverter.buildVsphereName(vm.getHostname(), uuid);
-            vm.setHost(this.vsphere.getVirtualMachineHost(vmName));
-            for (final String storeid : this.vsphere.getVirtualMachineStores(vmName)) {
-                vm.addStore(storeid);
+        final String message = "Could not get virtual machine info.";
+        final VirtualMachine vm = this.lookup(this.vcloudGuard,
+                                              this.vcloudSession,
+                                              message,
+                                              new Callable<VirtualMachine>() {
+                                                  @Override
+                                                  public VirtualMachine call()
+                                                          throws VCloudException,
+                                                          NoSuchVMException {
+                                                      return DefaultVMware.this.vcloud
+                                                              .getVirtualMachineInfo(uuid);
+                                                  }
+                                              });
+        final String vmName = VirtualConverter.buildVsphereName(vm.getHostname(), uuid);
+        this.lookup(this.vsphereGuard, this.vsphereSession, message, new Callable<Void>() {
+            @Override
+            public Void call() throws RemoteException, NoSuchVMException, VMwareException {
+                vm.setHost(DefaultVMware.this.vsphere.getVirtualMachineHost(vmName));
+                for (final String storeid : DefaultVMware.this.vsphere
+                        .getVirtualMachineStores(vmName)) {
+                    vm.addStore(storeid);
+                }
+                return null;
             }
-        } catch (final VCloudException | RemoteException e) {
-            throw new VMwareException("Could not get virtual machine info.", e);
-        }
+        });
         return vm;
     }
 
@@ -180,10 +686,10 @@ public class DefaultVMware implements VMware {
         DefaultVMware.logger.info("Getting phys for vapps {}.", vAppIds);
         List<VirtualApplication> vapps = null;
         try {
-            vapps = this.vcloud.getAllVapps();
-        } catch (final VCloudException e) {
+            vapps = this.getAllVapps();
+        } catch (final VMwareException e) {
             DefaultVMware.logger.catching(Level.ERROR, e);
-            throw new VMwareException("Could not get all vApps.", e);
+            throw e;
         }
         final List<String> vappNames = new ArrayList<String>(vAppIds.size());
         for (final VirtualApplication vapp : vapps) {
@@ -193,7 +699,16 @@ public class DefaultVMware implements VMware {
                 vappNames.add(VirtualConverter.buildVsphereName(vcloudname, vcloudid));
             }
         }
-        return this.vsphere.getPhysicalTopologyFromVappList(vappNames);
+        return this.read(this.vsphereGuard,
+                         this.vsphereSession,
+                         "Could not get topology for vApps.",
+                         new Callable<PhysicalTopology>() {
+                             @Override
+                             public PhysicalTopology call() throws VMwareException {
+                                 return DefaultVMware.this.vsphere
+                                         .getPhysicalTopologyFromVappList(vappNames);
+                             }
+                         });
     }
 
     @Override
@@ -221,7 +736,7 @@ public class DefaultVMware implements VMware {
             builder.withStoreId(storageUnitId);
         }
         final VMStartTask task = builder.build();
-        new Thread(task).start();
+        BackendExecutors.getTaskExecutor().execute(task);
         DefaultVMware.logger.info("Created and started stask {}.", task);
         return task.getProgress();
     }
@@ -234,49 +749,207 @@ public class DefaultVMware implements VMware {
     @Override
     public void moveVMToHost(final VirtualMachine vm, final PhysicalHost host)
             throws VMwareException {
-        try {
-            this.vsphere.moveVMToHost(VirtualConverter.buildVsphereName(vm.getHostname(),
-                                                                        vm.getUniqueIdentifier()),
-                                      host.getUniqueIdentifier());
-        } catch (RemoteException | InterruptedException e) {
-            throw new VMwareException("Error while moving VM to new host.", e);
-        }
+        final String vmName = VirtualConverter.buildVsphereName(vm.getHostname(),
+                                                                vm.getUniqueIdentifier());
+        this.call(this.vsphereMoveGuard,
+                  this.vsphereSession,
+                  "Error while moving VM to new host.",
+                  new Callable<Void>() {
+                      @Override
+                      public Void call() throws RemoteException, InterruptedException,
+                              VMwareException {
+                          DefaultVMware.this.vsphere.moveVMToHost(vmName,
+                                                                  host.getUniqueIdentifier());
+                          return null;
+                      }
+                  });
     }
 
     @Override
     public void moveVMToStore(final VirtualMachine vm, final PhysicalStore store)
             throws VMwareException {
-        try {
-            this.vsphere
-                    .moveVMToStorage(VirtualConverter.buildVsphereName(vm.getHostname(),
-                                                                       vm.getUniqueIdentifier()),
-                                     store.getUniqueIdentifier());
-        } catch (RemoteException | VMwareException | InterruptedException e) {
-            throw new VMwareException("Error while moving VM to new store.", e);
-        }
+        final String vmName = VirtualConverter.buildVsphereName(vm.getHostname(),
+                                                                vm.getUniqueIdentifier());
+        this.call(this.vsphereMoveGuard,
+                  this.vsphereSession,
+                  "Error while moving VM to new store.",
+                  new Callable<Void>() {
+                      @Override
+                      public Void call() throws RemoteException, InterruptedException,
+                              VMwareException {
+                          DefaultVMware.this.vsphere.moveVMToStorage(vmName,
+                                                                     store.getUniqueIdentifier());
+                          return null;
+                      }
+                  });
     }
 
     @Override
     public VirtualApplication selectVirtualApplicationFromHost(final PhysicalHost host,
             final List<String> possibleVapps) {
+        final VappHostIndex index = this.vappIndex;
         List<VirtualApplication> vapps = null;
         try {
-            vapps = this.getAllVapps();
-
+            vapps = index == null ? this.getAllVapps() : this.getIndexedVapps(index,
+                                                                             possibleVapps);
         } catch (final VMwareException e) {
             DefaultVMware.logger.catching(Level.ERROR, e);
             return null;
         }
         for (final VirtualApplication vapp : vapps) {
-            if (possibleVapps.contains(vapp.getUniqueIdentifier())
-                    && this.vsphere.hostHasVapp(host, VirtualConverter.buildVsphereName(vapp
-                            .getName(), vapp.getUniqueIdentifier()))) {
+            if (!possibleVapps.contains(vapp.getUniqueIdentifier())) {
+                continue;
+            }
+            final String vappname = VirtualConverter.buildVsphereName(vapp.getName(), vapp
+                    .getUniqueIdentifier());
+            if (index != null && index.isIndexed(vappname)) {
+                if (index.hostHasVapp(host.getUniqueIdentifier(), vappname)) {
+                    return vapp;
+                }
+            } else if (this.vsphere.hostHasVapp(host, vappname)) {
                 return vapp;
             }
         }
         return null;
     }
 
+    /**
+     * Returns the vApps in the index. Only if some candidate vApps are not in
+     * the index, for example because they were created after the last
+     * rebuild, vCloud is asked for all vApps and the missing candidates are
+     * added.
+     * 
+     * @param index
+     *            The index.
+     * @param possibleVapps
+     *            The ids of the candidate vApps.
+     * @return The vApps in the index.
+     * @throws VMwareException
+     *             If the vApps cannot be listed.
+     */
+    private List<VirtualApplication> getIndexedVapps(final VappHostIndex index,
+            final List<String> possibleVapps) throws VMwareException {
+        final List<String> missingIds = index.getMissing(possibleVapps);
+        if (missingIds.isEmpty()) {
+            return index.getVirtualApplications();
+        }
+        final List<VirtualApplication> missing = new ArrayList<VirtualApplication>();
+        final List<String> missingNames = new ArrayList<String>();
+        for (final VirtualApplication vapp : this.getAllVapps()) {
+            if (missingIds.contains(vapp.getUniqueIdentifier())) {
+                missing.add(vapp);
+                missingNames.add(VirtualConverter.buildVsphereName(vapp.getName(), vapp
+                        .getUniqueIdentifier()));
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Set<String>> hosts = Collections.emptyMap();
+            try {
+                hosts = this.getHostIdsForVapps(missingNames);
+            } catch (final VMwareException e) {
+                DefaultVMware.logger.catching(Level.WARN, e);
+            }
+            index.merge(missing, hosts);
+        }
+        return index.getVirtualApplications();
+    }
+
+    /**
+     * Rebuilds the index of the vApps and the hosts that each vApp can run on.
+     * Does nothing if no index is kept.
+     */
+    public void refreshVappIndex() {
+        final VappHostIndex index = this.vappIndex;
+        if (index == null) {
+            return;
+        }
+        try {
+            final List<VirtualApplication> vapps = this.getAllVapps();
+            final List<String> vappnames = new ArrayList<String>();
+            for (final VirtualApplication vapp : vapps) {
+                vappnames.add(VirtualConverter.buildVsphereName(vapp.getName(), vapp
+                        .getUniqueIdentifier()));
+            }
+            index.replace(vapps, this.getHostIdsForVapps(vappnames));
+            DefaultVMware.logger.debug("Indexed hosts of {} vApps.", vappnames.size());
+        } catch (final VMwareException | RuntimeException e) {
+            DefaultVMware.logger.catching(Level.WARN, e);
+        }
+    }
+
+    /**
+     * Samples the performance of all hosts. Does nothing if performance is
+     * not sampled.
+     */
+    public void sampleHostPerformance() {
+        final HostPerformanceHistory history = this.performanceHistory;
+        if (history == null) {
+            return;
+        }
+        try {
+            history.record(this.read(this.vsphereGuard,
+                                     this.vsphereSession,
+                                     "Could not sample host performance.",
+                                     new Callable<Map<String, HostPerformance>>() {
+                                         @Override
+                                         public Map<String, HostPerformance> call()
+                                                 throws RemoteException, VMwareException {
+                                             return DefaultVMware.this.vsphere
+                                                     .queryHostPerformance();
+                                         }
+                                     }));
+        } catch (final VMwareException | RuntimeException e) {
+            DefaultVMware.logger.catching(Level.WARN, e);
+        }
+    }
+
+    /**
+     * Samples the space and latency of all datastores. Does nothing if
+     * datastores are not sampled.
+     */
+    public void sampleDatastores() {
+        final DatastoreTelemetry telemetry = this.datastoreTelemetry;
+        if (telemetry == null) {
+            return;
+        }
+        try {
+            telemetry.record(this.read(this.vsphereGuard,
+                                       this.vsphereSession,
+                                       "Could not sample datastores.",
+                                       new Callable<Map<String, DatastoreSample>>() {
+                                           @Override
+                                           public Map<String, DatastoreSample> call()
+                                                   throws RemoteException, VMwareException {
+                                               return DefaultVMware.this.vsphere
+                                                       .queryDatastoreTelemetry();
+                                           }
+                                       }));
+        } catch (final VMwareException | RuntimeException e) {
+            DefaultVMware.logger.catching(Level.WARN, e);
+        }
+    }
+
+    /**
+     * @param vappnames
+     *            The vSphere names of the vApps.
+     * @return The vSphere ids of the hosts of each vApp.
+     * @throws VMwareException
+     *             If the hosts cannot be retrieved.
+     */
+    private Map<String, Set<String>> getHostIdsForVapps(final List<String> vappnames)
+            throws VMwareException {
+        return this.read(this.vsphereGuard,
+                         this.vsphereSession,
+                         "Could not get hosts of vApps.",
+                         new Callable<Map<String, Set<String>>>() {
+                             @Override
+                             public Map<String, Set<String>> call() throws RemoteException,
+                                     VMwareException {
+                                 return DefaultVMware.this.vsphere.getHostIdsForVapps(vappnames);
+                             }
+                         });
+    }
+
     /**
      * @return the vcloud
      */
@@ -307,4 +980,101 @@ public class DefaultVMware implements VMware {
         this.vsphere = vsphere;
     }
 
+    /**
+     * @param vsphereTuning
+     *            the vSphere connection settings to use on {@link #init}.
+     */
+    public void setVSphereTuning(final VSphereTuning vsphereTuning) {
+        ErrorChecker.throwIfNullArgument(vsphereTuning, "vsphereTuning");
+        this.vsphereTuning = vsphereTuning;
+    }
+
+    /**
+     * @param retryPolicy
+     *            the policy for retrying idempotent calls.
+     */
+    public void setRetryPolicy(final RetryPolicy retryPolicy) {
+        ErrorChecker.throwIfNullArgument(retryPolicy, "retryPolicy");
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @param performanceHistory
+     *            the recent performance of the hosts, or <code>null</code> to
+     *            use the quick statistics of vSphere only.
+     */
+    public void setPerformanceHistory(final HostPerformanceHistory performanceHistory) {
+        this.performanceHistory = performanceHistory;
+        if (this.vsphere != null) {
+            this.vsphere.setPerformanceHistory(performanceHistory);
+        }
+    }
+
+    /**
+     * @return the recent performance of the hosts, or <code>null</code> if
+     *         not sampled.
+     */
+    public HostPerformanceHistory getPerformanceHistory() {
+        return this.performanceHistory;
+    }
+
+    /**
+     * @param datastoreTelemetry
+     *            the recent space and latency of the datastores, or
+     *            <code>null</code> to always ask vSphere.
+     * @param maxAgeMillis
+     *            the age in milliseconds up to which a sample is used instead
+     *            of calling vSphere.
+     */
+    public void setDatastoreTelemetry(final DatastoreTelemetry datastoreTelemetry,
+            final long maxAgeMillis) {
+        this.datastoreTelemetry = datastoreTelemetry;
+        this.datastoreSampleMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return the recent space and latency of the datastores, or
+     *         <code>null</code> if not sampled.
+     */
+    public DatastoreTelemetry getDatastoreTelemetry() {
+        return this.datastoreTelemetry;
+    }
+
+    /**
+     * @param vappIndex
+     *            the index of hosts that each vApp can run on, or
+     *            <code>null</code> to search vSphere for every vApp.
+     */
+    public void setVappHostIndex(final VappHostIndex vappIndex) {
+        this.vappIndex = vappIndex;
+    }
+
+    /**
+     * @param vcloudGuard
+     *            the guard that isolates calls to vCloud.
+     */
+    public void setVCloudGuard(final BackendGuard vcloudGuard) {
+        ErrorChecker.throwIfNullArgument(vcloudGuard, "vcloudGuard");
+        this.vcloudGuard = vcloudGuard;
+    }
+
+    /**
+     * @param vsphereGuard
+     *            the guard that isolates calls to vSphere.
+     */
+    public void setVSphereGuard(final BackendGuard vsphereGuard) {
+        ErrorChecker.throwIfNullArgument(vsphereGuard, "vsphereGuard");
+        this.vsphereGuard = vsphereGuard;
+        this.vsphereMoveGuard = vsphereGuard.withoutSlowCalls();
+    }
+
+    /**
+     * @param vcloudTuning
+     *            the vCloud connection settings to use on {@link #init}.
+     */
+    public void setVCloudTuning(final VCloudTuning vcloudTuning) {
+        ErrorChecker.throwIfNullArgument(vcloudTuning, "vcloudTuning");
+        this.vcloudTuning = vcloudTuning;
+    }
+
 }
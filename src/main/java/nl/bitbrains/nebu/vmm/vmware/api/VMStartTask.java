@@ -127,8 +127,12 @@ public class VMStartTask implements Runnable {
      * 
      * 1. Adding the vm to the vapp. 2. Moving the vm to the correct host. 3.
      * Moving the vm to the correct datastore. 4. Powering on the vm.
+     * 
+     * If any step fails, the status of the task becomes
+     * {@link Status#FAILURE}.
      */
     public void syncRun() {
+        boolean completed = false;
         VCloud.LOCK.lock();
         try {
             this.progress.setStatus(Status.PROCESSESING);
@@ -159,6 +163,7 @@ public class VMStartTask implements Runnable {
             // 4. Powering on the vm.
             this.vcloud.powerOnVM(vmID);
             this.progress.setVmId(vmID);
+            completed = true;
             this.progress.setStatus(Status.SUCCESS);
             VMStartTask.logger.info("VM Create task completed.");
         } catch (final NoPermission e1) {
@@ -169,6 +174,9 @@ public class VMStartTask implements Runnable {
             VMStartTask.logger.catching(Level.ERROR, e);
         } finally {
             VCloud.LOCK.unlock();
+            if (!completed) {
+                this.progress.setStatus(Status.FAILURE);
+            }
         }
     }
 
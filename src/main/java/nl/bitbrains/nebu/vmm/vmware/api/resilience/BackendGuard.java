@@ -0,0 +1,130 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import java.util.concurrent.Callable;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.vmm.vmware.config.IsolationTuning;
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
+
+/**
+ * Runs calls to one VMware backend through its own {@link Bulkhead} and
+ * {@link CircuitBreaker}, so a slow or failing vSphere does not tie up the
+ * threads that serve vCloud requests and the other way around.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class BackendGuard {
+
+    private final String name;
+    private final Bulkhead bulkhead;
+    private final CircuitBreaker breaker;
+    private final boolean timed;
+
+    /**
+     * Creates a new {@link BackendGuard}.
+     * 
+     * @param name
+     *            The name of the backend.
+     * @param tuning
+     *            The limits of the backend.
+     */
+    public BackendGuard(final String name, final IsolationTuning tuning) {
+        ErrorChecker.throwIfNullArgument(name, "name");
+        ErrorChecker.throwIfNullArgument(tuning, "tuning");
+        this.name = name;
+        this.bulkhead = new Bulkhead(name, tuning.getMaxConcurrent(), tuning.getMaxWaitMillis());
+        this.breaker = new CircuitBreaker(name, tuning);
+        this.timed = true;
+    }
+
+    /**
+     * Creates a {@link BackendGuard} that shares the limits of another one.
+     * 
+     * @param guard
+     *            The guard to share the limits of.
+     * @param timed
+     *            Whether slow calls count as failures.
+     */
+    private BackendGuard(final BackendGuard guard, final boolean timed) {
+        this.name = guard.name;
+        this.bulkhead = guard.bulkhead;
+        this.breaker = guard.breaker;
+        this.timed = timed;
+    }
+
+    /**
+     * @param name
+     *            The name of the backend.
+     * @return A {@link BackendGuard} that lets every call through.
+     */
+    public static BackendGuard unlimited(final String name) {
+        return new BackendGuard(name, new IsolationTuning());
+    }
+
+    /**
+     * @return A {@link BackendGuard} with the same {@link Bulkhead} and
+     *         {@link CircuitBreaker} for calls that are slow by nature, such
+     *         as migrations. Their failures count, their duration does not.
+     */
+    public BackendGuard withoutSlowCalls() {
+        return new BackendGuard(this, false);
+    }
+
+    /**
+     * Runs a call if the backend accepts calls.
+     * 
+     * @param <T>
+     *            The result type of the call.
+     * @param call
+     *            The call to run.
+     * @return The result of the call.
+     * @throws BackendUnavailableException
+     *             If the circuit is open or all slots are taken.
+     * @throws Exception
+     *             The exception thrown by the call.
+     */
+    public <T> T call(final Callable<T> call) throws Exception {
+        this.bulkhead.acquire();
+        if (!this.breaker.allow()) {
+            this.bulkhead.release();
+            throw new BackendUnavailableException(this.name + " is unavailable.",
+                    this.breaker.getRetryAfterSeconds());
+        }
+        boolean failed = true;
+        final long start = System.nanoTime();
+        try {
+            final T result = call.call();
+            failed = false;
+            return result;
+        } catch (final NoSuchVMException e) {
+            failed = false;
+            throw e;
+        } finally {
+            this.bulkhead.release();
+            this.breaker.onResult(failed, this.timed ? System.nanoTime() - start : 0);
+        }
+    }
+
+    /**
+     * @return The name of the backend.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The {@link Bulkhead} of the backend.
+     */
+    public Bulkhead getBulkhead() {
+        return this.bulkhead;
+    }
+
+    /**
+     * @return The {@link CircuitBreaker} of the backend.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return this.breaker;
+    }
+}
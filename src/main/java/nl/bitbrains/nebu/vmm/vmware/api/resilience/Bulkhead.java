@@ -0,0 +1,78 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+
+/**
+ * Bounds the number of calls that are in progress against one backend, so a
+ * slow backend can hold at most that many request threads. Calls that do not
+ * get a slot within the configured wait are rejected.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class Bulkhead {
+
+    /**
+     * Retry-After value of rejected calls, slots usually free up quickly.
+     */
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+
+    /**
+     * Creates a new {@link Bulkhead}.
+     * 
+     * @param name
+     *            The name of the backend.
+     * @param maxConcurrent
+     *            The maximum number of concurrent calls, or 0 for no limit.
+     * @param maxWaitMillis
+     *            The time a call waits for a free slot.
+     */
+    public Bulkhead(final String name, final int maxConcurrent, final long maxWaitMillis) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+    }
+
+    /**
+     * Takes a slot. Every successful call must be followed by
+     * {@link #release()}.
+     * 
+     * @throws BackendUnavailableException
+     *             If no slot became available in time.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        if (this.permits != null
+                && !this.permits.tryAcquire(this.maxWaitMillis, TimeUnit.MILLISECONDS)) {
+            throw new BackendUnavailableException(this.name + " has " + this.maxConcurrent
+                    + " calls in progress.", Bulkhead.RETRY_AFTER_SECONDS);
+        }
+    }
+
+    /**
+     * Returns a slot taken by {@link #acquire()}.
+     */
+    public void release() {
+        if (this.permits != null) {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * @return The number of free slots, or {@link Integer#MAX_VALUE} if
+     *         concurrency is not limited.
+     */
+    public int available() {
+        return this.permits == null ? Integer.MAX_VALUE : this.permits.availablePermits();
+    }
+}
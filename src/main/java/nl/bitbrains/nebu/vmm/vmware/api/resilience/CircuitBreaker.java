@@ -0,0 +1,171 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.vmm.vmware.config.IsolationTuning;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stops calls to a backend that fails or responds slowly for a large part of
+ * its calls. The failure rate is counted over fixed windows. When it crosses
+ * the threshold the circuit opens and calls are rejected for the configured
+ * open time. After that a single trial call is let through: if it succeeds
+ * the circuit closes, otherwise it opens again.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class CircuitBreaker {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    /**
+     * States of the circuit.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final IsolationTuning tuning;
+
+    private State state = State.CLOSED;
+    private long windowStart;
+    private int calls;
+    private int failures;
+    private long openUntil;
+    private boolean trialInProgress;
+
+    /**
+     * Creates a new {@link CircuitBreaker}.
+     * 
+     * @param name
+     *            The name of the backend.
+     * @param tuning
+     *            The thresholds of the circuit.
+     */
+    public CircuitBreaker(final String name, final IsolationTuning tuning) {
+        this.name = name;
+        this.tuning = tuning;
+        this.windowStart = System.nanoTime();
+    }
+
+    /**
+     * @return <code>true</code> iff the circuit can ever open.
+     */
+    public boolean isEnabled() {
+        return this.tuning.getFailureRate() > 0;
+    }
+
+    /**
+     * Asks permission for a call. Every permitted call must be followed by
+     * {@link #onResult(boolean, long)}.
+     * 
+     * @return <code>true</code> iff the call may be made.
+     */
+    public synchronized boolean allow() {
+        if (!this.isEnabled() || this.state == State.CLOSED) {
+            return true;
+        }
+        if (this.state == State.OPEN && System.nanoTime() - this.openUntil >= 0) {
+            this.state = State.HALF_OPEN;
+            this.trialInProgress = false;
+        }
+        if (this.state == State.HALF_OPEN && !this.trialInProgress) {
+            this.trialInProgress = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     * 
+     * @param failed
+     *            Whether the call failed.
+     * @param durationNanos
+     *            The duration of the call.
+     */
+    public synchronized void onResult(final boolean failed, final long durationNanos) {
+        if (!this.isEnabled()) {
+            return;
+        }
+        final long slow = this.tuning.getSlowCallMillis();
+        final boolean bad = failed
+                || (slow > 0 && durationNanos > TimeUnit.MILLISECONDS.toNanos(slow));
+        if (this.state == State.HALF_OPEN) {
+            if (bad) {
+                this.open();
+            } else {
+                CircuitBreaker.logger.info("Circuit of {} closed.", this.name);
+                this.state = State.CLOSED;
+                this.resetWindow(System.nanoTime());
+            }
+            return;
+        }
+        if (this.state == State.OPEN) {
+            return;
+        }
+        final long now = System.nanoTime();
+        if (now - this.windowStart > TimeUnit.SECONDS.toNanos(this.tuning.getWindowSeconds())) {
+            this.resetWindow(now);
+        }
+        this.calls++;
+        if (bad) {
+            this.failures++;
+        }
+        if (this.calls >= this.tuning.getMinimumCalls()
+                && this.failures >= this.tuning.getFailureRate() * this.calls) {
+            this.open();
+        }
+    }
+
+    /**
+     * @return The state of the circuit.
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * @return The number of seconds until a trial call is let through,
+     *         at least 1.
+     */
+    public synchronized int getRetryAfterSeconds() {
+        final long remaining = this.openUntil - System.nanoTime();
+        return (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining
+                + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * Opens the circuit for the configured time.
+     */
+    private void open() {
+        CircuitBreaker.logger.warn("Circuit of {} opened after {} of {} calls failed.",
+                                   this.name,
+                                   this.failures,
+                                   this.calls);
+        this.state = State.OPEN;
+        this.trialInProgress = false;
+        this.openUntil = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(this.tuning.getOpenSeconds());
+        this.resetWindow(System.nanoTime());
+    }
+
+    /**
+     * Starts a new counting window.
+     * 
+     * @param now
+     *            The start of the window.
+     */
+    private void resetWindow(final long now) {
+        this.windowStart = now;
+        this.calls = 0;
+        this.failures = 0;
+    }
+}
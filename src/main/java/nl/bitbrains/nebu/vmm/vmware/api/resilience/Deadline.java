@@ -0,0 +1,106 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
+
+/**
+ * The point in time at which the client of a request stops waiting for the
+ * answer. The deadline of the request that is handled by a thread is kept in
+ * a thread local, so calls to vCloud and vSphere deep in the stack can limit
+ * their socket reads and task waits to the time that is left, without every
+ * method passing it along.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class Deadline {
+
+    /**
+     * The deadline of the request handled by the current thread.
+     */
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    private final long expiresAt;
+
+    /**
+     * Creates a new {@link Deadline}.
+     * 
+     * @param expiresAt
+     *            The {@link System#nanoTime()} at which the deadline passes.
+     */
+    private Deadline(final long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param millis
+     *            The time until the deadline in milliseconds.
+     * @return A {@link Deadline} that passes after the given time.
+     */
+    public static Deadline after(final long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * @return The deadline of the request handled by the current thread, or
+     *         <code>null</code> if it has none.
+     */
+    public static Deadline current() {
+        return Deadline.CURRENT.get();
+    }
+
+    /**
+     * Sets the deadline of the request handled by the current thread.
+     * 
+     * @param deadline
+     *            The deadline, or <code>null</code> to remove it.
+     */
+    public static void set(final Deadline deadline) {
+        if (deadline == null) {
+            Deadline.CURRENT.remove();
+        } else {
+            Deadline.CURRENT.set(deadline);
+        }
+    }
+
+    /**
+     * Throws if the deadline of the current thread has passed.
+     * 
+     * @throws DeadlineExceededException
+     *             If the deadline has passed.
+     */
+    public static void checkCurrent() {
+        final Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            deadline.check();
+        }
+    }
+
+    /**
+     * @return The time left until the deadline in milliseconds, 0 if it has
+     *         passed.
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(this.expiresAt - System.nanoTime()));
+    }
+
+    /**
+     * @return <code>true</code> iff the deadline has passed.
+     */
+    public boolean isExpired() {
+        return System.nanoTime() - this.expiresAt >= 0;
+    }
+
+    /**
+     * Throws if the deadline has passed.
+     * 
+     * @throws DeadlineExceededException
+     *             If the deadline has passed.
+     */
+    public void check() {
+        if (this.isExpired()) {
+            throw new DeadlineExceededException("Request deadline has passed.");
+        }
+    }
+}
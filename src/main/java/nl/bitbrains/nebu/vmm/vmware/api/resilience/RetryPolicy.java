@@ -0,0 +1,207 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.vmm.vmware.config.RetryTuning;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.vmware.vcloud.sdk.VCloudException;
+
+/**
+ * Retries idempotent calls that fail with a transient error. Waits between
+ * attempts are drawn uniformly between zero and an exponentially growing
+ * bound, so clients that failed together do not retry together. Retries are
+ * limited per call by a maximum number of attempts, a deadline and the
+ * {@link Deadline} of the current request, and over all calls by a budget, so
+ * a failing backend does not get a multiple of its normal load.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class RetryPolicy {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    /**
+     * HTTP status of a request that was rejected because the client sends
+     * too many.
+     */
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Lowest HTTP status of a server error.
+     */
+    private static final int SERVER_ERROR = 500;
+
+    /**
+     * Budget tokens are stored in thousandths of a retry.
+     */
+    private static final long TOKEN = 1000;
+
+    /**
+     * Retries available before any call has been made.
+     */
+    private static final long INITIAL_TOKENS = 10 * RetryPolicy.TOKEN;
+
+    /**
+     * Maximum number of retries that can be saved up.
+     */
+    private static final long MAX_TOKENS = 100 * RetryPolicy.TOKEN;
+
+    private final RetryTuning tuning;
+    private final long tokensPerCall;
+    private final AtomicLong tokens = new AtomicLong(RetryPolicy.INITIAL_TOKENS);
+
+    /**
+     * Creates a new {@link RetryPolicy}.
+     * 
+     * @param tuning
+     *            The retry settings.
+     */
+    public RetryPolicy(final RetryTuning tuning) {
+        ErrorChecker.throwIfNullArgument(tuning, "tuning");
+        this.tuning = tuning;
+        this.tokensPerCall = Math.round(tuning.getBudget() * RetryPolicy.TOKEN);
+    }
+
+    /**
+     * @return A {@link RetryPolicy} that never retries.
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy(new RetryTuning());
+    }
+
+    /**
+     * Runs the call, retrying it while it fails with a transient error and
+     * attempts, deadline and budget allow.
+     * 
+     * @param <T>
+     *            The result type of the call.
+     * @param call
+     *            The idempotent call to run.
+     * @return The result of the call.
+     * @throws Exception
+     *             The exception thrown by the last attempt.
+     */
+    public <T> T call(final Callable<T> call) throws Exception {
+        if (this.tuning.getMaxAttempts() <= 1) {
+            return call.call();
+        }
+        this.deposit();
+        final long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(this.tuning.getDeadlineMillis());
+        int attempt = 1;
+        while (true) {
+            try {
+                return call.call();
+            } catch (final Exception e) {
+                if (attempt >= this.tuning.getMaxAttempts() || !this.isTransient(e)) {
+                    throw e;
+                }
+                final long backoff = this.backoff(attempt);
+                final Deadline request = Deadline.current();
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) >= deadline
+                        || (request != null && backoff >= request.remainingMillis())) {
+                    RetryPolicy.logger.debug("Not retrying, deadline would pass.");
+                    throw e;
+                }
+                if (!this.withdraw()) {
+                    RetryPolicy.logger.warn("Not retrying, retry budget is exhausted.");
+                    throw e;
+                }
+                RetryPolicy.logger.debug("Attempt {} failed with {}, retrying in {} ms.",
+                                         attempt,
+                                         e,
+                                         backoff);
+                Thread.sleep(backoff);
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Checks whether an exception is transient, meaning that the same call
+     * may succeed when it is repeated. That is the case for I/O errors such
+     * as timeouts and refused or reset connections, which vijava reports as
+     * a plain {@link RemoteException}. Faults reported by the server itself
+     * are subclasses of {@link RemoteException} and are not retried. Errors
+     * reported by vCloud are retried if their HTTP status is a server error
+     * or asks the client to slow down.
+     * 
+     * @param e
+     *            The exception thrown by the call.
+     * @return <code>true</code> iff the call may be retried.
+     */
+    protected boolean isTransient(final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getClass() == RemoteException.class) {
+                return true;
+            }
+            if (cause instanceof VCloudException) {
+                final int status = ((VCloudException) cause).getMajorErrorCode();
+                return status == RetryPolicy.TOO_MANY_REQUESTS
+                        || (status >= RetryPolicy.SERVER_ERROR && status < 600);
+            }
+            if (cause instanceof IOException && !(cause instanceof RemoteException)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt
+     *            The number of the attempt that failed, starting at 1.
+     * @return A random wait in milliseconds before the next attempt.
+     */
+    long backoff(final int attempt) {
+        final int shift = Math.min(attempt - 1, 30);
+        final long bound = Math.min(this.tuning.getMaxBackoffMillis(),
+                                    this.tuning.getInitialBackoffMillis() << shift);
+        if (bound <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * Adds the budget of one call.
+     */
+    private void deposit() {
+        long current;
+        do {
+            current = this.tokens.get();
+            if (current >= RetryPolicy.MAX_TOKENS) {
+                return;
+            }
+        } while (!this.tokens.compareAndSet(current, Math.min(RetryPolicy.MAX_TOKENS, current
+                + this.tokensPerCall)));
+    }
+
+    /**
+     * Takes the budget of one retry.
+     * 
+     * @return <code>true</code> iff enough budget was available.
+     */
+    private boolean withdraw() {
+        long current;
+        do {
+            current = this.tokens.get();
+            if (current < RetryPolicy.TOKEN) {
+                return false;
+            }
+        } while (!this.tokens.compareAndSet(current, current - RetryPolicy.TOKEN));
+        return true;
+    }
+}
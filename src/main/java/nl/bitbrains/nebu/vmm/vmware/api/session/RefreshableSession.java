@@ -0,0 +1,38 @@
+package nl.bitbrains.nebu.vmm.vmware.api.session;
+
+/**
+ * A logged in session with a VMware API that expires when it is not used and
+ * can be refreshed and re-established by a {@link SessionManager}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface RefreshableSession {
+
+    /**
+     * @return A name for the session, used in log messages.
+     */
+    String getName();
+
+    /**
+     * Extends the session or checks that it is still alive.
+     * 
+     * @return <code>true</code> iff the session is still logged in.
+     */
+    boolean keepAlive();
+
+    /**
+     * Logs in again, replacing the current session.
+     * 
+     * @return <code>true</code> iff the login was successful.
+     */
+    boolean reconnect();
+
+    /**
+     * @param e
+     *            An exception thrown by a call that used this session.
+     * @return <code>true</code> iff the exception means that the session
+     *         expired and the call may succeed after logging in again.
+     */
+    boolean isExpired(Throwable e);
+}
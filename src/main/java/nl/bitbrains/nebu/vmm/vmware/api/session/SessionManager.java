@@ -0,0 +1,222 @@
+package nl.bitbrains.nebu.vmm.vmware.api.session;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.vmm.vmware.api.BackendExecutors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps {@link RefreshableSession}s logged in. Sessions are refreshed on a
+ * shared scheduler before they expire. When a refresh fails the session is
+ * logged in again, with exponential backoff between failed attempts. Calls
+ * made through {@link #callWithReauth(RefreshableSession, Callable)} that
+ * fail because the session expired are retried once after logging in again.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class SessionManager {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    /**
+     * Time to wait before the first retry of a failed login.
+     */
+    public static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    /**
+     * Maximum time to wait between retries of a failed login.
+     */
+    public static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Number of successful logins per session. Used to make sure that
+     * concurrent calls that all see an expired session only log in once.
+     */
+    private final ConcurrentMap<RefreshableSession, AtomicLong> generations;
+
+    /**
+     * Creates a new {@link SessionManager} with its own scheduler thread.
+     */
+    public SessionManager() {
+        this(Executors.newSingleThreadScheduledExecutor(BackendExecutors
+                .newThreadFactory("nebu-vmm-session")));
+    }
+
+    /**
+     * Creates a new {@link SessionManager} that uses the given scheduler.
+     * 
+     * @param scheduler
+     *            The scheduler to run refreshes on.
+     */
+    public SessionManager(final ScheduledExecutorService scheduler) {
+        ErrorChecker.throwIfNullArgument(scheduler, "scheduler");
+        this.scheduler = scheduler;
+        this.generations = new ConcurrentHashMap<RefreshableSession, AtomicLong>();
+    }
+
+    /**
+     * Starts refreshing the given session.
+     * 
+     * @param session
+     *            The session to keep alive.
+     * @param refreshMillis
+     *            The time between refreshes. Should be shorter than the time
+     *            after which the session expires.
+     */
+    public void register(final RefreshableSession session, final long refreshMillis) {
+        ErrorChecker.throwIfNullArgument(session, "session");
+        this.generationOf(session);
+        this.schedule(session, refreshMillis, refreshMillis, SessionManager.INITIAL_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Schedules a refresh of a session.
+     * 
+     * @param session
+     *            The session to refresh.
+     * @param refreshMillis
+     *            The time between refreshes.
+     * @param delayMillis
+     *            The time until this refresh.
+     * @param backoffMillis
+     *            The time to wait before retrying if this refresh fails.
+     */
+    private void schedule(final RefreshableSession session, final long refreshMillis,
+            final long delayMillis, final long backoffMillis) {
+        if (this.scheduler.isShutdown()) {
+            return;
+        }
+        this.scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                SessionManager.this.refresh(session, refreshMillis, backoffMillis);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Refreshes a session, logs in again if needed, and schedules the next
+     * refresh.
+     * 
+     * @param session
+     *            The session to refresh.
+     * @param refreshMillis
+     *            The time between refreshes.
+     * @param backoffMillis
+     *            The time to wait before retrying if the refresh fails.
+     */
+    void refresh(final RefreshableSession session, final long refreshMillis,
+            final long backoffMillis) {
+        final long generation = this.generationOf(session).get();
+        if (session.keepAlive() || this.reconnect(session, generation)) {
+            this.schedule(session,
+                          refreshMillis,
+                          refreshMillis,
+                          SessionManager.INITIAL_BACKOFF_MILLIS);
+        } else {
+            SessionManager.logger.warn("Could not refresh session {}, retrying in {} ms.",
+                                       session.getName(),
+                                       backoffMillis);
+            this.schedule(session,
+                          refreshMillis,
+                          backoffMillis,
+                          Math.min(2 * backoffMillis, SessionManager.MAX_BACKOFF_MILLIS));
+        }
+    }
+
+    /**
+     * Logs in again, unless another thread already did so after the given
+     * generation was observed.
+     * 
+     * @param session
+     *            The session to reconnect.
+     * @param seenGeneration
+     *            The generation of the session the caller found to be expired.
+     * @return <code>true</code> iff the session is logged in again.
+     */
+    public boolean reconnect(final RefreshableSession session, final long seenGeneration) {
+        final AtomicLong generation = this.generationOf(session);
+        synchronized (generation) {
+            if (generation.get() != seenGeneration) {
+                return true;
+            }
+            SessionManager.logger.info("Logging in again for session {}.", session.getName());
+            if (session.reconnect()) {
+                generation.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Runs a call that uses the given session. If the call fails because the
+     * session expired, the session is logged in again and the call is
+     * retried once.
+     * 
+     * @param <T>
+     *            The result type of the call.
+     * @param session
+     *            The session used by the call, or <code>null</code> to run
+     *            the call without reauthentication.
+     * @param call
+     *            The call to run.
+     * @return The result of the call.
+     * @throws Exception
+     *             The exception thrown by the last attempt of the call.
+     */
+    public <T> T callWithReauth(final RefreshableSession session, final Callable<T> call)
+            throws Exception {
+        if (session == null) {
+            return call.call();
+        }
+        final long generation = this.generationOf(session).get();
+        try {
+            return call.call();
+        } catch (final Exception e) {
+            if (!session.isExpired(e) || !this.reconnect(session, generation)) {
+                throw e;
+            }
+            SessionManager.logger.debug("Retrying call after reauthenticating session {}.",
+                                        session.getName());
+            return call.call();
+        }
+    }
+
+    /**
+     * @param session
+     *            The session.
+     * @return The login counter of the session.
+     */
+    private AtomicLong generationOf(final RefreshableSession session) {
+        final AtomicLong generation = this.generations.get(session);
+        if (generation != null) {
+            return generation;
+        }
+        final AtomicLong created = new AtomicLong();
+        final AtomicLong existing = this.generations.putIfAbsent(session, created);
+        return existing == null ? created : existing;
+    }
+
+    /**
+     * Stops refreshing all sessions.
+     */
+    public void shutdown() {
+        this.scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,546 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.bitbrains.nebu.vmm.vmware.converter.VirtualConverter;
+
+/**
+ * In-memory model of a VMware installation. Contains clusters of hosts,
+ * datastores, vApps and VMs. The hosts, datastores and vApps do not change
+ * after construction and are read without locking. Changes to the VMs are
+ * synchronized, and keep the number of VMs on every host and datastore up to
+ * date, so the load of a host or datastore is read in constant time. Every
+ * change to the VMs increases the version of the inventory.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class SimulatedInventory {
+
+    /**
+     * Prefix of simulated vApp IDs, mimics the vCloud URN format.
+     */
+    public static final String VAPP_PREFIX = "urn:vcloud:vapp:";
+
+    /**
+     * Prefix of simulated VM IDs, mimics the vCloud URN format.
+     */
+    public static final String VM_PREFIX = "urn:vcloud:vm:";
+
+    /**
+     * CPU usage ratio added to a host for every VM it runs.
+     */
+    static final double CPU_PER_VM = 0.02;
+
+    /**
+     * Memory usage ratio added to a host for every VM it runs.
+     */
+    static final double MEM_PER_VM = 0.03;
+
+    /**
+     * Bytes a VM uses on its datastore.
+     */
+    static final long BYTES_PER_VM = 20L * 1024 * 1024 * 1024;
+
+    /**
+     * A simulated HostSystem.
+     */
+    static class Host {
+        final String id;
+        final int cluster;
+        final double baseCpu;
+        final double baseMem;
+        final AtomicInteger vms = new AtomicInteger();
+
+        Host(final String id, final int cluster, final double baseCpu, final double baseMem) {
+            this.id = id;
+            this.cluster = cluster;
+            this.baseCpu = baseCpu;
+            this.baseMem = baseMem;
+        }
+    }
+
+    /**
+     * A simulated Datastore. Shared stores have no host.
+     */
+    static class Store {
+        final String id;
+        final int cluster;
+        final String hostId;
+        final long capacity;
+        final long baseUsed;
+        final AtomicInteger vms = new AtomicInteger();
+
+        Store(final String id, final int cluster, final String hostId, final long capacity,
+                final long baseUsed) {
+            this.id = id;
+            this.cluster = cluster;
+            this.hostId = hostId;
+            this.capacity = capacity;
+            this.baseUsed = baseUsed;
+        }
+    }
+
+    /**
+     * A simulated vApp.
+     */
+    static class Vapp {
+        final String id;
+        final String name;
+        final String vsphereName;
+        final int cluster;
+
+        Vapp(final String id, final String name, final int cluster) {
+            this.id = id;
+            this.name = name;
+            this.vsphereName = VirtualConverter.buildVsphereName(name, id);
+            this.cluster = cluster;
+        }
+    }
+
+    /**
+     * A simulated VM.
+     */
+    static class Vm {
+        final String id;
+        final String hostname;
+        final String vappId;
+        final String vsphereName;
+        String hostId;
+        String storeId;
+        boolean poweredOn;
+
+        Vm(final String id, final String hostname, final String vappId) {
+            this.id = id;
+            this.hostname = hostname;
+            this.vappId = vappId;
+            this.vsphereName = VirtualConverter.buildVsphereName(hostname, id);
+        }
+    }
+
+    private final int clusters;
+    private final Map<String, Host> hosts = new LinkedHashMap<String, Host>();
+    private final Map<String, Store> stores = new LinkedHashMap<String, Store>();
+    private final Map<String, Vapp> vapps = new LinkedHashMap<String, Vapp>();
+    private final Map<String, Vapp> vappsByVsphereName = new HashMap<String, Vapp>();
+    private final Map<String, Vm> vms = new LinkedHashMap<String, Vm>();
+    private final Map<String, Vm> vmsByVsphereName = new HashMap<String, Vm>();
+    private final Map<String, Set<String>> vmIdsByVapp = new HashMap<String, Set<String>>();
+    private long version;
+
+    /**
+     * Builds a new inventory of the size described by the given
+     * configuration.
+     * 
+     * @param config
+     *            The {@link SimulatorConfiguration}.
+     */
+    public SimulatedInventory(final SimulatorConfiguration config) {
+        final Random random = new Random(config.getSeed());
+        this.clusters = config.getClusters();
+        final List<Host> hostList = new ArrayList<Host>(config.getHosts());
+        for (int i = 0; i < config.getHosts(); i++) {
+            final Host host = new Host("host-" + i, i % this.clusters,
+                    0.1 + 0.4 * random.nextDouble(), 0.1 + 0.4 * random.nextDouble());
+            this.hosts.put(host.id, host);
+            hostList.add(host);
+        }
+        for (int i = 0; i < config.getDatastores(); i++) {
+            int cluster = i % this.clusters;
+            String hostId = null;
+            if (i >= config.getSharedDatastores() && !hostList.isEmpty()) {
+                // A local store belongs to the cluster of its host.
+                final Host owner = hostList.get(i % hostList.size());
+                hostId = owner.id;
+                cluster = owner.cluster;
+            }
+            final long capacity = (1L + random.nextInt(4)) * 1024L * 1024 * 1024 * 1024;
+            final Store store = new Store("datastore-" + i, cluster, hostId, capacity,
+                    (long) (capacity * 0.6 * random.nextDouble()));
+            this.stores.put(store.id, store);
+        }
+        for (int i = 0; i < config.getVapps(); i++) {
+            final Vapp vapp = new Vapp(SimulatedInventory.VAPP_PREFIX + new UUID(config.getSeed(),
+                    i), "vapp-" + i, i % this.clusters);
+            this.vapps.put(vapp.id, vapp);
+            this.vappsByVsphereName.put(vapp.vsphereName, vapp);
+            this.vmIdsByVapp.put(vapp.id, new LinkedHashSet<String>());
+            for (int j = 0; j < config.getVmsPerVapp(); j++) {
+                final List<Host> clusterHosts = this.getHostsInCluster(vapp.cluster);
+                if (!clusterHosts.isEmpty()) {
+                    final Host host = clusterHosts.get(random.nextInt(clusterHosts.size()));
+                    this.addVm(vapp.id, vapp.name + "-vm-" + j, host.id, null, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of clusters in this inventory.
+     */
+    public int getClusterCount() {
+        return this.clusters;
+    }
+
+    /**
+     * @param cluster
+     *            The cluster index.
+     * @return The vSphere id of the cluster.
+     */
+    public static String getClusterId(final int cluster) {
+        return "domain-c" + cluster;
+    }
+
+    /**
+     * @param cluster
+     *            The cluster index.
+     * @return The name of the resource pool of the cluster.
+     */
+    public static String getPoolName(final int cluster) {
+        return "pool-" + cluster;
+    }
+
+    /**
+     * @param name
+     *            The name of a resource pool.
+     * @return The cluster index that belongs to the pool, or -1 if it does not
+     *         exist.
+     */
+    public int getClusterFromPoolName(final String name) {
+        for (int i = 0; i < this.clusters; i++) {
+            if (SimulatedInventory.getPoolName(i).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param cluster
+     *            The cluster index.
+     * @return All hosts of the cluster.
+     */
+    List<Host> getHostsInCluster(final int cluster) {
+        final List<Host> result = new ArrayList<Host>();
+        for (final Host host : this.hosts.values()) {
+            if (host.cluster == cluster) {
+                result.add(host);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param cluster
+     *            The cluster index.
+     * @return All datastores of the cluster.
+     */
+    List<Store> getStoresInCluster(final int cluster) {
+        final List<Store> result = new ArrayList<Store>();
+        for (final Store store : this.stores.values()) {
+            if (store.cluster == cluster) {
+                result.add(store);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param id
+     *            The host id.
+     * @return The host, or <code>null</code>.
+     */
+    Host getHost(final String id) {
+        return this.hosts.get(id);
+    }
+
+    /**
+     * @param id
+     *            The datastore id.
+     * @return The datastore, or <code>null</code>.
+     */
+    Store getStore(final String id) {
+        return this.stores.get(id);
+    }
+
+    /**
+     * @param id
+     *            The vApp id.
+     * @return The vApp, or <code>null</code>.
+     */
+    Vapp getVapp(final String id) {
+        return this.vapps.get(id);
+    }
+
+    /**
+     * @param vsphereName
+     *            The name of the folder of the vApp in vSphere.
+     * @return The vApp, or <code>null</code>.
+     */
+    Vapp getVappByVsphereName(final String vsphereName) {
+        return this.vappsByVsphereName.get(vsphereName);
+    }
+
+    /**
+     * @return All vApps.
+     */
+    List<Vapp> getVapps() {
+        return new ArrayList<Vapp>(this.vapps.values());
+    }
+
+    /**
+     * @param id
+     *            The VM id.
+     * @return A copy of the VM, or <code>null</code>. The placement of the
+     *         copy does not change when the VM is moved.
+     */
+    synchronized Vm getVm(final String id) {
+        return this.copy(this.vms.get(id));
+    }
+
+    /**
+     * @param vsphereName
+     *            The name of the VM in vSphere.
+     * @return A copy of the VM, or <code>null</code>.
+     */
+    synchronized Vm getVmByVsphereName(final String vsphereName) {
+        return this.copy(this.vmsByVsphereName.get(vsphereName));
+    }
+
+    /**
+     * @param vm
+     *            A VM, may be <code>null</code>.
+     * @return A copy of the VM, or <code>null</code>.
+     */
+    private Vm copy(final Vm vm) {
+        if (vm == null) {
+            return null;
+        }
+        final Vm copy = new Vm(vm.id, vm.hostname, vm.vappId);
+        copy.hostId = vm.hostId;
+        copy.storeId = vm.storeId;
+        copy.poweredOn = vm.poweredOn;
+        return copy;
+    }
+
+    /**
+     * @return The ids of all VMs.
+     */
+    synchronized List<String> getVmIds() {
+        return new ArrayList<String>(this.vms.keySet());
+    }
+
+    /**
+     * @param vappId
+     *            The vApp id.
+     * @return The ids of the VMs in the vApp.
+     */
+    synchronized List<String> getVmIds(final String vappId) {
+        final Set<String> ids = this.vmIdsByVapp.get(vappId);
+        return ids == null ? new ArrayList<String>() : new ArrayList<String>(ids);
+    }
+
+    /**
+     * @return The version of the inventory, which increases on every change
+     *         to the VMs.
+     */
+    synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Waits until the version of the inventory differs from the given one.
+     * 
+     * @param known
+     *            The version known to the caller.
+     * @param timeoutMillis
+     *            The maximum time to wait in milliseconds.
+     * @return The current version.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     */
+    synchronized long awaitChange(final long known, final long timeoutMillis)
+            throws InterruptedException {
+        final long end = System.currentTimeMillis() + timeoutMillis;
+        long left = timeoutMillis;
+        while (this.version == known && left > 0) {
+            this.wait(left);
+            left = end - System.currentTimeMillis();
+        }
+        return this.version;
+    }
+
+    /**
+     * Adds a new VM to the inventory.
+     * 
+     * @param vappId
+     *            The vApp of the VM.
+     * @param hostname
+     *            The hostname of the VM.
+     * @param hostId
+     *            The host running the VM.
+     * @param storeId
+     *            The datastore of the VM, may be <code>null</code>.
+     * @param poweredOn
+     *            Whether the VM is running.
+     * @return The id of the new VM.
+     */
+    synchronized String addVm(final String vappId, final String hostname, final String hostId,
+            final String storeId, final boolean poweredOn) {
+        final Vm vm = new Vm(SimulatedInventory.VM_PREFIX + UUID.randomUUID(), hostname, vappId);
+        vm.hostId = hostId;
+        vm.storeId = storeId == null ? this.pickStore(hostId) : storeId;
+        vm.poweredOn = poweredOn;
+        this.vms.put(vm.id, vm);
+        this.vmsByVsphereName.put(vm.vsphereName, vm);
+        final Set<String> siblings = this.vmIdsByVapp.get(vappId);
+        if (siblings != null) {
+            siblings.add(vm.id);
+        }
+        this.count(vm, 1);
+        return vm.id;
+    }
+
+    /**
+     * Removes a VM from the inventory.
+     * 
+     * @param id
+     *            The VM id.
+     */
+    synchronized void removeVm(final String id) {
+        final Vm vm = this.vms.remove(id);
+        if (vm != null) {
+            this.vmsByVsphereName.remove(vm.vsphereName);
+            final Set<String> siblings = this.vmIdsByVapp.get(vm.vappId);
+            if (siblings != null) {
+                siblings.remove(vm.id);
+            }
+            this.count(vm, -1);
+        }
+    }
+
+    /**
+     * Powers a VM on or off.
+     * 
+     * @param id
+     *            The VM id.
+     * @param poweredOn
+     *            Whether the VM runs.
+     */
+    synchronized void powerVm(final String id, final boolean poweredOn) {
+        final Vm vm = this.vms.get(id);
+        if (vm != null) {
+            vm.poweredOn = poweredOn;
+            this.version++;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Updates the placement of a VM.
+     * 
+     * @param id
+     *            The VM id.
+     * @param hostId
+     *            The new host, or <code>null</code> to keep the current one.
+     * @param storeId
+     *            The new store, or <code>null</code> to keep the current one.
+     */
+    synchronized void placeVm(final String id, final String hostId, final String storeId) {
+        final Vm vm = this.vms.get(id);
+        if (vm != null) {
+            this.count(vm, -1);
+            if (hostId != null) {
+                vm.hostId = hostId;
+            }
+            if (storeId != null) {
+                vm.storeId = storeId;
+            }
+            this.count(vm, 1);
+        }
+    }
+
+    /**
+     * Adds a VM to, or removes it from, the totals of its host and datastore,
+     * and increases the version of the inventory.
+     * 
+     * @param vm
+     *            The VM.
+     * @param delta
+     *            1 to add the VM, -1 to remove it.
+     */
+    private void count(final Vm vm, final int delta) {
+        this.version++;
+        this.notifyAll();
+        final Host host = vm.hostId == null ? null : this.hosts.get(vm.hostId);
+        if (host != null) {
+            host.vms.addAndGet(delta);
+        }
+        final Store store = vm.storeId == null ? null : this.stores.get(vm.storeId);
+        if (store != null) {
+            store.vms.addAndGet(delta);
+        }
+    }
+
+    /**
+     * @param host
+     *            The host.
+     * @return The CPU usage ratio of the host, including the VMs it runs.
+     */
+    double getCpuUsage(final Host host) {
+        return Math.min(1.0, host.baseCpu + SimulatedInventory.CPU_PER_VM * host.vms.get());
+    }
+
+    /**
+     * @param host
+     *            The host.
+     * @return The memory usage ratio of the host, including the VMs it runs.
+     */
+    double getMemUsage(final Host host) {
+        return Math.min(1.0, host.baseMem + SimulatedInventory.MEM_PER_VM * host.vms.get());
+    }
+
+    /**
+     * @param store
+     *            The datastore.
+     * @return The number of used bytes, including the VMs on the store.
+     */
+    long getUsed(final Store store) {
+        return Math.min(store.capacity, store.baseUsed + SimulatedInventory.BYTES_PER_VM
+                * store.vms.get());
+    }
+
+    /**
+     * Picks the first shared store of the cluster of the host, or its local
+     * store if there is no shared store.
+     * 
+     * @param hostId
+     *            The host.
+     * @return The id of a store, or <code>null</code> if there is none.
+     */
+    private String pickStore(final String hostId) {
+        final Host host = this.hosts.get(hostId);
+        if (host == null) {
+            return null;
+        }
+        String local = null;
+        for (final Store store : this.stores.values()) {
+            if (store.cluster == host.cluster && store.hostId == null) {
+                return store.id;
+            }
+            if (hostId.equals(store.hostId)) {
+                local = store.id;
+            }
+        }
+        return local;
+    }
+}
@@ -0,0 +1,47 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays the calling thread like a round trip to vCloud or vSphere: by the
+ * configured latency plus a random jitter.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+class SimulatedLatency {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+
+    /**
+     * Creates a new {@link SimulatedLatency}.
+     * 
+     * @param config
+     *            The {@link SimulatorConfiguration} with the latency and
+     *            jitter of a call.
+     */
+    SimulatedLatency(final SimulatorConfiguration config) {
+        this.latencyMillis = config.getCallLatencyMillis();
+        this.jitterMillis = config.getCallJitterMillis();
+    }
+
+    /**
+     * Delays the calling thread for the latency plus a random jitter. An
+     * interrupt ends the delay and is kept on the thread.
+     */
+    void roundTrip() {
+        long delay = this.latencyMillis;
+        if (this.jitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextLong(this.jitterMillis);
+        }
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,985 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.bitbrains.nebu.vmm.vmware.api.BackendExecutors;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphere;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.vmware.vim25.ArrayOfCheckResult;
+import com.vmware.vim25.CheckResult;
+import com.vmware.vim25.DatastoreHostMount;
+import com.vmware.vim25.DatastoreSummary;
+import com.vmware.vim25.ElementDescription;
+import com.vmware.vim25.HostHardwareSummary;
+import com.vmware.vim25.HostListSummary;
+import com.vmware.vim25.HostListSummaryQuickStats;
+import com.vmware.vim25.HostRuntimeInfo;
+import com.vmware.vim25.HostSystemConnectionState;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfEntityMetric;
+import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.PerfMetricIntSeries;
+import com.vmware.vim25.PerfMetricSeries;
+import com.vmware.vim25.PerfQuerySpec;
+import com.vmware.vim25.PerfSummaryType;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterSpec;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.TaskInfo;
+import com.vmware.vim25.TaskInfoState;
+import com.vmware.vim25.UpdateSet;
+import com.vmware.vim25.VirtualMachinePowerState;
+import com.vmware.vim25.VirtualMachineRelocateSpec;
+import com.vmware.vim25.VirtualMachineMovePriority;
+import com.vmware.vim25.VirtualMachineRuntimeInfo;
+import com.vmware.vim25.VirtualMachineSummary;
+import com.vmware.vim25.WaitOptions;
+import com.vmware.vim25.mo.ClusterComputeResource;
+import com.vmware.vim25.mo.ContainerView;
+import com.vmware.vim25.mo.Datacenter;
+import com.vmware.vim25.mo.Datastore;
+import com.vmware.vim25.mo.Folder;
+import com.vmware.vim25.mo.HostSystem;
+import com.vmware.vim25.mo.InventoryNavigator;
+import com.vmware.vim25.mo.ManagedEntity;
+import com.vmware.vim25.mo.PerformanceManager;
+import com.vmware.vim25.mo.PropertyCollector;
+import com.vmware.vim25.mo.PropertyFilter;
+import com.vmware.vim25.mo.ResourcePool;
+import com.vmware.vim25.mo.ServerConnection;
+import com.vmware.vim25.mo.ServiceInstance;
+import com.vmware.vim25.mo.Task;
+import com.vmware.vim25.mo.ViewManager;
+import com.vmware.vim25.mo.VirtualMachine;
+import com.vmware.vim25.mo.VirtualMachineProvisioningChecker;
+
+/**
+ * vSphere managed objects backed by a {@link SimulatedInventory}. The objects
+ * have no server connection; they override the getters used by
+ * {@link VSphere} and the {@link nl.bitbrains.nebu.vmm.vmware.api.vsphere.InventoryWatcher}
+ * and read the inventory on every call. Searches, traversals, tasks and
+ * performance queries take a round trip. Summaries do not, because
+ * {@link VSphere} reads them in bulk from a real vSphere. A
+ * {@link ServiceInstance} cannot be created without logging in, so it is a
+ * Mockito mock.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+class SimulatedManagedObjects {
+
+    /**
+     * Clock speed of a simulated host.
+     */
+    static final int CPU_MHZ = 2600;
+
+    /**
+     * Number of cores of a simulated host.
+     */
+    static final short CPU_CORES = 16;
+
+    /**
+     * Memory of a simulated host.
+     */
+    static final long MEMORY_BYTES = 256L * 1024 * 1024 * 1024;
+
+    /**
+     * Real-time performance counters known to the simulated
+     * {@link PerformanceManager}, formatted as group.name.rollup. The key of
+     * a counter is its index.
+     */
+    private static final String[] PERF_COUNTERS = { "cpu.ready.summation",
+            "cpu.usage.average", "mem.active.average", "disk.maxTotalLatency.latest",
+            "net.usage.average", "datastore.totalReadLatency.average",
+            "datastore.totalWriteLatency.average" };
+
+    /**
+     * Value of a performance counter in hundredths of a percent that means
+     * 100%.
+     */
+    private static final double PERF_PERCENT = 10000;
+
+    private final SimulatedInventory inventory;
+    private final SimulatedLatency latency;
+    private final long moveDurationMillis;
+    private final AtomicLong taskIds = new AtomicLong();
+
+    private final Folder rootFolder;
+    private final Datacenter datacenter;
+    private final Map<String, SimulatedHost> hosts = new LinkedHashMap<String, SimulatedHost>();
+    private final Map<String, SimulatedDatastore> stores =
+            new LinkedHashMap<String, SimulatedDatastore>();
+    private final List<SimulatedCluster> clusters = new ArrayList<SimulatedCluster>();
+    private final List<SimulatedPool> pools = new ArrayList<SimulatedPool>();
+    private final Map<String, SimulatedVappFolder> folders =
+            new LinkedHashMap<String, SimulatedVappFolder>();
+    private final VirtualMachineProvisioningChecker checker;
+    private final PerformanceManager performanceManager;
+    private final PropertyCollector propertyCollector;
+    private final ViewManager viewManager;
+
+    /**
+     * Builds the managed objects of the hosts, datastores, clusters and vApps
+     * of the inventory.
+     * 
+     * @param inventory
+     *            The {@link SimulatedInventory}.
+     * @param latency
+     *            The latency of a round trip.
+     * @param config
+     *            The {@link SimulatorConfiguration}, for the duration of a
+     *            migration.
+     */
+    SimulatedManagedObjects(final SimulatedInventory inventory, final SimulatedLatency latency,
+            final SimulatorConfiguration config) {
+        this.inventory = inventory;
+        this.latency = latency;
+        this.moveDurationMillis = config.getMoveDurationMillis();
+        this.rootFolder = new Folder(null, SimulatedManagedObjects.mor(VSphere.TYPE_FOLDER,
+                                                                       "group-d1"));
+        this.datacenter = new Datacenter(null, SimulatedManagedObjects
+                .mor("Datacenter", SimulatedVMware.DATACENTER_ID));
+        for (int i = 0; i < inventory.getClusterCount(); i++) {
+            for (final SimulatedInventory.Host host : inventory.getHostsInCluster(i)) {
+                this.hosts.put(host.id, new SimulatedHost(host));
+            }
+            for (final SimulatedInventory.Store store : inventory.getStoresInCluster(i)) {
+                this.stores.put(store.id, new SimulatedDatastore(store));
+            }
+            this.clusters.add(new SimulatedCluster(i));
+            this.pools.add(new SimulatedPool(i));
+        }
+        for (final SimulatedInventory.Vapp vapp : inventory.getVapps()) {
+            this.folders.put(vapp.id, new SimulatedVappFolder(vapp));
+        }
+        this.checker = new SimulatedChecker();
+        this.performanceManager = new SimulatedPerformanceManager();
+        this.propertyCollector = new SimulatedPropertyCollector();
+        this.viewManager = new SimulatedViewManager();
+    }
+
+    /**
+     * @param type
+     *            The type of a managed object.
+     * @param val
+     *            The id of the managed object.
+     * @return A reference to the managed object.
+     */
+    static ManagedObjectReference mor(final String type, final String val) {
+        final ManagedObjectReference mor = new ManagedObjectReference();
+        mor.setType(type);
+        mor.setVal(val);
+        return mor;
+    }
+
+    /**
+     * Creates a logged in {@link ServiceInstance}. Its server connection is a
+     * deep stub, so setting a read timeout and logging out do nothing.
+     * 
+     * @return The new {@link ServiceInstance}.
+     */
+    ServiceInstance newServiceInstance() {
+        final ServerConnection connection = Mockito.mock(ServerConnection.class,
+                                                         Mockito.RETURNS_DEEP_STUBS);
+        return Mockito.mock(ServiceInstance.class, new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                final SimulatedManagedObjects objects = SimulatedManagedObjects.this;
+                switch (invocation.getMethod().getName()) {
+                case "currentTime":
+                    objects.latency.roundTrip();
+                    return Calendar.getInstance();
+                case "getRootFolder":
+                    return objects.rootFolder;
+                case "getServerConnection":
+                    return connection;
+                case "getVirtualMachineProvisioningChecker":
+                    return objects.checker;
+                case "getPerformanceManager":
+                    return objects.performanceManager;
+                case "getPropertyCollector":
+                    return objects.propertyCollector;
+                case "getViewManager":
+                    return objects.viewManager;
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return A new {@link InventoryNavigator} that searches the inventory.
+     */
+    InventoryNavigator newNavigator() {
+        return new SimulatedNavigator();
+    }
+
+    /**
+     * Looks up a managed object by type and id, like
+     * {@link VSphere#searchItemsById(String, String)}.
+     * 
+     * @param type
+     *            The type of the managed object.
+     * @param id
+     *            The id of the managed object.
+     * @return The managed object, or <code>null</code> if it does not exist.
+     */
+    ManagedEntity findById(final String type, final String id) {
+        this.latency.roundTrip();
+        if (VSphere.TYPE_HOST.equals(type)) {
+            return this.hosts.get(id);
+        } else if (VSphere.TYPE_DATASTORE.equals(type)) {
+            return this.stores.get(id);
+        } else if (VSphere.TYPE_VM.equals(type) && this.inventory.getVm(id) != null) {
+            return new SimulatedVirtualMachine(id);
+        }
+        return null;
+    }
+
+    /**
+     * @param cluster
+     *            The cluster index.
+     * @return The hosts of the cluster.
+     */
+    private HostSystem[] hostsInCluster(final int cluster) {
+        final List<HostSystem> result = new ArrayList<HostSystem>();
+        for (final SimulatedInventory.Host host : this.inventory.getHostsInCluster(cluster)) {
+            result.add(this.hosts.get(host.id));
+        }
+        return result.toArray(new HostSystem[result.size()]);
+    }
+
+    /**
+     * @param cluster
+     *            The cluster index.
+     * @param hostId
+     *            The host whose local datastores to include, or
+     *            <code>null</code> to include all local datastores.
+     * @return The shared datastores of the cluster and the matching local
+     *         datastores.
+     */
+    private Datastore[] storesInCluster(final int cluster, final String hostId) {
+        final List<Datastore> result = new ArrayList<Datastore>();
+        for (final SimulatedInventory.Store store : this.inventory.getStoresInCluster(cluster)) {
+            if (hostId == null || store.hostId == null || hostId.equals(store.hostId)) {
+                result.add(this.stores.get(store.id));
+            }
+        }
+        return result.toArray(new Datastore[result.size()]);
+    }
+
+    /**
+     * @param name
+     *            The name of the property.
+     * @param value
+     *            The new value of the property.
+     * @return A {@link PropertyChange} that assigns the value.
+     */
+    private static PropertyChange assign(final String name, final Object value) {
+        final PropertyChange change = new PropertyChange();
+        change.setName(name);
+        change.setOp(PropertyChangeOp.assign);
+        change.setVal(value);
+        return change;
+    }
+
+    /**
+     * Searches the simulated inventory by name.
+     */
+    private final class SimulatedNavigator extends InventoryNavigator {
+
+        /**
+         * Creates a navigator that starts at the root folder.
+         */
+        private SimulatedNavigator() {
+            super(SimulatedManagedObjects.this.rootFolder);
+        }
+
+        @Override
+        public ManagedEntity searchManagedEntity(final String type, final String name) {
+            final SimulatedManagedObjects objects = SimulatedManagedObjects.this;
+            objects.latency.roundTrip();
+            if (VSphere.TYPE_RESOURCEPOOL.equals(type)) {
+                final int cluster = objects.inventory.getClusterFromPoolName(name);
+                return cluster < 0 ? null : objects.pools.get(cluster);
+            } else if (VSphere.TYPE_FOLDER.equals(type)) {
+                final SimulatedInventory.Vapp vapp = objects.inventory.getVappByVsphereName(name);
+                return vapp == null ? null : objects.folders.get(vapp.id);
+            } else if (VSphere.TYPE_VM.equals(type)) {
+                final SimulatedInventory.Vm vm = objects.inventory.getVmByVsphereName(name);
+                return vm == null ? null : new SimulatedVirtualMachine(vm.id);
+            } else if (VSphere.TYPE_HOST.equals(type)) {
+                return objects.hosts.get(name);
+            } else if (VSphere.TYPE_DATASTORE.equals(type)) {
+                return objects.stores.get(name);
+            }
+            return null;
+        }
+
+        @Override
+        public ManagedEntity[] searchManagedEntities(final String type) {
+            final SimulatedManagedObjects objects = SimulatedManagedObjects.this;
+            objects.latency.roundTrip();
+            if (VSphere.TYPE_HOST.equals(type)) {
+                return objects.hosts.values().toArray(new ManagedEntity[objects.hosts.size()]);
+            } else if (VSphere.TYPE_DATASTORE.equals(type)) {
+                return objects.stores.values().toArray(new ManagedEntity[objects.stores.size()]);
+            }
+            return new ManagedEntity[0];
+        }
+    }
+
+    /**
+     * A simulated host.
+     */
+    private final class SimulatedHost extends HostSystem {
+        private final SimulatedInventory.Host host;
+
+        /**
+         * @param host
+         *            The host in the inventory.
+         */
+        private SimulatedHost(final SimulatedInventory.Host host) {
+            super(null, SimulatedManagedObjects.mor(VSphere.TYPE_HOST, host.id));
+            this.host = host;
+        }
+
+        @Override
+        public String getName() {
+            return this.host.id;
+        }
+
+        @Override
+        public HostListSummary getSummary() {
+            final SimulatedInventory inventory = SimulatedManagedObjects.this.inventory;
+            final HostHardwareSummary hardware = new HostHardwareSummary();
+            hardware.setCpuMhz(SimulatedManagedObjects.CPU_MHZ);
+            hardware.setNumCpuCores(SimulatedManagedObjects.CPU_CORES);
+            hardware.setMemorySize(SimulatedManagedObjects.MEMORY_BYTES);
+            final HostListSummaryQuickStats quickStats = new HostListSummaryQuickStats();
+            quickStats.setOverallCpuUsage((int) (inventory.getCpuUsage(this.host)
+                    * SimulatedManagedObjects.CPU_MHZ * SimulatedManagedObjects.CPU_CORES));
+            quickStats.setOverallMemoryUsage((int) (inventory.getMemUsage(this.host)
+                    * SimulatedManagedObjects.MEMORY_BYTES / (1024 * 1024)));
+            final HostRuntimeInfo runtime = new HostRuntimeInfo();
+            runtime.setConnectionState(HostSystemConnectionState.connected);
+            final HostListSummary summary = new HostListSummary();
+            summary.setHost(this.getMOR());
+            summary.setHardware(hardware);
+            summary.setQuickStats(quickStats);
+            summary.setRuntime(runtime);
+            return summary;
+        }
+
+        @Override
+        public Datastore[] getDatastores() {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            return SimulatedManagedObjects.this.storesInCluster(this.host.cluster, this.host.id);
+        }
+    }
+
+    /**
+     * A simulated datastore.
+     */
+    private final class SimulatedDatastore extends Datastore {
+        private final SimulatedInventory.Store store;
+
+        /**
+         * @param store
+         *            The datastore in the inventory.
+         */
+        private SimulatedDatastore(final SimulatedInventory.Store store) {
+            super(null, SimulatedManagedObjects.mor(VSphere.TYPE_DATASTORE, store.id));
+            this.store = store;
+        }
+
+        @Override
+        public String getName() {
+            return this.store.id;
+        }
+
+        @Override
+        public DatastoreSummary getSummary() {
+            final DatastoreSummary summary = new DatastoreSummary();
+            summary.setDatastore(this.getMOR());
+            summary.setName(this.store.id);
+            summary.setUrl("ds:///vmfs/volumes/" + this.store.id + "/");
+            summary.setType("VMFS");
+            summary.setAccessible(true);
+            summary.setCapacity(this.store.capacity);
+            summary.setFreeSpace(this.store.capacity
+                    - SimulatedManagedObjects.this.inventory.getUsed(this.store));
+            summary.setUncommitted(0L);
+            summary.setMultipleHostAccess(this.store.hostId == null);
+            return summary;
+        }
+
+        @Override
+        public DatastoreHostMount[] getHost() {
+            final SimulatedManagedObjects objects = SimulatedManagedObjects.this;
+            final List<DatastoreHostMount> mounts = new ArrayList<DatastoreHostMount>();
+            for (final SimulatedInventory.Host host : objects.inventory
+                    .getHostsInCluster(this.store.cluster)) {
+                if (this.store.hostId == null || this.store.hostId.equals(host.id)) {
+                    final DatastoreHostMount mount = new DatastoreHostMount();
+                    mount.setKey(objects.hosts.get(host.id).getMOR());
+                    mounts.add(mount);
+                }
+            }
+            return mounts.toArray(new DatastoreHostMount[mounts.size()]);
+        }
+    }
+
+    /**
+     * A simulated cluster.
+     */
+    private final class SimulatedCluster extends ClusterComputeResource {
+        private final int cluster;
+
+        /**
+         * @param cluster
+         *            The cluster index.
+         */
+        private SimulatedCluster(final int cluster) {
+            super(null, SimulatedManagedObjects.mor("ClusterComputeResource", SimulatedInventory
+                    .getClusterId(cluster)));
+            this.cluster = cluster;
+        }
+
+        @Override
+        public String getName() {
+            return SimulatedInventory.getClusterId(this.cluster);
+        }
+
+        @Override
+        public ManagedEntity getParent() {
+            return SimulatedManagedObjects.this.datacenter;
+        }
+
+        @Override
+        public HostSystem[] getHosts() {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            return SimulatedManagedObjects.this.hostsInCluster(this.cluster);
+        }
+
+        @Override
+        public Datastore[] getDatastores() {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            return SimulatedManagedObjects.this.storesInCluster(this.cluster, null);
+        }
+    }
+
+    /**
+     * The resource pool of a simulated cluster.
+     */
+    private final class SimulatedPool extends ResourcePool {
+        private final int cluster;
+
+        /**
+         * @param cluster
+         *            The cluster index.
+         */
+        private SimulatedPool(final int cluster) {
+            super(null, SimulatedManagedObjects.mor(VSphere.TYPE_RESOURCEPOOL, "resgroup-"
+                    + cluster));
+            this.cluster = cluster;
+        }
+
+        @Override
+        public String getName() {
+            return SimulatedInventory.getPoolName(this.cluster);
+        }
+
+        @Override
+        public ManagedEntity getParent() {
+            return SimulatedManagedObjects.this.clusters.get(this.cluster);
+        }
+
+        @Override
+        public ClusterComputeResource getOwner() {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            return SimulatedManagedObjects.this.clusters.get(this.cluster);
+        }
+    }
+
+    /**
+     * The folder of a simulated vApp, which is a child of the resource pool
+     * of its cluster.
+     */
+    private final class SimulatedVappFolder extends Folder {
+        private final SimulatedInventory.Vapp vapp;
+
+        /**
+         * @param vapp
+         *            The vApp in the inventory.
+         */
+        private SimulatedVappFolder(final SimulatedInventory.Vapp vapp) {
+            super(null, SimulatedManagedObjects.mor(VSphere.TYPE_FOLDER, "group-v"
+                    + vapp.id.substring(vapp.id.lastIndexOf(':') + 1)));
+            this.vapp = vapp;
+        }
+
+        @Override
+        public String getName() {
+            return this.vapp.vsphereName;
+        }
+
+        @Override
+        public ManagedEntity getParent() {
+            return SimulatedManagedObjects.this.pools.get(this.vapp.cluster);
+        }
+    }
+
+    /**
+     * A simulated VM. Its properties are read from the inventory on every
+     * call, like a real managed object reads them from vSphere.
+     */
+    private final class SimulatedVirtualMachine extends VirtualMachine {
+        private final String id;
+
+        /**
+         * @param id
+         *            The id of the VM in the inventory.
+         */
+        private SimulatedVirtualMachine(final String id) {
+            super(null, SimulatedManagedObjects.mor(VSphere.TYPE_VM, id));
+            this.id = id;
+        }
+
+        /**
+         * @return A copy of the VM in the inventory.
+         * @throws IllegalStateException
+         *             If the VM no longer exists.
+         */
+        private SimulatedInventory.Vm vm() {
+            final SimulatedInventory.Vm vm = SimulatedManagedObjects.this.inventory.getVm(this.id);
+            if (vm == null) {
+                throw new IllegalStateException("Simulated VM " + this.id + " does not exist.");
+            }
+            return vm;
+        }
+
+        @Override
+        public String getName() {
+            return this.vm().vsphereName;
+        }
+
+        @Override
+        public VirtualMachineSummary getSummary() {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            final SimulatedInventory.Vm vm = this.vm();
+            final VirtualMachineRuntimeInfo runtime = new VirtualMachineRuntimeInfo();
+            runtime.setHost(SimulatedManagedObjects.mor(VSphere.TYPE_HOST, vm.hostId));
+            runtime.setPowerState(vm.poweredOn ? VirtualMachinePowerState.poweredOn
+                    : VirtualMachinePowerState.poweredOff);
+            final VirtualMachineSummary summary = new VirtualMachineSummary();
+            summary.setVm(this.getMOR());
+            summary.setRuntime(runtime);
+            return summary;
+        }
+
+        @Override
+        public Datastore[] getDatastores() {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            final Datastore store = SimulatedManagedObjects.this.stores.get(this.vm().storeId);
+            return store == null ? new Datastore[0] : new Datastore[] { store };
+        }
+
+        @Override
+        public ResourcePool getResourcePool() {
+            final SimulatedManagedObjects objects = SimulatedManagedObjects.this;
+            objects.latency.roundTrip();
+            final SimulatedInventory.Host host = objects.inventory.getHost(this.vm().hostId);
+            return host == null ? null : objects.pools.get(host.cluster);
+        }
+
+        @Override
+        public Task migrateVM_Task(final ResourcePool pool, final HostSystem host,
+                final VirtualMachineMovePriority priority, final VirtualMachinePowerState state) {
+            final SimulatedManagedObjects objects = SimulatedManagedObjects.this;
+            objects.latency.roundTrip();
+            final String hostId = host.getMOR().getVal();
+            return new SimulatedTask(null).start(objects.moveDurationMillis, new Runnable() {
+                @Override
+                public void run() {
+                    objects.inventory.placeVm(SimulatedVirtualMachine.this.id, hostId, null);
+                }
+            });
+        }
+
+        @Override
+        public Task relocateVM_Task(final VirtualMachineRelocateSpec spec) {
+            final SimulatedManagedObjects objects = SimulatedManagedObjects.this;
+            objects.latency.roundTrip();
+            final String storeId = spec.getDatastore() == null ? null : spec.getDatastore()
+                    .getVal();
+            return new SimulatedTask(null).start(objects.moveDurationMillis, new Runnable() {
+                @Override
+                public void run() {
+                    objects.inventory.placeVm(SimulatedVirtualMachine.this.id, null, storeId);
+                }
+            });
+        }
+    }
+
+    /**
+     * A simulated task. A task without an effect has finished when it is
+     * created; a started task applies its effect to the inventory on a
+     * backend thread after its duration.
+     */
+    private final class SimulatedTask extends Task {
+        private final Object result;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile TaskInfoState state = TaskInfoState.success;
+        private volatile Future<?> future;
+
+        /**
+         * @param result
+         *            The result of the task, may be <code>null</code>.
+         */
+        private SimulatedTask(final Object result) {
+            super(null, SimulatedManagedObjects.mor("Task", "task-"
+                    + SimulatedManagedObjects.this.taskIds.incrementAndGet()));
+            this.result = result;
+        }
+
+        /**
+         * Runs the task on a backend thread.
+         * 
+         * @param durationMillis
+         *            The time in milliseconds the task takes.
+         * @param effect
+         *            The change applied to the inventory when the task
+         *            succeeds.
+         * @return This task.
+         */
+        private SimulatedTask start(final long durationMillis, final Runnable effect) {
+            this.state = TaskInfoState.running;
+            this.future = BackendExecutors.getTaskExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    final SimulatedTask task = SimulatedTask.this;
+                    try {
+                        Thread.sleep(durationMillis);
+                        effect.run();
+                        task.state = TaskInfoState.success;
+                    } catch (final InterruptedException e) {
+                        task.state = TaskInfoState.error;
+                    } finally {
+                        task.done.countDown();
+                    }
+                }
+            });
+            return this;
+        }
+
+        @Override
+        public String waitForTask() throws InterruptedException {
+            if (this.future != null) {
+                this.done.await();
+            }
+            return this.state.toString();
+        }
+
+        @Override
+        public TaskInfo getTaskInfo() {
+            final TaskInfo info = new TaskInfo();
+            info.setKey(this.getMOR().getVal());
+            info.setTask(this.getMOR());
+            info.setState(this.state);
+            info.setResult(this.result);
+            return info;
+        }
+
+        @Override
+        public void cancelTask() {
+            final Future<?> running = this.future;
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Passes every migration and relocation check.
+     */
+    private final class SimulatedChecker extends VirtualMachineProvisioningChecker {
+
+        /**
+         * Creates the checker.
+         */
+        private SimulatedChecker() {
+            super(null, SimulatedManagedObjects.mor("VirtualMachineProvisioningChecker",
+                                                    "ProvChecker"));
+        }
+
+        /**
+         * @return A finished task without check errors.
+         */
+        private Task passed() {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            final ArrayOfCheckResult results = new ArrayOfCheckResult();
+            results.setCheckResult(new CheckResult[0]);
+            return new SimulatedTask(results);
+        }
+
+        @Override
+        public Task checkMigrate_Task(final VirtualMachine vm, final HostSystem host,
+                final ResourcePool pool, final VirtualMachinePowerState state,
+                final String[] testType) {
+            return this.passed();
+        }
+
+        @Override
+        public Task checkRelocate_Task(final VirtualMachine vm,
+                final VirtualMachineRelocateSpec spec, final String[] testType) {
+            return this.passed();
+        }
+    }
+
+    /**
+     * Answers real-time performance queries from the load in the inventory.
+     */
+    private final class SimulatedPerformanceManager extends PerformanceManager {
+
+        /**
+         * Creates the performance manager.
+         */
+        private SimulatedPerformanceManager() {
+            super(null, SimulatedManagedObjects.mor("PerformanceManager", "PerfMgr"));
+        }
+
+        @Override
+        public PerfCounterInfo[] getPerfCounter() {
+            final String[] names = SimulatedManagedObjects.PERF_COUNTERS;
+            final PerfCounterInfo[] infos = new PerfCounterInfo[names.length];
+            for (int i = 0; i < names.length; i++) {
+                final String[] parts = names[i].split("\\.");
+                final ElementDescription group = new ElementDescription();
+                group.setKey(parts[0]);
+                final ElementDescription name = new ElementDescription();
+                name.setKey(parts[1]);
+                infos[i] = new PerfCounterInfo();
+                infos[i].setKey(i);
+                infos[i].setGroupInfo(group);
+                infos[i].setNameInfo(name);
+                infos[i].setRollupType(PerfSummaryType.valueOf(parts[2]));
+            }
+            return infos;
+        }
+
+        @Override
+        public PerfEntityMetricBase[] queryPerf(final PerfQuerySpec[] specs) {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            final List<PerfEntityMetricBase> results = new ArrayList<PerfEntityMetricBase>();
+            for (final PerfQuerySpec spec : specs) {
+                final SimulatedHost host = SimulatedManagedObjects.this.hosts.get(spec
+                        .getEntity().getVal());
+                if (host == null) {
+                    continue;
+                }
+                final List<PerfMetricSeries> series = new ArrayList<PerfMetricSeries>();
+                for (final PerfMetricId metric : spec.getMetricId()) {
+                    if ("*".equals(metric.getInstance())) {
+                        for (final Datastore store : SimulatedManagedObjects.this
+                                .storesInCluster(host.host.cluster, host.host.id)) {
+                            series.add(this.series(metric.getCounterId(), store.getName(), this
+                                    .value(metric.getCounterId(), host, store)));
+                        }
+                    } else {
+                        series.add(this.series(metric.getCounterId(), metric.getInstance(), this
+                                .value(metric.getCounterId(), host, null)));
+                    }
+                }
+                final PerfEntityMetric result = new PerfEntityMetric();
+                result.setEntity(host.getMOR());
+                result.setValue(series.toArray(new PerfMetricSeries[series.size()]));
+                results.add(result);
+            }
+            return results.toArray(new PerfEntityMetricBase[results.size()]);
+        }
+
+        /**
+         * @param counter
+         *            The counter id.
+         * @param instance
+         *            The instance of the counter.
+         * @param value
+         *            The latest value.
+         * @return A series with one value.
+         */
+        private PerfMetricSeries series(final int counter, final String instance,
+                final long value) {
+            final PerfMetricId id = new PerfMetricId();
+            id.setCounterId(counter);
+            id.setInstance(instance);
+            final PerfMetricIntSeries series = new PerfMetricIntSeries();
+            series.setId(id);
+            series.setValue(new long[] { value });
+            return series;
+        }
+
+        /**
+         * @param counter
+         *            The counter id.
+         * @param host
+         *            The host.
+         * @param store
+         *            The datastore of a datastore counter, <code>null</code>
+         *            for a host counter.
+         * @return The latest value of the counter.
+         */
+        private long value(final int counter, final SimulatedHost host, final Datastore store) {
+            final SimulatedInventory.Host load = host.host;
+            final SimulatedInventory inventory = SimulatedManagedObjects.this.inventory;
+            final String name = counter >= 0
+                    && counter < SimulatedManagedObjects.PERF_COUNTERS.length
+                    ? SimulatedManagedObjects.PERF_COUNTERS[counter] : "";
+            if (store != null) {
+                // Latency grows with the fill ratio of the datastore.
+                final DatastoreSummary summary = store.getSummary();
+                return 1 + 10 * (summary.getCapacity() - summary.getFreeSpace())
+                        / Math.max(1, summary.getCapacity());
+            }
+            switch (name) {
+            case "cpu.usage.average":
+                return (long) (inventory.getCpuUsage(load) * SimulatedManagedObjects.PERF_PERCENT);
+            case "mem.active.average":
+                return (long) (inventory.getMemUsage(load) * SimulatedManagedObjects.MEMORY_BYTES
+                        / 1024);
+            case "disk.maxTotalLatency.latest":
+                return 2;
+            default:
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Reports the summaries of all hosts and datastores whenever a VM changes
+     * in the inventory.
+     */
+    private final class SimulatedPropertyCollector extends PropertyCollector {
+
+        /**
+         * Creates the property collector.
+         */
+        private SimulatedPropertyCollector() {
+            super(null, SimulatedManagedObjects.mor("PropertyCollector", "propertyCollector"));
+        }
+
+        @Override
+        public PropertyFilter createFilter(final PropertyFilterSpec spec,
+                final boolean partialUpdates) {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            return new PropertyFilter(null, SimulatedManagedObjects.mor("PropertyFilter",
+                                                                        "filter")) {
+                @Override
+                public void destroyPropertyFilter() {
+                    // Nothing to release.
+                }
+            };
+        }
+
+        @Override
+        public UpdateSet waitForUpdatesEx(final String version, final WaitOptions options)
+                throws RemoteException {
+            final SimulatedManagedObjects objects = SimulatedManagedObjects.this;
+            objects.latency.roundTrip();
+            final long known = version == null || version.isEmpty() ? -1 : Long
+                    .parseLong(version);
+            final Integer maxWait = options == null ? null : options.getMaxWaitSeconds();
+            final long current;
+            try {
+                current = objects.inventory.awaitChange(known, maxWait == null ? Long.MAX_VALUE
+                        : TimeUnit.SECONDS.toMillis(maxWait));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while waiting for updates.", e);
+            }
+            if (current == known) {
+                return null;
+            }
+            final ObjectUpdateKind kind = known < 0 ? ObjectUpdateKind.enter
+                    : ObjectUpdateKind.modify;
+            final List<ObjectUpdate> updates = new ArrayList<ObjectUpdate>();
+            for (final SimulatedHost host : objects.hosts.values()) {
+                updates.add(this.update(kind, host.getMOR(), host.getSummary()));
+            }
+            for (final SimulatedDatastore store : objects.stores.values()) {
+                updates.add(this.update(kind, store.getMOR(), store.getSummary()));
+            }
+            final PropertyFilterUpdate filter = new PropertyFilterUpdate();
+            filter.setObjectSet(updates.toArray(new ObjectUpdate[updates.size()]));
+            final UpdateSet set = new UpdateSet();
+            set.setVersion(Long.toString(current));
+            set.setFilterSet(new PropertyFilterUpdate[] { filter });
+            set.setTruncated(false);
+            return set;
+        }
+
+        /**
+         * @param kind
+         *            The kind of update.
+         * @param mor
+         *            The updated object.
+         * @param summary
+         *            The new summary of the object.
+         * @return The update.
+         */
+        private ObjectUpdate update(final ObjectUpdateKind kind,
+                final ManagedObjectReference mor, final Object summary) {
+            final ObjectUpdate update = new ObjectUpdate();
+            update.setKind(kind);
+            update.setObj(mor);
+            update.setChangeSet(new PropertyChange[] { SimulatedManagedObjects
+                    .assign("summary", summary) });
+            return update;
+        }
+    }
+
+    /**
+     * Creates container views that need no cleanup.
+     */
+    private final class SimulatedViewManager extends ViewManager {
+
+        /**
+         * Creates the view manager.
+         */
+        private SimulatedViewManager() {
+            super(null, SimulatedManagedObjects.mor("ViewManager", "ViewManager"));
+        }
+
+        @Override
+        public ContainerView createContainerView(final ManagedEntity container,
+                final String[] type, final boolean recursive) {
+            SimulatedManagedObjects.this.latency.roundTrip();
+            return new ContainerView(null, SimulatedManagedObjects.mor("ContainerView",
+                                                                       "session[view]")) {
+                @Override
+                public void destroyView() {
+                    // Nothing to release.
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import java.util.Collection;
+
+import nl.bitbrains.nebu.vmm.vmware.api.vcloud.VCloud;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.vmware.vcloud.api.rest.schema.ReferenceType;
+import com.vmware.vcloud.sdk.Organization;
+import com.vmware.vcloud.sdk.VCloudException;
+import com.vmware.vcloud.sdk.VM;
+import com.vmware.vcloud.sdk.Vapp;
+import com.vmware.vcloud.sdk.VcloudClient;
+import com.vmware.vcloud.sdk.Vdc;
+import com.vmware.vcloud.sdk.constants.Version;
+
+/**
+ * {@link VCloud} that talks to a {@link SimulatedVcloudClient} and looks up
+ * the vCloud SDK objects in {@link SimulatedVCloudObjects} instead of in the
+ * REST API. All other behaviour is that of {@link VCloud}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+class SimulatedVCloud extends VCloud {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    private final SimulatedVCloudObjects objects;
+    private final SimulatedLatency latency;
+
+    /**
+     * Creates a new {@link SimulatedVCloud}.
+     * 
+     * @param objects
+     *            The simulated vCloud objects.
+     * @param latency
+     *            The latency of a round trip.
+     */
+    SimulatedVCloud(final SimulatedVCloudObjects objects, final SimulatedLatency latency) {
+        super(new SimulatedVcloudClient(objects, latency));
+        this.objects = objects;
+        this.latency = latency;
+    }
+
+    /**
+     * Logs in at the simulated client. The client is not replaced, so no
+     * HTTP connection is set up.
+     */
+    @Override
+    public boolean init(final String username, final String password, final String vcloudurl) {
+        try {
+            this.getVcc().login(username, password);
+        } catch (final VCloudException e) {
+            SimulatedVCloud.logger.catching(Level.ERROR, e);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected Organization getOrganization(final ReferenceType orgref) throws VCloudException {
+        this.latency.roundTrip();
+        return this.objects.getOrganization(orgref);
+    }
+
+    @Override
+    protected Vdc getVdc(final ReferenceType vdcref) throws VCloudException {
+        this.latency.roundTrip();
+        return this.objects.getVdc(vdcref);
+    }
+
+    @Override
+    protected Vapp getVapp(final ReferenceType vappref) throws VCloudException {
+        return this.getVappById(vappref.getId());
+    }
+
+    @Override
+    protected Vapp getVappById(final String id) throws VCloudException {
+        this.latency.roundTrip();
+        return this.objects.getVapp(id);
+    }
+
+    @Override
+    protected VM getVMById(final String id) throws VCloudException {
+        this.latency.roundTrip();
+        return this.objects.getVM(id);
+    }
+
+    /**
+     * {@link VcloudClient} that answers the calls {@link VCloud} makes on the
+     * client itself. A subclass rather than a mock, because the client lives
+     * as long as the simulator and a mock records every call.
+     */
+    static class SimulatedVcloudClient extends VcloudClient {
+        private final SimulatedVCloudObjects objects;
+        private final SimulatedLatency latency;
+
+        /**
+         * @param objects
+         *            The simulated vCloud objects.
+         * @param latency
+         *            The latency of a round trip.
+         */
+        SimulatedVcloudClient(final SimulatedVCloudObjects objects,
+                final SimulatedLatency latency) {
+            super("https://vcloud.simulator", Version.V5_1);
+            this.objects = objects;
+            this.latency = latency;
+        }
+
+        @Override
+        public void login(final String username, final String password) {
+            this.latency.roundTrip();
+        }
+
+        @Override
+        public boolean extendSession() {
+            this.latency.roundTrip();
+            return true;
+        }
+
+        @Override
+        public Collection<ReferenceType> getOrgRefs() {
+            this.latency.roundTrip();
+            return this.objects.getOrgRefs();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.vmware.vcloud.api.rest.schema.GuestCustomizationSectionType;
+import com.vmware.vcloud.api.rest.schema.RecomposeVAppParamsType;
+import com.vmware.vcloud.api.rest.schema.ReferenceType;
+import com.vmware.vcloud.api.rest.schema.SourcedCompositionItemParamType;
+import com.vmware.vcloud.sdk.Organization;
+import com.vmware.vcloud.sdk.Task;
+import com.vmware.vcloud.sdk.VCloudException;
+import com.vmware.vcloud.sdk.VM;
+import com.vmware.vcloud.sdk.Vapp;
+import com.vmware.vcloud.sdk.Vdc;
+import com.vmware.vcloud.sdk.constants.VMStatus;
+import com.vmware.vcloud.sdk.constants.VappStatus;
+
+/**
+ * vCloud SDK objects backed by a {@link SimulatedInventory}. The SDK objects
+ * can only be created from a REST response, so they are Mockito mocks that
+ * answer from the inventory. Like the real objects, a {@link VM} or
+ * {@link Vapp} is a snapshot that is fetched again for every lookup. Every
+ * call that goes to vCloud takes a round trip; recomposing a vApp takes the
+ * configured deploy duration.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+class SimulatedVCloudObjects {
+
+    /**
+     * Id of the single simulated organization.
+     */
+    static final String ORG_ID = "urn:vcloud:org:simulator";
+
+    /**
+     * Id of the single simulated virtual datacenter.
+     */
+    static final String VDC_ID = "urn:vcloud:vdc:simulator";
+
+    private final SimulatedInventory inventory;
+    private final SimulatedLatency latency;
+    private final long deployDurationMillis;
+
+    /**
+     * Creates the vCloud objects of the given inventory.
+     * 
+     * @param inventory
+     *            The {@link SimulatedInventory}.
+     * @param latency
+     *            The latency of a round trip.
+     * @param config
+     *            The {@link SimulatorConfiguration}, for the duration of a
+     *            deployment.
+     */
+    SimulatedVCloudObjects(final SimulatedInventory inventory, final SimulatedLatency latency,
+            final SimulatorConfiguration config) {
+        this.inventory = inventory;
+        this.latency = latency;
+        this.deployDurationMillis = config.getDeployDurationMillis();
+    }
+
+    /**
+     * @param id
+     *            The id of the referenced object.
+     * @param name
+     *            The name of the referenced object.
+     * @return A new {@link ReferenceType}.
+     */
+    static ReferenceType reference(final String id, final String name) {
+        final ReferenceType ref = new ReferenceType();
+        ref.setId(id);
+        ref.setName(name);
+        ref.setHref("https://vcloud.simulator/api/" + id);
+        return ref;
+    }
+
+    /**
+     * @return The references to all organizations.
+     */
+    Collection<ReferenceType> getOrgRefs() {
+        final List<ReferenceType> refs = new ArrayList<ReferenceType>();
+        refs.add(SimulatedVCloudObjects.reference(SimulatedVCloudObjects.ORG_ID, "simulator"));
+        return refs;
+    }
+
+    /**
+     * @param ref
+     *            A reference to an organization.
+     * @return The organization, which contains a single virtual datacenter.
+     * @throws VCloudException
+     *             If the organization does not exist.
+     */
+    Organization getOrganization(final ReferenceType ref) throws VCloudException {
+        SimulatedVCloudObjects.require(SimulatedVCloudObjects.ORG_ID, ref);
+        final List<ReferenceType> vdcs = new ArrayList<ReferenceType>();
+        vdcs.add(SimulatedVCloudObjects.reference(SimulatedVCloudObjects.VDC_ID, "simulator"));
+        return Mockito.mock(Organization.class, new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                switch (invocation.getMethod().getName()) {
+                case "getReference":
+                    return SimulatedVCloudObjects.reference(SimulatedVCloudObjects.ORG_ID,
+                                                            "simulator");
+                case "getVdcRefs":
+                    return vdcs;
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param ref
+     *            A reference to a virtual datacenter.
+     * @return The virtual datacenter, which contains all vApps.
+     * @throws VCloudException
+     *             If the virtual datacenter does not exist.
+     */
+    Vdc getVdc(final ReferenceType ref) throws VCloudException {
+        SimulatedVCloudObjects.require(SimulatedVCloudObjects.VDC_ID, ref);
+        final List<ReferenceType> vapps = new ArrayList<ReferenceType>();
+        for (final SimulatedInventory.Vapp vapp : this.inventory.getVapps()) {
+            vapps.add(SimulatedVCloudObjects.reference(vapp.id, vapp.name));
+        }
+        return Mockito.mock(Vdc.class, new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                switch (invocation.getMethod().getName()) {
+                case "getReference":
+                    return SimulatedVCloudObjects.reference(SimulatedVCloudObjects.VDC_ID,
+                                                            "simulator");
+                case "getVappRefs":
+                    return vapps;
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param id
+     *            The id of a vApp.
+     * @return The vApp.
+     * @throws VCloudException
+     *             If the vApp does not exist.
+     */
+    Vapp getVapp(final String id) throws VCloudException {
+        final SimulatedInventory.Vapp vapp = this.inventory.getVapp(id);
+        if (vapp == null) {
+            throw new VCloudException("Simulated vApp " + id + " does not exist.");
+        }
+        return Mockito.mock(Vapp.class, new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                final SimulatedVCloudObjects objects = SimulatedVCloudObjects.this;
+                switch (invocation.getMethod().getName()) {
+                case "getReference":
+                    return SimulatedVCloudObjects.reference(vapp.id, vapp.name);
+                case "getVappStatus":
+                    return VappStatus.POWERED_ON;
+                case "getChildrenVms":
+                    return objects.getChildrenVms(vapp);
+                case "getChildrenVapps":
+                    return new ArrayList<Vapp>();
+                case "recomposeVapp":
+                    return objects.recompose(vapp, (RecomposeVAppParamsType) invocation
+                            .getArguments()[0]);
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param id
+     *            The id of a VM.
+     * @return The VM.
+     * @throws VCloudException
+     *             If the VM does not exist.
+     */
+    VM getVM(final String id) throws VCloudException {
+        final SimulatedInventory.Vm vm = this.inventory.getVm(id);
+        if (vm == null) {
+            throw new VCloudException("Simulated VM " + id + " does not exist.");
+        }
+        return this.toVM(vm);
+    }
+
+    /**
+     * @param vm
+     *            A copy of a VM in the inventory.
+     * @return A {@link VM} that shows the given state of the VM.
+     */
+    private VM toVM(final SimulatedInventory.Vm vm) {
+        return Mockito.mock(VM.class, new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                final SimulatedVCloudObjects objects = SimulatedVCloudObjects.this;
+                switch (invocation.getMethod().getName()) {
+                case "getReference":
+                    return SimulatedVCloudObjects.reference(vm.id, vm.hostname);
+                case "getVMStatus":
+                    return vm.poweredOn ? VMStatus.POWERED_ON : VMStatus.POWERED_OFF;
+                case "getGuestCustomizationSection":
+                    objects.latency.roundTrip();
+                    final GuestCustomizationSectionType section =
+                            new GuestCustomizationSectionType();
+                    section.setComputerName(vm.hostname);
+                    return section;
+                case "updateSection":
+                case "reset":
+                    return objects.task(0, null);
+                case "powerOn":
+                    return objects.task(0, objects.power(vm.id, true));
+                case "undeploy":
+                    return objects.task(0, objects.power(vm.id, false));
+                case "delete":
+                    return objects.task(0, new Runnable() {
+                        @Override
+                        public void run() {
+                            objects.inventory.removeVm(vm.id);
+                        }
+                    });
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param vapp
+     *            A vApp.
+     * @return The VMs of the vApp.
+     */
+    private List<VM> getChildrenVms(final SimulatedInventory.Vapp vapp) {
+        this.latency.roundTrip();
+        final List<VM> vms = new ArrayList<VM>();
+        for (final String id : this.inventory.getVmIds(vapp.id)) {
+            final SimulatedInventory.Vm vm = this.inventory.getVm(id);
+            if (vm != null) {
+                vms.add(this.toVM(vm));
+            }
+        }
+        return vms;
+    }
+
+    /**
+     * Adds a powered off VM to the vApp for every sourced item, on a random
+     * host of the cluster of the vApp. The name of the source reference is
+     * the hostname of the new VM.
+     * 
+     * @param vapp
+     *            The vApp to recompose.
+     * @param params
+     *            The recompose parameters.
+     * @return The recompose task.
+     */
+    private Task recompose(final SimulatedInventory.Vapp vapp,
+            final RecomposeVAppParamsType params) {
+        final List<String> hostnames = new ArrayList<String>();
+        for (final SourcedCompositionItemParamType item : params.getSourcedItem()) {
+            hostnames.add(item.getSource().getName());
+        }
+        return this.task(this.deployDurationMillis, new Runnable() {
+            @Override
+            public void run() {
+                final SimulatedInventory inventory = SimulatedVCloudObjects.this.inventory;
+                final List<SimulatedInventory.Host> hosts = inventory
+                        .getHostsInCluster(vapp.cluster);
+                for (final String hostname : hostnames) {
+                    final String hostId = hosts.isEmpty() ? null : hosts.get(ThreadLocalRandom
+                            .current().nextInt(hosts.size())).id;
+                    inventory.addVm(vapp.id, hostname, hostId, null, false);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param id
+     *            The id of a VM.
+     * @param poweredOn
+     *            Whether the VM should run.
+     * @return A change that powers the VM on or off.
+     */
+    private Runnable power(final String id, final boolean poweredOn) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                SimulatedVCloudObjects.this.inventory.powerVm(id, poweredOn);
+            }
+        };
+    }
+
+    /**
+     * Creates a vCloud task. The task runs when it is waited for: it takes a
+     * round trip plus its duration, then applies its effect. A timeout
+     * shorter than the duration fails the task without applying the effect.
+     * 
+     * @param durationMillis
+     *            The time in milliseconds the task takes.
+     * @param effect
+     *            The change applied to the inventory, may be
+     *            <code>null</code>.
+     * @return The task.
+     */
+    private Task task(final long durationMillis, final Runnable effect) {
+        this.latency.roundTrip();
+        return Mockito.mock(Task.class, new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                if (!"waitForTask".equals(invocation.getMethod().getName())) {
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+                final Object[] args = invocation.getArguments();
+                final long timeout = args.length > 0 ? (Long) args[0] : 0;
+                SimulatedVCloudObjects.this.latency.roundTrip();
+                try {
+                    if (timeout > 0 && timeout < durationMillis) {
+                        Thread.sleep(timeout);
+                        throw new TimeoutException("Simulated task did not finish in time.");
+                    }
+                    Thread.sleep(durationMillis);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new VCloudException("Interrupted while waiting for a task.");
+                }
+                if (effect != null) {
+                    effect.run();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @param id
+     *            The id of the only existing object.
+     * @param ref
+     *            A reference.
+     * @throws VCloudException
+     *             If the reference does not point to the object.
+     */
+    private static void require(final String id, final ReferenceType ref)
+            throws VCloudException {
+        if (ref == null || !id.equals(ref.getId())) {
+            throw new VCloudException("Simulated object " + (ref == null ? null : ref.getId())
+                    + " does not exist.");
+        }
+    }
+}
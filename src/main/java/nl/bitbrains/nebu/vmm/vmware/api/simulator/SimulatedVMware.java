@@ -0,0 +1,106 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import java.net.MalformedURLException;
+import java.rmi.RemoteException;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.vmm.vmware.api.DefaultVMware;
+import nl.bitbrains.nebu.vmm.vmware.api.vcloud.VCloud;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphere;
+
+/**
+ * {@link DefaultVMware} that runs against a {@link SimulatedInventory}
+ * instead of a vCloud and vSphere installation. Only the vCloud and vSphere
+ * SDK objects are simulated, so every call goes through {@link DefaultVMware},
+ * {@link VCloud} and {@link VSphere} like it does in production. Every call
+ * to the SDK is delayed by a configurable latency, deployments and
+ * migrations take a configurable amount of time. Used to load test the REST
+ * API without access to VMware.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class SimulatedVMware extends DefaultVMware {
+
+    /**
+     * Id of the single simulated datacenter.
+     */
+    public static final String DATACENTER_ID = "datacenter-1";
+
+    /**
+     * Username and password used to log in at the simulator.
+     */
+    private static final String CREDENTIALS = "simulator";
+
+    /**
+     * URL of the simulated vCloud REST API.
+     */
+    private static final String VCLOUD_URL = "https://vcloud.simulator";
+
+    /**
+     * URL of the simulated vSphere API.
+     */
+    private static final String VSPHERE_URL = "https://vsphere.simulator/sdk";
+
+    /**
+     * Port of the simulated vSphere API.
+     */
+    private static final int VSPHERE_PORT = 443;
+
+    private final SimulatedInventory inventory;
+    private final SimulatedLatency latency;
+    private final SimulatedManagedObjects managedObjects;
+    private final SimulatedVCloudObjects vcloudObjects;
+
+    /**
+     * Creates a new {@link SimulatedVMware}. Configure it like a
+     * {@link DefaultVMware} and call {@link #init()} before use.
+     * 
+     * @param config
+     *            The {@link SimulatorConfiguration} that describes the
+     *            simulated installation.
+     */
+    public SimulatedVMware(final SimulatorConfiguration config) {
+        ErrorChecker.throwIfNullArgument(config, "config");
+        this.inventory = new SimulatedInventory(config);
+        this.latency = new SimulatedLatency(config);
+        this.managedObjects = new SimulatedManagedObjects(this.inventory, this.latency, config);
+        this.vcloudObjects = new SimulatedVCloudObjects(this.inventory, this.latency, config);
+    }
+
+    /**
+     * @return The {@link SimulatedInventory} used by this simulator.
+     */
+    public SimulatedInventory getInventory() {
+        return this.inventory;
+    }
+
+    /**
+     * Logs in at the simulated vCloud and vSphere and starts the background
+     * work of {@link DefaultVMware}.
+     * 
+     * @throws RemoteException
+     *             If logging in at the simulated vSphere fails.
+     * @throws MalformedURLException
+     *             Never, the simulator does not connect to a URL.
+     */
+    public void init() throws RemoteException, MalformedURLException {
+        this.init(SimulatedVMware.CREDENTIALS,
+                  SimulatedVMware.CREDENTIALS,
+                  SimulatedVMware.VCLOUD_URL,
+                  SimulatedVMware.CREDENTIALS,
+                  SimulatedVMware.CREDENTIALS,
+                  SimulatedVMware.VSPHERE_URL,
+                  SimulatedVMware.VSPHERE_PORT);
+    }
+
+    @Override
+    protected VCloud newVCloud() {
+        return new SimulatedVCloud(this.vcloudObjects, this.latency);
+    }
+
+    @Override
+    protected VSphere newVSphere() {
+        return new SimulatedVSphere(this.managedObjects);
+    }
+}
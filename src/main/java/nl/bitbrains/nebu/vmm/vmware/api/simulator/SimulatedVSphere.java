@@ -0,0 +1,79 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphere;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphereSession;
+
+import com.vmware.vim25.mo.InventoryNavigator;
+import com.vmware.vim25.mo.ManagedEntity;
+import com.vmware.vim25.mo.ServiceInstance;
+
+/**
+ * {@link VSphere} whose sessions log in at {@link SimulatedManagedObjects}
+ * instead of at a vSphere server. All other behaviour, including the session
+ * pool, is that of {@link VSphere}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+class SimulatedVSphere extends VSphere {
+
+    private final SimulatedManagedObjects objects;
+
+    /**
+     * Creates a new {@link SimulatedVSphere}.
+     * 
+     * @param objects
+     *            The simulated managed objects.
+     */
+    SimulatedVSphere(final SimulatedManagedObjects objects) {
+        this.objects = objects;
+    }
+
+    @Override
+    public VSphereSession createSession(final String username, final String password,
+            final String url) {
+        return new SimulatedVSphereSession(this.objects, username, password, url);
+    }
+
+    /**
+     * Looks the object up in the simulated inventory, because the objects
+     * have no server connection to create a managed object from.
+     */
+    @Override
+    public ManagedEntity searchItemsById(final String type, final String id) {
+        return this.objects.findById(type, id);
+    }
+
+    /**
+     * A session that logs in at the simulated managed objects.
+     */
+    static class SimulatedVSphereSession extends VSphereSession {
+        private final SimulatedManagedObjects objects;
+
+        /**
+         * @param objects
+         *            The simulated managed objects.
+         * @param username
+         *            The vSphere username.
+         * @param password
+         *            The vSphere password.
+         * @param url
+         *            The URL of the vSphere API.
+         */
+        SimulatedVSphereSession(final SimulatedManagedObjects objects, final String username,
+                final String password, final String url) {
+            super(username, password, url);
+            this.objects = objects;
+        }
+
+        @Override
+        protected ServiceInstance login() {
+            return this.objects.newServiceInstance();
+        }
+
+        @Override
+        protected InventoryNavigator createNavigator(final ServiceInstance sInstance) {
+            return this.objects.newNavigator();
+        }
+    }
+}
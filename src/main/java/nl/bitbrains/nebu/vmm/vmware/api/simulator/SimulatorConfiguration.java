@@ -0,0 +1,299 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import nl.bitbrains.nebu.vmm.vmware.config.ConfigurationElements;
+
+import org.jdom2.Element;
+
+/**
+ * Describes the size and the timing behaviour of a simulated VMware back end.
+ * Parsed from a <code>&lt;client type="simulator"&gt;</code> element in the
+ * configuration file.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class SimulatorConfiguration {
+
+    /**
+     * Client type that enables the simulator.
+     */
+    public static final String CLIENT_TYPE = "simulator";
+
+    /**
+     * Name of the element with the number of clusters.
+     */
+    public static final String TAG_CLUSTERS = "clusters";
+
+    /**
+     * Name of the element with the number of hosts.
+     */
+    public static final String TAG_HOSTS = "hosts";
+
+    /**
+     * Name of the element with the number of datastores.
+     */
+    public static final String TAG_DATASTORES = "datastores";
+
+    /**
+     * Name of the element with the number of datastores shared by a cluster.
+     */
+    public static final String TAG_SHARED_DATASTORES = "shareddatastores";
+
+    /**
+     * Name of the element with the number of vApps.
+     */
+    public static final String TAG_VAPPS = "vapps";
+
+    /**
+     * Name of the element with the number of VMs in each vApp.
+     */
+    public static final String TAG_VMS_PER_VAPP = "vmspervapp";
+
+    /**
+     * Name of the element with the latency of a call in milliseconds.
+     */
+    public static final String TAG_CALL_LATENCY = "calllatency";
+
+    /**
+     * Name of the element with the random extra latency of a call.
+     */
+    public static final String TAG_CALL_JITTER = "calljitter";
+
+    /**
+     * Name of the element with the duration of a deployment.
+     */
+    public static final String TAG_DEPLOY_DURATION = "deployduration";
+
+    /**
+     * Name of the element with the duration of a migration.
+     */
+    public static final String TAG_MOVE_DURATION = "moveduration";
+
+    /**
+     * Name of the element with the seed of the random inventory.
+     */
+    public static final String TAG_SEED = "seed";
+
+    private int clusters = 1;
+    private int hosts = 8;
+    private int datastores = 12;
+    private int sharedDatastores = 4;
+    private int vapps = 4;
+    private int vmsPerVapp = 2;
+    private long callLatencyMillis = 50;
+    private long callJitterMillis = 25;
+    private long deployDurationMillis = 5000;
+    private long moveDurationMillis = 2000;
+    private long seed = 42;
+
+    /**
+     * Creates a {@link SimulatorConfiguration} from a configuration element.
+     * Missing values keep their defaults.
+     * 
+     * @param elem
+     *            The simulator client element, may be <code>null</code>.
+     * @return The parsed {@link SimulatorConfiguration}.
+     */
+    public static SimulatorConfiguration fromXML(final Element elem) {
+        final SimulatorConfiguration config = new SimulatorConfiguration();
+        config.setClusters(ConfigurationElements.getInt(elem,
+                                                        SimulatorConfiguration.TAG_CLUSTERS,
+                                                        config.getClusters()));
+        config.setHosts(ConfigurationElements.getInt(elem,
+                                                     SimulatorConfiguration.TAG_HOSTS,
+                                                     config.getHosts()));
+        config.setDatastores(ConfigurationElements.getInt(elem,
+                                                          SimulatorConfiguration.TAG_DATASTORES,
+                                                          config.getDatastores()));
+        config.setSharedDatastores(ConfigurationElements
+                .getInt(elem, SimulatorConfiguration.TAG_SHARED_DATASTORES,
+                        config.getSharedDatastores()));
+        config.setVapps(ConfigurationElements.getInt(elem,
+                                                     SimulatorConfiguration.TAG_VAPPS,
+                                                     config.getVapps()));
+        config.setVmsPerVapp(ConfigurationElements.getInt(elem,
+                                                          SimulatorConfiguration.TAG_VMS_PER_VAPP,
+                                                          config.getVmsPerVapp()));
+        config.setCallLatencyMillis(ConfigurationElements
+                .getLong(elem, SimulatorConfiguration.TAG_CALL_LATENCY,
+                         config.getCallLatencyMillis()));
+        config.setCallJitterMillis(ConfigurationElements
+                .getLong(elem, SimulatorConfiguration.TAG_CALL_JITTER,
+                         config.getCallJitterMillis()));
+        config.setDeployDurationMillis(ConfigurationElements
+                .getLong(elem, SimulatorConfiguration.TAG_DEPLOY_DURATION,
+                         config.getDeployDurationMillis()));
+        config.setMoveDurationMillis(ConfigurationElements
+                .getLong(elem, SimulatorConfiguration.TAG_MOVE_DURATION,
+                         config.getMoveDurationMillis()));
+        config.setSeed(ConfigurationElements.getLong(elem,
+                                                     SimulatorConfiguration.TAG_SEED,
+                                                     config.getSeed()));
+        return config;
+    }
+
+    /**
+     * @return the number of clusters.
+     */
+    public int getClusters() {
+        return this.clusters;
+    }
+
+    /**
+     * @param clusters
+     *            the number of clusters to set.
+     */
+    public void setClusters(final int clusters) {
+        this.clusters = Math.max(1, clusters);
+    }
+
+    /**
+     * @return the number of hosts.
+     */
+    public int getHosts() {
+        return this.hosts;
+    }
+
+    /**
+     * @param hosts
+     *            the number of hosts to set.
+     */
+    public void setHosts(final int hosts) {
+        this.hosts = hosts;
+    }
+
+    /**
+     * @return the total number of datastores.
+     */
+    public int getDatastores() {
+        return this.datastores;
+    }
+
+    /**
+     * @param datastores
+     *            the total number of datastores to set.
+     */
+    public void setDatastores(final int datastores) {
+        this.datastores = datastores;
+    }
+
+    /**
+     * @return the number of datastores shared by all hosts of a cluster.
+     */
+    public int getSharedDatastores() {
+        return this.sharedDatastores;
+    }
+
+    /**
+     * @param sharedDatastores
+     *            the number of shared datastores to set.
+     */
+    public void setSharedDatastores(final int sharedDatastores) {
+        this.sharedDatastores = sharedDatastores;
+    }
+
+    /**
+     * @return the number of vApps.
+     */
+    public int getVapps() {
+        return this.vapps;
+    }
+
+    /**
+     * @param vapps
+     *            the number of vApps to set.
+     */
+    public void setVapps(final int vapps) {
+        this.vapps = vapps;
+    }
+
+    /**
+     * @return the number of VMs initially present in every vApp.
+     */
+    public int getVmsPerVapp() {
+        return this.vmsPerVapp;
+    }
+
+    /**
+     * @param vmsPerVapp
+     *            the number of VMs per vApp to set.
+     */
+    public void setVmsPerVapp(final int vmsPerVapp) {
+        this.vmsPerVapp = vmsPerVapp;
+    }
+
+    /**
+     * @return the latency added to every simulated API call.
+     */
+    public long getCallLatencyMillis() {
+        return this.callLatencyMillis;
+    }
+
+    /**
+     * @param callLatencyMillis
+     *            the call latency to set.
+     */
+    public void setCallLatencyMillis(final long callLatencyMillis) {
+        this.callLatencyMillis = callLatencyMillis;
+    }
+
+    /**
+     * @return the maximum random jitter added to the call latency.
+     */
+    public long getCallJitterMillis() {
+        return this.callJitterMillis;
+    }
+
+    /**
+     * @param callJitterMillis
+     *            the jitter to set.
+     */
+    public void setCallJitterMillis(final long callJitterMillis) {
+        this.callJitterMillis = callJitterMillis;
+    }
+
+    /**
+     * @return the time it takes to deploy and boot a new VM.
+     */
+    public long getDeployDurationMillis() {
+        return this.deployDurationMillis;
+    }
+
+    /**
+     * @param deployDurationMillis
+     *            the deploy duration to set.
+     */
+    public void setDeployDurationMillis(final long deployDurationMillis) {
+        this.deployDurationMillis = deployDurationMillis;
+    }
+
+    /**
+     * @return the time it takes to migrate a VM.
+     */
+    public long getMoveDurationMillis() {
+        return this.moveDurationMillis;
+    }
+
+    /**
+     * @param moveDurationMillis
+     *            the move duration to set.
+     */
+    public void setMoveDurationMillis(final long moveDurationMillis) {
+        this.moveDurationMillis = moveDurationMillis;
+    }
+
+    /**
+     * @return the seed of the random generator.
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * @param seed
+     *            the seed to set.
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+    }
+}
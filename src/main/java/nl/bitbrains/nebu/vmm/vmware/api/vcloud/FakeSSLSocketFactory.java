@@ -23,15 +23,26 @@ import org.apache.http.conn.ssl.TrustStrategy;
 
 /**
  * Helper class to accept the self-signed certificates. Took from the VMware
- * vCloud JAVA API Examples. No changes made.
+ * vCloud JAVA API Examples. The factory is created once and shared, so its
+ * SSL context can resume TLS sessions when connections are reopened.
  */
 @SuppressWarnings("deprecation")
 public final class FakeSSLSocketFactory {
 
+    private static SSLSocketFactory instance;
+
     private FakeSSLSocketFactory() {
     }
 
-    public static SSLSocketFactory getInstance() throws KeyManagementException,
+    public static synchronized SSLSocketFactory getInstance() throws KeyManagementException,
+            UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException {
+        if (FakeSSLSocketFactory.instance == null) {
+            FakeSSLSocketFactory.instance = FakeSSLSocketFactory.create();
+        }
+        return FakeSSLSocketFactory.instance;
+    }
+
+    private static SSLSocketFactory create() throws KeyManagementException,
             UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException {
         return new SSLSocketFactory(new TrustStrategy() {
             @Override
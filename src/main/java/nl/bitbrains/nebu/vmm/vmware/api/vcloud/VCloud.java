@@ -7,14 +7,20 @@ import java.security.UnrecoverableKeyException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import nl.bitbrains.nebu.common.VirtualMachine;
 import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.Deadline;
+import nl.bitbrains.nebu.vmm.vmware.config.VCloudTuning;
 import nl.bitbrains.nebu.vmm.vmware.converter.VirtualConverter;
 import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
 import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
 
 import org.apache.logging.log4j.Level;
@@ -63,9 +69,28 @@ public class VCloud {
     public static final Lock LOCK = new ReentrantLock(true);
 
     /**
-     * The {@link VcloudClient} that connects to the vCloud REST API.
+     * Serializes vApp recompositions. A {@link Lock} instead of a synchronized
+     * method, so virtual threads that wait for the recompose task do not pin
+     * their carrier thread.
      */
-    private VcloudClient vcc;
+    private final Lock recomposeLock = new ReentrantLock();
+
+    /**
+     * The {@link VcloudClient} that connects to the vCloud REST API. Only
+     * replaced by a client that is logged in.
+     */
+    private volatile VcloudClient vcc;
+
+    /**
+     * Connection settings of the HTTP client.
+     */
+    private VCloudTuning tuning = new VCloudTuning();
+
+    /**
+     * The scheduled eviction of idle connections, <code>null</code> if not
+     * running.
+     */
+    private volatile ScheduledFuture<?> evictor;
 
     /**
      * Create a new {@link VCloud}.
@@ -89,28 +114,42 @@ public class VCloud {
     }
 
     /**
-     * Sets up the connection to vCloud. Keeps the vCloud connection alive.
-     * Re-established connection after connection is dropped.
+     * Schedules the closing of idle connections to vCloud, if enabled in the
+     * connection settings. Connections are checked twice per idle period.
      * 
-     * @param username
-     *            The username used for vCloud login.
-     * @param password
-     *            The password used for vCloud login.
-     * @param vcloudurl
-     *            The URL where the vCloud REST API resides.
-     * 
-     * @return <code>true</code> iff the login was successful.
+     * @param scheduler
+     *            The scheduler to run the eviction on.
      */
-    public boolean initAndKeepAlive(final String username, final String password,
-            final String vcloudurl) {
-        final boolean result = this.init(username, password, vcloudurl);
-        final VCloudKeepAlive keepAlive = new VCloudKeepAlive(this, username, password, vcloudurl);
-        new Thread(keepAlive).start();
-        return result;
+    public void startConnectionEvictor(final ScheduledExecutorService scheduler) {
+        ErrorChecker.throwIfNullArgument(scheduler, "scheduler");
+        final int idleSeconds = this.tuning.getIdleEvictionSeconds();
+        if (idleSeconds <= 0) {
+            return;
+        }
+        final long periodSeconds = Math.max(1, idleSeconds / 2);
+        this.stopConnectionEvictor();
+        this.evictor = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                VCloud.this.evictIdleConnections(idleSeconds);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
     }
 
     /**
-     * Sets up the connection to vCloud.
+     * Stops closing idle connections to vCloud.
+     */
+    public void stopConnectionEvictor() {
+        final ScheduledFuture<?> task = this.evictor;
+        if (task != null) {
+            task.cancel(false);
+            this.evictor = null;
+        }
+    }
+
+    /**
+     * Sets up the connection to vCloud. The new client is only used once it
+     * is logged in; the connections of the client it replaces are closed.
      * 
      * @param username
      *            The username used for vCloud login.
@@ -123,20 +162,29 @@ public class VCloud {
      */
     public boolean init(final String username, final String password, final String vcloudurl) {
         VCloud.logger.debug("Logging in at vCloud at address {}.", vcloudurl);
+        final VcloudClient client;
         try {
-            this.vcc = new VcloudClient(vcloudurl, Version.V5_1);
-            this.vcc.registerScheme("https", VCloud.port, FakeSSLSocketFactory.getInstance());
+            client = new VcloudClient(vcloudurl, Version.V5_1);
+            client.registerScheme("https", VCloud.port, FakeSSLSocketFactory.getInstance());
+            VCloudConnections.configure(client.getHttpClient(), this.tuning);
         } catch (KeyManagementException | UnrecoverableKeyException | NoSuchAlgorithmException
                 | KeyStoreException | VCloudRuntimeException e1) {
             VCloud.logger.catching(Level.ERROR, e1);
             return false;
         }
         try {
-            this.vcc.login(username, password);
+            client.login(username, password);
         } catch (final VCloudException e) {
             VCloud.logger.catching(Level.ERROR, e);
+            VCloudConnections.shutdown(client.getHttpClient());
             return false;
         }
+        // Other threads only ever see a logged in client.
+        final VcloudClient previous = this.vcc;
+        this.vcc = client;
+        if (previous != null) {
+            VCloudConnections.shutdown(previous.getHttpClient());
+        }
         return true;
     }
 
@@ -185,19 +233,72 @@ public class VCloud {
         final List<Vapp> resources = new ArrayList<Vapp>();
         final Collection<ReferenceType> orgrefs = this.vcc.getOrgRefs();
         for (final ReferenceType orgref : orgrefs) {
-            final Collection<ReferenceType> vdcrefs = Organization
-                    .getOrganizationByReference(this.vcc, orgref).getVdcRefs();
+            final Collection<ReferenceType> vdcrefs = this.getOrganization(orgref).getVdcRefs();
             for (final ReferenceType vdcref : vdcrefs) {
-                final Collection<ReferenceType> vapprefs = Vdc.getVdcByReference(this.vcc, vdcref)
-                        .getVappRefs();
+                final Collection<ReferenceType> vapprefs = this.getVdc(vdcref).getVappRefs();
                 for (final ReferenceType vappref : vapprefs) {
-                    resources.add(Vapp.getVappByReference(this.vcc, vappref));
+                    resources.add(this.getVapp(vappref));
                 }
             }
         }
         return resources;
     }
 
+    /**
+     * @param orgref
+     *            A reference to an {@link Organization}.
+     * @return The {@link Organization}.
+     * @throws VCloudException
+     *             When an error occurs in the vCloud API.
+     */
+    protected Organization getOrganization(final ReferenceType orgref) throws VCloudException {
+        return Organization.getOrganizationByReference(this.vcc, orgref);
+    }
+
+    /**
+     * @param vdcref
+     *            A reference to a {@link Vdc}.
+     * @return The {@link Vdc}.
+     * @throws VCloudException
+     *             When an error occurs in the vCloud API.
+     */
+    protected Vdc getVdc(final ReferenceType vdcref) throws VCloudException {
+        return Vdc.getVdcByReference(this.vcc, vdcref);
+    }
+
+    /**
+     * @param vappref
+     *            A reference to a {@link Vapp}.
+     * @return The {@link Vapp}.
+     * @throws VCloudException
+     *             When an error occurs in the vCloud API.
+     */
+    protected Vapp getVapp(final ReferenceType vappref) throws VCloudException {
+        return Vapp.getVappByReference(this.vcc, vappref);
+    }
+
+    /**
+     * @param id
+     *            The vCloud id of a {@link Vapp}.
+     * @return The {@link Vapp}.
+     * @throws VCloudException
+     *             When an error occurs in the vCloud API.
+     */
+    protected Vapp getVappById(final String id) throws VCloudException {
+        return Vapp.getVappById(this.vcc, id);
+    }
+
+    /**
+     * @param id
+     *            The vCloud id of a {@link VM}.
+     * @return The {@link VM}.
+     * @throws VCloudException
+     *             When an error occurs in the vCloud API.
+     */
+    protected VM getVMById(final String id) throws VCloudException {
+        return VM.getVMById(this.vcc, id);
+    }
+
     /**
      * Returns a list of all {@link VM} ids that are located underneath the
      * given {@link Vapp}. The search is recursive.
@@ -293,7 +394,7 @@ public class VCloud {
         ErrorChecker.throwIfNullArgument(vmName, "vmName");
         for (final String vmId : vmIds) {
             VM vm = null;
-            vm = VM.getVMById(this.vcc, vmId);
+            vm = this.getVMById(vmId);
             if (vm.getReference().getName().equals(vmName)) {
                 return vmId;
             }
@@ -318,7 +419,7 @@ public class VCloud {
     public VirtualMachine getVirtualMachineInfo(final String uuid) throws VCloudException,
             NoSuchVMException {
         if (this.getVirtualResourceList().contains(uuid)) {
-            final VM vm = VM.getVMById(this.vcc, uuid);
+            final VM vm = this.getVMById(uuid);
             return VirtualConverter.fromVM(vm);
         }
         throw new NoSuchVMException("Cannot find requested VM");
@@ -331,6 +432,29 @@ public class VCloud {
         return this.vcc;
     }
 
+    /**
+     * @param tuning
+     *            The connection settings to use on the next {@link #init}.
+     */
+    public void setTuning(final VCloudTuning tuning) {
+        ErrorChecker.throwIfNullArgument(tuning, "tuning");
+        this.tuning = tuning;
+    }
+
+    /**
+     * Closes connections to vCloud that expired or have been idle for the
+     * given time.
+     * 
+     * @param idleSeconds
+     *            The maximum idle time in seconds.
+     */
+    public void evictIdleConnections(final int idleSeconds) {
+        final VcloudClient client = this.vcc;
+        if (client != null) {
+            VCloudConnections.evictIdle(client.getHttpClient(), idleSeconds);
+        }
+    }
+
     /**
      * Wrapper function to simplify creating a new VM.
      * 
@@ -358,6 +482,22 @@ public class VCloud {
         return this.findNewVmId(hostname);
     }
 
+    /**
+     * @return The time in milliseconds to wait for a vCloud task, which is
+     *         the time left until the deadline of the current request, or 0
+     *         to wait without limit.
+     * @throws DeadlineExceededException
+     *             If the deadline of the current request has passed.
+     */
+    static long taskTimeoutMillis() {
+        final Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            return 0;
+        }
+        deadline.check();
+        return Math.max(1, deadline.remainingMillis());
+    }
+
     /**
      * Recomposes The {@link Vapp} to include a new virtual machine.
      * 
@@ -372,7 +512,7 @@ public class VCloud {
      * @throws TimeoutException
      *             When a timeout occurs.
      */
-    synchronized void modifyVapp(final ReferenceType vmRef, final Vapp vapp, final String hostname)
+    void modifyVapp(final ReferenceType vmRef, final Vapp vapp, final String hostname)
             throws VCloudException, TimeoutException {
         final SourcedCompositionItemParamType vmItem = new SourcedCompositionItemParamType();
         vmRef.setName(hostname);
@@ -381,8 +521,12 @@ public class VCloud {
         final List<SourcedCompositionItemParamType> newItems = recomposeType.getSourcedItem();
         newItems.add(vmItem);
 
-        vapp.recomposeVapp(recomposeType).waitForTask(0);
-
+        this.recomposeLock.lock();
+        try {
+            vapp.recomposeVapp(recomposeType).waitForTask(VCloud.taskTimeoutMillis());
+        } finally {
+            this.recomposeLock.unlock();
+        }
     }
 
     /**
@@ -412,13 +556,13 @@ public class VCloud {
      */
     public void powerOnVM(final String res) {
         try {
-            final VM vm = VM.getVMById(this.getVirtualCloudClient(), res);
+            final VM vm = this.getVMById(res);
             final GuestCustomizationSectionType customization = vm.getGuestCustomizationSection();
             customization.setEnabled(true);
             customization.setComputerName(vm.getReference().getName());
-            vm.updateSection(customization).waitForTask(0);
-            vm.powerOn().waitForTask(0);
-            vm.reset().waitForTask(0);
+            vm.updateSection(customization).waitForTask(VCloud.taskTimeoutMillis());
+            vm.powerOn().waitForTask(VCloud.taskTimeoutMillis());
+            vm.reset().waitForTask(VCloud.taskTimeoutMillis());
         } catch (final VCloudException | TimeoutException e) {
             VCloud.logger.catching(Level.WARN, e);
         }
@@ -434,7 +578,7 @@ public class VCloud {
      *             When an error occurs in the vCloud API.
      */
     Vapp getVappFromVirtualApplication(final VirtualApplication dest) throws VCloudException {
-        return Vapp.getVappById(this.vcc, dest.getUniqueIdentifier());
+        return this.getVappById(dest.getUniqueIdentifier());
     }
 
     /**
@@ -447,7 +591,7 @@ public class VCloud {
      *             When an error occurs in the vCloud API.
      */
     VM getVMFromVirtualMachine(final VirtualMachine vm) throws VCloudException {
-        return VM.getVMById(this.vcc, vm.getUniqueIdentifier());
+        return this.getVMById(vm.getUniqueIdentifier());
     }
 
     /**
@@ -489,12 +633,13 @@ public class VCloud {
         if (vcloudVM != null) {
             VCloud.logger.trace("Stabbing VM\t{} to DEATH.", vm.getUniqueIdentifier());
             try {
-                vcloudVM.undeploy(UndeployPowerActionType.POWEROFF).waitForTask(0);
+                vcloudVM.undeploy(UndeployPowerActionType.POWEROFF)
+                        .waitForTask(VCloud.taskTimeoutMillis());
             } catch (final VCloudException | TimeoutException e) {
                 VCloud.logger.warn("It was not very effective...");
             }
             try {
-                vcloudVM.delete().waitForTask(0);
+                vcloudVM.delete().waitForTask(VCloud.taskTimeoutMillis());
             } catch (VCloudException | TimeoutException e) {
                 VCloud.logger.info("Deleting VM {}.", vm.getUniqueIdentifier());
             }
@@ -0,0 +1,128 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vcloud;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.vmm.vmware.config.VCloudTuning;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Applies the {@link VCloudTuning} to the Apache HttpClient that is used by
+ * the vCloud SDK, so parallel requests reuse warm connections instead of
+ * queueing on a single one or paying a TLS handshake per call.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@SuppressWarnings("deprecation")
+public final class VCloudConnections {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    /**
+     * Private constructor. This class only has static methods.
+     */
+    private VCloudConnections() {
+    }
+
+    /**
+     * Sets the pool limits, keep-alive strategy and read timeout of the given
+     * client.
+     * 
+     * @param client
+     *            The client of the vCloud SDK, may be <code>null</code>.
+     * @param tuning
+     *            The settings to apply.
+     */
+    public static void configure(final HttpClient client, final VCloudTuning tuning) {
+        if (client == null) {
+            return;
+        }
+        final ClientConnectionManager manager = client.getConnectionManager();
+        if (manager instanceof PoolingClientConnectionManager) {
+            final PoolingClientConnectionManager pool = (PoolingClientConnectionManager) manager;
+            pool.setMaxTotal(tuning.getMaxConnections());
+            pool.setDefaultMaxPerRoute(tuning.getMaxConnectionsPerRoute());
+        } else if (manager instanceof ThreadSafeClientConnManager) {
+            final ThreadSafeClientConnManager pool = (ThreadSafeClientConnManager) manager;
+            pool.setMaxTotal(tuning.getMaxConnections());
+            pool.setDefaultMaxPerRoute(tuning.getMaxConnectionsPerRoute());
+        } else {
+            VCloudConnections.logger.warn("vCloud connection manager {} is not pooled, "
+                    + "requests share a single connection.", manager);
+        }
+        if (client instanceof AbstractHttpClient) {
+            ((AbstractHttpClient) client).setKeepAliveStrategy(VCloudConnections
+                    .keepAliveStrategy(tuning.getConnectionKeepAliveSeconds()));
+        }
+        if (tuning.getReadTimeoutSeconds() > 0) {
+            HttpConnectionParams.setSoTimeout(client.getParams(), (int) TimeUnit.SECONDS
+                    .toMillis(tuning.getReadTimeoutSeconds()));
+        }
+    }
+
+    /**
+     * Creates a strategy that keeps connections alive for as long as the
+     * server allows, but at most the given time. Servers that do not send a
+     * Keep-Alive header get the given time.
+     * 
+     * @param seconds
+     *            The maximum keep-alive time in seconds.
+     * @return The {@link ConnectionKeepAliveStrategy}.
+     */
+    static ConnectionKeepAliveStrategy keepAliveStrategy(final int seconds) {
+        final long max = TimeUnit.SECONDS.toMillis(seconds);
+        return new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(final HttpResponse response,
+                    final HttpContext context) {
+                final long duration = super.getKeepAliveDuration(response, context);
+                return duration > 0 ? Math.min(duration, max) : max;
+            }
+        };
+    }
+
+    /**
+     * Closes connections that expired or have been idle for too long.
+     * 
+     * @param client
+     *            The client of the vCloud SDK, may be <code>null</code>.
+     * @param idleSeconds
+     *            The maximum idle time in seconds.
+     */
+    public static void evictIdle(final HttpClient client, final int idleSeconds) {
+        if (client == null) {
+            return;
+        }
+        final ClientConnectionManager manager = client.getConnectionManager();
+        manager.closeExpiredConnections();
+        manager.closeIdleConnections(idleSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Closes all connections of a client that is no longer used.
+     * 
+     * @param client
+     *            The client of the vCloud SDK, may be <code>null</code>.
+     */
+    public static void shutdown(final HttpClient client) {
+        if (client == null) {
+            return;
+        }
+        client.getConnectionManager().shutdown();
+    }
+}
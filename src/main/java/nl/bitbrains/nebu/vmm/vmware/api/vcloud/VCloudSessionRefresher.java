@@ -0,0 +1,89 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vcloud;
+
+import nl.bitbrains.nebu.vmm.vmware.api.session.RefreshableSession;
+
+import com.vmware.vcloud.sdk.VCloudException;
+import com.vmware.vcloud.sdk.VCloudRuntimeException;
+import com.vmware.vcloud.sdk.VcloudClient;
+
+/**
+ * {@link RefreshableSession} for the vCloud login of a {@link VCloud}.
+ * Refreshing extends the session, reconnecting logs in again.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VCloudSessionRefresher implements RefreshableSession {
+
+    /**
+     * HTTP status of a request without a valid session.
+     */
+    private static final int UNAUTHORIZED = 401;
+
+    /**
+     * HTTP status vCloud returns for requests of a session it no longer
+     * knows.
+     */
+    private static final int FORBIDDEN = 403;
+
+    private final VCloud vcloud;
+    private final String username;
+    private final String password;
+    private final String url;
+
+    /**
+     * Creates a new {@link VCloudSessionRefresher}.
+     * 
+     * @param vcloud
+     *            The {@link VCloud} whose session to refresh.
+     * @param username
+     *            The vCloud username.
+     * @param password
+     *            The vCloud password.
+     * @param url
+     *            The vCloud REST API URL.
+     */
+    public VCloudSessionRefresher(final VCloud vcloud, final String username,
+            final String password, final String url) {
+        this.vcloud = vcloud;
+        this.username = username;
+        this.password = password;
+        this.url = url;
+    }
+
+    @Override
+    public String getName() {
+        return "vCloud " + this.url;
+    }
+
+    @Override
+    public boolean keepAlive() {
+        final VcloudClient vcc = this.vcloud.getVcc();
+        try {
+            return vcc != null && vcc.extendSession();
+        } catch (final VCloudRuntimeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean reconnect() {
+        return this.vcloud.init(this.username, this.password, this.url);
+    }
+
+    /**
+     * Checks the HTTP status of the vCloud error, which vCloud reports as the
+     * major error code.
+     */
+    @Override
+    public boolean isExpired(final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof VCloudException) {
+                final int status = ((VCloudException) cause).getMajorErrorCode();
+                return status == VCloudSessionRefresher.UNAUTHORIZED
+                        || status == VCloudSessionRefresher.FORBIDDEN;
+            }
+        }
+        return false;
+    }
+}
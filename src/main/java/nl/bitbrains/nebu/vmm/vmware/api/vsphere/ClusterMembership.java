@@ -0,0 +1,184 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches which hosts belong to the cluster that owns each resource pool.
+ * Every host id is mapped to a dense index once, and the members of a pool
+ * are kept as a {@link BitSet} over these indices, so checking whether a host
+ * can be used by a pool neither calls vSphere nor allocates.
+ * 
+ * <p>
+ * Entries expire after a configured age, after which the members are loaded
+ * from vSphere again, so hosts that join or leave a cluster are picked up.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class ClusterMembership {
+
+    /**
+     * Members of a single pool.
+     */
+    private static final class Members {
+        private final BitSet hosts;
+        private final Set<String> hostIds;
+        private final long loadedAt;
+
+        /**
+         * Creates a new {@link Members}.
+         * 
+         * @param hosts
+         *            The indices of the member hosts.
+         * @param hostIds
+         *            The ids of the member hosts.
+         * @param loadedAt
+         *            The time in milliseconds at which the members were
+         *            loaded.
+         */
+        private Members(final BitSet hosts, final Set<String> hostIds, final long loadedAt) {
+            this.hosts = hosts;
+            this.hostIds = hostIds;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final ConcurrentMap<String, Integer> hostIndices;
+    private final ConcurrentMap<String, Members> pools;
+    private final long maxAgeMillis;
+
+    /**
+     * Creates an empty {@link ClusterMembership}.
+     * 
+     * @param maxAgeMillis
+     *            The time in milliseconds after which the members of a pool
+     *            have to be loaded again, 0 to never cache.
+     */
+    public ClusterMembership(final long maxAgeMillis) {
+        this.hostIndices = new ConcurrentHashMap<String, Integer>();
+        this.pools = new ConcurrentHashMap<String, Members>();
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @param poolname
+     *            The vSphere name of a resource pool.
+     * @return <code>true</code> iff the members of the pool are cached and
+     *         not yet expired.
+     */
+    public boolean isCurrent(final String poolname) {
+        return this.getCurrent(poolname) != null;
+    }
+
+    /**
+     * @param poolname
+     *            The vSphere name of a resource pool.
+     * @param hostId
+     *            The vSphere id of a host.
+     * @return <code>true</code> iff the cached members of the pool contain
+     *         the host. Only meaningful if {@link #isCurrent(String)}.
+     */
+    public boolean contains(final String poolname, final String hostId) {
+        final Members members = this.getCurrent(poolname);
+        if (members == null || hostId == null) {
+            return false;
+        }
+        final Integer index = this.hostIndices.get(hostId);
+        return index != null && members.hosts.get(index);
+    }
+
+    /**
+     * @param poolname
+     *            The vSphere name of a resource pool.
+     * @return The ids of the cached member hosts of the pool, or
+     *         <code>null</code> if they are not current.
+     */
+    public Set<String> getHostIds(final String poolname) {
+        final Members members = this.getCurrent(poolname);
+        return members == null ? null : members.hostIds;
+    }
+
+    /**
+     * Stores the members of a pool, replacing the previous members.
+     * 
+     * @param poolname
+     *            The vSphere name of a resource pool.
+     * @param hostIds
+     *            The vSphere ids of the hosts in the cluster of the pool.
+     */
+    public void update(final String poolname, final Collection<String> hostIds) {
+        if (poolname == null || this.maxAgeMillis <= 0) {
+            return;
+        }
+        final BitSet hosts = new BitSet();
+        for (final String hostId : hostIds) {
+            hosts.set(this.indexOf(hostId));
+        }
+        this.pools.put(poolname, new Members(hosts, Collections
+                .unmodifiableSet(new HashSet<String>(hostIds)), System.currentTimeMillis()));
+    }
+
+    /**
+     * Forgets the members of a pool.
+     * 
+     * @param poolname
+     *            The vSphere name of a resource pool.
+     */
+    public void invalidate(final String poolname) {
+        if (poolname != null) {
+            this.pools.remove(poolname);
+        }
+    }
+
+    /**
+     * Forgets the members of all pools.
+     */
+    public void clear() {
+        this.pools.clear();
+    }
+
+    /**
+     * @param poolname
+     *            The vSphere name of a resource pool.
+     * @return The members of the pool if they are cached and not expired,
+     *         <code>null</code> otherwise.
+     */
+    private Members getCurrent(final String poolname) {
+        if (poolname == null) {
+            return null;
+        }
+        final Members members = this.pools.get(poolname);
+        if (members == null
+                || System.currentTimeMillis() - members.loadedAt >= this.maxAgeMillis) {
+            return null;
+        }
+        return members;
+    }
+
+    /**
+     * @param hostId
+     *            The vSphere id of a host.
+     * @return The dense index of the host, assigned on first use.
+     */
+    private int indexOf(final String hostId) {
+        final Integer index = this.hostIndices.get(hostId);
+        if (index != null) {
+            return index;
+        }
+        synchronized (this.hostIndices) {
+            final Integer existing = this.hostIndices.get(hostId);
+            if (existing != null) {
+                return existing;
+            }
+            final int next = this.hostIndices.size();
+            this.hostIndices.put(hostId, next);
+            return next;
+        }
+    }
+}
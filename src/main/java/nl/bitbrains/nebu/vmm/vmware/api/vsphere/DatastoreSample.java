@@ -0,0 +1,77 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+/**
+ * Space and latency of a datastore at a point in time. Latencies that were
+ * not reported are {@link Double#NaN}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class DatastoreSample {
+
+    private final long capacity;
+    private final long freeSpace;
+    private final long provisioned;
+    private final double readLatencyMillis;
+    private final double writeLatencyMillis;
+
+    /**
+     * Creates a new {@link DatastoreSample}.
+     * 
+     * @param capacity
+     *            The capacity in bytes.
+     * @param freeSpace
+     *            The free space in bytes.
+     * @param provisioned
+     *            The space in bytes that is used or promised to thin
+     *            provisioned disks.
+     * @param readLatencyMillis
+     *            The highest read latency of any host in milliseconds.
+     * @param writeLatencyMillis
+     *            The highest write latency of any host in milliseconds.
+     */
+    public DatastoreSample(final long capacity, final long freeSpace, final long provisioned,
+            final double readLatencyMillis, final double writeLatencyMillis) {
+        this.capacity = capacity;
+        this.freeSpace = freeSpace;
+        this.provisioned = provisioned;
+        this.readLatencyMillis = readLatencyMillis;
+        this.writeLatencyMillis = writeLatencyMillis;
+    }
+
+    /**
+     * @return the capacity in bytes.
+     */
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return the free space in bytes.
+     */
+    public long getFreeSpace() {
+        return this.freeSpace;
+    }
+
+    /**
+     * @return the space in bytes that is used or promised to thin
+     *         provisioned disks.
+     */
+    public long getProvisioned() {
+        return this.provisioned;
+    }
+
+    /**
+     * @return the highest read latency of any host in milliseconds.
+     */
+    public double getReadLatencyMillis() {
+        return this.readLatencyMillis;
+    }
+
+    /**
+     * @return the highest write latency of any host in milliseconds.
+     */
+    public double getWriteLatencyMillis() {
+        return this.writeLatencyMillis;
+    }
+}
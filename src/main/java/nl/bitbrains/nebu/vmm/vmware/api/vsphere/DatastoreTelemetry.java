@@ -0,0 +1,259 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a short time series of the space and latency of every datastore, so
+ * storage placement can avoid datastores that are slow or filling up without
+ * calling vSphere. Each series is a set of fixed size primitive arrays used
+ * as a ring buffer.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class DatastoreTelemetry {
+
+    /**
+     * Ring buffer of the samples of a single datastore.
+     */
+    private static final class Series {
+        private final long[] times;
+        private final long[] capacity;
+        private final long[] free;
+        private final long[] provisioned;
+        private final double[] readLatency;
+        private final double[] writeLatency;
+        private int next;
+        private int count;
+
+        /**
+         * Creates an empty {@link Series}.
+         * 
+         * @param size
+         *            The number of samples to keep.
+         */
+        private Series(final int size) {
+            this.times = new long[size];
+            this.capacity = new long[size];
+            this.free = new long[size];
+            this.provisioned = new long[size];
+            this.readLatency = new double[size];
+            this.writeLatency = new double[size];
+        }
+
+        /**
+         * @param time
+         *            The time of the sample in milliseconds.
+         * @param sample
+         *            The sample to add, replacing the oldest one if full.
+         */
+        private synchronized void add(final long time, final DatastoreSample sample) {
+            final int i = this.next;
+            this.times[i] = time;
+            this.capacity[i] = sample.getCapacity();
+            this.free[i] = sample.getFreeSpace();
+            this.provisioned[i] = sample.getProvisioned();
+            this.readLatency[i] = sample.getReadLatencyMillis();
+            this.writeLatency[i] = sample.getWriteLatencyMillis();
+            this.next = (i + 1) % this.times.length;
+            this.count = Math.min(this.count + 1, this.times.length);
+        }
+
+        /**
+         * @return The index of the most recent sample, -1 if there is none.
+         */
+        private int latest() {
+            return this.count == 0 ? -1 : (this.next - 1 + this.times.length)
+                    % this.times.length;
+        }
+
+        /**
+         * @return The most recent sample, <code>null</code> if there is none.
+         */
+        private synchronized DatastoreSample getLatest() {
+            final int i = this.latest();
+            return i < 0 ? null : new DatastoreSample(this.capacity[i], this.free[i],
+                    this.provisioned[i], this.readLatency[i], this.writeLatency[i]);
+        }
+
+        /**
+         * @return The time of the most recent sample, 0 if there is none.
+         */
+        private synchronized long getLatestTime() {
+            final int i = this.latest();
+            return i < 0 ? 0 : this.times[i];
+        }
+
+        /**
+         * @return The least squares slope of the used space over time in
+         *         bytes per second, 0 if there are fewer than two samples.
+         */
+        private synchronized double growthRate() {
+            if (this.count < 2) {
+                return 0;
+            }
+            final long origin = this.times[0];
+            double sumT = 0;
+            double sumU = 0;
+            for (int i = 0; i < this.count; i++) {
+                sumT += (this.times[i] - origin) / 1000.0;
+                sumU += this.capacity[i] - this.free[i];
+            }
+            final double meanT = sumT / this.count;
+            final double meanU = sumU / this.count;
+            double cov = 0;
+            double var = 0;
+            for (int i = 0; i < this.count; i++) {
+                final double t = (this.times[i] - origin) / 1000.0 - meanT;
+                cov += t * (this.capacity[i] - this.free[i] - meanU);
+                var += t * t;
+            }
+            return var == 0 ? 0 : cov / var;
+        }
+
+        /**
+         * @param percentile
+         *            The percentile, between 0 and 100.
+         * @return The percentile of the highest of the read and write latency
+         *         of each sample, {@link Double#NaN} if no latency was
+         *         sampled.
+         */
+        private synchronized double latencyPercentile(final double percentile) {
+            final double[] values = new double[this.count];
+            int n = 0;
+            for (int i = 0; i < this.count; i++) {
+                final double latency = Series.max(this.readLatency[i], this.writeLatency[i]);
+                if (!Double.isNaN(latency)) {
+                    values[n++] = latency;
+                }
+            }
+            if (n == 0) {
+                return Double.NaN;
+            }
+            Arrays.sort(values, 0, n);
+            final int rank = (int) Math.ceil(percentile / 100 * n) - 1;
+            return values[Math.min(n - 1, Math.max(0, rank))];
+        }
+
+        /**
+         * @param a
+         *            A value, may be {@link Double#NaN}.
+         * @param b
+         *            A value, may be {@link Double#NaN}.
+         * @return The highest value that is not {@link Double#NaN}.
+         */
+        private static double max(final double a, final double b) {
+            if (Double.isNaN(a)) {
+                return b;
+            }
+            return Double.isNaN(b) ? a : Math.max(a, b);
+        }
+    }
+
+    private final ConcurrentMap<String, Series> series;
+    private final int size;
+
+    /**
+     * Creates an empty {@link DatastoreTelemetry}.
+     * 
+     * @param size
+     *            The number of samples to keep per datastore, at least 2.
+     */
+    public DatastoreTelemetry(final int size) {
+        this.series = new ConcurrentHashMap<String, Series>();
+        this.size = Math.max(2, size);
+    }
+
+    /**
+     * Adds a sample of every datastore. Datastores that are not part of the
+     * samples are forgotten.
+     * 
+     * @param samples
+     *            The {@link DatastoreSample} of each datastore by vSphere id.
+     */
+    public void record(final Map<String, DatastoreSample> samples) {
+        this.record(System.currentTimeMillis(), samples);
+    }
+
+    /**
+     * Adds a sample of every datastore taken at the given time. Datastores
+     * that are not part of the samples are forgotten.
+     * 
+     * @param time
+     *            The time of the samples in milliseconds.
+     * @param samples
+     *            The {@link DatastoreSample} of each datastore by vSphere id.
+     */
+    public void record(final long time, final Map<String, DatastoreSample> samples) {
+        this.series.keySet().retainAll(samples.keySet());
+        for (final Map.Entry<String, DatastoreSample> entry : samples.entrySet()) {
+            Series store = this.series.get(entry.getKey());
+            if (store == null) {
+                final Series created = new Series(this.size);
+                store = this.series.putIfAbsent(entry.getKey(), created);
+                if (store == null) {
+                    store = created;
+                }
+            }
+            store.add(time, entry.getValue());
+        }
+    }
+
+    /**
+     * @param storeId
+     *            The vSphere id of a datastore.
+     * @return The most recent sample of the datastore, or <code>null</code>
+     *         if it has not been sampled.
+     */
+    public DatastoreSample getLatest(final String storeId) {
+        final Series store = this.get(storeId);
+        return store == null ? null : store.getLatest();
+    }
+
+    /**
+     * @param storeId
+     *            The vSphere id of a datastore.
+     * @return The time in milliseconds of the most recent sample of the
+     *         datastore, 0 if it has not been sampled.
+     */
+    public long getLatestTime(final String storeId) {
+        final Series store = this.get(storeId);
+        return store == null ? 0 : store.getLatestTime();
+    }
+
+    /**
+     * @param storeId
+     *            The vSphere id of a datastore.
+     * @return The growth of the used space of the datastore in bytes per
+     *         second, 0 if it is unknown.
+     */
+    public double getGrowthRate(final String storeId) {
+        final Series store = this.get(storeId);
+        return store == null ? 0 : store.growthRate();
+    }
+
+    /**
+     * @param storeId
+     *            The vSphere id of a datastore.
+     * @param percentile
+     *            The percentile, between 0 and 100.
+     * @return The percentile of the latency of the datastore in
+     *         milliseconds, {@link Double#NaN} if it is unknown.
+     */
+    public double getLatencyPercentile(final String storeId, final double percentile) {
+        final Series store = this.get(storeId);
+        return store == null ? Double.NaN : store.latencyPercentile(percentile);
+    }
+
+    /**
+     * @param storeId
+     *            The vSphere id of a datastore.
+     * @return The series of the datastore, <code>null</code> if unknown.
+     */
+    private Series get(final String storeId) {
+        return storeId == null ? null : this.series.get(storeId);
+    }
+}
@@ -0,0 +1,77 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+/**
+ * Performance of a host as reported by the vSphere PerformanceManager. Values
+ * that were not reported are {@link Double#NaN}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class HostPerformance {
+
+    private final double cpuReady;
+    private final double cpuUsage;
+    private final double memActiveKb;
+    private final double diskLatencyMillis;
+    private final double networkKbps;
+
+    /**
+     * Creates a new {@link HostPerformance}.
+     * 
+     * @param cpuReady
+     *            Fraction of time that virtual CPUs were ready but could not
+     *            be scheduled.
+     * @param cpuUsage
+     *            Fraction of the CPU capacity that is used.
+     * @param memActiveKb
+     *            Actively used memory in KB.
+     * @param diskLatencyMillis
+     *            Highest disk latency in milliseconds.
+     * @param networkKbps
+     *            Network throughput in KB per second.
+     */
+    public HostPerformance(final double cpuReady, final double cpuUsage, final double memActiveKb,
+            final double diskLatencyMillis, final double networkKbps) {
+        this.cpuReady = cpuReady;
+        this.cpuUsage = cpuUsage;
+        this.memActiveKb = memActiveKb;
+        this.diskLatencyMillis = diskLatencyMillis;
+        this.networkKbps = networkKbps;
+    }
+
+    /**
+     * @return the fraction of time that virtual CPUs were ready but could not
+     *         be scheduled.
+     */
+    public double getCpuReady() {
+        return this.cpuReady;
+    }
+
+    /**
+     * @return the fraction of the CPU capacity that is used.
+     */
+    public double getCpuUsage() {
+        return this.cpuUsage;
+    }
+
+    /**
+     * @return the actively used memory in KB.
+     */
+    public double getMemActiveKb() {
+        return this.memActiveKb;
+    }
+
+    /**
+     * @return the highest disk latency in milliseconds.
+     */
+    public double getDiskLatencyMillis() {
+        return this.diskLatencyMillis;
+    }
+
+    /**
+     * @return the network throughput in KB per second.
+     */
+    public double getNetworkKbps() {
+        return this.networkKbps;
+    }
+}
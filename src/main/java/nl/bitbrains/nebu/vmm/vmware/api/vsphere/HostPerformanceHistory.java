@@ -0,0 +1,147 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the most recent {@link HostPerformance} samples of every host in a
+ * fixed size ring buffer and smooths them by averaging, so placement can use
+ * fresh performance data without calling vSphere per request.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class HostPerformanceHistory {
+
+    /**
+     * Ring buffer of the samples of a single host.
+     */
+    private static final class Ring {
+        private final HostPerformance[] samples;
+        private int next;
+        private int count;
+
+        /**
+         * Creates an empty {@link Ring}.
+         * 
+         * @param size
+         *            The number of samples to keep.
+         */
+        private Ring(final int size) {
+            this.samples = new HostPerformance[size];
+        }
+
+        /**
+         * @param sample
+         *            The sample to add, replacing the oldest one if full.
+         */
+        private synchronized void add(final HostPerformance sample) {
+            this.samples[this.next] = sample;
+            this.next = (this.next + 1) % this.samples.length;
+            this.count = Math.min(this.count + 1, this.samples.length);
+        }
+
+        /**
+         * @return The number of samples in the buffer.
+         */
+        private synchronized int size() {
+            return this.count;
+        }
+
+        /**
+         * @return The average of the samples, ignoring missing values.
+         */
+        private synchronized HostPerformance mean() {
+            final double[] sums = new double[5];
+            final int[] counts = new int[5];
+            for (int i = 0; i < this.count; i++) {
+                final HostPerformance sample = this.samples[i];
+                Ring.add(sums, counts, 0, sample.getCpuReady());
+                Ring.add(sums, counts, 1, sample.getCpuUsage());
+                Ring.add(sums, counts, 2, sample.getMemActiveKb());
+                Ring.add(sums, counts, 3, sample.getDiskLatencyMillis());
+                Ring.add(sums, counts, 4, sample.getNetworkKbps());
+            }
+            return new HostPerformance(sums[0] / counts[0], sums[1] / counts[1], sums[2]
+                    / counts[2], sums[3] / counts[3], sums[4] / counts[4]);
+        }
+
+        /**
+         * Adds a value to a running sum if it is not missing.
+         * 
+         * @param sums
+         *            The sums.
+         * @param counts
+         *            The number of values in each sum.
+         * @param index
+         *            The index of the sum.
+         * @param value
+         *            The value to add.
+         */
+        private static void add(final double[] sums, final int[] counts, final int index,
+                final double value) {
+            if (!Double.isNaN(value)) {
+                sums[index] += value;
+                counts[index]++;
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Ring> rings;
+    private final int size;
+
+    /**
+     * Creates an empty {@link HostPerformanceHistory}.
+     * 
+     * @param size
+     *            The number of samples to keep per host, at least 1.
+     */
+    public HostPerformanceHistory(final int size) {
+        this.rings = new ConcurrentHashMap<String, Ring>();
+        this.size = Math.max(1, size);
+    }
+
+    /**
+     * Adds a sample of every host. Hosts that are not part of the samples are
+     * forgotten.
+     * 
+     * @param samples
+     *            The {@link HostPerformance} of each host by vSphere id.
+     */
+    public void record(final Map<String, HostPerformance> samples) {
+        this.rings.keySet().retainAll(samples.keySet());
+        for (final Map.Entry<String, HostPerformance> entry : samples.entrySet()) {
+            Ring ring = this.rings.get(entry.getKey());
+            if (ring == null) {
+                final Ring created = new Ring(this.size);
+                ring = this.rings.putIfAbsent(entry.getKey(), created);
+                if (ring == null) {
+                    ring = created;
+                }
+            }
+            ring.add(entry.getValue());
+        }
+    }
+
+    /**
+     * @param hostId
+     *            The vSphere id of a host.
+     * @return The average of the recent samples of the host, or
+     *         <code>null</code> if the host has not been sampled.
+     */
+    public HostPerformance getSmoothed(final String hostId) {
+        final Ring ring = hostId == null ? null : this.rings.get(hostId);
+        return ring == null || ring.size() == 0 ? null : ring.mean();
+    }
+
+    /**
+     * @param hostId
+     *            The vSphere id of a host.
+     * @return The number of samples kept for the host.
+     */
+    public int getSampleCount(final String hostId) {
+        final Ring ring = hostId == null ? null : this.rings.get(hostId);
+        return ring == null ? 0 : ring.size();
+    }
+}
@@ -0,0 +1,274 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.rmi.RemoteException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.vmm.vmware.converter.PhysicalResourceConverter;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEventDetector;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.vmware.vim25.DatastoreSummary;
+import com.vmware.vim25.HostListSummary;
+import com.vmware.vim25.HostSystemConnectionState;
+import com.vmware.vim25.ObjectSpec;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyFilterSpec;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.PropertySpec;
+import com.vmware.vim25.SelectionSpec;
+import com.vmware.vim25.TraversalSpec;
+import com.vmware.vim25.UpdateSet;
+import com.vmware.vim25.WaitOptions;
+import com.vmware.vim25.mo.ContainerView;
+import com.vmware.vim25.mo.PropertyCollector;
+import com.vmware.vim25.mo.PropertyFilter;
+import com.vmware.vim25.mo.ServiceInstance;
+
+/**
+ * Simple thread that follows the summaries of all hosts and datastores
+ * through the update stream of the {@link PropertyCollector} and passes them
+ * to a {@link TopologyEventDetector}. vCenter only sends what changed, so the
+ * inventory is watched without polling. The watcher uses its own session,
+ * because a property filter belongs to the session that created it and a
+ * pending wait would otherwise hold a pooled session.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class InventoryWatcher implements Runnable {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    /**
+     * The property that is watched on hosts and datastores.
+     */
+    private static final String PROPERTY_SUMMARY = "summary";
+
+    /**
+     * The time in seconds to wait before watching again after an error.
+     */
+    private static final int RETRY_SECONDS = 10;
+
+    /**
+     * Value used to stop thread when requested.
+     */
+    private volatile boolean keepRunning = true;
+
+    private final VSphereSession session;
+    private final TopologyEventDetector detector;
+    private final int waitSeconds;
+    private ContainerView view;
+
+    /**
+     * Creates a new {@link InventoryWatcher}.
+     * 
+     * @param session
+     *            The session used only by this watcher, logged in.
+     * @param detector
+     *            The detector that receives the updates.
+     * @param waitSeconds
+     *            The longest time in seconds a single wait for updates may
+     *            take.
+     */
+    public InventoryWatcher(final VSphereSession session, final TopologyEventDetector detector,
+            final int waitSeconds) {
+        this.session = session;
+        this.detector = detector;
+        this.waitSeconds = waitSeconds;
+    }
+
+    @Override
+    public void run() {
+        PropertyFilter filter = null;
+        String version = null;
+        Set<String> hostIds = null;
+        Set<String> storeIds = null;
+        final WaitOptions options = new WaitOptions();
+        options.setMaxWaitSeconds(this.waitSeconds);
+        while (this.keepRunning) {
+            try {
+                if (filter == null) {
+                    filter = this.createFilter();
+                    version = "";
+                    hostIds = new HashSet<String>();
+                    storeIds = new HashSet<String>();
+                }
+                final UpdateSet updates = this.session.getServiceInstance()
+                        .getPropertyCollector().waitForUpdatesEx(version, options);
+                if (updates == null) {
+                    continue;
+                }
+                version = updates.getVersion();
+                InventoryWatcher.apply(updates, this.detector, hostIds, storeIds);
+                if (hostIds != null && !Boolean.TRUE.equals(updates.getTruncated())) {
+                    this.detector.retain(hostIds, storeIds);
+                    hostIds = null;
+                    storeIds = null;
+                }
+            } catch (final RemoteException | RuntimeException e) {
+                InventoryWatcher.logger.catching(Level.WARN, e);
+                this.destroy(filter);
+                filter = null;
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(InventoryWatcher.RETRY_SECONDS));
+                } catch (final InterruptedException ie) {
+                    this.stop();
+                    return;
+                }
+                this.session.validate();
+            }
+        }
+        this.destroy(filter);
+    }
+
+    /**
+     * Stops the thread gracefully. A wait that is in progress ends within the
+     * maximum wait time.
+     */
+    public void stop() {
+        InventoryWatcher.logger.warn("Stopping inventory watcher.");
+        this.keepRunning = false;
+    }
+
+    /**
+     * Creates a property filter that reports the summaries of all hosts and
+     * datastores in the inventory, through a view of the whole inventory.
+     * 
+     * @return The filter.
+     * @throws RemoteException
+     *             If an error occurs at the remote.
+     */
+    private PropertyFilter createFilter() throws RemoteException {
+        final ServiceInstance instance = this.session.getServiceInstance();
+        this.view = instance.getViewManager()
+                .createContainerView(instance.getRootFolder(),
+                                     new String[] { VSphere.TYPE_HOST, VSphere.TYPE_DATASTORE },
+                                     true);
+        final TraversalSpec traversal = new TraversalSpec();
+        traversal.setName("view");
+        traversal.setType("ContainerView");
+        traversal.setPath("view");
+        traversal.setSkip(false);
+
+        final ObjectSpec objects = new ObjectSpec();
+        objects.setObj(this.view.getMOR());
+        objects.setSkip(true);
+        objects.setSelectSet(new SelectionSpec[] { traversal });
+
+        final PropertySpec hosts = new PropertySpec();
+        hosts.setType(VSphere.TYPE_HOST);
+        hosts.setPathSet(new String[] { InventoryWatcher.PROPERTY_SUMMARY });
+        final PropertySpec stores = new PropertySpec();
+        stores.setType(VSphere.TYPE_DATASTORE);
+        stores.setPathSet(new String[] { InventoryWatcher.PROPERTY_SUMMARY });
+
+        final PropertyFilterSpec spec = new PropertyFilterSpec();
+        spec.setObjectSet(new ObjectSpec[] { objects });
+        spec.setPropSet(new PropertySpec[] { hosts, stores });
+        return instance.getPropertyCollector().createFilter(spec, true);
+    }
+
+    /**
+     * Passes the changed summaries of an update set to the detector.
+     * 
+     * @param updates
+     *            The update set.
+     * @param detector
+     *            The detector.
+     * @param hostIds
+     *            If not <code>null</code>, the ids of all reported hosts are
+     *            added to it.
+     * @param storeIds
+     *            If not <code>null</code>, the ids of all reported
+     *            datastores are added to it.
+     */
+    static void apply(final UpdateSet updates, final TopologyEventDetector detector,
+            final Set<String> hostIds, final Set<String> storeIds) {
+        final PropertyFilterUpdate[] filters = updates.getFilterSet();
+        for (int i = 0; filters != null && i < filters.length; i++) {
+            final ObjectUpdate[] objects = filters[i].getObjectSet();
+            for (int j = 0; objects != null && j < objects.length; j++) {
+                InventoryWatcher.apply(objects[j], detector, hostIds, storeIds);
+            }
+        }
+    }
+
+    /**
+     * Passes the changed summary of a single object to the detector.
+     * 
+     * @param update
+     *            The update of a host or datastore.
+     * @param detector
+     *            The detector.
+     * @param hostIds
+     *            The set of reported hosts, may be <code>null</code>.
+     * @param storeIds
+     *            The set of reported datastores, may be <code>null</code>.
+     */
+    private static void apply(final ObjectUpdate update, final TopologyEventDetector detector,
+            final Set<String> hostIds, final Set<String> storeIds) {
+        final String type = update.getObj().getType();
+        final String id = update.getObj().getVal();
+        final boolean isHost = VSphere.TYPE_HOST.equals(type);
+        if (update.getKind() == ObjectUpdateKind.leave) {
+            if (isHost) {
+                detector.removeHost(id);
+            } else {
+                detector.removeStore(id);
+            }
+            return;
+        }
+        final Set<String> seen = isHost ? hostIds : storeIds;
+        if (seen != null) {
+            seen.add(id);
+        }
+        final PropertyChange[] changes = update.getChangeSet();
+        for (int i = 0; changes != null && i < changes.length; i++) {
+            final Object value = changes[i].getVal();
+            if (value instanceof HostListSummary) {
+                final HostListSummary summary = (HostListSummary) value;
+                final HostSystemConnectionState state = summary.getRuntime() == null ? null
+                        : summary.getRuntime().getConnectionState();
+                if (state == null || state == HostSystemConnectionState.connected) {
+                    detector.updateHost(PhysicalResourceConverter.toPhysicalHost(id, summary));
+                } else {
+                    detector.removeHost(id);
+                }
+            } else if (value instanceof DatastoreSummary) {
+                detector.updateStore(PhysicalResourceConverter
+                        .toPhysicalStore(id, (DatastoreSummary) value));
+            }
+        }
+    }
+
+    /**
+     * Destroys a filter and the view it watches, ignoring errors as their
+     * session may be gone.
+     * 
+     * @param filter
+     *            The filter, may be <code>null</code>.
+     */
+    private void destroy(final PropertyFilter filter) {
+        try {
+            if (filter != null) {
+                filter.destroyPropertyFilter();
+            }
+            if (this.view != null) {
+                this.view.destroyView();
+            }
+        } catch (final RemoteException | RuntimeException e) {
+            InventoryWatcher.logger.catching(Level.DEBUG, e);
+        }
+        this.view = null;
+    }
+}
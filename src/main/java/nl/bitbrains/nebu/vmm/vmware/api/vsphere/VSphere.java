@@ -1,11 +1,22 @@
 package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
 
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
 import nl.bitbrains.nebu.common.topology.PhysicalDataCenterBuilder;
@@ -17,8 +28,12 @@ import nl.bitbrains.nebu.common.topology.PhysicalRootBuilder;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
 import nl.bitbrains.nebu.common.topology.PhysicalTopology;
 import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.vmm.vmware.api.BackendExecutors;
 import nl.bitbrains.nebu.vmm.vmware.api.DefaultVMware;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.Deadline;
+import nl.bitbrains.nebu.vmm.vmware.config.VSphereTuning;
 import nl.bitbrains.nebu.vmm.vmware.converter.PhysicalResourceConverter;
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
 import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
 
@@ -34,13 +49,23 @@ import com.vmware.vim25.ClusterConfigSpecEx;
 import com.vmware.vim25.ClusterDrsVmConfigInfo;
 import com.vmware.vim25.ClusterDrsVmConfigSpec;
 import com.vmware.vim25.DatastoreHostMount;
+import com.vmware.vim25.DatastoreSummary;
 import com.vmware.vim25.DrsBehavior;
+import com.vmware.vim25.HostListSummary;
 import com.vmware.vim25.InvalidProperty;
 import com.vmware.vim25.LocalizedMethodFault;
 import com.vmware.vim25.ManagedObjectReference;
 import com.vmware.vim25.MethodFault;
 import com.vmware.vim25.NoPermission;
+import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfEntityMetric;
+import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.PerfMetricIntSeries;
+import com.vmware.vim25.PerfMetricSeries;
+import com.vmware.vim25.PerfQuerySpec;
 import com.vmware.vim25.RuntimeFault;
+import com.vmware.vim25.TaskInfoState;
 import com.vmware.vim25.VirtualMachineMovePriority;
 import com.vmware.vim25.VirtualMachineRelocateSpec;
 import com.vmware.vim25.mo.ClusterComputeResource;
@@ -51,11 +76,14 @@ import com.vmware.vim25.mo.Folder;
 import com.vmware.vim25.mo.HostSystem;
 import com.vmware.vim25.mo.InventoryNavigator;
 import com.vmware.vim25.mo.ManagedEntity;
+import com.vmware.vim25.mo.ManagedObject;
+import com.vmware.vim25.mo.PerformanceManager;
 import com.vmware.vim25.mo.ResourcePool;
 import com.vmware.vim25.mo.ServiceInstance;
 import com.vmware.vim25.mo.Task;
 import com.vmware.vim25.mo.VirtualMachine;
 import com.vmware.vim25.mo.util.MorUtil;
+import com.vmware.vim25.mo.util.PropertyCollectorUtil;
 
 /**
  * Class responsible for retrieving physical topology information from vSphere
@@ -71,6 +99,29 @@ public class VSphere {
      */
     private static Logger logger = LogManager.getLogger();
 
+    /**
+     * Properties of a {@link Datastore} that decide where it is placed in a
+     * {@link PhysicalTopology}.
+     */
+    private static final class DatastoreInfo {
+        private final DatastoreSummary summary;
+        private final DatastoreHostMount[] mounts;
+
+        /**
+         * Creates a new {@link DatastoreInfo}.
+         * 
+         * @param summary
+         *            The summary of the {@link Datastore}.
+         * @param mounts
+         *            The hosts that mount the {@link Datastore}, may be
+         *            <code>null</code>.
+         */
+        private DatastoreInfo(final DatastoreSummary summary, final DatastoreHostMount[] mounts) {
+            this.summary = summary;
+            this.mounts = mounts == null ? new DatastoreHostMount[0] : mounts;
+        }
+    }
+
     /**
      * {@link ManagedEntity} type name for {@link VirtualMachine}.
      */
@@ -114,19 +165,102 @@ public class VSphere {
      */
     public static final boolean VSPHERE_DRS_OVERRIDE_ACCESS = false;
 
+    /**
+     * Property that holds the summary of a managed object.
+     */
+    private static final String PROPERTY_SUMMARY = "summary";
+
+    /**
+     * Property that holds the hosts that mount a {@link Datastore}.
+     */
+    private static final String PROPERTY_HOST = "host";
+
+    /**
+     * Real-time performance counters sampled per host: CPU ready in
+     * milliseconds per interval, CPU usage in hundredths of a percent, active
+     * memory in KB, highest disk latency in milliseconds and network usage in
+     * KB per second.
+     */
+    private static final String[] PERF_COUNTERS = { "cpu.ready.summation",
+            "cpu.usage.average", "mem.active.average", "disk.maxTotalLatency.latest",
+            "net.usage.average" };
+
+    /**
+     * Real-time performance counters sampled per datastore on each host: read
+     * and write latency in milliseconds.
+     */
+    private static final String[] DATASTORE_PERF_COUNTERS = {
+            "datastore.totalReadLatency.average", "datastore.totalWriteLatency.average" };
+
+    /**
+     * Length in seconds of the real-time performance interval.
+     */
+    private static final int PERF_INTERVAL_SECONDS = 20;
+
+    /**
+     * Value of a performance counter in hundredths of a percent that means
+     * 100%.
+     */
+    private static final double PERF_PERCENT = 10000;
+
+    /**
+     * Time in milliseconds between polls of a task that has a deadline.
+     */
+    private static final long TASK_POLL_MILLIS = 500;
+
     /**
      * The server instance that offers the vSphere REST API.
      */
-    private ServiceInstance sInstance;
+    private volatile ServiceInstance sInstance;
 
     /**
      * Navigator to search through the MOB.
      */
-    private InventoryNavigator navigator;
+    private volatile InventoryNavigator navigator;
+
+    /**
+     * Connection settings, including the number of pooled sessions.
+     */
+    private VSphereTuning tuning = new VSphereTuning();
+
+    /**
+     * Pool of sessions, or <code>null</code> if only one session is used.
+     */
+    private volatile VSphereSessionPool pool;
 
     /**
-     * Sets up a new connection to the vSphere API. Keeps the connection to
-     * vSphere alive. Re-establishes the connection after the connection drops.
+     * Cached hosts of the cluster of each resource pool.
+     */
+    private ClusterMembership membership = new ClusterMembership(TimeUnit.SECONDS
+            .toMillis(this.tuning.getMembershipRefreshSeconds()));
+
+    /**
+     * Ids of the performance counters by name, <code>null</code> until
+     * resolved.
+     */
+    private volatile Map<String, Integer> perfCounters;
+
+    /**
+     * Recent performance of the hosts, <code>null</code> if not sampled.
+     */
+    private HostPerformanceHistory performanceHistory;
+
+    /**
+     * The session checked out by the current thread, if any.
+     */
+    private final ThreadLocal<VSphereSession> currentSession = new ThreadLocal<VSphereSession>();
+
+    /**
+     * The session last released by the current thread, if any.
+     */
+    private final ThreadLocal<VSphereSession> lastSession = new ThreadLocal<VSphereSession>();
+
+    /**
+     * Sets up a new connection to the vSphere API. If sessions are pooled, the
+     * pool is created on the first call; later calls log the sessions of the
+     * existing pool in again, so threads waiting for a session are not left
+     * behind on a replaced pool. A {@link ServiceInstance} that is replaced is
+     * logged out.
      * 
      * @param username
      *            The vSphere username.
@@ -141,34 +275,159 @@ public class VSphere {
      * @throws MalformedURLException
      *             When the given {@link String} is not of the right format.
      */
-    public void initAndKeepAlive(final String username, final String password, final String url,
-            final int port) throws RemoteException, MalformedURLException {
-        this.init(username, password, url, port);
-        final VSphereKeepAlive keepAlive = new VSphereKeepAlive(this, username, password, url, port);
-        new Thread(keepAlive).start();
+    public void init(final String username, final String password, final String url, final int port)
+            throws RemoteException, MalformedURLException {
+        VSphere.logger.debug("Logging in at vSphere at address {}:{}.", url, port);
+        final VSphereSessionPool sessionPool = this.pool;
+        if (sessionPool != null) {
+            if (!sessionPool.reconnect()) {
+                throw new RemoteException("Could not log in all vSphere sessions again.");
+            }
+            return;
+        }
+        final ServiceInstance old = this.sInstance;
+        final VSphereSession primary = this.createSession(username, password, url);
+        primary.setReadTimeoutSeconds(this.tuning.getReadTimeoutSeconds());
+        primary.connect();
+        this.navigator = primary.getNavigator();
+        this.sInstance = primary.getServiceInstance();
+        VSphereSession.logout(old);
+        if (this.tuning.getSessions() > 1) {
+            final List<VSphereSession> sessions = new ArrayList<VSphereSession>();
+            sessions.add(primary);
+            try {
+                for (int i = 1; i < this.tuning.getSessions(); i++) {
+                    final VSphereSession session = this.createSession(username, password, url);
+                    session.setReadTimeoutSeconds(this.tuning.getReadTimeoutSeconds());
+                    session.connect();
+                    sessions.add(session);
+                }
+            } catch (RemoteException | MalformedURLException | RuntimeException e) {
+                for (final VSphereSession session : sessions.subList(1, sessions.size())) {
+                    VSphereSession.logout(session.getServiceInstance());
+                }
+                throw e;
+            }
+            this.pool = new VSphereSessionPool(sessions,
+                    this.tuning.getSessionHealthCheckSeconds() * 1000L);
+            VSphere.logger.info("Using {} vSphere sessions.", sessions.size());
+        }
     }
 
     /**
-     * Sets up a new connection to the vSphere API.
+     * Creates a session that is not logged in yet.
      * 
      * @param username
      *            The vSphere username.
      * @param password
      *            The vSphere password.
      * @param url
-     *            String that represents the vSphere REST API URI.
-     * @param port
-     *            The port of the vSphere REST API URI.
-     * @throws RemoteException
-     *             When an error occurs at the remote.
-     * @throws MalformedURLException
-     *             When the given {@link String} is not of the right format.
+     *            String that represents the vSphere API URI.
+     * @return The new {@link VSphereSession}.
      */
-    public void init(final String username, final String password, final String url, final int port)
-            throws RemoteException, MalformedURLException {
-        VSphere.logger.debug("Logging in at vSphere at address {}:{}.", url, port);
-        this.sInstance = new ServiceInstance(new URL(url), username, password, true);
-        this.navigator = new InventoryNavigator(this.sInstance.getRootFolder());
+    public VSphereSession createSession(final String username, final String password,
+            final String url) {
+        return new VSphereSession(username, password, url);
+    }
+
+    /**
+     * Checks out a pooled session for the current thread. Does nothing if no
+     * pool is used or the thread already holds a session, so nested calls
+     * share the session of the outermost call.
+     * 
+     * @return The checked out session, which should be passed to
+     *         {@link #releaseSession(VSphereSession)}, or <code>null</code>
+     *         if no session was checked out.
+     * @throws VMwareException
+     *             If no session became available in time, or the thread was
+     *             interrupted while waiting for one.
+     */
+    private VSphereSession acquireSession() throws VMwareException {
+        final VSphereSessionPool sessionPool = this.pool;
+        if (sessionPool == null || this.currentSession.get() != null) {
+            return null;
+        }
+        try {
+            final VSphereSession session = sessionPool.checkout();
+            this.currentSession.set(session);
+            return session;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VMwareException("Interrupted while waiting for a vSphere session.", e);
+        }
+    }
+
+    /**
+     * Returns a session obtained from {@link #acquireSession()} to the pool.
+     * 
+     * @param session
+     *            The session, may be <code>null</code>.
+     */
+    private void releaseSession(final VSphereSession session) {
+        if (session != null) {
+            this.currentSession.remove();
+            this.lastSession.set(session);
+            this.pool.release(session);
+        }
+    }
+
+    /**
+     * Asks vSphere for its current time on every idle session, which also
+     * resets the idle timer of the sessions.
+     * 
+     * @return <code>true</code> iff all sessions can be used.
+     */
+    public boolean keepAlive() {
+        final VSphereSessionPool sessionPool = this.pool;
+        if (sessionPool != null) {
+            return sessionPool.keepAlive();
+        }
+        final ServiceInstance instance = this.sInstance;
+        try {
+            return instance != null && instance.currentTime() != null;
+        } catch (final RemoteException e) {
+            VSphere.logger.catching(Level.DEBUG, e);
+            return false;
+        }
+    }
+
+    /**
+     * Logs in again the pooled session that the current thread used last,
+     * leaving the other sessions alone.
+     * 
+     * @return <code>true</code> iff the session can be used again,
+     *         <code>false</code> if it cannot or sessions are not pooled.
+     */
+    public boolean reconnectSession() {
+        final VSphereSessionPool sessionPool = this.pool;
+        if (sessionPool == null) {
+            return false;
+        }
+        final VSphereSession failed = this.lastSession.get();
+        this.lastSession.remove();
+        return sessionPool.reconnect(failed);
+    }
+
+    /**
+     * @return The {@link ServiceInstance} of the session held by the current
+     *         thread, or the default one.
+     */
+    private ServiceInstance currentServiceInstance() {
+        final VSphereSession session = this.currentSession.get();
+        return session == null ? this.getServiceInstance() : session.getServiceInstance();
+    }
+
+    /**
+     * @return The {@link InventoryNavigator} of the session held by the
+     *         current thread, or the default one.
+     */
+    private InventoryNavigator currentNavigator() {
+        final VSphereSession session = this.currentSession.get();
+        if (session != null) {
+            return session.getNavigator();
+        }
+        final VSphereSessionPool sessionPool = this.pool;
+        return sessionPool == null ? this.navigator : sessionPool.getPrimary().getNavigator();
     }
 
     /**
@@ -221,12 +480,17 @@ public class VSphere {
      */
     public PhysicalTopology getPhysicalTopologyFromResourcePoolName(final String name)
             throws RemoteException, VMwareException {
-        final ManagedEntity entity = this.searchItems(VSphere.TYPE_RESOURCEPOOL, name);
-        if (entity instanceof ResourcePool) {
-            final ResourcePool pool = (ResourcePool) entity;
-            return this.getPhysicalTopologyFromResourcePool(pool);
+        final VSphereSession session = this.acquireSession();
+        try {
+            final ManagedEntity entity = this.searchItems(VSphere.TYPE_RESOURCEPOOL, name);
+            if (entity instanceof ResourcePool) {
+                final ResourcePool pool = (ResourcePool) entity;
+                return this.getPhysicalTopologyFromResourcePool(pool);
+            }
+            throw new VMwareException("Could not find resource pool.");
+        } finally {
+            this.releaseSession(session);
         }
-        throw new VMwareException("Could not find resource pool.");
     }
 
     /**
@@ -252,9 +516,14 @@ public class VSphere {
                 .getVal()).build();
         final PhysicalRack rack = new PhysicalRackBuilder().withUuid(cluster.getMOR().getVal())
                 .build();
-        final List<PhysicalHost> cpus = new ArrayList<PhysicalHost>(hosts.size());
-        for (final HostSystem host : hosts) {
-            cpus.add(PhysicalResourceConverter.toPhysicalHost(host, false));
+        final Map<String, PhysicalHost> cpus = new LinkedHashMap<String, PhysicalHost>();
+        final List<HostListSummary> summaries = this.getHostSummaries(hosts);
+        final HostPerformanceHistory history = this.performanceHistory;
+        for (int i = 0; i < hosts.size(); i++) {
+            final String hostId = hosts.get(i).getMOR().getVal();
+            final PhysicalHost cpu = PhysicalResourceConverter.toPhysicalHost(hostId, summaries
+                    .get(i), history == null ? null : history.getSmoothed(hostId));
+            cpus.put(cpu.getUniqueIdentifier(), cpu);
         }
 
         final PhysicalTopology topology = new PhysicalTopology(root);
@@ -264,11 +533,11 @@ public class VSphere {
         // Add racks to dc.
         topology.addRackToDataCenter(rack, datacenter);
         // Add hosts to racks.
-        for (final PhysicalHost cpu : cpus) {
+        for (final PhysicalHost cpu : cpus.values()) {
             topology.addCPUToRack(cpu, rack);
         }
         // Add disks to hosts or racks.
-        this.addDisksToTopology(storage, rack, topology);
+        this.addDisksToTopology(storage, rack, topology, cpus);
         return topology;
     }
 
@@ -288,50 +557,139 @@ public class VSphere {
      * @param topology
      *            The {@link PhysicalTopology} that contains the given rack and
      *            {@link PhysicalHost}s for the local {@link Datastore}s.
+     * @param cpus
+     *            The {@link PhysicalHost}s of the {@link PhysicalTopology} by
+     *            id.
+     * @throws RemoteException
+     *             When an error occurs at the remote.
      */
     private void addDisksToTopology(final List<Datastore> storage, final PhysicalRack rack,
-            final PhysicalTopology topology) {
-        for (final Datastore store : storage) {
-            final PhysicalStore pStore = PhysicalResourceConverter.toPhysicalStore(store);
-            if (store.getSummary().multipleHostAccess) {
+            final PhysicalTopology topology, final Map<String, PhysicalHost> cpus)
+            throws RemoteException {
+        final List<DatastoreInfo> infos = this.getDatastoreInfo(storage);
+        for (int i = 0; i < storage.size(); i++) {
+            final DatastoreInfo info = infos.get(i);
+            final PhysicalStore pStore = PhysicalResourceConverter.toPhysicalStore(storage.get(i)
+                    .getMOR().getVal(), info.summary);
+            if (info.summary.multipleHostAccess) {
                 topology.addDiskToRack(pStore, rack);
             } else {
-                this.addDiskToHost(store, pStore, topology);
+                this.addDiskToHost(info.mounts, pStore, topology, cpus);
             }
         }
     }
 
     /**
-     * Adds a local {@link PhysicalStore} to a {@link PhysicalHost} from the
-     * {@link PhysicalTopology} if the {@link Datastore} is a local disk. The
-     * {@link Datastore} should match the given {@link PhysicalStore}. The
-     * {@link Datastore} host should be present in the {@link PhysicalTopology}.
+     * Adds a local {@link PhysicalStore} to the {@link PhysicalHost} that
+     * mounts it. The host should be present in the {@link PhysicalTopology}.
      * 
-     * @param store
-     *            The {@link Datastore} whose {@link HostSystem} will be matched
-     *            to a {@link PhysicalHost} from the {@link PhysicalTopology},
-     *            iff it is a local disk.
+     * @param mounts
+     *            The hosts that mount the {@link Datastore}, the first of
+     *            which will be matched to a {@link PhysicalHost}.
      * @param pStore
      *            The {@link PhysicalStore} that matches the {@link Datastore}.
      *            This object will be added to a {@link PhysicalHost} from the
      *            {@link PhysicalTopology}.
      * @param topology
      *            The topology that contains {@link PhysicalHost} objects.
+     * @param cpus
+     *            The {@link PhysicalHost}s of the {@link PhysicalTopology} by
+     *            id.
      */
-    private void addDiskToHost(final Datastore store, final PhysicalStore pStore,
-            final PhysicalTopology topology) {
-        final DatastoreHostMount[] dataHosts = store.getHost();
-        if (dataHosts.length > 0) {
-            final DatastoreHostMount hostMount = dataHosts[0];
-            if (hostMount != null) {
-                final ManagedObjectReference host = hostMount.getKey();
-                for (final PhysicalHost pHost : topology.getCPUs()) {
-                    if (pHost.getUniqueIdentifier().equals(host.getVal())) {
-                        topology.addDiskToHost(pStore, pHost);
-                    }
-                }
+    private void addDiskToHost(final DatastoreHostMount[] mounts, final PhysicalStore pStore,
+            final PhysicalTopology topology, final Map<String, PhysicalHost> cpus) {
+        if (mounts.length > 0 && mounts[0] != null) {
+            final PhysicalHost pHost = cpus.get(mounts[0].getKey().getVal());
+            if (pHost != null) {
+                topology.addDiskToHost(pStore, pHost);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the summary of the given {@link HostSystem}s.
+     * 
+     * @param hosts
+     *            The {@link HostSystem}s.
+     * @return The summary of each {@link HostSystem}, in the same order.
+     * @throws RemoteException
+     *             When an error occurs at the remote.
+     */
+    @SuppressWarnings("rawtypes")
+    private List<HostListSummary> getHostSummaries(final List<HostSystem> hosts)
+            throws RemoteException {
+        final Hashtable[] props = this.retrieveProperties(hosts,
+                                                          VSphere.TYPE_HOST,
+                                                          VSphere.PROPERTY_SUMMARY);
+        final List<HostListSummary> summaries = new ArrayList<HostListSummary>(hosts.size());
+        for (int i = 0; i < hosts.size(); i++) {
+            final Hashtable table = props[i];
+            if (table == null || table.get(VSphere.PROPERTY_SUMMARY) == null) {
+                summaries.add(hosts.get(i).getSummary());
+            } else {
+                summaries.add((HostListSummary) table.get(VSphere.PROPERTY_SUMMARY));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Retrieves the summary and host mounts of the given {@link Datastore}s.
+     * 
+     * @param storage
+     *            The {@link Datastore}s.
+     * @return The {@link DatastoreInfo} of each {@link Datastore}, in the
+     *         same order.
+     * @throws RemoteException
+     *             When an error occurs at the remote.
+     */
+    @SuppressWarnings("rawtypes")
+    private List<DatastoreInfo> getDatastoreInfo(final List<Datastore> storage)
+            throws RemoteException {
+        final Hashtable[] props = this.retrieveProperties(storage,
+                                                          VSphere.TYPE_DATASTORE,
+                                                          VSphere.PROPERTY_SUMMARY,
+                                                          VSphere.PROPERTY_HOST);
+        final List<DatastoreInfo> infos = new ArrayList<DatastoreInfo>(storage.size());
+        for (int i = 0; i < storage.size(); i++) {
+            final Hashtable table = props[i];
+            if (table == null || table.get(VSphere.PROPERTY_SUMMARY) == null) {
+                final Datastore store = storage.get(i);
+                infos.add(new DatastoreInfo(store.getSummary(), store.getHost()));
+            } else {
+                infos.add(new DatastoreInfo((DatastoreSummary) table.get(VSphere.PROPERTY_SUMMARY),
+                        (DatastoreHostMount[]) table.get(VSphere.PROPERTY_HOST)));
             }
         }
+        return infos;
+    }
+
+    /**
+     * Retrieves properties of the given objects in a single call to the
+     * {@link com.vmware.vim25.mo.PropertyCollector}. Objects without a
+     * server connection cannot be read in bulk, the caller should read their
+     * properties one by one.
+     * 
+     * @param objects
+     *            The objects, all of the given type.
+     * @param type
+     *            The {@link ManagedEntity} type name of the objects.
+     * @param properties
+     *            The property paths to retrieve.
+     * @return The properties of each object, in the same order. An element is
+     *         <code>null</code> if the properties of the object could not be
+     *         retrieved.
+     * @throws RemoteException
+     *             When an error occurs at the remote.
+     */
+    @SuppressWarnings("rawtypes")
+    private Hashtable[] retrieveProperties(final List<? extends ManagedObject> objects,
+            final String type, final String... properties) throws RemoteException {
+        if (objects.isEmpty() || objects.get(0).getServerConnection() == null) {
+            return new Hashtable[objects.size()];
+        }
+        return PropertyCollectorUtil.retrieveProperties(objects.toArray(new ManagedObject[objects
+                .size()]), type, properties);
     }
 
     /**
@@ -372,26 +730,34 @@ public class VSphere {
      */
     public PhysicalTopology getPhysicalTopologyFromVapp(final String vappname)
             throws VMwareException {
-        ManagedEntity entity;
-        entity = this.searchItems(VSphere.TYPE_FOLDER, vappname);
-        if (entity == null) {
-            throw new VMwareException("Could not find vApp folder.");
-        }
-        if (entity instanceof Folder) {
-            final Folder vapp = (Folder) entity;
-            final ManagedEntity parent = vapp.getParent();
-            try {
-                return this.getPhysicalTopologyFromResourcePoolName(parent.getName());
-            } catch (final RemoteException e) {
-                throw new VMwareException("Could not get topology from resource pool name.", e);
+        final VSphereSession session = this.acquireSession();
+        try {
+            ManagedEntity entity;
+            entity = this.searchItems(VSphere.TYPE_FOLDER, vappname);
+            if (entity == null) {
+                throw new VMwareException("Could not find vApp folder.");
+            }
+            if (entity instanceof Folder) {
+                final Folder vapp = (Folder) entity;
+                final ManagedEntity parent = vapp.getParent();
+                try {
+                    return this.getPhysicalTopologyFromResourcePoolName(parent.getName());
+                } catch (final RemoteException e) {
+                    throw new VMwareException("Could not get topology from resource pool name.",
+                            e);
+                }
             }
+            throw new VMwareException("Vapp is no folder.");
+        } finally {
+            this.releaseSession(session);
         }
-        throw new VMwareException("Vapp is no folder.");
     }
 
     /**
      * Creates a {@link PhysicalTopology} that contains all recources that are
-     * available to at least one of the vApps in the list.
+     * available to at least one of the vApps in the list. When requests run
+     * on virtual threads, the topologies of the vApps are retrieved in
+     * parallel.
      * 
      * @param vappnames
      *            List of vApp names.
@@ -402,6 +768,9 @@ public class VSphere {
     public PhysicalTopology getPhysicalTopologyFromVappList(final List<String> vappnames)
             throws VMwareException {
         VSphere.logger.entry();
+        if (BackendExecutors.isVirtualThreads() && vappnames.size() > 1) {
+            return VSphere.logger.exit(this.getPhysicalTopologyFromVappListParallel(vappnames));
+        }
         PhysicalTopology result = new PhysicalTopology(new PhysicalRootBuilder()
                 .withUuid(DefaultVMware.ROOT_NAME).build());
         for (final String vAppName : vappnames) {
@@ -411,6 +780,75 @@ public class VSphere {
         return VSphere.logger.exit(result);
     }
 
+    /**
+     * Retrieves the topologies of the vApps in parallel on the task executor
+     * of {@link BackendExecutors} and merges them. The tasks run under the
+     * {@link Deadline} of the calling thread, and the caller stops waiting for
+     * them when it passes.
+     * 
+     * @param vappnames
+     *            List of vApp names.
+     * @return A {@link PhysicalTopology}.
+     * @throws VMwareException
+     *             If one or more of the vApps cannot be found.
+     * @throws DeadlineExceededException
+     *             If the deadline passes before all topologies are retrieved.
+     */
+    private PhysicalTopology getPhysicalTopologyFromVappListParallel(
+            final List<String> vappnames) throws VMwareException {
+        final Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            deadline.check();
+        }
+        final List<Future<PhysicalTopology>> futures = new ArrayList<Future<PhysicalTopology>>(
+                vappnames.size());
+        for (final String vAppName : vappnames) {
+            futures.add(BackendExecutors.getTaskExecutor()
+                    .submit(new Callable<PhysicalTopology>() {
+                        @Override
+                        public PhysicalTopology call() throws VMwareException {
+                            Deadline.set(deadline);
+                            try {
+                                return VSphere.this.getPhysicalTopologyFromVapp(vAppName);
+                            } finally {
+                                Deadline.set(null);
+                            }
+                        }
+                    }));
+        }
+        PhysicalTopology result = new PhysicalTopology(new PhysicalRootBuilder()
+                .withUuid(DefaultVMware.ROOT_NAME).build());
+        boolean completed = false;
+        try {
+            for (final Future<PhysicalTopology> future : futures) {
+                final PhysicalTopology topology = deadline == null ? future.get() : future
+                        .get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+                result = PhysicalTopology.mergeTree(result, topology);
+            }
+            completed = true;
+        } catch (final TimeoutException e) {
+            throw new DeadlineExceededException("vSphere did not return the topology of all "
+                    + "vApps before the deadline.");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof VMwareException) {
+                throw (VMwareException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new VMwareException("Could not get topology for vApps.", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VMwareException("Interrupted while getting topology for vApps.", e);
+        } finally {
+            if (!completed) {
+                for (final Future<PhysicalTopology> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Searches for an item in the vSphere managed object store.
      * 
@@ -423,7 +861,7 @@ public class VSphere {
      */
     public ManagedEntity searchItems(final String type, final String name) {
         try {
-            return this.navigator.searchManagedEntity(type, name);
+            return this.currentNavigator().searchManagedEntity(type, name);
         } catch (final RemoteException e) {
             VSphere.logger.catching(Level.WARN, e);
         }
@@ -443,15 +881,65 @@ public class VSphere {
         final ManagedObjectReference mor = new ManagedObjectReference();
         mor.setType(type);
         mor.setVal(id);
-        return (ManagedEntity) MorUtil.createExactManagedObject(this.sInstance
+        return (ManagedEntity) MorUtil.createExactManagedObject(this.currentServiceInstance()
                 .getServerConnection(), mor);
     }
 
     /**
-     * @return the sInstance
+     * Looks up a host by id and converts it, including its datastores, on a
+     * single pooled session.
+     * 
+     * @param id
+     *            The vSphere id of the host.
+     * @return The {@link PhysicalHost}, or <code>null</code> if there is no
+     *         host with the given id.
+     * @throws VMwareException
+     *             If no vSphere session becomes available in time.
+     */
+    public PhysicalHost getPhysicalHost(final String id) throws VMwareException {
+        final VSphereSession session = this.acquireSession();
+        try {
+            final ManagedEntity entity = this.searchItemsById(VSphere.TYPE_HOST, id);
+            if (entity instanceof HostSystem) {
+                return PhysicalResourceConverter.toPhysicalHost((HostSystem) entity, true);
+            }
+            return null;
+        } finally {
+            this.releaseSession(session);
+        }
+    }
+
+    /**
+     * Looks up a datastore by id and converts it on a single pooled session.
+     * 
+     * @param id
+     *            The vSphere id of the datastore.
+     * @return The {@link PhysicalStore}, or <code>null</code> if there is no
+     *         datastore with the given id.
+     * @throws VMwareException
+     *             If no vSphere session becomes available in time.
+     */
+    public PhysicalStore getPhysicalStore(final String id) throws VMwareException {
+        final VSphereSession session = this.acquireSession();
+        try {
+            final ManagedEntity entity = this.searchItemsById(VSphere.TYPE_DATASTORE, id);
+            if (entity instanceof Datastore) {
+                return PhysicalResourceConverter.toPhysicalStore((Datastore) entity);
+            }
+            return null;
+        } finally {
+            this.releaseSession(session);
+        }
+    }
+
+    /**
+     * @return the sInstance, which is the one of the primary pooled session if
+     *         sessions are pooled.
      */
     public ServiceInstance getServiceInstance() {
-        return this.sInstance;
+        final VSphereSessionPool sessionPool = this.pool;
+        return sessionPool == null ? this.sInstance : sessionPool.getPrimary()
+                .getServiceInstance();
     }
 
     /**
@@ -471,6 +959,43 @@ public class VSphere {
         this.navigator = navigator;
     }
 
+    /**
+     * @param tuning
+     *            The connection settings to use on the next {@link #init}.
+     */
+    public void setTuning(final VSphereTuning tuning) {
+        ErrorChecker.throwIfNullArgument(tuning, "tuning");
+        this.tuning = tuning;
+        this.membership = new ClusterMembership(TimeUnit.SECONDS.toMillis(tuning
+                .getMembershipRefreshSeconds()));
+    }
+
+    /**
+     * @param performanceHistory
+     *            The recent performance of the hosts, used for the load of
+     *            the hosts in a topology. May be <code>null</code>.
+     */
+    public void setPerformanceHistory(final HostPerformanceHistory performanceHistory) {
+        this.performanceHistory = performanceHistory;
+    }
+
+    /**
+     * @return The session pool, or <code>null</code> if a single session is
+     *         used.
+     */
+    public VSphereSessionPool getSessionPool() {
+        return this.pool;
+    }
+
+    /**
+     * @param pool
+     *            The session pool to use, or <code>null</code> to use the
+     *            default session only.
+     */
+    protected void setSessionPool(final VSphereSessionPool pool) {
+        this.pool = pool;
+    }
+
     /**
      * Moves a VM to a specific host.
      * 
@@ -488,25 +1013,32 @@ public class VSphere {
      */
     public void moveVMToHost(final String vmname, final String hostid) throws VMwareException,
             RemoteException, InterruptedException {
-        final ManagedEntity vmEntity = this.searchItems(VSphere.TYPE_VM, vmname);
-        final ManagedEntity hostEntity = this.searchItemsById(VSphere.TYPE_HOST, hostid);
-
-        if (vmEntity instanceof VirtualMachine && hostEntity instanceof HostSystem) {
-            final VirtualMachine vm = (VirtualMachine) vmEntity;
-            final HostSystem host = (HostSystem) hostEntity;
-            final ComputeResource resource = vm.getResourcePool().getOwner();
-
-            if (resource instanceof ClusterComputeResource) {
-                VSphere.logger.debug("Moving VM {} to host {}.", vmname, hostid);
-                final Task task = this.moveVMToHost((ClusterComputeResource) resource, vm, host);
-                if (task == null) {
-                    throw new VMwareException("Could not create VM migration task.");
+        final VSphereSession session = this.acquireSession();
+        try {
+            final ManagedEntity vmEntity = this.searchItems(VSphere.TYPE_VM, vmname);
+            final ManagedEntity hostEntity = this.searchItemsById(VSphere.TYPE_HOST, hostid);
+
+            if (vmEntity instanceof VirtualMachine && hostEntity instanceof HostSystem) {
+                final VirtualMachine vm = (VirtualMachine) vmEntity;
+                final HostSystem host = (HostSystem) hostEntity;
+                final ComputeResource resource = vm.getResourcePool().getOwner();
+
+                if (resource instanceof ClusterComputeResource) {
+                    VSphere.logger.debug("Moving VM {} to host {}.", vmname, hostid);
+                    final Task task = this.moveVMToHost((ClusterComputeResource) resource,
+                                                        vm,
+                                                        host);
+                    if (task == null) {
+                        throw new VMwareException("Could not create VM migration task.");
+                    }
+                } else {
+                    throw new VMwareException("Could not find cluster from VM.");
                 }
             } else {
-                throw new VMwareException("Could not find cluster from VM.");
+                throw new VMwareException("Could not find VM or Host while moving.");
             }
-        } else {
-            throw new VMwareException("Could not find VM or Host while moving.");
+        } finally {
+            this.releaseSession(session);
         }
     }
 
@@ -554,6 +1086,46 @@ public class VSphere {
         return null;
     }
 
+    /**
+     * Waits until a {@link Task} finishes. When the current request has a
+     * {@link Deadline}, the task is polled until that deadline and cancelled
+     * if it has not finished by then.
+     * 
+     * @param task
+     *            The {@link Task} to wait for.
+     * @throws RemoteException
+     *             When an error occurs at the remote.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     * @throws DeadlineExceededException
+     *             If the deadline passes before the task finishes.
+     */
+    void waitForTask(final Task task) throws RemoteException, InterruptedException {
+        final Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            task.waitForTask();
+            return;
+        }
+        while (true) {
+            final TaskInfoState state = task.getTaskInfo().getState();
+            if (state == TaskInfoState.success || state == TaskInfoState.error) {
+                return;
+            }
+            if (deadline.isExpired()) {
+                VSphere.logger.warn("Cancelling task {}, request deadline has passed.", task
+                        .getMOR().getVal());
+                try {
+                    task.cancelTask();
+                } catch (final RemoteException e) {
+                    VSphere.logger.catching(Level.WARN, e);
+                }
+                deadline.check();
+            }
+            Thread.sleep(Math.max(1, Math.min(VSphere.TASK_POLL_MILLIS,
+                                              deadline.remainingMillis())));
+        }
+    }
+
     /**
      * Checks if it is possible to migrate the {@link VirtualMachine} to the
      * given {@link HostSystem}.
@@ -567,9 +1139,9 @@ public class VSphere {
      */
     private boolean checkMoveVMToHost(final VirtualMachine vm, final HostSystem host) {
         try {
-            final Task task = this.sInstance.getVirtualMachineProvisioningChecker()
+            final Task task = this.currentServiceInstance().getVirtualMachineProvisioningChecker()
                     .checkMigrate_Task(vm, host, null, null, null);
-            task.waitForTask();
+            this.waitForTask(task);
             return this.checkResult(task.getTaskInfo().getResult());
         } catch (final RemoteException | InterruptedException e) {
             VSphere.logger.catching(Level.WARN, e);
@@ -594,20 +1166,26 @@ public class VSphere {
      */
     public void moveVMToStorage(final String vmName, final String datastoreId)
             throws VMwareException, RemoteException, InterruptedException {
-        final ManagedEntity vmEntity = this.searchItems(VSphere.TYPE_VM, vmName);
-        final ManagedEntity storeEntity = this.searchItemsById(VSphere.TYPE_DATASTORE, datastoreId);
+        final VSphereSession session = this.acquireSession();
+        try {
+            final ManagedEntity vmEntity = this.searchItems(VSphere.TYPE_VM, vmName);
+            final ManagedEntity storeEntity = this.searchItemsById(VSphere.TYPE_DATASTORE,
+                                                                  datastoreId);
 
-        if (vmEntity instanceof VirtualMachine && storeEntity instanceof Datastore) {
-            final VirtualMachine vm = (VirtualMachine) vmEntity;
-            final Datastore store = (Datastore) storeEntity;
+            if (vmEntity instanceof VirtualMachine && storeEntity instanceof Datastore) {
+                final VirtualMachine vm = (VirtualMachine) vmEntity;
+                final Datastore store = (Datastore) storeEntity;
 
-            VSphere.logger.debug("Moving VM {} to store {}.", vmName, datastoreId);
-            final Task task = this.moveVMToStorage(vm, store);
-            if (task != null) {
-                task.waitForTask();
+                VSphere.logger.debug("Moving VM {} to store {}.", vmName, datastoreId);
+                final Task task = this.moveVMToStorage(vm, store);
+                if (task != null) {
+                    this.waitForTask(task);
+                }
+            } else {
+                throw new VMwareException("Could not find VM or Datastore while moving");
             }
-        } else {
-            throw new VMwareException("Could not find VM or Datastore while moving");
+        } finally {
+            this.releaseSession(session);
         }
     }
 
@@ -653,9 +1231,9 @@ public class VSphere {
     private boolean checkMoveVMToStorage(final VirtualMachine vm,
             final VirtualMachineRelocateSpec spec) {
         try {
-            final Task task = this.sInstance.getVirtualMachineProvisioningChecker()
+            final Task task = this.currentServiceInstance().getVirtualMachineProvisioningChecker()
                     .checkRelocate_Task(vm, spec, null);
-            task.waitForTask();
+            this.waitForTask(task);
             return this.checkResult(task.getTaskInfo().getResult());
         } catch (final RemoteException | InterruptedException e) {
             VSphere.logger.catching(Level.WARN, e);
@@ -745,7 +1323,7 @@ public class VSphere {
         try {
             VSphere.logger.trace("Attempting to reconfigure cluster DRS settings.");
             task = cluster.reconfigureComputeResource_Task(specEx, true);
-            task.waitForTask();
+            this.waitForTask(task);
         } catch (final NoPermission e1) {
             VSphere.logger.catching(Level.ERROR, e1);
             VSphere.logger.debug(e1.getPrivilegeId());
@@ -835,15 +1413,22 @@ public class VSphere {
      *             When an error occurs at the remote.
      * @throws NoSuchVMException
      *             When the virtual machine cannot be found.
+     * @throws VMwareException
+     *             When no vSphere session becomes available in time.
      */
     public String getVirtualMachineHost(final String vsphereName) throws RemoteException,
-            NoSuchVMException {
-        final ManagedEntity entity = this.searchItems(VSphere.TYPE_VM, vsphereName);
-        if (entity instanceof VirtualMachine) {
-            final VirtualMachine vm = (VirtualMachine) entity;
-            return vm.getSummary().getRuntime().getHost().getVal();
+            NoSuchVMException, VMwareException {
+        final VSphereSession session = this.acquireSession();
+        try {
+            final ManagedEntity entity = this.searchItems(VSphere.TYPE_VM, vsphereName);
+            if (entity instanceof VirtualMachine) {
+                final VirtualMachine vm = (VirtualMachine) entity;
+                return vm.getSummary().getRuntime().getHost().getVal();
+            }
+            throw new NoSuchVMException("Cannot find vm with name: " + vsphereName);
+        } finally {
+            this.releaseSession(session);
         }
-        throw new NoSuchVMException("Cannot find vm with name: " + vsphereName);
     }
 
     /**
@@ -857,20 +1442,344 @@ public class VSphere {
      *             When the vm cannot be found from the given name.
      * @throws RemoteException
      *             When an error occurs at the remote.
+     * @throws VMwareException
+     *             When no vSphere session becomes available in time.
      */
     public List<String> getVirtualMachineStores(final String vsphereName) throws NoSuchVMException,
-            RemoteException {
-        final ManagedEntity entity = this.searchItems(VSphere.TYPE_VM, vsphereName);
-        if (entity instanceof VirtualMachine) {
-            final VirtualMachine vm = (VirtualMachine) entity;
-            final Datastore[] stores = vm.getDatastores();
-            final List<String> storeIds = new ArrayList<String>(stores.length);
-            for (final Datastore dstore : stores) {
-                storeIds.add(dstore.getMOR().getVal());
+            RemoteException, VMwareException {
+        final VSphereSession session = this.acquireSession();
+        try {
+            final ManagedEntity entity = this.searchItems(VSphere.TYPE_VM, vsphereName);
+            if (entity instanceof VirtualMachine) {
+                final VirtualMachine vm = (VirtualMachine) entity;
+                final Datastore[] stores = vm.getDatastores();
+                final List<String> storeIds = new ArrayList<String>(stores.length);
+                for (final Datastore dstore : stores) {
+                    storeIds.add(dstore.getMOR().getVal());
+                }
+                return storeIds;
+            }
+            throw new NoSuchVMException("Cannot find vm with name: " + vsphereName);
+        } finally {
+            this.releaseSession(session);
+        }
+    }
+
+    /**
+     * Looks up the hosts that each of the given vApps can run on. vApps that
+     * share a resource pool are resolved with a single host listing.
+     * 
+     * @param vappnames
+     *            The vSphere names of the vApps.
+     * @return The vSphere ids of the hosts of each vApp. vApps that cannot be
+     *         found are left out.
+     * @throws RemoteException
+     *             If an error occurs at the remote.
+     * @throws VMwareException
+     *             If no vSphere session becomes available in time.
+     */
+    public Map<String, Set<String>> getHostIdsForVapps(final Collection<String> vappnames)
+            throws RemoteException, VMwareException {
+        final VSphereSession session = this.acquireSession();
+        try {
+            final Map<String, Set<String>> hostsByPool = new HashMap<String, Set<String>>();
+            final Map<String, Set<String>> hostsByVapp = new HashMap<String, Set<String>>();
+            for (final String vappname : vappnames) {
+                final ManagedEntity entity = this.searchItems(VSphere.TYPE_FOLDER, vappname);
+                if (!(entity instanceof Folder)) {
+                    continue;
+                }
+                final String poolname = entity.getParent().getName();
+                Set<String> hosts = hostsByPool.get(poolname);
+                if (hosts == null) {
+                    hosts = this.getHostIdsForPool(poolname);
+                    hostsByPool.put(poolname, hosts);
+                }
+                hostsByVapp.put(vappname, hosts);
+            }
+            return hostsByVapp;
+        } finally {
+            this.releaseSession(session);
+        }
+    }
+
+    /**
+     * @param poolname
+     *            The vSphere name of a {@link ResourcePool}.
+     * @return The vSphere ids of the hosts in the cluster that owns the pool,
+     *         from the {@link ClusterMembership} cache if current.
+     * @throws RemoteException
+     *             If an error occurs at the remote.
+     */
+    private Set<String> getHostIdsForPool(final String poolname) throws RemoteException {
+        final Set<String> cached = this.membership.getHostIds(poolname);
+        if (cached != null) {
+            return cached;
+        }
+        final Set<String> hostIds = new HashSet<String>();
+        final ManagedEntity poolEntity = this.searchItems(VSphere.TYPE_RESOURCEPOOL, poolname);
+        if (poolEntity instanceof ResourcePool) {
+            for (final HostSystem system : this.getHostsFromComputeResource(this
+                    .getClusterFromResourcePool((ResourcePool) poolEntity))) {
+                hostIds.add(system.getMOR().getVal());
+            }
+            this.membership.update(poolname, hostIds);
+        }
+        return hostIds;
+    }
+
+    /**
+     * Samples the performance of all hosts in one call to the
+     * {@link PerformanceManager}. Uses the latest value of the real-time
+     * counters for CPU ready, CPU usage, active memory, disk latency and
+     * network usage.
+     * 
+     * @return The {@link HostPerformance} of each host by vSphere id.
+     * @throws RemoteException
+     *             If an error occurs at the remote.
+     * @throws VMwareException
+     *             If no vSphere session becomes available in time.
+     */
+    public Map<String, HostPerformance> queryHostPerformance() throws RemoteException,
+            VMwareException {
+        final VSphereSession session = this.acquireSession();
+        try {
+            final PerformanceManager manager = this.currentServiceInstance()
+                    .getPerformanceManager();
+            final int[] counters = this.getPerfCounterIds(manager, VSphere.PERF_COUNTERS);
+            final ManagedEntity[] hosts = this.currentNavigator()
+                    .searchManagedEntities(VSphere.TYPE_HOST);
+            final Map<String, HostPerformance> samples = new HashMap<String, HostPerformance>();
+            if (hosts == null || hosts.length == 0) {
+                return samples;
+            }
+            final PerfQuerySpec[] specs = VSphere.toPerfQuerySpecs(hosts, counters, "");
+            final PerfEntityMetricBase[] results = manager.queryPerf(specs);
+            for (int i = 0; results != null && i < results.length; i++) {
+                if (results[i] instanceof PerfEntityMetric) {
+                    samples.put(results[i].getEntity().getVal(), VSphere
+                            .toHostPerformance((PerfEntityMetric) results[i], counters));
+                }
+            }
+            return samples;
+        } finally {
+            this.releaseSession(session);
+        }
+    }
+
+    /**
+     * Resolves the ids of performance counters. The ids of all counters are
+     * looked up once.
+     * 
+     * @param manager
+     *            The {@link PerformanceManager}.
+     * @param names
+     *            The counter names, formatted as group.name.rollup.
+     * @return The counter ids, in the order of the names. Unknown counters
+     *         have id -1.
+     */
+    private int[] getPerfCounterIds(final PerformanceManager manager, final String... names) {
+        Map<String, Integer> counters = this.perfCounters;
+        if (counters == null) {
+            counters = new HashMap<String, Integer>();
+            final PerfCounterInfo[] infos = manager.getPerfCounter();
+            for (int i = 0; infos != null && i < infos.length; i++) {
+                counters.put(infos[i].getGroupInfo().getKey() + "."
+                        + infos[i].getNameInfo().getKey() + "." + infos[i].getRollupType(),
+                             infos[i].getKey());
+            }
+            this.perfCounters = counters;
+        }
+        final int[] ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            final Integer id = counters.get(names[i]);
+            ids[i] = id == null ? -1 : id;
+        }
+        return ids;
+    }
+
+    /**
+     * Builds a real-time performance query of the given counters for each of
+     * the given entities.
+     * 
+     * @param entities
+     *            The entities to query.
+     * @param counters
+     *            The counter ids, unknown counters (-1) are skipped.
+     * @param instance
+     *            The instance of the counters, <code>""</code> for the
+     *            aggregate and <code>"*"</code> for all instances.
+     * @return The query specifications.
+     */
+    private static PerfQuerySpec[] toPerfQuerySpecs(final ManagedEntity[] entities,
+            final int[] counters, final String instance) {
+        final List<PerfMetricId> metrics = new ArrayList<PerfMetricId>(counters.length);
+        for (final int counter : counters) {
+            if (counter >= 0) {
+                final PerfMetricId metric = new PerfMetricId();
+                metric.setCounterId(counter);
+                metric.setInstance(instance);
+                metrics.add(metric);
+            }
+        }
+        final PerfMetricId[] metricIds = metrics.toArray(new PerfMetricId[metrics.size()]);
+        final PerfQuerySpec[] specs = new PerfQuerySpec[entities.length];
+        for (int i = 0; i < entities.length; i++) {
+            specs[i] = new PerfQuerySpec();
+            specs[i].setEntity(entities[i].getMOR());
+            specs[i].setMetricId(metricIds);
+            specs[i].setIntervalId(VSphere.PERF_INTERVAL_SECONDS);
+            specs[i].setMaxSample(1);
+        }
+        return specs;
+    }
+
+    /**
+     * @param series
+     *            A series of a performance query result.
+     * @return The most recent value of the series, {@link Double#NaN} if it
+     *         has no valid value.
+     */
+    private static double latestValue(final PerfMetricSeries series) {
+        if (series instanceof PerfMetricIntSeries) {
+            final long[] raw = ((PerfMetricIntSeries) series).getValue();
+            if (raw != null && raw.length > 0 && raw[raw.length - 1] >= 0) {
+                return raw[raw.length - 1];
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Converts the result of a performance query of a host.
+     * 
+     * @param metric
+     *            The result for a single host.
+     * @param counters
+     *            The counter ids, in the order of {@link #PERF_COUNTERS}.
+     * @return The {@link HostPerformance} of the host.
+     */
+    private static HostPerformance toHostPerformance(final PerfEntityMetric metric,
+            final int[] counters) {
+        final double[] values = new double[counters.length];
+        Arrays.fill(values, Double.NaN);
+        final PerfMetricSeries[] series = metric.getValue();
+        for (int i = 0; series != null && i < series.length; i++) {
+            for (int c = 0; c < counters.length; c++) {
+                if (counters[c] == series[i].getId().getCounterId()) {
+                    values[c] = VSphere.latestValue(series[i]);
+                }
+            }
+        }
+        final double intervalMillis = TimeUnit.SECONDS.toMillis(VSphere.PERF_INTERVAL_SECONDS);
+        return new HostPerformance(values[0] / intervalMillis, values[1] / VSphere.PERF_PERCENT,
+                values[2], values[3], values[4]);
+    }
+
+    /**
+     * Samples the space of all datastores and their read and write latency.
+     * Reads the summaries of the datastores in one call to the
+     * {@link com.vmware.vim25.mo.PropertyCollector} and the latency of every
+     * datastore on every host in one call to the {@link PerformanceManager}.
+     * 
+     * @return The {@link DatastoreSample} of each datastore by vSphere id.
+     * @throws RemoteException
+     *             If an error occurs at the remote.
+     * @throws VMwareException
+     *             If no vSphere session becomes available in time.
+     */
+    public Map<String, DatastoreSample> queryDatastoreTelemetry() throws RemoteException,
+            VMwareException {
+        final VSphereSession session = this.acquireSession();
+        try {
+            final ManagedEntity[] entities = this.currentNavigator()
+                    .searchManagedEntities(VSphere.TYPE_DATASTORE);
+            final Map<String, DatastoreSample> samples = new HashMap<String, DatastoreSample>();
+            if (entities == null || entities.length == 0) {
+                return samples;
             }
-            return storeIds;
+            final List<Datastore> storage = new ArrayList<Datastore>(entities.length);
+            for (final ManagedEntity entity : entities) {
+                storage.add((Datastore) entity);
+            }
+            final List<DatastoreInfo> infos = this.getDatastoreInfo(storage);
+            final Map<String, double[]> latencies = this.queryDatastoreLatencies();
+            for (int i = 0; i < storage.size(); i++) {
+                final DatastoreSummary summary = infos.get(i).summary;
+                final double[] latency = latencies.get(VSphere.getVolumeId(summary.getUrl()));
+                final Long uncommitted = summary.getUncommitted();
+                final long provisioned = summary.getCapacity() - summary.getFreeSpace()
+                        + (uncommitted == null ? 0 : uncommitted);
+                final double read = latency == null ? Double.NaN : latency[0];
+                final double write = latency == null ? Double.NaN : latency[1];
+                samples.put(storage.get(i).getMOR().getVal(), new DatastoreSample(summary
+                        .getCapacity(), summary.getFreeSpace(), provisioned, read, write));
+            }
+            return samples;
+        } finally {
+            this.releaseSession(session);
+        }
+    }
+
+    /**
+     * Queries the read and write latency of all datastores on all hosts.
+     * 
+     * @return The highest read and write latency in milliseconds of any host
+     *         by datastore volume id.
+     * @throws RemoteException
+     *             If an error occurs at the remote.
+     */
+    private Map<String, double[]> queryDatastoreLatencies() throws RemoteException {
+        final Map<String, double[]> latencies = new HashMap<String, double[]>();
+        final ManagedEntity[] hosts = this.currentNavigator()
+                .searchManagedEntities(VSphere.TYPE_HOST);
+        if (hosts == null || hosts.length == 0) {
+            return latencies;
+        }
+        final PerformanceManager manager = this.currentServiceInstance().getPerformanceManager();
+        final int[] counters = this.getPerfCounterIds(manager, VSphere.DATASTORE_PERF_COUNTERS);
+        final PerfEntityMetricBase[] results = manager.queryPerf(VSphere
+                .toPerfQuerySpecs(hosts, counters, "*"));
+        for (int i = 0; results != null && i < results.length; i++) {
+            if (!(results[i] instanceof PerfEntityMetric)) {
+                continue;
+            }
+            final PerfMetricSeries[] series = ((PerfEntityMetric) results[i]).getValue();
+            for (int j = 0; series != null && j < series.length; j++) {
+                final String volume = series[j].getId().getInstance();
+                final double value = VSphere.latestValue(series[j]);
+                for (int c = 0; c < counters.length; c++) {
+                    if (counters[c] != series[j].getId().getCounterId() || Double.isNaN(value)) {
+                        continue;
+                    }
+                    double[] latency = latencies.get(volume);
+                    if (latency == null) {
+                        latency = new double[] { Double.NaN, Double.NaN };
+                        latencies.put(volume, latency);
+                    }
+                    latency[c] = Double.isNaN(latency[c]) ? value : Math.max(latency[c], value);
+                }
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * @param url
+     *            The URL of a datastore, for example
+     *            <code>ds:///vmfs/volumes/4f1b2c3d-a1b2c3d4/</code>.
+     * @return The volume id of the datastore, which is the instance of its
+     *         performance counters, or <code>null</code> if unknown.
+     */
+    static String getVolumeId(final String url) {
+        if (url == null) {
+            return null;
+        }
+        String path = url;
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
         }
-        throw new NoSuchVMException("Cannot find vm with name: " + vsphereName);
+        return path.substring(path.lastIndexOf('/') + 1);
     }
 
     /**
@@ -886,6 +1795,13 @@ public class VSphere {
      */
     public boolean hostHasVapp(final PhysicalHost host, final String vappname) {
         ManagedEntity entity;
+        final VSphereSession session;
+        try {
+            session = this.acquireSession();
+        } catch (final VMwareException e) {
+            VSphere.logger.catching(Level.ERROR, e);
+            return false;
+        }
         try {
             entity = this.searchItems(VSphere.TYPE_FOLDER, vappname);
 
@@ -895,6 +1811,8 @@ public class VSphere {
             }
         } catch (final RemoteException e) {
             VSphere.logger.catching(Level.ERROR, e);
+        } finally {
+            this.releaseSession(session);
         }
         return false;
     }
@@ -914,37 +1832,16 @@ public class VSphere {
      */
     private boolean hostHasVapp(final PhysicalHost host, final Folder vapp) throws RemoteException {
         final String poolname = vapp.getParent().getName();
-        final ManagedEntity poolEntity = this.searchItems(VSphere.TYPE_RESOURCEPOOL, poolname);
-        if (poolEntity instanceof ResourcePool) {
-            final ResourcePool pool = (ResourcePool) poolEntity;
-            return this.poolHasHost(host, pool);
+        if (this.membership.isCurrent(poolname)) {
+            return this.membership.contains(poolname, host.getUniqueIdentifier());
         }
-        return false;
+        return this.getHostIdsForPool(poolname).contains(host.getUniqueIdentifier());
     }
 
     /**
-     * Checks if the given {@link ResourcePool} contains the given
-     * {@link PhysicalHost}.
-     * 
-     * @param host
-     *            the {@link PhysicalHost}.
-     * @param pool
-     *            The {@link ResourcePool}.
-     * @return <code>true</code> iff the {@link ResourcePool} contains a
-     *         {@link HostSystem} that is equal to the given
-     *         {@link PhysicalHost}.
-     * @throws RemoteException
-     *             If an error occurs at the remote.
+     * @return The cached hosts of the cluster of each resource pool.
      */
-    private boolean poolHasHost(final PhysicalHost host, final ResourcePool pool)
-            throws RemoteException {
-        final List<HostSystem> hosts = this.getHostsFromComputeResource(this
-                .getClusterFromResourcePool(pool));
-        for (final HostSystem system : hosts) {
-            if (system.getMOR().getVal().equals(host.getUniqueIdentifier())) {
-                return true;
-            }
-        }
-        return false;
+    public ClusterMembership getClusterMembership() {
+        return this.membership;
     }
 }
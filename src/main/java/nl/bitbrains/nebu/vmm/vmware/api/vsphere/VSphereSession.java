@@ -0,0 +1,219 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.vmware.vim25.mo.InventoryNavigator;
+import com.vmware.vim25.mo.ServiceInstance;
+
+/**
+ * A single logged in connection to the vSphere API. Sessions are handed out
+ * by a {@link VSphereSessionPool} and are used by one thread at a time.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VSphereSession {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    private final String username;
+    private final String password;
+    private final String url;
+
+    private volatile ServiceInstance sInstance;
+    private volatile InventoryNavigator navigator;
+    private volatile long lastUsed;
+    private volatile boolean stale;
+    private int readTimeoutSeconds;
+
+    /**
+     * Creates a new session that is not logged in yet.
+     * 
+     * @param username
+     *            The vSphere username.
+     * @param password
+     *            The vSphere password.
+     * @param url
+     *            String that represents the vSphere API URI.
+     */
+    public VSphereSession(final String username, final String password, final String url) {
+        this.username = username;
+        this.password = password;
+        this.url = url;
+    }
+
+    /**
+     * Logs in at vSphere, replacing the current {@link ServiceInstance}. The
+     * replaced {@link ServiceInstance} is logged out.
+     * 
+     * @throws RemoteException
+     *             When an error occurs at the remote.
+     * @throws MalformedURLException
+     *             When the URL is not of the right format.
+     */
+    public synchronized void connect() throws RemoteException, MalformedURLException {
+        VSphereSession.logger.debug("Logging in at vSphere at address {}.", this.url);
+        final ServiceInstance old = this.sInstance;
+        this.setServiceInstance(this.login());
+        this.stale = false;
+        VSphereSession.logout(old);
+    }
+
+    /**
+     * Logs out a {@link ServiceInstance} that is no longer used. Failures are
+     * logged, the session may already have expired.
+     * 
+     * @param sInstance
+     *            The {@link ServiceInstance}, may be <code>null</code>.
+     */
+    static void logout(final ServiceInstance sInstance) {
+        if (sInstance == null) {
+            return;
+        }
+        try {
+            sInstance.getServerConnection().logout();
+        } catch (final RuntimeException e) {
+            VSphereSession.logger.catching(Level.DEBUG, e);
+        }
+    }
+
+    /**
+     * Creates a new logged in {@link ServiceInstance}.
+     * 
+     * @return The new {@link ServiceInstance}.
+     * @throws RemoteException
+     *             When an error occurs at the remote.
+     * @throws MalformedURLException
+     *             When the URL is not of the right format.
+     */
+    protected ServiceInstance login() throws RemoteException, MalformedURLException {
+        return new ServiceInstance(new URL(this.url), this.username, this.password, true);
+    }
+
+    /**
+     * Checks if the session is still logged in by asking vSphere for its
+     * current time, and logs in again if it is not.
+     * 
+     * @return <code>true</code> iff the session can be used.
+     */
+    public synchronized boolean validate() {
+        try {
+            this.sInstance.currentTime();
+            this.stale = false;
+            return true;
+        } catch (final RemoteException e) {
+            VSphereSession.logger.catching(Level.DEBUG, e);
+        }
+        try {
+            this.connect();
+            return true;
+        } catch (RemoteException | MalformedURLException e) {
+            VSphereSession.logger.error("Could not login to vSphere at address {}.", this.url);
+            VSphereSession.logger.catching(Level.ERROR, e);
+        }
+        return false;
+    }
+
+    /**
+     * @return The {@link ServiceInstance} of this session.
+     */
+    public ServiceInstance getServiceInstance() {
+        return this.sInstance;
+    }
+
+    /**
+     * Sets the {@link ServiceInstance} and creates a matching
+     * {@link InventoryNavigator}.
+     * 
+     * @param sInstance
+     *            The {@link ServiceInstance} to set.
+     */
+    protected void setServiceInstance(final ServiceInstance sInstance) {
+        VSphereSession.applyReadTimeout(sInstance, this.readTimeoutSeconds);
+        this.sInstance = sInstance;
+        this.navigator = this.createNavigator(sInstance);
+    }
+
+    /**
+     * @param sInstance
+     *            A logged in {@link ServiceInstance}.
+     * @return An {@link InventoryNavigator} that searches the inventory of the
+     *         {@link ServiceInstance}.
+     */
+    protected InventoryNavigator createNavigator(final ServiceInstance sInstance) {
+        return new InventoryNavigator(sInstance.getRootFolder());
+    }
+
+    /**
+     * Limits the time a call on the given {@link ServiceInstance} may wait for
+     * data from vSphere.
+     * 
+     * @param sInstance
+     *            The {@link ServiceInstance}.
+     * @param seconds
+     *            The read timeout in seconds, or 0 to keep the default.
+     */
+    static void applyReadTimeout(final ServiceInstance sInstance, final int seconds) {
+        if (seconds > 0) {
+            sInstance.getServerConnection().getVimService().getWsc()
+                    .setReadTimeout((int) TimeUnit.SECONDS.toMillis(seconds));
+        }
+    }
+
+    /**
+     * @param readTimeoutSeconds
+     *            The read timeout in seconds of new logins, or 0 for the
+     *            default.
+     */
+    public void setReadTimeoutSeconds(final int readTimeoutSeconds) {
+        this.readTimeoutSeconds = readTimeoutSeconds;
+    }
+
+    /**
+     * @return The {@link InventoryNavigator} of this session.
+     */
+    public InventoryNavigator getNavigator() {
+        return this.navigator;
+    }
+
+    /**
+     * @return <code>true</code> iff the session must be validated before it
+     *         is used again.
+     */
+    public boolean isStale() {
+        return this.stale;
+    }
+
+    /**
+     * Makes the pool validate the session before it is handed out again.
+     */
+    public void markStale() {
+        this.stale = true;
+    }
+
+    /**
+     * @return The time in milliseconds at which the session was last
+     *         returned to its pool.
+     */
+    public long getLastUsed() {
+        return this.lastUsed;
+    }
+
+    /**
+     * @param lastUsed
+     *            The time in milliseconds at which the session was last used.
+     */
+    public void setLastUsed(final long lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+}
@@ -0,0 +1,213 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Fixed size pool of logged in {@link VSphereSession}s. Every session has its
+ * own HTTP connection to vCenter, so threads that hold different sessions do
+ * not queue behind each other on a single SOAP channel. Sessions that have
+ * been idle longer than the health check interval, or that were marked
+ * stale, are validated, and logged in again if needed, before they are handed
+ * out. The pool lives as long as its {@link VSphere}; a reconnect logs the
+ * sessions in again instead of replacing them.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VSphereSessionPool {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    /**
+     * Default time in milliseconds a thread waits for a session.
+     */
+    public static final long DEFAULT_CHECKOUT_TIMEOUT_MILLIS = 60 * 1000;
+
+    /**
+     * Seconds after which a client may retry when no session could be logged
+     * in.
+     */
+    public static final int RETRY_AFTER_SECONDS = 5;
+
+    private final List<VSphereSession> sessions;
+    private final BlockingQueue<VSphereSession> idle;
+    private final long healthCheckMillis;
+    private final long checkoutTimeoutMillis;
+
+    /**
+     * Creates a pool of the given sessions that waits at most
+     * {@link #DEFAULT_CHECKOUT_TIMEOUT_MILLIS} for a session. The sessions
+     * should be connected.
+     * 
+     * @param sessions
+     *            The sessions in the pool, at least one.
+     * @param healthCheckMillis
+     *            The time a session may be idle before it is validated.
+     */
+    public VSphereSessionPool(final List<VSphereSession> sessions, final long healthCheckMillis) {
+        this(sessions, healthCheckMillis, VSphereSessionPool.DEFAULT_CHECKOUT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a pool of the given sessions. The sessions should be connected.
+     * 
+     * @param sessions
+     *            The sessions in the pool, at least one.
+     * @param healthCheckMillis
+     *            The time a session may be idle before it is validated.
+     * @param checkoutTimeoutMillis
+     *            The time a thread waits for a session.
+     */
+    public VSphereSessionPool(final List<VSphereSession> sessions, final long healthCheckMillis,
+            final long checkoutTimeoutMillis) {
+        ErrorChecker.throwIfNullArgument(sessions, "sessions");
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("A session pool needs at least one session.");
+        }
+        this.sessions = Collections.unmodifiableList(new ArrayList<VSphereSession>(sessions));
+        this.idle = new LinkedBlockingQueue<VSphereSession>(sessions);
+        this.healthCheckMillis = healthCheckMillis;
+        this.checkoutTimeoutMillis = checkoutTimeoutMillis;
+        final long now = System.currentTimeMillis();
+        for (final VSphereSession session : sessions) {
+            session.setLastUsed(now);
+        }
+    }
+
+    /**
+     * Takes a session from the pool, waiting until one is available.
+     * 
+     * @return A session that is not used by any other thread.
+     * @throws InterruptedException
+     *             If interrupted while waiting.
+     * @throws VMwareException
+     *             If no session became available in time.
+     * @throws BackendUnavailableException
+     *             If the session failed its health check and could not be
+     *             logged in again. The session stays in the pool and is
+     *             validated again by the next checkout.
+     */
+    public VSphereSession checkout() throws InterruptedException, VMwareException {
+        final VSphereSession session = this.idle.poll(this.checkoutTimeoutMillis,
+                                                      TimeUnit.MILLISECONDS);
+        if (session == null) {
+            throw new VMwareException("No vSphere session became available within "
+                    + this.checkoutTimeoutMillis + " ms.");
+        }
+        final long idleMillis = System.currentTimeMillis() - session.getLastUsed();
+        if ((session.isStale() || idleMillis >= this.healthCheckMillis) && !session.validate()) {
+            VSphereSessionPool.logger.warn("A vSphere session failed its health check and "
+                    + "could not be logged in again.");
+            session.markStale();
+            this.idle.offer(session);
+            throw new BackendUnavailableException("No vSphere session could be logged in.",
+                    VSphereSessionPool.RETRY_AFTER_SECONDS);
+        }
+        return session;
+    }
+
+    /**
+     * Validates every session of the pool and logs it in again if needed,
+     * including sessions that are checked out.
+     * 
+     * @return <code>true</code> iff all sessions can be used.
+     */
+    public boolean reconnect() {
+        boolean valid = true;
+        for (final VSphereSession session : this.sessions) {
+            valid &= session.validate();
+        }
+        return valid;
+    }
+
+    /**
+     * Logs in again a session that vSphere no longer accepts. The other
+     * sessions are marked stale, so they are validated before they are handed
+     * out again instead of failing in the hands of another thread.
+     * 
+     * @param failed
+     *            The session that failed, or <code>null</code> if it is not
+     *            known, in which case the primary session is logged in again.
+     * @return <code>true</code> iff the session can be used again.
+     */
+    public boolean reconnect(final VSphereSession failed) {
+        final VSphereSession session = failed != null && this.sessions.contains(failed) ? failed
+                : this.getPrimary();
+        for (final VSphereSession other : this.sessions) {
+            if (other != session) {
+                other.markStale();
+            }
+        }
+        return session.validate();
+    }
+
+    /**
+     * Validates every session that is not checked out, which also resets its
+     * idle timer at vSphere. Sessions that are checked out are in use and are
+     * skipped.
+     * 
+     * @return <code>true</code> iff all validated sessions can be used.
+     */
+    public boolean keepAlive() {
+        boolean valid = true;
+        for (final VSphereSession session : this.sessions) {
+            if (this.idle.remove(session)) {
+                valid &= session.validate();
+                this.release(session);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Returns a session to the pool. Sessions of other pools are ignored.
+     * 
+     * @param session
+     *            A session obtained from {@link #checkout()}.
+     */
+    public void release(final VSphereSession session) {
+        ErrorChecker.throwIfNullArgument(session, "session");
+        if (!this.sessions.contains(session)) {
+            return;
+        }
+        session.setLastUsed(System.currentTimeMillis());
+        this.idle.offer(session);
+    }
+
+    /**
+     * @return The first session of the pool. It is also used by callers that
+     *         do not check out a session.
+     */
+    public VSphereSession getPrimary() {
+        return this.sessions.get(0);
+    }
+
+    /**
+     * @return The number of sessions in the pool.
+     */
+    public int size() {
+        return this.sessions.size();
+    }
+
+    /**
+     * @return The number of sessions that are not checked out.
+     */
+    public int available() {
+        return this.idle.size();
+    }
+}
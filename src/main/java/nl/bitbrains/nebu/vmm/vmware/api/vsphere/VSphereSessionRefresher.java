@@ -0,0 +1,95 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.net.MalformedURLException;
+import java.rmi.RemoteException;
+
+import nl.bitbrains.nebu.vmm.vmware.api.session.RefreshableSession;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.vmware.vim25.NotAuthenticated;
+
+/**
+ * {@link RefreshableSession} for the vSphere login of a {@link VSphere}.
+ * Refreshing asks vSphere for its current time on every session, which also
+ * resets the idle timer of the sessions. Reconnecting logs in again; if
+ * sessions are pooled, only the session that failed is logged in again.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VSphereSessionRefresher implements RefreshableSession {
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    private final VSphere vsphere;
+    private final String username;
+    private final String password;
+    private final String url;
+    private final int port;
+
+    /**
+     * Creates a new {@link VSphereSessionRefresher}.
+     * 
+     * @param vsphere
+     *            The {@link VSphere} whose session to refresh.
+     * @param username
+     *            The vSphere username.
+     * @param password
+     *            The vSphere password.
+     * @param url
+     *            The URL of the vSphere API.
+     * @param port
+     *            The port of the vSphere API.
+     */
+    public VSphereSessionRefresher(final VSphere vsphere, final String username,
+            final String password, final String url, final int port) {
+        this.vsphere = vsphere;
+        this.username = username;
+        this.password = password;
+        this.url = url;
+        this.port = port;
+    }
+
+    @Override
+    public String getName() {
+        return "vSphere " + this.url;
+    }
+
+    @Override
+    public boolean keepAlive() {
+        return this.vsphere.keepAlive();
+    }
+
+    @Override
+    public boolean reconnect() {
+        if (this.vsphere.getSessionPool() != null) {
+            return this.vsphere.reconnectSession();
+        }
+        try {
+            this.vsphere.init(this.username, this.password, this.url, this.port);
+            return true;
+        } catch (RemoteException | MalformedURLException e) {
+            VSphereSessionRefresher.logger.error("Could not login to vSphere at address {}:{}.",
+                                                 this.url,
+                                                 this.port);
+            VSphereSessionRefresher.logger.catching(Level.ERROR, e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isExpired(final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NotAuthenticated) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,189 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
+
+/**
+ * In-memory index of the vApps and the hosts that each vApp can run on,
+ * derived from the vApp folder, its resource pool and the hosts of the owning
+ * cluster. Lets the destination vApp of a new VM be chosen without listing
+ * the vApps in vCloud or searching vSphere for every candidate vApp.
+ * 
+ * <p>
+ * The index is replaced as a whole by periodic rebuilds, and vApps that
+ * appeared since the last rebuild can be merged in. Readers always see a
+ * complete snapshot. A vApp whose hosts could not be looked up is listed but
+ * not indexed, so callers fall back to asking vSphere.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VappHostIndex {
+
+    /**
+     * Immutable view of the index.
+     */
+    private static final class Snapshot {
+        private final List<VirtualApplication> vapps;
+        private final Set<String> vappIds;
+        private final Map<String, Set<String>> hostsByVapp;
+        private final Map<String, Set<String>> vappsByHost;
+
+        /**
+         * Creates a new {@link Snapshot}.
+         * 
+         * @param vapps
+         *            The vApps.
+         * @param hostsByVapp
+         *            The host ids of each vApp name.
+         */
+        private Snapshot(final List<VirtualApplication> vapps,
+                final Map<String, Set<String>> hostsByVapp) {
+            this.vapps = Collections.unmodifiableList(vapps);
+            this.vappIds = new HashSet<String>();
+            for (final VirtualApplication vapp : vapps) {
+                this.vappIds.add(vapp.getUniqueIdentifier());
+            }
+            this.hostsByVapp = hostsByVapp;
+            this.vappsByHost = new HashMap<String, Set<String>>();
+            for (final Map.Entry<String, Set<String>> entry : hostsByVapp.entrySet()) {
+                for (final String host : entry.getValue()) {
+                    Set<String> vapps = this.vappsByHost.get(host);
+                    if (vapps == null) {
+                        vapps = new HashSet<String>();
+                        this.vappsByHost.put(host, vapps);
+                    }
+                    vapps.add(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(new ArrayList<VirtualApplication>(),
+            new HashMap<String, Set<String>>());
+    private volatile long builtAt;
+
+    /**
+     * Replaces the whole index.
+     * 
+     * @param vapps
+     *            All vApps.
+     * @param hostsByVapp
+     *            The host ids of the vApp names whose hosts were looked up.
+     */
+    public synchronized void replace(final List<VirtualApplication> vapps,
+            final Map<String, Set<String>> hostsByVapp) {
+        this.snapshot = new Snapshot(new ArrayList<VirtualApplication>(vapps),
+                VappHostIndex.copy(hostsByVapp));
+        this.builtAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds vApps to the index, or updates the hosts of vApps it has.
+     * 
+     * @param vapps
+     *            The vApps to add. vApps that are listed already are
+     *            ignored.
+     * @param hostsByVapp
+     *            The host ids of the vApp names whose hosts were looked up.
+     */
+    public synchronized void merge(final List<VirtualApplication> vapps,
+            final Map<String, Set<String>> hostsByVapp) {
+        final Snapshot current = this.snapshot;
+        final List<VirtualApplication> mergedVapps = new ArrayList<VirtualApplication>(
+                current.vapps);
+        for (final VirtualApplication vapp : vapps) {
+            if (!current.vappIds.contains(vapp.getUniqueIdentifier())) {
+                mergedVapps.add(vapp);
+            }
+        }
+        final Map<String, Set<String>> merged = new HashMap<String, Set<String>>(
+                current.hostsByVapp);
+        merged.putAll(VappHostIndex.copy(hostsByVapp));
+        this.snapshot = new Snapshot(mergedVapps, merged);
+    }
+
+    /**
+     * @return The vApps in the index, in the order vCloud listed them.
+     */
+    public List<VirtualApplication> getVirtualApplications() {
+        return this.snapshot.vapps;
+    }
+
+    /**
+     * @param vappIds
+     *            The vCloud ids of vApps.
+     * @return The ids that are not listed in the index.
+     */
+    public List<String> getMissing(final Collection<String> vappIds) {
+        final Set<String> listed = this.snapshot.vappIds;
+        final List<String> missing = new ArrayList<String>();
+        for (final String vappId : vappIds) {
+            if (!listed.contains(vappId)) {
+                missing.add(vappId);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * @param vappname
+     *            The vSphere name of a vApp.
+     * @return <code>true</code> iff the hosts of the vApp are in the index.
+     */
+    public boolean isIndexed(final String vappname) {
+        return this.snapshot.hostsByVapp.containsKey(vappname);
+    }
+
+    /**
+     * @param hostId
+     *            The vSphere id of a host.
+     * @param vappname
+     *            The vSphere name of a vApp.
+     * @return <code>true</code> iff the vApp can run on the host.
+     */
+    public boolean hostHasVapp(final String hostId, final String vappname) {
+        final Set<String> vapps = this.snapshot.vappsByHost.get(hostId);
+        return vapps != null && vapps.contains(vappname);
+    }
+
+    /**
+     * @param hostId
+     *            The vSphere id of a host.
+     * @return The vSphere names of the vApps that can run on the host.
+     */
+    public Set<String> getVapps(final String hostId) {
+        final Set<String> vapps = this.snapshot.vappsByHost.get(hostId);
+        return vapps == null ? Collections.<String> emptySet() : Collections
+                .unmodifiableSet(vapps);
+    }
+
+    /**
+     * @return The time in milliseconds of the last full rebuild, 0 if the
+     *         index was never built.
+     */
+    public long getBuiltAt() {
+        return this.builtAt;
+    }
+
+    /**
+     * @param hostsByVapp
+     *            The map to copy.
+     * @return A copy with copied sets.
+     */
+    private static Map<String, Set<String>> copy(final Map<String, Set<String>> hostsByVapp) {
+        final Map<String, Set<String>> copy = new HashMap<String, Set<String>>();
+        for (final Map.Entry<String, Set<String>> entry : hostsByVapp.entrySet()) {
+            copy.put(entry.getKey(), new HashSet<String>(entry.getValue()));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,161 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+
+/**
+ * Helper class to read the VMware specific sections of the configuration file.
+ * The sections understood by the Nebu common configuration are still parsed by
+ * {@link nl.bitbrains.nebu.common.config.Configuration}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class ConfigurationElements {
+
+    /**
+     * Name of the server element.
+     */
+    public static final String TAG_SERVER = "server";
+
+    /**
+     * Name of the client element.
+     */
+    public static final String TAG_CLIENT = "client";
+
+    /**
+     * Name of the client type attribute.
+     */
+    public static final String ATTRIBUTE_TYPE = "type";
+
+    /**
+     * Private constructor. This class only has static methods.
+     */
+    private ConfigurationElements() {
+    }
+
+    /**
+     * Reads the root element of a configuration file.
+     * 
+     * @param file
+     *            The configuration file.
+     * @return The root {@link Element} of the file.
+     * @throws IOException
+     *             When the file cannot be read.
+     * @throws JDOMException
+     *             When the file does not contain valid XML.
+     */
+    public static Element load(final File file) throws IOException, JDOMException {
+        return new SAXBuilder().build(file).getRootElement();
+    }
+
+    /**
+     * @param root
+     *            The configuration root.
+     * @return The server {@link Element}, or <code>null</code> if it is not
+     *         present.
+     */
+    public static Element getServerElement(final Element root) {
+        return root.getChild(ConfigurationElements.TAG_SERVER);
+    }
+
+    /**
+     * @param root
+     *            The configuration root.
+     * @param type
+     *            The type of the client.
+     * @return The client {@link Element} with the given type, or
+     *         <code>null</code> if it is not present.
+     */
+    public static Element getClientElement(final Element root, final String type) {
+        for (final Element client : root.getChildren(ConfigurationElements.TAG_CLIENT)) {
+            if (type.equals(client.getAttributeValue(ConfigurationElements.ATTRIBUTE_TYPE))) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param parent
+     *            The parent {@link Element}, may be <code>null</code>.
+     * @param name
+     *            The name of the child element.
+     * @param defaultValue
+     *            The value to use when the child is not present.
+     * @return The trimmed text of the child, or the default value.
+     */
+    public static String getString(final Element parent, final String name,
+            final String defaultValue) {
+        if (parent == null) {
+            return defaultValue;
+        }
+        final String text = parent.getChildTextTrim(name);
+        if (text == null || text.isEmpty()) {
+            return defaultValue;
+        }
+        return text;
+    }
+
+    /**
+     * @param parent
+     *            The parent {@link Element}, may be <code>null</code>.
+     * @param name
+     *            The name of the child element.
+     * @param defaultValue
+     *            The value to use when the child is not present.
+     * @return The value of the child as int, or the default value.
+     */
+    public static int getInt(final Element parent, final String name, final int defaultValue) {
+        final String text = ConfigurationElements.getString(parent, name, null);
+        return text == null ? defaultValue : Integer.parseInt(text);
+    }
+
+    /**
+     * @param parent
+     *            The parent {@link Element}, may be <code>null</code>.
+     * @param name
+     *            The name of the child element.
+     * @param defaultValue
+     *            The value to use when the child is not present.
+     * @return The value of the child as long, or the default value.
+     */
+    public static long getLong(final Element parent, final String name, final long defaultValue) {
+        final String text = ConfigurationElements.getString(parent, name, null);
+        return text == null ? defaultValue : Long.parseLong(text);
+    }
+
+    /**
+     * @param parent
+     *            The parent {@link Element}, may be <code>null</code>.
+     * @param name
+     *            The name of the child element.
+     * @param defaultValue
+     *            The value to use when the child is not present.
+     * @return The value of the child as double, or the default value.
+     */
+    public static double getDouble(final Element parent, final String name,
+            final double defaultValue) {
+        final String text = ConfigurationElements.getString(parent, name, null);
+        return text == null ? defaultValue : Double.parseDouble(text);
+    }
+
+    /**
+     * @param parent
+     *            The parent {@link Element}, may be <code>null</code>.
+     * @param name
+     *            The name of the child element.
+     * @param defaultValue
+     *            The value to use when the child is not present.
+     * @return The value of the child as boolean, or the default value.
+     */
+    public static boolean getBoolean(final Element parent, final String name,
+            final boolean defaultValue) {
+        final String text = ConfigurationElements.getString(parent, name, null);
+        return text == null ? defaultValue : Boolean.parseBoolean(text);
+    }
+}
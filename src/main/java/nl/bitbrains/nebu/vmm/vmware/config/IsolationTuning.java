@@ -0,0 +1,202 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+
+/**
+ * Limits that isolate one VMware backend from the others. Parsed from the
+ * <code>&lt;client&gt;</code> element of vCloud and of vSphere, so each
+ * backend gets its own bulkhead and circuit breaker. By default concurrency
+ * is unbounded and the circuit breaker never opens.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class IsolationTuning {
+
+    /**
+     * Name of the element with the maximum concurrent calls.
+     */
+    public static final String TAG_MAX_CONCURRENT = "maxconcurrent";
+
+    /**
+     * Name of the element with the longest wait for a free slot.
+     */
+    public static final String TAG_MAX_WAIT = "maxwait";
+
+    /**
+     * Name of the element with the failure rate that opens the circuit.
+     */
+    public static final String TAG_FAILURE_RATE = "failurerate";
+
+    /**
+     * Name of the element with the duration above which a call is slow.
+     */
+    public static final String TAG_SLOW_CALL = "slowcall";
+
+    /**
+     * Name of the element with the calls needed to evaluate the failure rate.
+     */
+    public static final String TAG_MINIMUM_CALLS = "minimumcalls";
+
+    /**
+     * Name of the element with the length of the failure rate window.
+     */
+    public static final String TAG_WINDOW = "window";
+
+    /**
+     * Name of the element with the time the circuit stays open.
+     */
+    public static final String TAG_OPEN_TIME = "opentime";
+
+    private int maxConcurrent = 0;
+    private long maxWaitMillis = 0;
+    private double failureRate = 0;
+    private long slowCallMillis = 0;
+    private int minimumCalls = 20;
+    private int windowSeconds = 30;
+    private int openSeconds = 30;
+
+    /**
+     * Creates an {@link IsolationTuning} from a client element of the
+     * configuration file. Missing values keep their defaults.
+     * 
+     * @param elem
+     *            The client element, may be <code>null</code>.
+     * @return The parsed {@link IsolationTuning}.
+     */
+    public static IsolationTuning fromXML(final Element elem) {
+        final IsolationTuning tuning = new IsolationTuning();
+        tuning.setMaxConcurrent(ConfigurationElements.getInt(elem,
+                                                             IsolationTuning.TAG_MAX_CONCURRENT,
+                                                             tuning.getMaxConcurrent()));
+        tuning.setMaxWaitMillis(ConfigurationElements.getLong(elem,
+                                                              IsolationTuning.TAG_MAX_WAIT,
+                                                              tuning.getMaxWaitMillis()));
+        tuning.setFailureRate(ConfigurationElements.getDouble(elem,
+                                                              IsolationTuning.TAG_FAILURE_RATE,
+                                                              tuning.getFailureRate()));
+        tuning.setSlowCallMillis(ConfigurationElements.getLong(elem,
+                                                               IsolationTuning.TAG_SLOW_CALL,
+                                                               tuning.getSlowCallMillis()));
+        tuning.setMinimumCalls(ConfigurationElements.getInt(elem,
+                                                            IsolationTuning.TAG_MINIMUM_CALLS,
+                                                            tuning.getMinimumCalls()));
+        tuning.setWindowSeconds(ConfigurationElements.getInt(elem,
+                                                             IsolationTuning.TAG_WINDOW,
+                                                             tuning.getWindowSeconds()));
+        tuning.setOpenSeconds(ConfigurationElements.getInt(elem,
+                                                           IsolationTuning.TAG_OPEN_TIME,
+                                                           tuning.getOpenSeconds()));
+        return tuning;
+    }
+
+    /**
+     * @return the maximum number of concurrent calls, or 0 for no limit.
+     */
+    public int getMaxConcurrent() {
+        return this.maxConcurrent;
+    }
+
+    /**
+     * @param maxConcurrent
+     *            the maximum number of concurrent calls to set.
+     */
+    public void setMaxConcurrent(final int maxConcurrent) {
+        this.maxConcurrent = Math.max(0, maxConcurrent);
+    }
+
+    /**
+     * @return the time in milliseconds a call waits for a free slot.
+     */
+    public long getMaxWaitMillis() {
+        return this.maxWaitMillis;
+    }
+
+    /**
+     * @param maxWaitMillis
+     *            the time to wait for a free slot to set.
+     */
+    public void setMaxWaitMillis(final long maxWaitMillis) {
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+    }
+
+    /**
+     * @return the fraction of failed or slow calls at which the circuit
+     *         opens, or 0 to never open it.
+     */
+    public double getFailureRate() {
+        return this.failureRate;
+    }
+
+    /**
+     * @param failureRate
+     *            the failure rate threshold to set.
+     */
+    public void setFailureRate(final double failureRate) {
+        this.failureRate = Math.min(1, Math.max(0, failureRate));
+    }
+
+    /**
+     * @return the duration in milliseconds above which a call counts as
+     *         failed, or 0 to ignore latency.
+     */
+    public long getSlowCallMillis() {
+        return this.slowCallMillis;
+    }
+
+    /**
+     * @param slowCallMillis
+     *            the slow call threshold to set.
+     */
+    public void setSlowCallMillis(final long slowCallMillis) {
+        this.slowCallMillis = Math.max(0, slowCallMillis);
+    }
+
+    /**
+     * @return the number of calls in a window before the failure rate is
+     *         evaluated.
+     */
+    public int getMinimumCalls() {
+        return this.minimumCalls;
+    }
+
+    /**
+     * @param minimumCalls
+     *            the minimum number of calls to set.
+     */
+    public void setMinimumCalls(final int minimumCalls) {
+        this.minimumCalls = Math.max(1, minimumCalls);
+    }
+
+    /**
+     * @return the length in seconds of the window the failure rate is
+     *         measured over.
+     */
+    public int getWindowSeconds() {
+        return this.windowSeconds;
+    }
+
+    /**
+     * @param windowSeconds
+     *            the window length to set.
+     */
+    public void setWindowSeconds(final int windowSeconds) {
+        this.windowSeconds = Math.max(1, windowSeconds);
+    }
+
+    /**
+     * @return the time in seconds the circuit stays open before a trial call
+     *         is let through.
+     */
+    public int getOpenSeconds() {
+        return this.openSeconds;
+    }
+
+    /**
+     * @param openSeconds
+     *            the open time to set.
+     */
+    public void setOpenSeconds(final int openSeconds) {
+        this.openSeconds = Math.max(1, openSeconds);
+    }
+}
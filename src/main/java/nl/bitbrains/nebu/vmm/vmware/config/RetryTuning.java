@@ -0,0 +1,154 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+
+/**
+ * Settings for retrying idempotent VMware calls that fail with a transient
+ * error. Parsed from the <code>&lt;retry&gt;</code> element of the
+ * configuration file. By default calls are not retried.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class RetryTuning {
+
+    /**
+     * Name of the retry element.
+     */
+    public static final String TAG_RETRY = "retry";
+
+    /**
+     * Name of the element with the maximum attempts per read.
+     */
+    public static final String TAG_MAX_ATTEMPTS = "maxattempts";
+
+    /**
+     * Name of the element with the bound of the first backoff.
+     */
+    public static final String TAG_INITIAL_BACKOFF = "initialbackoff";
+
+    /**
+     * Name of the element with the bound of later backoffs.
+     */
+    public static final String TAG_MAX_BACKOFF = "maxbackoff";
+
+    /**
+     * Name of the element with the retries earned per read.
+     */
+    public static final String TAG_BUDGET = "budget";
+
+    /**
+     * Name of the element with the time after which no retry starts.
+     */
+    public static final String TAG_DEADLINE = "deadline";
+
+    private int maxAttempts = 1;
+    private long initialBackoffMillis = 100;
+    private long maxBackoffMillis = 2000;
+    private double budget = 0.2;
+    private long deadlineMillis = 10000;
+
+    /**
+     * Creates a {@link RetryTuning} from the retry element of the
+     * configuration file. Missing values keep their defaults.
+     * 
+     * @param elem
+     *            The retry element, may be <code>null</code>.
+     * @return The parsed {@link RetryTuning}.
+     */
+    public static RetryTuning fromXML(final Element elem) {
+        final RetryTuning tuning = new RetryTuning();
+        tuning.setMaxAttempts(ConfigurationElements.getInt(elem,
+                                                           RetryTuning.TAG_MAX_ATTEMPTS,
+                                                           tuning.getMaxAttempts()));
+        tuning.setInitialBackoffMillis(ConfigurationElements
+                .getLong(elem, RetryTuning.TAG_INITIAL_BACKOFF, tuning.getInitialBackoffMillis()));
+        tuning.setMaxBackoffMillis(ConfigurationElements.getLong(elem,
+                                                                 RetryTuning.TAG_MAX_BACKOFF,
+                                                                 tuning.getMaxBackoffMillis()));
+        tuning.setBudget(ConfigurationElements.getDouble(elem,
+                                                         RetryTuning.TAG_BUDGET,
+                                                         tuning.getBudget()));
+        tuning.setDeadlineMillis(ConfigurationElements.getLong(elem,
+                                                               RetryTuning.TAG_DEADLINE,
+                                                               tuning.getDeadlineMillis()));
+        return tuning;
+    }
+
+    /**
+     * @return the maximum number of attempts per call, 1 disables retries.
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts
+     *            the maximum number of attempts to set.
+     */
+    public void setMaxAttempts(final int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * @return the upper bound of the first backoff in milliseconds.
+     */
+    public long getInitialBackoffMillis() {
+        return this.initialBackoffMillis;
+    }
+
+    /**
+     * @param initialBackoffMillis
+     *            the first backoff to set.
+     */
+    public void setInitialBackoffMillis(final long initialBackoffMillis) {
+        this.initialBackoffMillis = Math.max(0, initialBackoffMillis);
+    }
+
+    /**
+     * @return the upper bound of any backoff in milliseconds.
+     */
+    public long getMaxBackoffMillis() {
+        return this.maxBackoffMillis;
+    }
+
+    /**
+     * @param maxBackoffMillis
+     *            the maximum backoff to set.
+     */
+    public void setMaxBackoffMillis(final long maxBackoffMillis) {
+        this.maxBackoffMillis = Math.max(0, maxBackoffMillis);
+    }
+
+    /**
+     * @return the number of retries earned per call, so 0.2 allows at most
+     *         one retry for every five calls on average.
+     */
+    public double getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * @param budget
+     *            the retry budget to set.
+     */
+    public void setBudget(final double budget) {
+        this.budget = Math.max(0, budget);
+    }
+
+    /**
+     * @return the time in milliseconds after the first attempt in which
+     *         retries may be started.
+     */
+    public long getDeadlineMillis() {
+        return this.deadlineMillis;
+    }
+
+    /**
+     * @param deadlineMillis
+     *            the deadline to set.
+     */
+    public void setDeadlineMillis(final long deadlineMillis) {
+        this.deadlineMillis = Math.max(0, deadlineMillis);
+    }
+}
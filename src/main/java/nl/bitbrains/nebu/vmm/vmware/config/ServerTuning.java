@@ -0,0 +1,345 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+
+/**
+ * Sizing and connection settings of the Grizzly HTTP server. Parsed from the
+ * <code>&lt;server&gt;</code> element of the configuration file, next to the
+ * port that is read by
+ * {@link nl.bitbrains.nebu.common.config.Configuration#getServerConfig()}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class ServerTuning {
+
+    /**
+     * Name of the element with the number of worker threads.
+     */
+    public static final String TAG_WORKERS = "workers";
+
+    /**
+     * Name of the element with the number of selector threads.
+     */
+    public static final String TAG_SELECTORS = "selectors";
+
+    /**
+     * Name of the element with the keep-alive idle timeout.
+     */
+    public static final String TAG_KEEPALIVE = "keepalive";
+
+    /**
+     * Name of the element with the requests per kept-alive connection.
+     */
+    public static final String TAG_KEEPALIVE_REQUESTS = "keepaliverequests";
+
+    /**
+     * Name of the element with the queued requests above which 503 is sent.
+     */
+    public static final String TAG_MAX_PENDING = "maxpending";
+
+    /**
+     * Name of the element with the maximum duration of a request.
+     */
+    public static final String TAG_REQUEST_TIMEOUT = "requesttimeout";
+
+    /**
+     * Name of the element that enables response compression.
+     */
+    public static final String TAG_COMPRESSION = "compression";
+
+    /**
+     * Name of the element with the minimal size of a compressed response.
+     */
+    public static final String TAG_COMPRESSION_MIN_SIZE = "compressionminsize";
+
+    /**
+     * Name of the element with the Retry-After seconds of a 503.
+     */
+    public static final String TAG_RETRY_AFTER = "retryafter";
+
+    /**
+     * Name of the element that enables virtual threads.
+     */
+    public static final String TAG_VIRTUAL_THREADS = "virtualthreads";
+
+    /**
+     * Name of the element with the lifetime of a cached response.
+     */
+    public static final String TAG_CACHE_TTL = "cachettl";
+
+    /**
+     * Name of the element with the size of the response cache.
+     */
+    public static final String TAG_CACHE_SIZE = "cachesize";
+
+    /**
+     * Name of the element with the path of the VM template journal.
+     */
+    public static final String TAG_TEMPLATE_JOURNAL = "templatejournal";
+
+    private int workers = 64;
+    private int selectors = Runtime.getRuntime().availableProcessors();
+    private int keepAliveSeconds = 30;
+    private int keepAliveRequests = 256;
+    private int maxPending = 256;
+    private int requestTimeoutSeconds = 120;
+    private boolean compression = true;
+    private int compressionMinSize = 2048;
+    private int retryAfterSeconds = 1;
+    private boolean virtualThreads = false;
+    private int cacheTtlMillis = 2000;
+    private int cacheSize = 16 * 1024 * 1024;
+    private String templateJournal = null;
+
+    /**
+     * Creates a {@link ServerTuning} from the server element of the
+     * configuration file. Missing values keep their defaults.
+     * 
+     * @param elem
+     *            The server element, may be <code>null</code>.
+     * @return The parsed {@link ServerTuning}.
+     */
+    public static ServerTuning fromXML(final Element elem) {
+        final ServerTuning tuning = new ServerTuning();
+        tuning.setWorkers(ConfigurationElements.getInt(elem,
+                                                       ServerTuning.TAG_WORKERS,
+                                                       tuning.getWorkers()));
+        tuning.setSelectors(ConfigurationElements.getInt(elem,
+                                                         ServerTuning.TAG_SELECTORS,
+                                                         tuning.getSelectors()));
+        tuning.setKeepAliveSeconds(ConfigurationElements.getInt(elem,
+                                                                ServerTuning.TAG_KEEPALIVE,
+                                                                tuning.getKeepAliveSeconds()));
+        tuning.setKeepAliveRequests(ConfigurationElements
+                .getInt(elem, ServerTuning.TAG_KEEPALIVE_REQUESTS, tuning.getKeepAliveRequests()));
+        tuning.setMaxPending(ConfigurationElements.getInt(elem,
+                                                          ServerTuning.TAG_MAX_PENDING,
+                                                          tuning.getMaxPending()));
+        tuning.setRequestTimeoutSeconds(ConfigurationElements
+                .getInt(elem, ServerTuning.TAG_REQUEST_TIMEOUT, tuning.getRequestTimeoutSeconds()));
+        tuning.setCompression(ConfigurationElements.getBoolean(elem,
+                                                               ServerTuning.TAG_COMPRESSION,
+                                                               tuning.isCompression()));
+        tuning.setCompressionMinSize(ConfigurationElements
+                .getInt(elem,
+                        ServerTuning.TAG_COMPRESSION_MIN_SIZE,
+                        tuning.getCompressionMinSize()));
+        tuning.setRetryAfterSeconds(ConfigurationElements.getInt(elem,
+                                                                 ServerTuning.TAG_RETRY_AFTER,
+                                                                 tuning.getRetryAfterSeconds()));
+        tuning.setVirtualThreads(ConfigurationElements.getBoolean(elem,
+                                                                  ServerTuning.TAG_VIRTUAL_THREADS,
+                                                                  tuning.isVirtualThreads()));
+        tuning.setCacheTtlMillis(ConfigurationElements.getInt(elem,
+                                                              ServerTuning.TAG_CACHE_TTL,
+                                                              tuning.getCacheTtlMillis()));
+        tuning.setCacheSize(ConfigurationElements.getInt(elem,
+                                                         ServerTuning.TAG_CACHE_SIZE,
+                                                         tuning.getCacheSize()));
+        tuning.setTemplateJournal(ConfigurationElements
+                .getString(elem, ServerTuning.TAG_TEMPLATE_JOURNAL, tuning.getTemplateJournal()));
+        return tuning;
+    }
+
+    /**
+     * @return the number of worker threads that handle requests.
+     */
+    public int getWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * @param workers
+     *            the number of worker threads to set.
+     */
+    public void setWorkers(final int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * @return the number of selector threads that handle I/O.
+     */
+    public int getSelectors() {
+        return this.selectors;
+    }
+
+    /**
+     * @param selectors
+     *            the number of selector threads to set.
+     */
+    public void setSelectors(final int selectors) {
+        this.selectors = Math.max(1, selectors);
+    }
+
+    /**
+     * @return the idle timeout of kept-alive connections in seconds, or -1
+     *         to disable keep-alive.
+     */
+    public int getKeepAliveSeconds() {
+        return this.keepAliveSeconds;
+    }
+
+    /**
+     * @param keepAliveSeconds
+     *            the keep-alive idle timeout to set.
+     */
+    public void setKeepAliveSeconds(final int keepAliveSeconds) {
+        this.keepAliveSeconds = keepAliveSeconds;
+    }
+
+    /**
+     * @return the maximum number of requests on a kept-alive connection.
+     */
+    public int getKeepAliveRequests() {
+        return this.keepAliveRequests;
+    }
+
+    /**
+     * @param keepAliveRequests
+     *            the maximum number of requests per connection to set.
+     */
+    public void setKeepAliveRequests(final int keepAliveRequests) {
+        this.keepAliveRequests = keepAliveRequests;
+    }
+
+    /**
+     * @return the number of queued requests above which new requests are
+     *         rejected with 503, or 0 to never reject.
+     */
+    public int getMaxPending() {
+        return this.maxPending;
+    }
+
+    /**
+     * @param maxPending
+     *            the maximum number of queued requests to set.
+     */
+    public void setMaxPending(final int maxPending) {
+        this.maxPending = Math.max(0, maxPending);
+    }
+
+    /**
+     * @return the maximum time a worker may spend on a request in seconds.
+     */
+    public int getRequestTimeoutSeconds() {
+        return this.requestTimeoutSeconds;
+    }
+
+    /**
+     * @param requestTimeoutSeconds
+     *            the request timeout to set.
+     */
+    public void setRequestTimeoutSeconds(final int requestTimeoutSeconds) {
+        this.requestTimeoutSeconds = requestTimeoutSeconds;
+    }
+
+    /**
+     * @return <code>true</code> iff responses may be compressed.
+     */
+    public boolean isCompression() {
+        return this.compression;
+    }
+
+    /**
+     * @param compression
+     *            whether responses may be compressed.
+     */
+    public void setCompression(final boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @return the minimal size in bytes of a compressed response.
+     */
+    public int getCompressionMinSize() {
+        return this.compressionMinSize;
+    }
+
+    /**
+     * @param compressionMinSize
+     *            the minimal compressed response size to set.
+     */
+    public void setCompressionMinSize(final int compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    /**
+     * @return the value of the Retry-After header of rejected requests.
+     */
+    public int getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+
+    /**
+     * @param retryAfterSeconds
+     *            the Retry-After value to set.
+     */
+    public void setRetryAfterSeconds(final int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return <code>true</code> iff requests and backend tasks should run on
+     *         virtual threads when the JVM supports them.
+     */
+    public boolean isVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    /**
+     * @param virtualThreads
+     *            whether to use virtual threads.
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @return the time in milliseconds a response of a read endpoint is
+     *         cached, or 0 to disable the response cache.
+     */
+    public int getCacheTtlMillis() {
+        return this.cacheTtlMillis;
+    }
+
+    /**
+     * @param cacheTtlMillis
+     *            the response cache lifetime to set.
+     */
+    public void setCacheTtlMillis(final int cacheTtlMillis) {
+        this.cacheTtlMillis = Math.max(0, cacheTtlMillis);
+    }
+
+    /**
+     * @return the maximum total size of the cached responses in bytes, or 0
+     *         to disable the response cache.
+     */
+    public int getCacheSize() {
+        return this.cacheSize;
+    }
+
+    /**
+     * @param cacheSize
+     *            the response cache size to set.
+     */
+    public void setCacheSize(final int cacheSize) {
+        this.cacheSize = Math.max(0, cacheSize);
+    }
+
+    /**
+     * @return the path of the file in which VM templates are kept, or
+     *         <code>null</code> to keep them in memory only.
+     */
+    public String getTemplateJournal() {
+        return this.templateJournal;
+    }
+
+    /**
+     * @param templateJournal
+     *            the VM template journal path to set.
+     */
+    public void setTemplateJournal(final String templateJournal) {
+        this.templateJournal = templateJournal;
+    }
+}
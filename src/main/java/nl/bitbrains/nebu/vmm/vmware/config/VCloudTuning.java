@@ -0,0 +1,180 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+
+/**
+ * Connection settings of the vCloud client. Parsed from the
+ * <code>&lt;client type="vcloud"&gt;</code> element of the configuration
+ * file, next to the address and credentials that are read by
+ * {@link nl.bitbrains.nebu.common.config.Configuration#getClientConfig(String)}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VCloudTuning {
+
+    /**
+     * Type of the client element with the vCloud settings.
+     */
+    public static final String CLIENT_TYPE = "vcloud";
+
+    /**
+     * Name of the element with the maximum open connections.
+     */
+    public static final String TAG_MAX_CONNECTIONS = "maxconnections";
+
+    /**
+     * Name of the element with the maximum connections per route.
+     */
+    public static final String TAG_MAX_CONNECTIONS_PER_ROUTE = "maxconnectionsperroute";
+
+    /**
+     * Name of the element with the keep-alive time of a connection.
+     */
+    public static final String TAG_CONNECTION_KEEPALIVE = "connectionkeepalive";
+
+    /**
+     * Name of the element with the idle time before a connection is closed.
+     */
+    public static final String TAG_IDLE_EVICTION = "idleeviction";
+
+    /**
+     * Name of the element with the time between session refreshes.
+     */
+    public static final String TAG_SESSION_REFRESH = "sessionrefresh";
+
+    /**
+     * Name of the element with the socket read timeout.
+     */
+    public static final String TAG_READ_TIMEOUT = "readtimeout";
+
+    private int maxConnections = 32;
+    private int maxConnectionsPerRoute = 16;
+    private int connectionKeepAliveSeconds = 30;
+    private int idleEvictionSeconds = 60;
+    private int sessionRefreshSeconds = 600;
+    private int readTimeoutSeconds = 0;
+
+    /**
+     * Creates a {@link VCloudTuning} from the vCloud client element of the
+     * configuration file. Missing values keep their defaults.
+     * 
+     * @param elem
+     *            The client element, may be <code>null</code>.
+     * @return The parsed {@link VCloudTuning}.
+     */
+    public static VCloudTuning fromXML(final Element elem) {
+        final VCloudTuning tuning = new VCloudTuning();
+        tuning.setMaxConnections(ConfigurationElements.getInt(elem,
+                                                              VCloudTuning.TAG_MAX_CONNECTIONS,
+                                                              tuning.getMaxConnections()));
+        tuning.setMaxConnectionsPerRoute(ConfigurationElements
+                .getInt(elem,
+                        VCloudTuning.TAG_MAX_CONNECTIONS_PER_ROUTE,
+                        tuning.getMaxConnectionsPerRoute()));
+        tuning.setConnectionKeepAliveSeconds(ConfigurationElements
+                .getInt(elem,
+                        VCloudTuning.TAG_CONNECTION_KEEPALIVE,
+                        tuning.getConnectionKeepAliveSeconds()));
+        tuning.setIdleEvictionSeconds(ConfigurationElements
+                .getInt(elem, VCloudTuning.TAG_IDLE_EVICTION, tuning.getIdleEvictionSeconds()));
+        tuning.setSessionRefreshSeconds(ConfigurationElements
+                .getInt(elem, VCloudTuning.TAG_SESSION_REFRESH, tuning.getSessionRefreshSeconds()));
+        tuning.setReadTimeoutSeconds(ConfigurationElements
+                .getInt(elem, VCloudTuning.TAG_READ_TIMEOUT, tuning.getReadTimeoutSeconds()));
+        return tuning;
+    }
+
+    /**
+     * @return the maximum number of open connections to vCloud.
+     */
+    public int getMaxConnections() {
+        return this.maxConnections;
+    }
+
+    /**
+     * @param maxConnections
+     *            the maximum number of connections to set.
+     */
+    public void setMaxConnections(final int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    /**
+     * @return the maximum number of open connections per route.
+     */
+    public int getMaxConnectionsPerRoute() {
+        return this.maxConnectionsPerRoute;
+    }
+
+    /**
+     * @param maxConnectionsPerRoute
+     *            the maximum number of connections per route to set.
+     */
+    public void setMaxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = Math.max(1, maxConnectionsPerRoute);
+    }
+
+    /**
+     * @return the time in seconds an idle connection is kept open when the
+     *         server does not say otherwise.
+     */
+    public int getConnectionKeepAliveSeconds() {
+        return this.connectionKeepAliveSeconds;
+    }
+
+    /**
+     * @param connectionKeepAliveSeconds
+     *            the keep-alive time to set.
+     */
+    public void setConnectionKeepAliveSeconds(final int connectionKeepAliveSeconds) {
+        this.connectionKeepAliveSeconds = connectionKeepAliveSeconds;
+    }
+
+    /**
+     * @return the idle time in seconds after which connections are closed,
+     *         or 0 to never evict idle connections.
+     */
+    public int getIdleEvictionSeconds() {
+        return this.idleEvictionSeconds;
+    }
+
+    /**
+     * @param idleEvictionSeconds
+     *            the idle eviction time to set.
+     */
+    public void setIdleEvictionSeconds(final int idleEvictionSeconds) {
+        this.idleEvictionSeconds = Math.max(0, idleEvictionSeconds);
+    }
+
+    /**
+     * @return the time in seconds between session refreshes.
+     */
+    public int getSessionRefreshSeconds() {
+        return this.sessionRefreshSeconds;
+    }
+
+    /**
+     * @param sessionRefreshSeconds
+     *            the time between session refreshes to set.
+     */
+    public void setSessionRefreshSeconds(final int sessionRefreshSeconds) {
+        this.sessionRefreshSeconds = Math.max(1, sessionRefreshSeconds);
+    }
+
+    /**
+     * @return the time in seconds a socket read may block, or 0 for no
+     *         limit.
+     */
+    public int getReadTimeoutSeconds() {
+        return this.readTimeoutSeconds;
+    }
+
+    /**
+     * @param readTimeoutSeconds
+     *            the socket read timeout to set.
+     */
+    public void setReadTimeoutSeconds(final int readTimeoutSeconds) {
+        this.readTimeoutSeconds = Math.max(0, readTimeoutSeconds);
+    }
+}
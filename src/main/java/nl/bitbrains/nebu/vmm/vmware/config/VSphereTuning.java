@@ -0,0 +1,351 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+
+/**
+ * Connection settings of the vSphere client. Parsed from the
+ * <code>&lt;client type="vsphere"&gt;</code> element of the configuration
+ * file, next to the address and credentials that are read by
+ * {@link nl.bitbrains.nebu.common.config.Configuration#getClientConfig(String)}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VSphereTuning {
+
+    /**
+     * Type of the client element with the vSphere settings.
+     */
+    public static final String CLIENT_TYPE = "vsphere";
+
+    /**
+     * Name of the element with the number of pooled sessions.
+     */
+    public static final String TAG_SESSIONS = "sessions";
+
+    /**
+     * Name of the element with the idle time before a health check.
+     */
+    public static final String TAG_SESSION_HEALTH_CHECK = "sessionhealthcheck";
+
+    /**
+     * Name of the element with the time between session refreshes.
+     */
+    public static final String TAG_SESSION_REFRESH = "sessionrefresh";
+
+    /**
+     * Name of the element with the socket read timeout.
+     */
+    public static final String TAG_READ_TIMEOUT = "readtimeout";
+
+    /**
+     * Name of the element with the time between host-to-vApp index rebuilds.
+     */
+    public static final String TAG_VAPP_INDEX_REFRESH = "vappindexrefresh";
+
+    /**
+     * Name of the element with the lifetime of cached cluster members.
+     */
+    public static final String TAG_MEMBERSHIP_REFRESH = "membershiprefresh";
+
+    /**
+     * Name of the element with the time between host performance samples.
+     */
+    public static final String TAG_PERF_SAMPLE = "perfsample";
+
+    /**
+     * Name of the element with the number of averaged performance samples.
+     */
+    public static final String TAG_PERF_WINDOW = "perfwindow";
+
+    /**
+     * Name of the element with the time between datastore samples.
+     */
+    public static final String TAG_STORE_SAMPLE = "storesample";
+
+    /**
+     * Name of the element with the number of kept datastore samples.
+     */
+    public static final String TAG_STORE_WINDOW = "storewindow";
+
+    /**
+     * Name of the element with the longest wait for inventory updates.
+     */
+    public static final String TAG_TOPOLOGY_FEED = "topologyfeed";
+
+    /**
+     * Name of the element with the usage above which a host is overloaded.
+     */
+    public static final String TAG_LOAD_THRESHOLD = "loadthreshold";
+
+    /**
+     * Name of the element with the reported change in used space.
+     */
+    public static final String TAG_SPACE_CHANGE = "spacechange";
+
+    private int sessions = 1;
+    private int sessionHealthCheckSeconds = 60;
+    private int sessionRefreshSeconds = 600;
+    private int readTimeoutSeconds = 0;
+    private int vappIndexRefreshSeconds = 300;
+    private int membershipRefreshSeconds = 60;
+    private int perfSampleSeconds = 0;
+    private int perfWindow = 6;
+    private int storeSampleSeconds = 0;
+    private int storeWindow = 60;
+    private int topologyFeedSeconds = 0;
+    private double loadThreshold = 0.85;
+    private double spaceChange = 0.01;
+
+    /**
+     * Creates a {@link VSphereTuning} from the vSphere client element of the
+     * configuration file. Missing values keep their defaults.
+     * 
+     * @param elem
+     *            The client element, may be <code>null</code>.
+     * @return The parsed {@link VSphereTuning}.
+     */
+    public static VSphereTuning fromXML(final Element elem) {
+        final VSphereTuning tuning = new VSphereTuning();
+        tuning.setSessions(ConfigurationElements.getInt(elem,
+                                                        VSphereTuning.TAG_SESSIONS,
+                                                        tuning.getSessions()));
+        tuning.setSessionHealthCheckSeconds(ConfigurationElements
+                .getInt(elem,
+                        VSphereTuning.TAG_SESSION_HEALTH_CHECK,
+                        tuning.getSessionHealthCheckSeconds()));
+        tuning.setSessionRefreshSeconds(ConfigurationElements
+                .getInt(elem, VSphereTuning.TAG_SESSION_REFRESH, tuning.getSessionRefreshSeconds()));
+        tuning.setReadTimeoutSeconds(ConfigurationElements
+                .getInt(elem, VSphereTuning.TAG_READ_TIMEOUT, tuning.getReadTimeoutSeconds()));
+        tuning.setVappIndexRefreshSeconds(ConfigurationElements
+                .getInt(elem,
+                        VSphereTuning.TAG_VAPP_INDEX_REFRESH,
+                        tuning.getVappIndexRefreshSeconds()));
+        tuning.setMembershipRefreshSeconds(ConfigurationElements
+                .getInt(elem,
+                        VSphereTuning.TAG_MEMBERSHIP_REFRESH,
+                        tuning.getMembershipRefreshSeconds()));
+        tuning.setPerfSampleSeconds(ConfigurationElements
+                .getInt(elem, VSphereTuning.TAG_PERF_SAMPLE, tuning.getPerfSampleSeconds()));
+        tuning.setPerfWindow(ConfigurationElements.getInt(elem,
+                                                          VSphereTuning.TAG_PERF_WINDOW,
+                                                          tuning.getPerfWindow()));
+        tuning.setStoreSampleSeconds(ConfigurationElements
+                .getInt(elem, VSphereTuning.TAG_STORE_SAMPLE, tuning.getStoreSampleSeconds()));
+        tuning.setStoreWindow(ConfigurationElements.getInt(elem,
+                                                           VSphereTuning.TAG_STORE_WINDOW,
+                                                           tuning.getStoreWindow()));
+        tuning.setTopologyFeedSeconds(ConfigurationElements
+                .getInt(elem, VSphereTuning.TAG_TOPOLOGY_FEED, tuning.getTopologyFeedSeconds()));
+        tuning.setLoadThreshold(ConfigurationElements
+                .getDouble(elem, VSphereTuning.TAG_LOAD_THRESHOLD, tuning.getLoadThreshold()));
+        tuning.setSpaceChange(ConfigurationElements
+                .getDouble(elem, VSphereTuning.TAG_SPACE_CHANGE, tuning.getSpaceChange()));
+        return tuning;
+    }
+
+    /**
+     * @return the number of logged in sessions to keep.
+     */
+    public int getSessions() {
+        return this.sessions;
+    }
+
+    /**
+     * @param sessions
+     *            the number of sessions to set.
+     */
+    public void setSessions(final int sessions) {
+        this.sessions = Math.max(1, sessions);
+    }
+
+    /**
+     * @return the time in seconds a session may be idle before it is checked.
+     */
+    public int getSessionHealthCheckSeconds() {
+        return this.sessionHealthCheckSeconds;
+    }
+
+    /**
+     * @param sessionHealthCheckSeconds
+     *            the health check interval to set.
+     */
+    public void setSessionHealthCheckSeconds(final int sessionHealthCheckSeconds) {
+        this.sessionHealthCheckSeconds = Math.max(0, sessionHealthCheckSeconds);
+    }
+
+    /**
+     * @return the time in seconds between session refreshes.
+     */
+    public int getSessionRefreshSeconds() {
+        return this.sessionRefreshSeconds;
+    }
+
+    /**
+     * @param sessionRefreshSeconds
+     *            the time between session refreshes to set.
+     */
+    public void setSessionRefreshSeconds(final int sessionRefreshSeconds) {
+        this.sessionRefreshSeconds = Math.max(1, sessionRefreshSeconds);
+    }
+
+    /**
+     * @return the time in seconds a socket read may block, or 0 for no
+     *         limit.
+     */
+    public int getReadTimeoutSeconds() {
+        return this.readTimeoutSeconds;
+    }
+
+    /**
+     * @param readTimeoutSeconds
+     *            the socket read timeout to set.
+     */
+    public void setReadTimeoutSeconds(final int readTimeoutSeconds) {
+        this.readTimeoutSeconds = Math.max(0, readTimeoutSeconds);
+    }
+
+    /**
+     * @return the time in seconds between rebuilds of the index of hosts
+     *         that can run each vApp, or 0 to not keep an index.
+     */
+    public int getVappIndexRefreshSeconds() {
+        return this.vappIndexRefreshSeconds;
+    }
+
+    /**
+     * @param vappIndexRefreshSeconds
+     *            the time between index rebuilds to set.
+     */
+    public void setVappIndexRefreshSeconds(final int vappIndexRefreshSeconds) {
+        this.vappIndexRefreshSeconds = Math.max(0, vappIndexRefreshSeconds);
+    }
+
+    /**
+     * @return the time in seconds for which the hosts of the cluster of a
+     *         resource pool are cached, or 0 to not cache them.
+     */
+    public int getMembershipRefreshSeconds() {
+        return this.membershipRefreshSeconds;
+    }
+
+    /**
+     * @param membershipRefreshSeconds
+     *            the time to cache cluster members to set.
+     */
+    public void setMembershipRefreshSeconds(final int membershipRefreshSeconds) {
+        this.membershipRefreshSeconds = Math.max(0, membershipRefreshSeconds);
+    }
+
+    /**
+     * @return the time in seconds between performance samples of all hosts,
+     *         or 0 to not sample.
+     */
+    public int getPerfSampleSeconds() {
+        return this.perfSampleSeconds;
+    }
+
+    /**
+     * @param perfSampleSeconds
+     *            the time between performance samples to set.
+     */
+    public void setPerfSampleSeconds(final int perfSampleSeconds) {
+        this.perfSampleSeconds = Math.max(0, perfSampleSeconds);
+    }
+
+    /**
+     * @return the number of recent performance samples that are averaged.
+     */
+    public int getPerfWindow() {
+        return this.perfWindow;
+    }
+
+    /**
+     * @param perfWindow
+     *            the number of averaged samples to set.
+     */
+    public void setPerfWindow(final int perfWindow) {
+        this.perfWindow = Math.max(1, perfWindow);
+    }
+
+    /**
+     * @return the time in seconds between samples of the space and latency
+     *         of all datastores, or 0 to not sample.
+     */
+    public int getStoreSampleSeconds() {
+        return this.storeSampleSeconds;
+    }
+
+    /**
+     * @param storeSampleSeconds
+     *            the time between datastore samples to set.
+     */
+    public void setStoreSampleSeconds(final int storeSampleSeconds) {
+        this.storeSampleSeconds = Math.max(0, storeSampleSeconds);
+    }
+
+    /**
+     * @return the number of datastore samples that are kept.
+     */
+    public int getStoreWindow() {
+        return this.storeWindow;
+    }
+
+    /**
+     * @param storeWindow
+     *            the number of kept datastore samples to set.
+     */
+    public void setStoreWindow(final int storeWindow) {
+        this.storeWindow = Math.max(2, storeWindow);
+    }
+
+    /**
+     * @return the longest time in seconds the topology feed waits for
+     *         inventory updates in one call, or 0 to not watch the
+     *         inventory.
+     */
+    public int getTopologyFeedSeconds() {
+        return this.topologyFeedSeconds;
+    }
+
+    /**
+     * @param topologyFeedSeconds
+     *            the longest wait for inventory updates to set.
+     */
+    public void setTopologyFeedSeconds(final int topologyFeedSeconds) {
+        this.topologyFeedSeconds = Math.max(0, topologyFeedSeconds);
+    }
+
+    /**
+     * @return the CPU or memory usage above which a host is reported as
+     *         overloaded.
+     */
+    public double getLoadThreshold() {
+        return this.loadThreshold;
+    }
+
+    /**
+     * @param loadThreshold
+     *            the overload threshold to set.
+     */
+    public void setLoadThreshold(final double loadThreshold) {
+        this.loadThreshold = loadThreshold;
+    }
+
+    /**
+     * @return the fraction of its capacity by which the used space of a
+     *         datastore must change before the change is reported.
+     */
+    public double getSpaceChange() {
+        return this.spaceChange;
+    }
+
+    /**
+     * @param spaceChange
+     *            the reported space change to set.
+     */
+    public void setSpaceChange(final double spaceChange) {
+        this.spaceChange = Math.max(0, spaceChange);
+    }
+}
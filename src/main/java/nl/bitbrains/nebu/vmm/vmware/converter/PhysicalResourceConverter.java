@@ -6,10 +6,16 @@ import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
 import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.DatastoreSample;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.HostPerformance;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.vmware.vim25.DatastoreSummary;
+import com.vmware.vim25.HostHardwareSummary;
+import com.vmware.vim25.HostListSummary;
+import com.vmware.vim25.HostListSummaryQuickStats;
 import com.vmware.vim25.mo.Datastore;
 import com.vmware.vim25.mo.HostSystem;
 
@@ -45,16 +51,48 @@ public final class PhysicalResourceConverter {
      * @return A new {@link PhysicalStore}.
      */
     public static PhysicalStore toPhysicalStore(final Datastore store) {
-        final String uuid = store.getMOR().getVal();
-        final long capacity = store.getSummary().getCapacity();
-        final long used = capacity - store.getSummary().getFreeSpace();
+        return PhysicalResourceConverter.toPhysicalStore(store.getMOR().getVal(), store
+                .getSummary());
+    }
+
+    /**
+     * Converts a prefetched {@link DatastoreSummary} to a
+     * {@link PhysicalStore}, without calling vSphere.
+     * 
+     * @param uuid
+     *            The vSphere id of the datastore.
+     * @param summary
+     *            The summary of the datastore.
+     * @return A new {@link PhysicalStore}.
+     */
+    public static PhysicalStore toPhysicalStore(final String uuid, final DatastoreSummary summary) {
+        final long capacity = summary.getCapacity();
+        final long used = capacity - summary.getFreeSpace();
+        final PhysicalStoreBuilder storeBuiler = new PhysicalStoreBuilder();
+        return storeBuiler.withCapacity(capacity).withUsed(used).withUuid(uuid).build();
+    }
+
+    /**
+     * Converts a {@link DatastoreSample} to a {@link PhysicalStore}, without
+     * calling vSphere.
+     * 
+     * @param uuid
+     *            The vSphere id of the datastore.
+     * @param sample
+     *            A recent sample of the datastore.
+     * @return A new {@link PhysicalStore}.
+     */
+    public static PhysicalStore toPhysicalStore(final String uuid, final DatastoreSample sample) {
+        final long capacity = sample.getCapacity();
+        final long used = capacity - sample.getFreeSpace();
         final PhysicalStoreBuilder storeBuiler = new PhysicalStoreBuilder();
         return storeBuiler.withCapacity(capacity).withUsed(used).withUuid(uuid).build();
     }
 
     /**
      * Converts a {@link HostSystem} to a {@link PhysicalHost}. Includes local
-     * disks.
+     * disks. The summary of the host and of each of its datastores is
+     * fetched once.
      * 
      * @param system
      *            The {@link HostSystem} to translate.
@@ -72,8 +110,10 @@ public final class PhysicalResourceConverter {
             try {
                 stores = system.getDatastores();
                 for (final Datastore store : stores) {
-                    if (!store.getSummary().getMultipleHostAccess()) {
-                        hostBuilder.withDisk(PhysicalResourceConverter.toPhysicalStore(store));
+                    final DatastoreSummary summary = store.getSummary();
+                    if (!summary.getMultipleHostAccess()) {
+                        hostBuilder.withDisk(PhysicalResourceConverter.toPhysicalStore(store
+                                .getMOR().getVal(), summary));
                     }
                 }
             } catch (final RemoteException e) {
@@ -81,7 +121,46 @@ public final class PhysicalResourceConverter {
                         .warn("Could not get data stores from host system.");
             }
         }
-        PhysicalResourceConverter.addLoadInfo(system, hostBuilder);
+        PhysicalResourceConverter.addLoadInfo(system.getSummary(), hostBuilder);
+        return hostBuilder.build();
+    }
+
+    /**
+     * Converts a prefetched {@link HostListSummary} to a {@link PhysicalHost}
+     * without local disks, without calling vSphere.
+     * 
+     * @param uuid
+     *            The vSphere id of the host.
+     * @param summary
+     *            The summary of the host.
+     * @return A new {@link PhysicalHost}.
+     */
+    public static PhysicalHost toPhysicalHost(final String uuid, final HostListSummary summary) {
+        return PhysicalResourceConverter.toPhysicalHost(uuid, summary, null);
+    }
+
+    /**
+     * Converts a prefetched {@link HostListSummary} to a {@link PhysicalHost}
+     * without local disks, without calling vSphere. The CPU and memory usage
+     * are taken from the sampled {@link HostPerformance} if available.
+     * 
+     * @param uuid
+     *            The vSphere id of the host.
+     * @param summary
+     *            The summary of the host.
+     * @param performance
+     *            The smoothed performance of the host, may be
+     *            <code>null</code>.
+     * @return A new {@link PhysicalHost}.
+     */
+    public static PhysicalHost toPhysicalHost(final String uuid, final HostListSummary summary,
+            final HostPerformance performance) {
+        final PhysicalHostBuilder hostBuilder = new PhysicalHostBuilder();
+        hostBuilder.withUuid(uuid);
+        PhysicalResourceConverter.addLoadInfo(summary, hostBuilder);
+        if (performance != null) {
+            PhysicalResourceConverter.addPerformance(summary, performance, hostBuilder);
+        }
         return hostBuilder.build();
     }
 
@@ -90,23 +169,49 @@ public final class PhysicalResourceConverter {
      * {@link nl.bitbrains.nebu.common.topology.PhysicalHostBuilder}. This
      * includes cpu and memory usage.
      * 
-     * @param system
-     *            The {@link HostSystem} from which to get load information.
+     * @param summary
+     *            The summary of the host from which to get load information.
      * @param hostBuilder
      *            The builder to which to add load information.
      */
-    private static void addLoadInfo(final HostSystem system, final PhysicalHostBuilder hostBuilder) {
-        final int mhz = system.getSummary().getHardware().getCpuMhz()
-                * system.getSummary().getHardware().getNumCpuCores();
-        final int usedMhz = system.getSummary().getQuickStats().getOverallCpuUsage();
+    private static void addLoadInfo(final HostListSummary summary,
+            final PhysicalHostBuilder hostBuilder) {
+        final HostHardwareSummary hardware = summary.getHardware();
+        final HostListSummaryQuickStats quickStats = summary.getQuickStats();
+        final int mhz = hardware.getCpuMhz() * hardware.getNumCpuCores();
+        final int usedMhz = quickStats.getOverallCpuUsage();
         final double cpuRatio = usedMhz / (double) mhz;
 
-        final double mem = system.getSummary().getHardware().getMemorySize()
+        final double mem = hardware.getMemorySize()
                 / (PhysicalResourceConverter.magnitude * PhysicalResourceConverter.magnitude);
-        final int usedMem = system.getSummary().getQuickStats().getOverallMemoryUsage();
+        final int usedMem = quickStats.getOverallMemoryUsage();
         final double memRatio = usedMem / mem;
 
         hostBuilder.withCpuUsage(cpuRatio);
         hostBuilder.withMemUsage(memRatio);
     }
+
+    /**
+     * Overrides the load information of the
+     * {@link nl.bitbrains.nebu.common.topology.PhysicalHostBuilder} with
+     * sampled performance, for the values that were sampled.
+     * 
+     * @param summary
+     *            The summary of the host, which holds its memory size.
+     * @param performance
+     *            The sampled performance of the host.
+     * @param hostBuilder
+     *            The builder to which to add load information.
+     */
+    private static void addPerformance(final HostListSummary summary,
+            final HostPerformance performance, final PhysicalHostBuilder hostBuilder) {
+        if (!Double.isNaN(performance.getCpuUsage())) {
+            hostBuilder.withCpuUsage(performance.getCpuUsage());
+        }
+        if (!Double.isNaN(performance.getMemActiveKb())) {
+            final double memKb = summary.getHardware().getMemorySize()
+                    / PhysicalResourceConverter.magnitude;
+            hostBuilder.withMemUsage(performance.getMemActiveKb() / memKb);
+        }
+    }
 }
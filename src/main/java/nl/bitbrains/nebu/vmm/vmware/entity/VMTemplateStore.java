@@ -0,0 +1,355 @@
+package nl.bitbrains.nebu.vmm.vmware.entity;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Keeps the {@link VMTemplate}s known to the extension. Reads go to a
+ * {@link ConcurrentHashMap} and never block. Once {@link #open(File)} is
+ * called, every change is appended to a journal on disk before the change
+ * returns, so the templates survive a restart and are loaded again when the
+ * journal is opened. The journal is rewritten from the map when most of its
+ * records are outdated.
+ * 
+ * <p>
+ * Each record is a type byte, the UUID of the template and, for a put, the
+ * length and UTF-8 bytes of the template as XML. A record that was cut off
+ * by a crash is dropped when the journal is opened.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class VMTemplateStore extends AbstractMap<String, VMTemplate> {
+
+    /**
+     * Logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    private static final byte RECORD_PUT = 'P';
+    private static final byte RECORD_REMOVE = 'R';
+
+    /**
+     * Number of records below which the journal is never rewritten.
+     */
+    private static final int COMPACT_MIN_RECORDS = 256;
+
+    private final ConcurrentMap<String, VMTemplate> templates;
+    private File journal;
+    private FileOutputStream file;
+    private DataOutputStream out;
+    private int records;
+
+    /**
+     * Length in bytes of the complete records in the journal.
+     */
+    private long length;
+
+    /**
+     * Creates an empty {@link VMTemplateStore} that keeps its templates in
+     * memory only.
+     */
+    public VMTemplateStore() {
+        this.templates = new ConcurrentHashMap<String, VMTemplate>();
+    }
+
+    /**
+     * Loads the templates in a journal and appends later changes to it. The
+     * journal is created if it does not exist. Templates put before the
+     * journal is opened are replaced by those in the journal.
+     * 
+     * @param journal
+     *            The journal file.
+     * @throws IOException
+     *             If the journal cannot be read or written.
+     */
+    public synchronized void open(final File journal) throws IOException {
+        this.close();
+        final long start = System.nanoTime();
+        final byte[] bytes = journal.exists() ? Files.readAllBytes(journal.toPath())
+                : new byte[0];
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        this.templates.clear();
+        this.records = 0;
+        int valid = 0;
+        try {
+            while (in.available() > 0) {
+                this.replay(in);
+                this.records++;
+                valid = bytes.length - in.available();
+            }
+        } catch (final EOFException e) {
+            VMTemplateStore.logger.warn("Dropping incomplete record at the end of {}.", journal);
+        }
+        this.journal = journal;
+        if (this.records >= VMTemplateStore.COMPACT_MIN_RECORDS
+                && this.records > 2 * this.templates.size()) {
+            this.compact();
+        } else {
+            try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+                raf.setLength(valid);
+            }
+            this.length = valid;
+            this.file = new FileOutputStream(journal, true);
+            this.out = new DataOutputStream(new BufferedOutputStream(this.file));
+        }
+        VMTemplateStore.logger.info("Loaded {} VM templates from {} in {} ms.",
+                                    this.templates.size(),
+                                    journal,
+                                    (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Closes the journal. Later changes are kept in memory only.
+     * 
+     * @throws IOException
+     *             If the journal cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        if (this.out != null) {
+            this.out.close();
+            this.out = null;
+            this.file = null;
+            this.journal = null;
+        }
+    }
+
+    @Override
+    public VMTemplate get(final Object key) {
+        return this.templates.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return this.templates.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return this.templates.size();
+    }
+
+    @Override
+    public Set<Entry<String, VMTemplate>> entrySet() {
+        return Collections.unmodifiableSet(this.templates.entrySet());
+    }
+
+    @Override
+    public synchronized VMTemplate put(final String key, final VMTemplate value) {
+        final VMTemplate old = this.templates.put(key, value);
+        this.append(VMTemplateStore.RECORD_PUT, key, value);
+        return old;
+    }
+
+    @Override
+    public synchronized VMTemplate remove(final Object key) {
+        if (!this.templates.containsKey(key)) {
+            return null;
+        }
+        final VMTemplate old = this.templates.remove(key);
+        this.append(VMTemplateStore.RECORD_REMOVE, (String) key, null);
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (final String key : this.templates.keySet()) {
+            this.remove(key);
+        }
+    }
+
+    /**
+     * Applies a record of the journal.
+     * 
+     * @param in
+     *            The journal, positioned at the start of a record.
+     * @throws IOException
+     *             If the record is incomplete.
+     */
+    private void replay(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        final String key = in.readUTF();
+        if (type == VMTemplateStore.RECORD_REMOVE) {
+            this.templates.remove(key);
+            return;
+        }
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException();
+        }
+        final byte[] xml = new byte[length];
+        in.readFully(xml);
+        try {
+            this.templates.put(key, new VMTemplateFactory()
+                    .fromXML(new SAXBuilder().build(new ByteArrayInputStream(xml))
+                            .getRootElement()).withUuid(key).build());
+        } catch (final JDOMException | ParseException e) {
+            VMTemplateStore.logger.warn("Skipping unreadable VM template {}.", key);
+            VMTemplateStore.logger.catching(Level.WARN, e);
+        }
+    }
+
+    /**
+     * Appends a record to the journal and forces it to disk. The change must
+     * already be applied to the map, which a compaction writes out. If there
+     * is no journal, nothing happens. If the record cannot be written, the
+     * change is kept in memory only and the part of the record that did reach
+     * the journal is cut off again.
+     * 
+     * @param type
+     *            {@link #RECORD_PUT} or {@link #RECORD_REMOVE}.
+     * @param key
+     *            The UUID of the template.
+     * @param value
+     *            The template, <code>null</code> for a remove.
+     */
+    private void append(final byte type, final String key, final VMTemplate value) {
+        if (this.out == null) {
+            return;
+        }
+        try {
+            // Serialize first, so a record that cannot be encoded writes nothing.
+            final ByteArrayOutputStream record = new ByteArrayOutputStream();
+            VMTemplateStore.write(new DataOutputStream(record), type, key, value);
+            record.writeTo(this.out);
+            this.out.flush();
+            this.file.getChannel().force(false);
+            this.length = this.file.getChannel().size();
+            this.records++;
+            if (this.records >= VMTemplateStore.COMPACT_MIN_RECORDS
+                    && this.records > 2 * this.templates.size()) {
+                this.compact();
+            }
+        } catch (final IOException e) {
+            VMTemplateStore.logger.error("Could not write VM template {} to {}.",
+                                         key,
+                                         this.journal);
+            VMTemplateStore.logger.catching(Level.ERROR, e);
+            this.truncate();
+        }
+    }
+
+    /**
+     * Cuts the journal back to its last complete record after a failed
+     * append, so records appended later are not read as part of the broken
+     * one, and opens it for appending again. Bytes of the broken record that
+     * are still buffered are discarded. If the journal cannot be cut, it is
+     * closed and later changes are kept in memory only.
+     */
+    private void truncate() {
+        if (this.out == null) {
+            return;
+        }
+        try {
+            // Closing the file instead of the stream drops the buffered bytes.
+            this.file.close();
+        } catch (final IOException e) {
+            VMTemplateStore.logger.catching(Level.DEBUG, e);
+        }
+        this.out = null;
+        this.file = null;
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(this.journal, "rw")) {
+                raf.setLength(this.length);
+            }
+            this.file = new FileOutputStream(this.journal, true);
+            this.out = new DataOutputStream(new BufferedOutputStream(this.file));
+        } catch (final IOException e) {
+            VMTemplateStore.logger.error("Could not repair {}, VM templates are kept in "
+                    + "memory only.", this.journal);
+            VMTemplateStore.logger.catching(Level.ERROR, e);
+        }
+    }
+
+    /**
+     * Replaces the journal by one that holds a single record per template.
+     * The new journal is written next to the old one and moved over it, so
+     * a crash leaves either of them intact. Whether or not that succeeds, the
+     * journal is opened for appending again afterwards; if even that fails,
+     * later changes are kept in memory only.
+     * 
+     * @throws IOException
+     *             If the journal cannot be written.
+     */
+    private void compact() throws IOException {
+        if (this.out != null) {
+            this.out.close();
+            this.out = null;
+            this.file = null;
+        }
+        try {
+            final File tmp = new File(this.journal.getPath() + ".tmp");
+            final FileOutputStream tmpFile = new FileOutputStream(tmp);
+            try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(
+                    tmpFile))) {
+                for (final Entry<String, VMTemplate> entry : this.templates.entrySet()) {
+                    VMTemplateStore.write(tmpOut,
+                                          VMTemplateStore.RECORD_PUT,
+                                          entry.getKey(),
+                                          entry.getValue());
+                }
+                tmpOut.flush();
+                tmpFile.getChannel().force(false);
+            }
+            Files.move(tmp.toPath(),
+                       this.journal.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            this.records = this.templates.size();
+        } finally {
+            this.file = new FileOutputStream(this.journal, true);
+            this.out = new DataOutputStream(new BufferedOutputStream(this.file));
+            this.length = this.file.getChannel().size();
+        }
+    }
+
+    /**
+     * @param out
+     *            The stream to write to.
+     * @param type
+     *            {@link #RECORD_PUT} or {@link #RECORD_REMOVE}.
+     * @param key
+     *            The UUID of the template.
+     * @param value
+     *            The template, <code>null</code> for a remove.
+     * @throws IOException
+     *             If the record cannot be written.
+     */
+    private static void write(final DataOutputStream out, final byte type, final String key,
+            final VMTemplate value) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(key);
+        if (type == VMTemplateStore.RECORD_PUT) {
+            final byte[] xml = new XMLOutputter(Format.getCompactFormat())
+                    .outputString(new VMTemplateFactory().toXML(value))
+                    .getBytes(StandardCharsets.UTF_8);
+            out.writeInt(xml.length);
+            out.write(xml);
+        }
+    }
+}
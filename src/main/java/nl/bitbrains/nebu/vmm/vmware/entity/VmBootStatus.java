@@ -1,8 +1,10 @@
 package nl.bitbrains.nebu.vmm.vmware.entity;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import nl.bitbrains.nebu.common.VirtualMachine;
 import nl.bitbrains.nebu.common.interfaces.Identifiable;
@@ -67,7 +69,12 @@ public class VmBootStatus implements Identifiable {
     /**
      * Task status.
      */
-    private Status status;
+    private volatile Status status;
+
+    /**
+     * Actions to run once the task has completed or failed.
+     */
+    private final List<Runnable> completionListeners = new CopyOnWriteArrayList<Runnable>();
 
     /**
      * Creates a new {@link VmBootStatus}.
@@ -117,6 +124,34 @@ public class VmBootStatus implements Identifiable {
      */
     public void setStatus(final Status status) {
         this.status = status;
+        if (this.isDone()) {
+            for (final Runnable listener : this.completionListeners) {
+                if (this.completionListeners.remove(listener)) {
+                    listener.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> iff the task has completed or failed.
+     */
+    public boolean isDone() {
+        return this.status == Status.SUCCESS || this.status == Status.FAILURE;
+    }
+
+    /**
+     * Runs an action once the task has completed or failed. If it already
+     * has, the action is run immediately.
+     * 
+     * @param listener
+     *            The action, run once by the thread that finishes the task.
+     */
+    public void whenDone(final Runnable listener) {
+        this.completionListeners.add(listener);
+        if (this.isDone() && this.completionListeners.remove(listener)) {
+            listener.run();
+        }
     }
 
     /**
@@ -0,0 +1,42 @@
+package nl.bitbrains.nebu.vmm.vmware.exception;
+
+/**
+ * Thrown when a call to a VMware backend is rejected without being made,
+ * because the backend has too many calls in progress or recently failed too
+ * often. Unchecked, so it passes the providers and is turned into a 503
+ * response by {@link nl.bitbrains.nebu.vmm.vmware.provider.BackendUnavailableMapper}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class BackendUnavailableException extends RuntimeException {
+
+    /**
+     * Version ID.
+     */
+    private static final long serialVersionUID = 4513187094529402277L;
+
+    private final int retryAfterSeconds;
+
+    /**
+     * Creates a new {@link BackendUnavailableException}.
+     * 
+     * @param message
+     *            The exception message.
+     * @param retryAfterSeconds
+     *            The number of seconds after which the backend may be
+     *            available again.
+     */
+    public BackendUnavailableException(final String message, final int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return The number of seconds after which the backend may be available
+     *         again.
+     */
+    public int getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+}
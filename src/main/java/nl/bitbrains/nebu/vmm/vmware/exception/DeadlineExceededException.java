@@ -0,0 +1,28 @@
+package nl.bitbrains.nebu.vmm.vmware.exception;
+
+/**
+ * Thrown when the deadline of a request passes before a call to a VMware
+ * backend has finished. Unchecked, so it passes the providers and is turned
+ * into a 504 response by
+ * {@link nl.bitbrains.nebu.vmm.vmware.provider.DeadlineExceededMapper}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    /**
+     * Version ID.
+     */
+    private static final long serialVersionUID = -3390829427871651873L;
+
+    /**
+     * Creates a new {@link DeadlineExceededException}.
+     * 
+     * @param message
+     *            The exception message.
+     */
+    public DeadlineExceededException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,101 @@
+package nl.bitbrains.nebu.vmm.vmware.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and error statistics of a single REST endpoint during a load test.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class EndpointStats {
+
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Creates a new {@link EndpointStats}.
+     * 
+     * @param name
+     *            The name of the endpoint.
+     */
+    public EndpointStats(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a completed request.
+     * 
+     * @param nanos
+     *            The latency of the request in nanoseconds.
+     * @param success
+     *            Whether the request got the expected response.
+     */
+    public void record(final long nanos, final boolean success) {
+        this.latencies.record(nanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            this.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The name of the endpoint.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The latencies of all requests to the endpoint.
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    /**
+     * @return The number of failed requests.
+     */
+    public long getErrors() {
+        return this.errors.get();
+    }
+
+    /**
+     * @return The header that matches {@link #format(double)}.
+     */
+    public static String header() {
+        return String.format("%-12s %9s %7s %9s %10s %10s %10s %10s %10s",
+                             "endpoint",
+                             "requests",
+                             "errors",
+                             "req/s",
+                             "mean(ms)",
+                             "p50(ms)",
+                             "p99(ms)",
+                             "p999(ms)",
+                             "max(ms)");
+    }
+
+    /**
+     * Formats the statistics as one line of a report.
+     * 
+     * @param seconds
+     *            The duration of the measurement, used to compute the
+     *            throughput.
+     * @return The formatted statistics.
+     */
+    public String format(final double seconds) {
+        final long count = this.latencies.getCount();
+        return String.format("%-12s %9d %7d %9.1f %10.2f %10.2f %10.2f %10.2f %10.2f",
+                             this.name,
+                             count,
+                             this.errors.get(),
+                             seconds > 0 ? count / seconds : 0.0,
+                             this.latencies.getMean() / 1000.0,
+                             this.latencies.getPercentile(50) / 1000.0,
+                             this.latencies.getPercentile(99) / 1000.0,
+                             this.latencies.getPercentile(99.9) / 1000.0,
+                             this.latencies.getMax() / 1000.0);
+    }
+}
@@ -0,0 +1,157 @@
+package nl.bitbrains.nebu.vmm.vmware.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of latencies in microseconds. Values are stored in
+ * logarithmic buckets with 32 linear sub-buckets per power of two, which
+ * bounds the relative error of a reported percentile to about 3%.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class LatencyHistogram {
+
+    /**
+     * Values below this number get a bucket of their own.
+     */
+    private static final int LINEAR_LIMIT = 64;
+
+    /**
+     * Number of sub-buckets per power of two above the linear range.
+     */
+    private static final int SUB_BUCKETS = 32;
+
+    /**
+     * Largest value that can be recorded, about 12 days.
+     */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates a new, empty {@link LatencyHistogram}.
+     */
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(
+                LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE) + 1);
+    }
+
+    /**
+     * Records a latency.
+     * 
+     * @param duration
+     *            The latency.
+     * @param unit
+     *            The unit of the latency.
+     */
+    public void record(final long duration, final TimeUnit unit) {
+        final long micros = Math.min(LatencyHistogram.MAX_VALUE,
+                                     Math.max(0, unit.toMicros(duration)));
+        this.buckets.incrementAndGet(LatencyHistogram.indexOf(micros));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(micros);
+        long current = this.max.get();
+        while (micros > current && !this.max.compareAndSet(current, micros)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * @return The number of recorded values.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return The mean of the recorded values in microseconds, or 0 if there
+     *         are none.
+     */
+    public double getMean() {
+        final long n = this.count.get();
+        return n == 0 ? 0 : this.sum.get() / (double) n;
+    }
+
+    /**
+     * @return The largest recorded value in microseconds.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Computes a percentile of the recorded values.
+     * 
+     * @param percentile
+     *            The percentile, between 0 and 100.
+     * @return The upper bound of the bucket that contains the percentile in
+     *         microseconds, or 0 if no values were recorded.
+     */
+    public long getPercentile(final double percentile) {
+        final long n = this.count.get();
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < this.buckets.length(); i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(this.max.get(), LatencyHistogram.upperBoundOf(i));
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Adds all values of another histogram to this one.
+     * 
+     * @param other
+     *            The other {@link LatencyHistogram}.
+     */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < this.buckets.length(); i++) {
+            this.buckets.addAndGet(i, other.buckets.get(i));
+        }
+        this.count.addAndGet(other.count.get());
+        this.sum.addAndGet(other.sum.get());
+        long current = this.max.get();
+        while (other.getMax() > current && !this.max.compareAndSet(current, other.getMax())) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * @param value
+     *            A value in microseconds.
+     * @return The index of the bucket of the value.
+     */
+    static int indexOf(final long value) {
+        if (value < LatencyHistogram.LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int msb = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = msb - 5;
+        return shift * LatencyHistogram.SUB_BUCKETS + (int) (value >> shift);
+    }
+
+    /**
+     * @param index
+     *            The index of a bucket.
+     * @return The largest value that is stored in the bucket.
+     */
+    static long upperBoundOf(final int index) {
+        if (index < LatencyHistogram.LINEAR_LIMIT) {
+            return index;
+        }
+        final int shift = index / LatencyHistogram.SUB_BUCKETS - 1;
+        final long mantissa = index - shift * LatencyHistogram.SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
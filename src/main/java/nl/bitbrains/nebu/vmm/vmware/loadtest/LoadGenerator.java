@@ -0,0 +1,672 @@
+package nl.bitbrains.nebu.vmm.vmware.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.vmm.vmware.App;
+import nl.bitbrains.nebu.vmm.vmware.api.Singleton;
+import nl.bitbrains.nebu.vmm.vmware.api.simulator.SimulatedInventory;
+import nl.bitbrains.nebu.vmm.vmware.api.simulator.SimulatedVMware;
+import nl.bitbrains.nebu.vmm.vmware.api.simulator.SimulatorConfiguration;
+import nl.bitbrains.nebu.vmm.vmware.config.ConfigurationElements;
+import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
+import nl.bitbrains.nebu.vmm.vmware.entity.VMTemplateFactory;
+import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
+import nl.bitbrains.nebu.vmm.vmware.provider.PhysicalTopologyProvider;
+import nl.bitbrains.nebu.vmm.vmware.provider.VMTemplateProvider;
+import nl.bitbrains.nebu.vmm.vmware.provider.VirtualResourceProvider;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Replays Nebu core traffic against a running VMM and reports the latency
+ * percentiles and throughput of every endpoint. Either targets a VMM at a
+ * given URL, or starts one in-process through {@link App#startServer(int)}
+ * backed by a {@link SimulatedVMware}.
+ * 
+ * <p>
+ * Options are given as <code>key=value</code> arguments:
+ * <ul>
+ * <li><code>url</code>: base URL of the VMM, ignored when in-process.</li>
+ * <li><code>inprocess</code>: start an in-process VMM (default the
+ * <code>loadtest.inprocess</code> system property, or false).</li>
+ * <li><code>port</code>: port of the in-process VMM (default 18080).</li>
+ * <li><code>config</code>: configuration file with a simulator client, used by
+ * the in-process VMM.</li>
+ * <li><code>duration</code>: duration of the test in seconds (default 60).</li>
+ * <li><code>warmup</code>: warm-up time in seconds, not reported (default 5).</li>
+ * <li><code>threads</code>: number of concurrent clients (default 16).</li>
+ * <li><code>burst</code>: number of VMs per createVM burst (default 4).</li>
+ * <li><code>pollinterval</code>: status poll interval in ms (default 250).</li>
+ * <li><code>polltimeout</code>: status poll timeout in ms (default 120000).</li>
+ * <li><code>vm</code>: id of the VM to use as template.</li>
+ * <li><code>vapps</code>: comma separated destination vApp ids.</li>
+ * <li><code>hosts</code>: comma separated host ids to deploy and move to.</li>
+ * <li><code>mix</code>: weights of the scenarios, default
+ * <code>phys:4,virt:3,vm:2,deploy:1,move:1</code>.</li>
+ * </ul>
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class LoadGenerator {
+
+    /**
+     * Logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    public static final String SCENARIO_PHYS = "phys";
+    public static final String SCENARIO_VIRT = "virt";
+    public static final String SCENARIO_VM = "vm";
+    public static final String SCENARIO_DEPLOY = "deploy";
+    public static final String SCENARIO_MOVE = "move";
+
+    public static final String ENDPOINT_PUT_TEMPLATE = "putTemplate";
+    public static final String ENDPOINT_CREATE_VM = "createVM";
+    public static final String ENDPOINT_STATUS = "status";
+    public static final String ENDPOINT_DEPLOY = "deployTotal";
+
+    /**
+     * System property with the default of the <code>inprocess</code> option.
+     * Set by the <code>loadtest</code> Maven profile, because exec.args
+     * replaces the arguments configured in the profile.
+     */
+    public static final String PROPERTY_IN_PROCESS = "loadtest.inprocess";
+
+    private static final String DEFAULT_MIX = "phys:4,virt:3,vm:2,deploy:1,move:1";
+    private static final int HTTP_TIMEOUT = 60000;
+    private static final Pattern ID_PATTERN = Pattern.compile(">([^<>]+)<");
+
+    private final Map<String, String> options;
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<String, EndpointStats>();
+    private final List<String> scenarios = new ArrayList<String>();
+    private final List<String> knownVms = new CopyOnWriteArrayList<String>();
+    private String baseUrl;
+    private String templateUuid;
+    private String vmId;
+    private List<String> vapps;
+    private List<String> hosts;
+    private volatile boolean recording;
+
+    /**
+     * Creates a new {@link LoadGenerator}.
+     * 
+     * @param options
+     *            The options of the load test.
+     */
+    public LoadGenerator(final Map<String, String> options) {
+        this.options = options;
+        for (final String name : Arrays.asList(LoadGenerator.ENDPOINT_PUT_TEMPLATE,
+                                               LoadGenerator.SCENARIO_PHYS,
+                                               LoadGenerator.SCENARIO_VIRT,
+                                               LoadGenerator.SCENARIO_VM,
+                                               LoadGenerator.ENDPOINT_CREATE_VM,
+                                               LoadGenerator.ENDPOINT_STATUS,
+                                               LoadGenerator.ENDPOINT_DEPLOY,
+                                               LoadGenerator.SCENARIO_MOVE)) {
+            this.stats.put(name, new EndpointStats(name));
+        }
+        for (final String entry : this.getOption("mix", LoadGenerator.DEFAULT_MIX).split(",")) {
+            final String[] parts = entry.trim().split(":");
+            final int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                this.scenarios.add(parts[0]);
+            }
+        }
+    }
+
+    /**
+     * Parses <code>key=value</code> arguments.
+     * 
+     * @param args
+     *            The arguments.
+     * @return The parsed options.
+     */
+    public static Map<String, String> parseArguments(final String[] args) {
+        final Map<String, String> result = new HashMap<String, String>();
+        for (final String arg : args) {
+            final int split = arg.indexOf('=');
+            if (split > 0) {
+                result.put(arg.substring(0, split).trim(), arg.substring(split + 1).trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Main method.
+     * 
+     * @param args
+     *            The <code>key=value</code> options of the load test.
+     * @throws Exception
+     *             When the load test cannot be set up.
+     */
+    public static void main(final String[] args) throws Exception {
+        final LoadGenerator generator = new LoadGenerator(LoadGenerator.parseArguments(args));
+        HttpServer server = null;
+        if (Boolean.parseBoolean(generator.getOption("inprocess", System
+                .getProperty(LoadGenerator.PROPERTY_IN_PROCESS, "false")))) {
+            server = generator.startInProcess();
+        }
+        try {
+            generator.run();
+        } finally {
+            if (server != null) {
+                server.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Starts an in-process VMM backed by a {@link SimulatedVMware} and fills in
+     * the template VM, vApps and hosts from its inventory. The simulator is
+     * configured from the configuration file like the real back end.
+     * 
+     * @return The started {@link HttpServer}.
+     * @throws IOException
+     *             When the configuration file cannot be read, or the
+     *             simulator cannot be logged in at.
+     * @throws JDOMException
+     *             When the configuration file is invalid.
+     * @throws VMwareException
+     *             When the simulated inventory cannot be read.
+     */
+    public HttpServer startInProcess() throws IOException, JDOMException, VMwareException {
+        Element configRoot = null;
+        Element simulatorElem = null;
+        final String configPath = this.options.get("config");
+        if (configPath != null) {
+            configRoot = ConfigurationElements.load(new File(configPath));
+            simulatorElem = ConfigurationElements
+                    .getClientElement(configRoot, SimulatorConfiguration.CLIENT_TYPE);
+        }
+        final SimulatedVMware vmware = new SimulatedVMware(
+                SimulatorConfiguration.fromXML(simulatorElem));
+        if (configRoot != null) {
+            App.configureVMware(vmware, configRoot);
+        }
+        vmware.init();
+        Singleton.setVmware(vmware);
+
+        final List<String> vappIds = new ArrayList<String>();
+        for (final VirtualApplication vapp : vmware.getAllVapps()) {
+            vappIds.add(vapp.getUniqueIdentifier());
+        }
+        final List<String> hostIds = new ArrayList<String>();
+        final SimulatedInventory inventory = vmware.getInventory();
+        for (int i = 0; i < inventory.getClusterCount(); i++) {
+            hostIds.addAll(this.hostIdsInPool(vmware, i));
+        }
+        if (!this.options.containsKey("vm")) {
+            this.options.put("vm", vmware.getVirtualResourceList().get(0));
+        }
+        if (!this.options.containsKey("vapps")) {
+            this.options.put("vapps", LoadGenerator.join(vappIds));
+        }
+        if (!this.options.containsKey("hosts")) {
+            this.options.put("hosts", LoadGenerator.join(hostIds));
+        }
+        final int port = Integer.parseInt(this.getOption("port", "18080"));
+        this.options.put("url", "http://localhost:" + port);
+        return App.startServer(port);
+    }
+
+    /**
+     * Runs the load test and prints the report to standard output.
+     * 
+     * @throws IOException
+     *             When the VM template cannot be registered.
+     * @throws InterruptedException
+     *             When interrupted while waiting for the clients.
+     */
+    public void run() throws IOException, InterruptedException {
+        this.baseUrl = this.getOption("url", "http://localhost:8080");
+        this.vmId = this.requireOption("vm");
+        this.vapps = Arrays.asList(this.requireOption("vapps").split(","));
+        this.hosts = Arrays.asList(this.requireOption("hosts").split(","));
+        this.templateUuid = "loadtest-" + UUID.randomUUID();
+        this.recording = true;
+        if (!this.putTemplate()) {
+            throw new IOException("Could not register VM template at " + this.baseUrl);
+        }
+
+        final long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(this.getOption("warmup",
+                                                                                   "5")));
+        final long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(this.getOption("duration",
+                                                                                     "60")));
+        final int threads = Integer.parseInt(this.getOption("threads", "16"));
+        final long start = System.nanoTime();
+        final long measureStart = start + warmup;
+        final long end = measureStart + duration;
+        this.recording = warmup == 0;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final Random random = new Random(i);
+            final Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (System.nanoTime() < end) {
+                            LoadGenerator.this.runScenario(random);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "loadtest-client-" + i);
+            client.setDaemon(true);
+            client.start();
+        }
+        final long sleep = TimeUnit.NANOSECONDS.toMillis(measureStart - System.nanoTime());
+        if (sleep > 0) {
+            Thread.sleep(sleep);
+        }
+        this.recording = true;
+        done.await();
+        this.printReport(System.out, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                - measureStart) / 1000.0);
+    }
+
+    /**
+     * Prints the statistics of all endpoints.
+     * 
+     * @param out
+     *            The stream to print to.
+     * @param seconds
+     *            The duration of the measurement.
+     */
+    public void printReport(final PrintStream out, final double seconds) {
+        out.println(String.format("Load test against %s, %.1f s measured.", this.baseUrl, seconds));
+        out.println(EndpointStats.header());
+        for (final EndpointStats stat : this.stats.values()) {
+            if (stat.getLatencies().getCount() > 0) {
+                out.println(stat.format(seconds));
+            }
+        }
+    }
+
+    /**
+     * @return The statistics of all endpoints, by name.
+     */
+    public Map<String, EndpointStats> getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Runs a randomly picked scenario.
+     * 
+     * @param random
+     *            The random generator of the client.
+     */
+    private void runScenario(final Random random) {
+        final String scenario = this.scenarios.get(random.nextInt(this.scenarios.size()));
+        try {
+            switch (scenario) {
+            case SCENARIO_PHYS:
+                this.request(LoadGenerator.SCENARIO_PHYS, "GET", VMTemplateProvider.PATH + "/"
+                        + this.templateUuid + "/phys", null, 200);
+                break;
+            case SCENARIO_VIRT:
+                this.listVms();
+                break;
+            case SCENARIO_VM:
+                this.request(LoadGenerator.SCENARIO_VM, "GET", VirtualResourceProvider.PATH + "/"
+                        + this.pickVm(random), null, 200);
+                break;
+            case SCENARIO_DEPLOY:
+                this.deployBurst(random);
+                break;
+            case SCENARIO_MOVE:
+                this.request(LoadGenerator.SCENARIO_MOVE, "GET", VirtualResourceProvider.PATH
+                        + "/" + this.pickVm(random) + "/move?host="
+                        + LoadGenerator.encode(this.pick(this.hosts, random)), null, 200);
+                break;
+            default:
+                LoadGenerator.logger.warn("Unknown scenario {}.", scenario);
+                break;
+            }
+        } catch (final IOException e) {
+            LoadGenerator.logger.catching(Level.DEBUG, e);
+        }
+    }
+
+    /**
+     * Lists all VMs and remembers their ids for later requests.
+     * 
+     * @throws IOException
+     *             When the request fails.
+     */
+    private void listVms() throws IOException {
+        final Response response = this.request(LoadGenerator.SCENARIO_VIRT,
+                                               "GET",
+                                               VirtualResourceProvider.PATH,
+                                               null,
+                                               200);
+        if (response.status == 200) {
+            final Matcher matcher = LoadGenerator.ID_PATTERN.matcher(response.body);
+            final List<String> ids = new ArrayList<String>();
+            while (matcher.find()) {
+                final String id = matcher.group(1).trim();
+                if (!id.isEmpty()) {
+                    ids.add(id);
+                }
+            }
+            if (!ids.isEmpty()) {
+                this.knownVms.clear();
+                this.knownVms.addAll(ids);
+            }
+        }
+    }
+
+    /**
+     * Launches a burst of new VMs and polls their status until they are
+     * deployed or the poll timeout expires.
+     * 
+     * @param random
+     *            The random generator of the client.
+     * @throws IOException
+     *             When a request fails.
+     */
+    private void deployBurst(final Random random) throws IOException {
+        final int burst = Integer.parseInt(this.getOption("burst", "4"));
+        final long interval = Long.parseLong(this.getOption("pollinterval", "250"));
+        final long timeout = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(this
+                .getOption("polltimeout", "120000")));
+        final Map<String, Long> pending = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < burst; i++) {
+            final String hostname = "loadtest-" + UUID.randomUUID().toString().substring(0, 8);
+            final long start = System.nanoTime();
+            final Response response = this.request(LoadGenerator.ENDPOINT_CREATE_VM, "POST",
+                    PhysicalTopologyProvider.PATH + "/"
+                            + LoadGenerator.encode(this.pick(this.hosts, random))
+                            + "/createVM?hostname=" + hostname + "&template="
+                            + LoadGenerator.encode(this.templateUuid), "", 201);
+            if (response.location != null) {
+                pending.put(response.location, start);
+            }
+        }
+        while (!pending.isEmpty()) {
+            try {
+                Thread.sleep(interval);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (final String location : new ArrayList<String>(pending.keySet())) {
+                final Response response = this.request(LoadGenerator.ENDPOINT_STATUS,
+                                                       "GET",
+                                                       location,
+                                                       null,
+                                                       -1);
+                final long elapsed = System.nanoTime() - pending.get(location);
+                if (response.status == 200) {
+                    this.record(LoadGenerator.ENDPOINT_DEPLOY, elapsed, true);
+                    pending.remove(location);
+                } else if (response.status != 202 || elapsed > timeout) {
+                    this.record(LoadGenerator.ENDPOINT_DEPLOY, elapsed, false);
+                    pending.remove(location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the VM template used by the load test.
+     * 
+     * @return <code>true</code> iff the template was accepted.
+     * @throws IOException
+     *             When the request fails.
+     */
+    private boolean putTemplate() throws IOException {
+        final Element elem = new Element(VMTemplateFactory.TAG_ELEMENT_ROOT);
+        elem.setAttribute("id", this.templateUuid);
+        elem.setAttribute(VMTemplateFactory.ATTRIBUTE_TYPE,
+                          VMTemplateFactory.ATTRIBUTE_TYPE_VMWARE_VALUE);
+        elem.addContent(new Element(VMTemplateFactory.TAG_NAME).setText("loadtest"));
+        elem.addContent(new Element(VMTemplateFactory.TAG_TEMPLATE).setText(this.vmId));
+        elem.addContent(new Element(VMTemplateFactory.TAG_SCRVAPP).setAttribute("id",
+                                                                                this.vapps.get(0)));
+        final Element destVapps = new Element(VMTemplateFactory.TAG_DESVAPP);
+        for (final String vapp : this.vapps) {
+            destVapps.addContent(new Element(VMTemplateFactory.TAG_VAPP).setAttribute("id", vapp));
+        }
+        elem.addContent(destVapps);
+        final Response response = this.request(LoadGenerator.ENDPOINT_PUT_TEMPLATE,
+                                               "PUT",
+                                               VMTemplateProvider.PATH + "/" + this.templateUuid,
+                                               new XMLOutputter().outputString(elem),
+                                               201);
+        return response.status == 201;
+    }
+
+    /**
+     * Performs a single HTTP request and records its latency.
+     * 
+     * @param endpoint
+     *            The name of the endpoint to record the latency for.
+     * @param method
+     *            The HTTP method.
+     * @param path
+     *            The path, relative to the base URL, or an absolute URL.
+     * @param body
+     *            The XML request body, or <code>null</code>.
+     * @param expected
+     *            The expected status code, or -1 to accept any 2xx status.
+     * @return The {@link Response}.
+     * @throws IOException
+     *             When the connection fails.
+     */
+    private Response request(final String endpoint, final String method, final String path,
+            final String body, final int expected) throws IOException {
+        final URL url = new URL(path.startsWith("http") ? path : this.baseUrl + path);
+        final long start = System.nanoTime();
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        final Response response = new Response();
+        try {
+            conn.setRequestMethod(method);
+            conn.setConnectTimeout(LoadGenerator.HTTP_TIMEOUT);
+            conn.setReadTimeout(LoadGenerator.HTTP_TIMEOUT);
+            conn.setInstanceFollowRedirects(false);
+            if (body != null) {
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", "application/xml");
+                final OutputStream out = conn.getOutputStream();
+                try {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                } finally {
+                    out.close();
+                }
+            }
+            response.status = conn.getResponseCode();
+            response.location = conn.getHeaderField("Location");
+            response.body = LoadGenerator.readFully(response.status < 400 ? conn.getInputStream()
+                    : conn.getErrorStream());
+        } catch (final IOException e) {
+            this.record(endpoint, System.nanoTime() - start, false);
+            throw e;
+        } finally {
+            conn.disconnect();
+        }
+        final boolean success = expected < 0 ? response.status / 100 == 2
+                : response.status == expected;
+        this.record(endpoint, System.nanoTime() - start, success);
+        return response;
+    }
+
+    /**
+     * Records a latency, unless the load test is still warming up.
+     * 
+     * @param endpoint
+     *            The name of the endpoint.
+     * @param nanos
+     *            The latency.
+     * @param success
+     *            Whether the request succeeded.
+     */
+    private void record(final String endpoint, final long nanos, final boolean success) {
+        if (this.recording) {
+            this.stats.get(endpoint).record(nanos, success);
+        }
+    }
+
+    /**
+     * Picks a VM id from the last listing, or the template VM if there is
+     * none.
+     * 
+     * @param random
+     *            The random generator of the client.
+     * @return A VM id.
+     * @throws IOException
+     *             When a VM id cannot be encoded.
+     */
+    private String pickVm(final Random random) throws IOException {
+        final List<String> vms = new ArrayList<String>(this.knownVms);
+        return LoadGenerator.encode(vms.isEmpty() ? this.vmId : this.pick(vms, random));
+    }
+
+    /**
+     * @param list
+     *            A non-empty list.
+     * @param random
+     *            The random generator to use.
+     * @return A random element of the list.
+     */
+    private String pick(final List<String> list, final Random random) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    /**
+     * @param vmware
+     *            The simulator.
+     * @param cluster
+     *            The cluster index.
+     * @return The ids of the hosts in the cluster.
+     * @throws VMwareException
+     *             If the cluster cannot be read.
+     */
+    private List<String> hostIdsInPool(final SimulatedVMware vmware, final int cluster)
+            throws VMwareException {
+        final List<String> result = new ArrayList<String>();
+        for (final PhysicalHost host : vmware
+                .getPhysicalTopologyFromResourcePool(SimulatedInventory.getPoolName(cluster))
+                .getCPUs()) {
+            result.add(host.getUniqueIdentifier());
+        }
+        return result;
+    }
+
+    /**
+     * @param name
+     *            The name of the option.
+     * @param defaultValue
+     *            The value to use when the option is not given.
+     * @return The value of the option.
+     */
+    private String getOption(final String name, final String defaultValue) {
+        final String value = this.options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @param name
+     *            The name of the option.
+     * @return The value of the option.
+     */
+    private String requireOption(final String name) {
+        final String value = this.options.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing option " + name
+                    + "=..., or use inprocess=true.");
+        }
+        return value;
+    }
+
+    /**
+     * @param values
+     *            The values to join.
+     * @return The values separated by commas.
+     */
+    private static String join(final List<String> values) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String value : values) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param value
+     *            A path segment or query value.
+     * @return The URL encoded value.
+     * @throws IOException
+     *             Never, UTF-8 is always supported.
+     */
+    private static String encode(final String value) throws IOException {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * @param in
+     *            The stream to read, may be <code>null</code>.
+     * @return The contents of the stream.
+     * @throws IOException
+     *             When reading fails.
+     */
+    private static String readFully(final InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The parts of an HTTP response used by the load test.
+     */
+    private static class Response {
+        private int status;
+        private String location;
+        private String body = "";
+    }
+}
@@ -0,0 +1,92 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+/**
+ * The destination chosen for one VM of a batch: a host, a datastore and a
+ * destination vApp. VMs that did not fit anywhere have no host.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class Assignment {
+
+    private final VmDemand demand;
+    private final String hostId;
+    private final String storeId;
+    private String vappId;
+    private String taskId;
+
+    /**
+     * Creates a new {@link Assignment}.
+     * 
+     * @param demand
+     *            The VM that is placed.
+     * @param hostId
+     *            The vSphere id of the host, <code>null</code> if the VM does
+     *            not fit.
+     * @param storeId
+     *            The vSphere id of the datastore, <code>null</code> to let
+     *            vSphere choose.
+     */
+    public Assignment(final VmDemand demand, final String hostId, final String storeId) {
+        this.demand = demand;
+        this.hostId = hostId;
+        this.storeId = storeId;
+    }
+
+    /**
+     * @return the VM that is placed.
+     */
+    public VmDemand getDemand() {
+        return this.demand;
+    }
+
+    /**
+     * @return the vSphere id of the host, or <code>null</code> if the VM does
+     *         not fit.
+     */
+    public String getHostId() {
+        return this.hostId;
+    }
+
+    /**
+     * @return the vSphere id of the datastore, or <code>null</code> to let
+     *         vSphere choose.
+     */
+    public String getStoreId() {
+        return this.storeId;
+    }
+
+    /**
+     * @return the vCloud id of the destination vApp, or <code>null</code> if
+     *         none was selected.
+     */
+    public String getVappId() {
+        return this.vappId;
+    }
+
+    /**
+     * @param vappId
+     *            the vCloud id of the destination vApp.
+     */
+    public void setVappId(final String vappId) {
+        this.vappId = vappId;
+    }
+
+    /**
+     * @return the id of the {@link nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus}
+     *         of the deployment, or <code>null</code> if not deployed.
+     */
+    public String getTaskId() {
+        return this.taskId;
+    }
+
+    /**
+     * @param taskId
+     *            the id of the
+     *            {@link nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus} of
+     *            the deployment.
+     */
+    public void setTaskId(final String taskId) {
+        this.taskId = taskId;
+    }
+}
@@ -0,0 +1,74 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import java.util.List;
+
+import org.jdom2.Element;
+
+/**
+ * Converts the {@link Assignment} objects of a batch placement to XML.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class AssignmentFactory {
+
+    public static final String TAG_ELEMENT_ROOT = "assignments";
+    public static final String TAG_ASSIGNMENT = "assignment";
+    public static final String ATTRIBUTE_HOSTNAME = "hostname";
+    public static final String ATTRIBUTE_HOST = "host";
+    public static final String ATTRIBUTE_STORE = "store";
+    public static final String ATTRIBUTE_VAPP = "vapp";
+    public static final String ATTRIBUTE_TASK = "task";
+
+    /**
+     * Empty default constructor.
+     */
+    public AssignmentFactory() {
+
+    }
+
+    /**
+     * Converts the assignments to XML, keeping their order. Unknown parts of
+     * an assignment are left out.
+     * 
+     * @param assignments
+     *            to convert to XML.
+     * @return the created XML element.
+     */
+    public final Element toXML(final List<Assignment> assignments) {
+        final Element elem = new Element(AssignmentFactory.TAG_ELEMENT_ROOT);
+        for (final Assignment assignment : assignments) {
+            final Element child = new Element(AssignmentFactory.TAG_ASSIGNMENT);
+            child.setAttribute(AssignmentFactory.ATTRIBUTE_HOSTNAME, assignment.getDemand()
+                    .getHostname());
+            AssignmentFactory.setIfKnown(child,
+                                         AssignmentFactory.ATTRIBUTE_HOST,
+                                         assignment.getHostId());
+            AssignmentFactory.setIfKnown(child,
+                                         AssignmentFactory.ATTRIBUTE_STORE,
+                                         assignment.getStoreId());
+            AssignmentFactory.setIfKnown(child,
+                                         AssignmentFactory.ATTRIBUTE_VAPP,
+                                         assignment.getVappId());
+            AssignmentFactory.setIfKnown(child,
+                                         AssignmentFactory.ATTRIBUTE_TASK,
+                                         assignment.getTaskId());
+            elem.addContent(child);
+        }
+        return elem;
+    }
+
+    /**
+     * @param elem
+     *            The element.
+     * @param name
+     *            The name of the attribute.
+     * @param value
+     *            The value of the attribute, not set if <code>null</code>.
+     */
+    private static void setIfKnown(final Element elem, final String name, final String value) {
+        if (value != null) {
+            elem.setAttribute(name, value);
+        }
+    }
+}
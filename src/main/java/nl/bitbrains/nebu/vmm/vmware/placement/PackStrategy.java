@@ -0,0 +1,60 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+
+/**
+ * Prefers the most loaded host and datastore that stay below a maximum load,
+ * which fills resources one by one and keeps others empty.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class PackStrategy implements PlacementStrategy {
+
+    /**
+     * Default maximum fraction of a resource that may be used.
+     */
+    public static final double DEFAULT_MAX_LOAD = 0.85;
+
+    private final double maxLoad;
+
+    /**
+     * Creates a {@link PackStrategy} with the default maximum load.
+     */
+    public PackStrategy() {
+        this(PackStrategy.DEFAULT_MAX_LOAD);
+    }
+
+    /**
+     * Creates a {@link PackStrategy}.
+     * 
+     * @param maxLoad
+     *            The fraction of a resource above which it is not used.
+     */
+    public PackStrategy(final double maxLoad) {
+        this.maxLoad = maxLoad;
+    }
+
+    @Override
+    public double scoreHost(final PhysicalHost host) {
+        return this.score(Math.max(host.getCpuUsage(), host.getMemUsage()));
+    }
+
+    @Override
+    public double scoreStore(final PhysicalStore store) {
+        if (store.getCapacity() <= 0) {
+            return -1;
+        }
+        return this.score(store.getUsed() / (double) store.getCapacity());
+    }
+
+    /**
+     * @param load
+     *            The used fraction of a resource.
+     * @return The load if it is below the maximum, -1 otherwise.
+     */
+    private double score(final double load) {
+        return load < this.maxLoad ? load : -1;
+    }
+}
@@ -0,0 +1,66 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+/**
+ * A candidate destination for a new VM: a host and the datastore it should
+ * use, with their scores.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class Placement {
+
+    private final String hostId;
+    private final String storeId;
+    private final double hostScore;
+    private final double storeScore;
+
+    /**
+     * Creates a new {@link Placement}.
+     * 
+     * @param hostId
+     *            The vSphere id of the host.
+     * @param storeId
+     *            The vSphere id of the datastore, <code>null</code> if the
+     *            host has no usable datastore.
+     * @param hostScore
+     *            The score of the host.
+     * @param storeScore
+     *            The score of the datastore.
+     */
+    public Placement(final String hostId, final String storeId, final double hostScore,
+            final double storeScore) {
+        this.hostId = hostId;
+        this.storeId = storeId;
+        this.hostScore = hostScore;
+        this.storeScore = storeScore;
+    }
+
+    /**
+     * @return the vSphere id of the host.
+     */
+    public String getHostId() {
+        return this.hostId;
+    }
+
+    /**
+     * @return the vSphere id of the datastore, or <code>null</code> if the
+     *         host has no usable datastore.
+     */
+    public String getStoreId() {
+        return this.storeId;
+    }
+
+    /**
+     * @return the score of the host.
+     */
+    public double getHostScore() {
+        return this.hostScore;
+    }
+
+    /**
+     * @return the score of the datastore.
+     */
+    public double getStoreScore() {
+        return this.storeScore;
+    }
+}
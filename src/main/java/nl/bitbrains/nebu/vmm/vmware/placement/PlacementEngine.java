@@ -0,0 +1,314 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+
+/**
+ * Ranks the hosts of a {@link PhysicalTopology} as a destination for a new
+ * VM. Each host is paired with the best scoring datastore it can use, which
+ * is either one of its local disks or a disk shared by its rack.
+ * 
+ * <p>
+ * The load of hosts and datastores includes the resources held by a
+ * {@link ReservationLedger}, so VMs that are placed but not yet running are
+ * taken into account.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class PlacementEngine {
+
+    /**
+     * Orders placements by host score and then by datastore score, best
+     * first.
+     */
+    private static final Comparator<Placement> BEST_FIRST = new Comparator<Placement>() {
+        @Override
+        public int compare(final Placement a, final Placement b) {
+            final int byHost = Double.compare(b.getHostScore(), a.getHostScore());
+            return byHost != 0 ? byHost : Double.compare(b.getStoreScore(), a.getStoreScore());
+        }
+    };
+
+    /**
+     * Orders VMs by their largest demand, largest first.
+     */
+    private static final Comparator<VmDemand> LARGEST_FIRST = new Comparator<VmDemand>() {
+        @Override
+        public int compare(final VmDemand a, final VmDemand b) {
+            return Double.compare(Math.max(b.getCpu(), b.getMem()),
+                                  Math.max(a.getCpu(), a.getMem()));
+        }
+    };
+
+    /**
+     * Projected load of a host and the datastores it can use while a batch
+     * is placed.
+     */
+    private static final class Candidate {
+        private final String hostId;
+        private final List<PhysicalStore> stores;
+        private double cpu;
+        private double mem;
+
+        /**
+         * Creates a new {@link Candidate}.
+         * 
+         * @param hostId
+         *            The vSphere id of the host.
+         * @param stores
+         *            The datastores the host can use.
+         * @param cpu
+         *            The projected CPU usage of the host.
+         * @param mem
+         *            The projected memory usage of the host.
+         */
+        private Candidate(final String hostId, final List<PhysicalStore> stores,
+                final double cpu, final double mem) {
+            this.hostId = hostId;
+            this.stores = stores;
+            this.cpu = cpu;
+            this.mem = mem;
+        }
+    }
+
+    /**
+     * Private constructor. This class only has static methods.
+     */
+    private PlacementEngine() {
+    }
+
+    /**
+     * Ranks the hosts of a topology.
+     * 
+     * @param topology
+     *            The resources available to the VM.
+     * @param strategy
+     *            The strategy that scores the resources.
+     * @param count
+     *            The maximum number of placements to return.
+     * @return The best placements, best first. Hosts that the strategy
+     *         rejects are left out.
+     */
+    public static List<Placement> rank(final PhysicalTopology topology,
+            final PlacementStrategy strategy, final int count) {
+        return PlacementEngine.rank(topology, strategy, count, null);
+    }
+
+    /**
+     * Ranks the hosts of a topology, taking reserved resources into account.
+     * 
+     * @param topology
+     *            The resources available to the VM.
+     * @param strategy
+     *            The strategy that scores the resources.
+     * @param count
+     *            The maximum number of placements to return.
+     * @param ledger
+     *            The reserved resources, may be <code>null</code>.
+     * @return The best placements, best first. Hosts that the strategy
+     *         rejects are left out.
+     */
+    public static List<Placement> rank(final PhysicalTopology topology,
+            final PlacementStrategy strategy, final int count, final ReservationLedger ledger) {
+        final Map<String, Long> used = new HashMap<String, Long>();
+        final List<Placement> placements = new ArrayList<Placement>();
+        for (final Candidate candidate : PlacementEngine.candidates(topology, ledger, used)) {
+            final double hostScore = strategy.scoreHost(PlacementEngine.project(candidate, 0, 0));
+            if (!PlacementEngine.isUsable(hostScore)) {
+                continue;
+            }
+            final Placement store = PlacementEngine.bestStore(candidate, strategy, used, 0);
+            placements.add(new Placement(candidate.hostId, store == null ? null : store
+                    .getStoreId(), hostScore, store == null ? 0 : store.getStoreScore()));
+        }
+        Collections.sort(placements, PlacementEngine.BEST_FIRST);
+        return placements.subList(0, Math.min(Math.max(0, count), placements.size()));
+    }
+
+    /**
+     * Places a batch of VMs jointly using first-fit decreasing: the largest
+     * VMs are placed first, each on the best scoring host and datastore after
+     * adding its demand to the projected load, and the load is updated
+     * before the next VM is placed.
+     * 
+     * @param topology
+     *            The resources available to the VMs.
+     * @param strategy
+     *            The strategy that scores the resources.
+     * @param demands
+     *            The VMs to place.
+     * @param ledger
+     *            The reserved resources, may be <code>null</code>. The batch
+     *            itself is not reserved.
+     * @return An {@link Assignment} for each VM, in the order of the demands.
+     */
+    public static List<Assignment> assign(final PhysicalTopology topology,
+            final PlacementStrategy strategy, final List<VmDemand> demands,
+            final ReservationLedger ledger) {
+        final Map<String, Long> used = new HashMap<String, Long>();
+        final List<Candidate> candidates = PlacementEngine.candidates(topology, ledger, used);
+        final Map<VmDemand, Assignment> assigned = new HashMap<VmDemand, Assignment>();
+        final VmDemand[] order = demands.toArray(new VmDemand[demands.size()]);
+        Arrays.sort(order, PlacementEngine.LARGEST_FIRST);
+        for (final VmDemand demand : order) {
+            Candidate best = null;
+            Placement bestPlacement = null;
+            for (final Candidate candidate : candidates) {
+                if (candidate.cpu + demand.getCpu() > 1 || candidate.mem + demand.getMem() > 1) {
+                    continue;
+                }
+                final double hostScore = strategy.scoreHost(PlacementEngine
+                        .project(candidate, demand.getCpu(), demand.getMem()));
+                if (!PlacementEngine.isUsable(hostScore)) {
+                    continue;
+                }
+                final Placement store = PlacementEngine.bestStore(candidate,
+                                                                  strategy,
+                                                                  used,
+                                                                  demand.getDisk());
+                if (store == null && !candidate.stores.isEmpty()) {
+                    continue;
+                }
+                final Placement placement = new Placement(candidate.hostId, store == null ? null
+                        : store.getStoreId(), hostScore, store == null ? 0 : store
+                        .getStoreScore());
+                if (bestPlacement == null
+                        || PlacementEngine.BEST_FIRST.compare(placement, bestPlacement) < 0) {
+                    best = candidate;
+                    bestPlacement = placement;
+                }
+            }
+            if (best == null) {
+                assigned.put(demand, new Assignment(demand, null, null));
+                continue;
+            }
+            best.cpu += demand.getCpu();
+            best.mem += demand.getMem();
+            final String storeId = bestPlacement.getStoreId();
+            if (storeId != null) {
+                used.put(storeId, used.get(storeId) + demand.getDisk());
+            }
+            assigned.put(demand, new Assignment(demand, best.hostId, storeId));
+        }
+        final List<Assignment> assignments = new ArrayList<Assignment>(demands.size());
+        for (final VmDemand demand : demands) {
+            assignments.add(assigned.get(demand));
+        }
+        return assignments;
+    }
+
+    /**
+     * Collects the hosts of a topology with their projected load.
+     * 
+     * @param topology
+     *            The topology.
+     * @param ledger
+     *            The reserved resources, may be <code>null</code>.
+     * @param used
+     *            Filled with the projected used space of every datastore by
+     *            id.
+     * @return The hosts.
+     */
+    private static List<Candidate> candidates(final PhysicalTopology topology,
+            final ReservationLedger ledger, final Map<String, Long> used) {
+        final List<Candidate> candidates = new ArrayList<Candidate>();
+        for (final PhysicalRack rack : topology.getRacks()) {
+            PlacementEngine.addUsed(rack.getDisks(), ledger, used);
+            for (final PhysicalHost host : rack.getCPUs()) {
+                PlacementEngine.addUsed(host.getDisks(), ledger, used);
+                final List<PhysicalStore> stores = new ArrayList<PhysicalStore>(host.getDisks());
+                stores.addAll(rack.getDisks());
+                final String hostId = host.getUniqueIdentifier();
+                candidates.add(new Candidate(hostId, stores, host.getCpuUsage()
+                        + (ledger == null ? 0 : ledger.getCpu(hostId)), host.getMemUsage()
+                        + (ledger == null ? 0 : ledger.getMem(hostId))));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @param stores
+     *            Datastores.
+     * @param ledger
+     *            The reserved resources, may be <code>null</code>.
+     * @param used
+     *            The map to which the projected used space of each datastore
+     *            is added.
+     */
+    private static void addUsed(final List<PhysicalStore> stores, final ReservationLedger ledger,
+            final Map<String, Long> used) {
+        for (final PhysicalStore store : stores) {
+            final String storeId = store.getUniqueIdentifier();
+            used.put(storeId, store.getUsed() + (ledger == null ? 0 : ledger.getBytes(storeId)));
+        }
+    }
+
+    /**
+     * @param candidate
+     *            A host.
+     * @param strategy
+     *            The strategy that scores the datastores.
+     * @param used
+     *            The projected used space of every datastore by id.
+     * @param disk
+     *            The space in bytes the VM needs.
+     * @return A placement without host that holds the best datastore that
+     *         fits the VM, <code>null</code> if none can be used.
+     */
+    private static Placement bestStore(final Candidate candidate,
+            final PlacementStrategy strategy, final Map<String, Long> used, final long disk) {
+        Placement best = null;
+        for (final PhysicalStore store : candidate.stores) {
+            final long projected = used.get(store.getUniqueIdentifier()) + disk;
+            if (disk > 0 && projected > store.getCapacity()) {
+                continue;
+            }
+            final double score = strategy.scoreStore(new PhysicalStoreBuilder()
+                    .withUuid(store.getUniqueIdentifier()).withCapacity(store.getCapacity())
+                    .withUsed(projected).build());
+            if (PlacementEngine.isUsable(score)
+                    && (best == null || score > best.getStoreScore())) {
+                best = new Placement(null, store.getUniqueIdentifier(), 0, score);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param candidate
+     *            A host.
+     * @param cpu
+     *            The CPU usage to add.
+     * @param mem
+     *            The memory usage to add.
+     * @return A {@link PhysicalHost} with the projected load of the host.
+     */
+    private static PhysicalHost project(final Candidate candidate, final double cpu,
+            final double mem) {
+        return new PhysicalHostBuilder().withUuid(candidate.hostId)
+                .withCpuUsage(candidate.cpu + cpu).withMemUsage(candidate.mem + mem).build();
+    }
+
+    /**
+     * @param score
+     *            A score given by a {@link PlacementStrategy}.
+     * @return <code>true</code> iff the scored resource may be used.
+     */
+    private static boolean isUsable(final double score) {
+        return !Double.isNaN(score) && score >= 0;
+    }
+}
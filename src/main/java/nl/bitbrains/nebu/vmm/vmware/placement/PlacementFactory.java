@@ -0,0 +1,49 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import java.util.List;
+
+import org.jdom2.Element;
+
+/**
+ * Converts ranked {@link Placement} objects to XML.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class PlacementFactory {
+
+    public static final String TAG_ELEMENT_ROOT = "placements";
+    public static final String TAG_PLACEMENT = "placement";
+    public static final String ATTRIBUTE_HOST = "host";
+    public static final String ATTRIBUTE_STORE = "store";
+    public static final String ATTRIBUTE_SCORE = "score";
+
+    /**
+     * Empty default constructor.
+     */
+    public PlacementFactory() {
+
+    }
+
+    /**
+     * Converts the placements to XML, keeping their order.
+     * 
+     * @param placements
+     *            to convert to XML.
+     * @return the created XML element.
+     */
+    public final Element toXML(final List<Placement> placements) {
+        final Element elem = new Element(PlacementFactory.TAG_ELEMENT_ROOT);
+        for (final Placement placement : placements) {
+            final Element child = new Element(PlacementFactory.TAG_PLACEMENT);
+            child.setAttribute(PlacementFactory.ATTRIBUTE_HOST, placement.getHostId());
+            if (placement.getStoreId() != null) {
+                child.setAttribute(PlacementFactory.ATTRIBUTE_STORE, placement.getStoreId());
+            }
+            child.setAttribute(PlacementFactory.ATTRIBUTE_SCORE,
+                               Double.toString(placement.getHostScore()));
+            elem.addContent(child);
+        }
+        return elem;
+    }
+}
@@ -0,0 +1,65 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the {@link PlacementStrategy} implementations that clients can
+ * select by name. Other strategies can be registered at startup.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class PlacementStrategies {
+
+    /**
+     * Name of the {@link SpreadStrategy}.
+     */
+    public static final String SPREAD = "spread";
+
+    /**
+     * Name of the {@link PackStrategy}.
+     */
+    public static final String PACK = "pack";
+
+    /**
+     * Name of the strategy used when none is given.
+     */
+    public static final String DEFAULT = PlacementStrategies.SPREAD;
+
+    private static final ConcurrentMap<String, PlacementStrategy> strategies;
+
+    static {
+        strategies = new ConcurrentHashMap<String, PlacementStrategy>();
+        PlacementStrategies.register(PlacementStrategies.SPREAD, new SpreadStrategy());
+        PlacementStrategies.register(PlacementStrategies.PACK, new PackStrategy());
+    }
+
+    /**
+     * Private constructor. This class only has static methods.
+     */
+    private PlacementStrategies() {
+    }
+
+    /**
+     * Registers a strategy, replacing any strategy with the same name.
+     * 
+     * @param name
+     *            The name by which clients select the strategy.
+     * @param strategy
+     *            The strategy.
+     */
+    public static void register(final String name, final PlacementStrategy strategy) {
+        PlacementStrategies.strategies.put(name, strategy);
+    }
+
+    /**
+     * @param name
+     *            The name of a strategy, <code>null</code> for the default.
+     * @return The strategy, or <code>null</code> if none has the given name.
+     */
+    public static PlacementStrategy get(final String name) {
+        return PlacementStrategies.strategies.get(name == null ? PlacementStrategies.DEFAULT
+                : name);
+    }
+}
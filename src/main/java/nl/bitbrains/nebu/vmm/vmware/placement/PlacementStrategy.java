@@ -0,0 +1,28 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+
+/**
+ * Scores hosts and datastores as a destination for a new VM. Higher scores
+ * are better, negative scores mark a resource that must not be used.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface PlacementStrategy {
+
+    /**
+     * @param host
+     *            A candidate {@link PhysicalHost}.
+     * @return The score of the host, negative if it must not be used.
+     */
+    double scoreHost(PhysicalHost host);
+
+    /**
+     * @param store
+     *            A candidate {@link PhysicalStore}.
+     * @return The score of the store, negative if it must not be used.
+     */
+    double scoreStore(PhysicalStore store);
+}
@@ -0,0 +1,210 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
+import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus.Status;
+
+/**
+ * Keeps the resources promised to VMs that are placed but not yet running,
+ * so placements made before the next topology refresh see the projected load
+ * instead of piling onto the same host.
+ * 
+ * <p>
+ * A reservation is released when its deployment fails, or at the first
+ * topology refresh that started after its deployment completed, since only
+ * from then on the topology shows the new VM. Reservations that are not
+ * released this way are released after a maximum age.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class ReservationLedger {
+
+    /**
+     * Resources reserved for a single VM.
+     */
+    private static final class Reservation {
+        private final String hostId;
+        private final String storeId;
+        private final VmDemand demand;
+        private final long createdAt;
+        private volatile long completedAt;
+
+        /**
+         * Creates a new {@link Reservation}.
+         * 
+         * @param hostId
+         *            The host of the VM.
+         * @param storeId
+         *            The datastore of the VM, may be <code>null</code>.
+         * @param demand
+         *            The projected usage of the VM.
+         */
+        private Reservation(final String hostId, final String storeId, final VmDemand demand) {
+            this.hostId = hostId;
+            this.storeId = storeId;
+            this.demand = demand;
+            this.createdAt = System.currentTimeMillis();
+        }
+    }
+
+    private final ConcurrentMap<String, Reservation> reservations;
+    private final long maxAgeMillis;
+
+    /**
+     * Creates an empty {@link ReservationLedger}.
+     * 
+     * @param maxAgeMillis
+     *            The time in milliseconds after which a reservation is
+     *            released even if its deployment did not complete.
+     */
+    public ReservationLedger(final long maxAgeMillis) {
+        this.reservations = new ConcurrentHashMap<String, Reservation>();
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Reserves resources for a VM, replacing any reservation with the same
+     * id.
+     * 
+     * @param id
+     *            The id of the reservation, normally the id of the
+     *            {@link VmBootStatus} of the deployment.
+     * @param hostId
+     *            The host of the VM.
+     * @param storeId
+     *            The datastore of the VM, may be <code>null</code>.
+     * @param demand
+     *            The projected usage of the VM.
+     */
+    public void reserve(final String id, final String hostId, final String storeId,
+            final VmDemand demand) {
+        this.reservations.put(id, new Reservation(hostId, storeId, demand));
+    }
+
+    /**
+     * Releases a reservation.
+     * 
+     * @param id
+     *            The id of the reservation.
+     */
+    public void release(final String id) {
+        this.reservations.remove(id);
+    }
+
+    /**
+     * Follows the deployment of a reserved VM. If the deployment fails, the
+     * reservation is released. If it completes, the reservation is kept until
+     * {@link #refreshed(long)} reports a topology read after that.
+     * 
+     * @param id
+     *            The id of the reservation.
+     * @param task
+     *            The {@link VmBootStatus} of the deployment.
+     */
+    public void track(final String id, final VmBootStatus task) {
+        task.whenDone(new Runnable() {
+            @Override
+            public void run() {
+                if (task.getStatus() == Status.FAILURE) {
+                    ReservationLedger.this.release(id);
+                    return;
+                }
+                final Reservation reservation = ReservationLedger.this.reservations.get(id);
+                if (reservation != null) {
+                    reservation.completedAt = System.currentTimeMillis();
+                }
+            }
+        });
+    }
+
+    /**
+     * Releases the reservations whose deployment completed before a topology
+     * was read, as the topology includes their VMs.
+     * 
+     * @param readAt
+     *            The time in milliseconds at which reading the topology
+     *            started.
+     */
+    public void refreshed(final long readAt) {
+        final Iterator<Reservation> it = this.reservations.values().iterator();
+        while (it.hasNext()) {
+            final long completedAt = it.next().completedAt;
+            if (completedAt > 0 && completedAt < readAt) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of reservations that are held.
+     */
+    public int size() {
+        this.expire();
+        return this.reservations.size();
+    }
+
+    /**
+     * @param hostId
+     *            The vSphere id of a host.
+     * @return The fraction of the CPU of the host that is reserved.
+     */
+    public double getCpu(final String hostId) {
+        this.expire();
+        double cpu = 0;
+        for (final Reservation reservation : this.reservations.values()) {
+            if (reservation.hostId.equals(hostId)) {
+                cpu += reservation.demand.getCpu();
+            }
+        }
+        return cpu;
+    }
+
+    /**
+     * @param hostId
+     *            The vSphere id of a host.
+     * @return The fraction of the memory of the host that is reserved.
+     */
+    public double getMem(final String hostId) {
+        this.expire();
+        double mem = 0;
+        for (final Reservation reservation : this.reservations.values()) {
+            if (reservation.hostId.equals(hostId)) {
+                mem += reservation.demand.getMem();
+            }
+        }
+        return mem;
+    }
+
+    /**
+     * @param storeId
+     *            The vSphere id of a datastore.
+     * @return The space in bytes of the datastore that is reserved.
+     */
+    public long getBytes(final String storeId) {
+        this.expire();
+        long bytes = 0;
+        for (final Reservation reservation : this.reservations.values()) {
+            if (storeId.equals(reservation.storeId)) {
+                bytes += reservation.demand.getDisk();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Releases the reservations that are older than the maximum age.
+     */
+    private void expire() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Reservation> it = this.reservations.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().createdAt >= this.maxAgeMillis) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+
+/**
+ * Prefers the least loaded host and the datastore with the largest fraction
+ * of free space, which spreads new VMs evenly over the cluster.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class SpreadStrategy implements PlacementStrategy {
+
+    @Override
+    public double scoreHost(final PhysicalHost host) {
+        return 1 - Math.max(host.getCpuUsage(), host.getMemUsage());
+    }
+
+    @Override
+    public double scoreStore(final PhysicalStore store) {
+        if (store.getCapacity() <= 0) {
+            return -1;
+        }
+        return (store.getCapacity() - store.getUsed()) / (double) store.getCapacity();
+    }
+}
@@ -0,0 +1,72 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+/**
+ * The projected resource usage of a VM that still has to be placed.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VmDemand {
+
+    /**
+     * Fraction of the CPU of a host assumed when none is given.
+     */
+    public static final double DEFAULT_CPU = 0.05;
+
+    /**
+     * Fraction of the memory of a host assumed when none is given.
+     */
+    public static final double DEFAULT_MEM = 0.05;
+
+    private final String hostname;
+    private final double cpu;
+    private final double mem;
+    private final long disk;
+
+    /**
+     * Creates a new {@link VmDemand}.
+     * 
+     * @param hostname
+     *            The hostname of the VM.
+     * @param cpu
+     *            The fraction of the CPU of a host the VM will use.
+     * @param mem
+     *            The fraction of the memory of a host the VM will use.
+     * @param disk
+     *            The space in bytes the VM will use on its datastore.
+     */
+    public VmDemand(final String hostname, final double cpu, final double mem, final long disk) {
+        this.hostname = hostname;
+        this.cpu = cpu;
+        this.mem = mem;
+        this.disk = disk;
+    }
+
+    /**
+     * @return the hostname of the VM.
+     */
+    public String getHostname() {
+        return this.hostname;
+    }
+
+    /**
+     * @return the fraction of the CPU of a host the VM will use.
+     */
+    public double getCpu() {
+        return this.cpu;
+    }
+
+    /**
+     * @return the fraction of the memory of a host the VM will use.
+     */
+    public double getMem() {
+        return this.mem;
+    }
+
+    /**
+     * @return the space in bytes the VM will use on its datastore.
+     */
+    public long getDisk() {
+        return this.disk;
+    }
+}
@@ -0,0 +1,86 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.Element;
+
+/**
+ * Reads the VMs of a batch placement request from XML.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class VmDemandFactory {
+
+    public static final String TAG_ELEMENT_ROOT = "vms";
+    public static final String TAG_VM = "vm";
+    public static final String ATTRIBUTE_HOSTNAME = "hostname";
+    public static final String ATTRIBUTE_CPU = "cpu";
+    public static final String ATTRIBUTE_MEM = "mem";
+    public static final String ATTRIBUTE_DISK = "disk";
+
+    /**
+     * Empty default constructor.
+     */
+    public VmDemandFactory() {
+
+    }
+
+    /**
+     * Creates the {@link VmDemand} objects from XML. Missing CPU and memory
+     * demands get the defaults of {@link VmDemand}, a missing disk demand is
+     * 0.
+     * 
+     * @param xml
+     *            element to base the objects on.
+     * @return the created {@link VmDemand} objects, in document order.
+     * @throws ParseException
+     *             if XML is not valid.
+     */
+    public final List<VmDemand> fromXML(final Element xml) throws ParseException {
+        if (xml == null || !VmDemandFactory.TAG_ELEMENT_ROOT.equals(xml.getName())) {
+            throw new ParseException("Expected root element " + VmDemandFactory.TAG_ELEMENT_ROOT,
+                    0);
+        }
+        final List<VmDemand> demands = new ArrayList<VmDemand>();
+        for (final Element vm : xml.getChildren(VmDemandFactory.TAG_VM)) {
+            final String hostname = vm.getAttributeValue(VmDemandFactory.ATTRIBUTE_HOSTNAME);
+            if (hostname == null) {
+                throw new ParseException("VM without hostname", demands.size());
+            }
+            final double cpu;
+            final double mem;
+            final long disk;
+            try {
+                cpu = VmDemandFactory.getDouble(vm,
+                                                VmDemandFactory.ATTRIBUTE_CPU,
+                                                VmDemand.DEFAULT_CPU);
+                mem = VmDemandFactory.getDouble(vm,
+                                                VmDemandFactory.ATTRIBUTE_MEM,
+                                                VmDemand.DEFAULT_MEM);
+                disk = Long.parseLong(vm.getAttributeValue(VmDemandFactory.ATTRIBUTE_DISK, "0"));
+            } catch (final NumberFormatException e) {
+                throw new ParseException("Invalid demand of VM " + hostname, demands.size());
+            }
+            demands.add(new VmDemand(hostname, cpu, mem, disk));
+        }
+        return demands;
+    }
+
+    /**
+     * @param elem
+     *            The element.
+     * @param name
+     *            The name of the attribute.
+     * @param defaultValue
+     *            The value if the attribute is missing.
+     * @return The value of the attribute.
+     */
+    private static double getDouble(final Element elem, final String name,
+            final double defaultValue) {
+        final String value = elem.getAttributeValue(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,36 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Answers requests that need a backend that rejected the call with 503
+ * Service Unavailable and a Retry-After header, instead of letting the
+ * request wait for a backend that is known to be slow or failing.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@Provider
+public class BackendUnavailableMapper implements ExceptionMapper<BackendUnavailableException> {
+
+    /**
+     * Logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    @Override
+    public Response toResponse(final BackendUnavailableException exception) {
+        BackendUnavailableMapper.logger.warn("Rejecting request: {}", exception.getMessage());
+        return Response.status(Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, exception.getRetryAfterSeconds()).build();
+    }
+}
@@ -0,0 +1,127 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Compresses the responses of the {@link Compressed} resource methods with
+ * the coding negotiated by {@link ResponseCompression}. The first bytes of a
+ * response are held back until it reaches the minimal size, so small
+ * responses are sent as is. Responses that are already encoded, such as
+ * those served from the {@link ResponseCache}, are left alone.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@Provider
+@Compressed
+public class CompressionInterceptor implements WriterInterceptor {
+
+    /**
+     * Holds back the start of a response until it is known whether it is
+     * large enough to compress.
+     */
+    private static final class ThresholdOutputStream extends OutputStream {
+        private final MultivaluedMap<String, Object> headers;
+        private final OutputStream out;
+        private final String coding;
+        private final int minSize;
+        private ByteArrayOutputStream buffer;
+        private DeflaterOutputStream target;
+
+        /**
+         * Creates a new {@link ThresholdOutputStream}.
+         * 
+         * @param headers
+         *            The headers of the response, not yet committed.
+         * @param out
+         *            The stream of the response.
+         * @param coding
+         *            The coding to use.
+         * @param minSize
+         *            The minimal size in bytes of a compressed response.
+         */
+        private ThresholdOutputStream(final MultivaluedMap<String, Object> headers,
+                final OutputStream out, final String coding, final int minSize) {
+            this.headers = headers;
+            this.out = out;
+            this.coding = coding;
+            this.minSize = minSize;
+            this.buffer = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (this.target != null) {
+                this.target.write(b, off, len);
+                return;
+            }
+            this.buffer.write(b, off, len);
+            if (this.buffer.size() >= this.minSize) {
+                this.headers.putSingle(HttpHeaders.CONTENT_ENCODING, this.coding);
+                this.headers.remove(HttpHeaders.CONTENT_LENGTH);
+                this.target = ResponseCompression.wrap(this.out, this.coding);
+                this.buffer.writeTo(this.target);
+                this.buffer = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (this.target != null) {
+                this.target.flush();
+            }
+        }
+
+        /**
+         * Writes what is held back or completes the compressed stream,
+         * without closing the stream of the response.
+         * 
+         * @throws IOException
+         *             If the response cannot be written.
+         */
+        private void finish() throws IOException {
+            if (this.target == null) {
+                this.buffer.writeTo(this.out);
+            } else {
+                this.target.finish();
+            }
+        }
+    }
+
+    @Context
+    private HttpHeaders requestHeaders;
+
+    @Override
+    public void aroundWriteTo(final WriterInterceptorContext context) throws IOException,
+            WebApplicationException {
+        final MultivaluedMap<String, Object> headers = context.getHeaders();
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        final String coding = ResponseCompression.getInstance().select(this.requestHeaders);
+        if (coding == null || headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            context.proceed();
+            return;
+        }
+        final ThresholdOutputStream stream = new ThresholdOutputStream(headers,
+                context.getOutputStream(), coding, ResponseCompression.getInstance()
+                        .getMinSize());
+        context.setOutputStream(stream);
+        context.proceed();
+        stream.finish();
+    }
+}
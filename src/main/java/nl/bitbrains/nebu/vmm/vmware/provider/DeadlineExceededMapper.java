@@ -0,0 +1,33 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Answers requests whose deadline passed while waiting for VMware with 504
+ * Gateway Timeout.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@Provider
+public class DeadlineExceededMapper implements ExceptionMapper<DeadlineExceededException> {
+
+    /**
+     * Logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    @Override
+    public Response toResponse(final DeadlineExceededException exception) {
+        DeadlineExceededMapper.logger.warn("Request timed out: {}", exception.getMessage());
+        return Response.status(Status.GATEWAY_TIMEOUT).build();
+    }
+}
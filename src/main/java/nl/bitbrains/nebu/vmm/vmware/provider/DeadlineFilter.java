@@ -0,0 +1,67 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.Provider;
+
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.Deadline;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the time a client is willing to wait from the
+ * <code>X-Request-Timeout</code> header, in milliseconds, and makes it the
+ * {@link Deadline} of the thread that handles the request. Calls to VMware
+ * made for the request are then cut off when the client has given up.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@Provider
+@PreMatching
+public class DeadlineFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    /**
+     * Logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    /**
+     * Header that holds the request timeout in milliseconds.
+     */
+    public static final String HEADER = "X-Request-Timeout";
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) throws IOException {
+        final String value = requestContext.getHeaderString(DeadlineFilter.HEADER);
+        if (value == null) {
+            Deadline.set(null);
+            return;
+        }
+        try {
+            final long millis = Long.parseLong(value.trim());
+            if (millis <= 0) {
+                throw new NumberFormatException(value);
+            }
+            Deadline.set(Deadline.after(millis));
+        } catch (final NumberFormatException e) {
+            DeadlineFilter.logger.warn("Invalid {} header: {}.", DeadlineFilter.HEADER, value);
+            Deadline.set(null);
+            requestContext.abortWith(Response.status(Status.BAD_REQUEST).build());
+        }
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext,
+            final ContainerResponseContext responseContext) throws IOException {
+        Deadline.set(null);
+    }
+}
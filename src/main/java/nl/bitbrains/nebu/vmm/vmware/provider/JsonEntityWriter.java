@@ -0,0 +1,369 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import nl.bitbrains.nebu.common.VirtualMachine;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.vmm.vmware.topology.ResourceState;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyDiff;
+
+import com.owlike.genson.stream.JsonWriter;
+
+/**
+ * Writes topologies, hosts, datastores, VMs and id lists as compact JSON.
+ * The objects are streamed to the response with the Genson stream API,
+ * without building a document tree first, which makes JSON cheaper than XML
+ * for large topologies.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class JsonEntityWriter implements MessageBodyWriter<Object> {
+
+    /**
+     * Field with the id of a resource.
+     */
+    public static final String FIELD_ID = "id";
+
+    /**
+     * Field with the datacenters of a topology.
+     */
+    public static final String FIELD_DATACENTERS = "datacenters";
+
+    /**
+     * Field with the racks of a datacenter.
+     */
+    public static final String FIELD_RACKS = "racks";
+
+    /**
+     * Field with the hosts of a rack.
+     */
+    public static final String FIELD_HOSTS = "hosts";
+
+    /**
+     * Field with the datastores of a rack or host.
+     */
+    public static final String FIELD_STORES = "stores";
+
+    /**
+     * Field with the CPU usage of a host.
+     */
+    public static final String FIELD_CPU_USAGE = "cpuusage";
+
+    /**
+     * Field with the memory usage of a host.
+     */
+    public static final String FIELD_MEM_USAGE = "memusage";
+
+    /**
+     * Field with the capacity of a datastore.
+     */
+    public static final String FIELD_CAPACITY = "capacity";
+
+    /**
+     * Field with the used space of a datastore.
+     */
+    public static final String FIELD_USED = "used";
+
+    /**
+     * Field with the hostname of a VM.
+     */
+    public static final String FIELD_HOSTNAME = "hostname";
+
+    /**
+     * Field with the power status of a VM.
+     */
+    public static final String FIELD_STATUS = "status";
+
+    /**
+     * Field with the host of a VM.
+     */
+    public static final String FIELD_HOST = "host";
+
+    /**
+     * Field with the version a diff starts from.
+     */
+    public static final String FIELD_FROM = "from";
+
+    /**
+     * Field with the version a diff leads to.
+     */
+    public static final String FIELD_TO = "to";
+
+    /**
+     * Field with the resources added in a diff.
+     */
+    public static final String FIELD_ADDED = "added";
+
+    /**
+     * Field with the resources changed in a diff.
+     */
+    public static final String FIELD_CHANGED = "changed";
+
+    /**
+     * Field with the resources removed in a diff.
+     */
+    public static final String FIELD_REMOVED = "removed";
+
+    /**
+     * Field with the kind of a resource in a diff.
+     */
+    public static final String FIELD_KIND = "kind";
+
+    /**
+     * Field with the parent of a resource in a diff.
+     */
+    public static final String FIELD_PARENT = "parent";
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType,
+            final Annotation[] annotations, final MediaType mediaType) {
+        return PhysicalTopology.class.isAssignableFrom(type)
+                || PhysicalHost.class.isAssignableFrom(type)
+                || PhysicalStore.class.isAssignableFrom(type)
+                || VirtualMachine.class.isAssignableFrom(type)
+                || TopologyDiff.class.isAssignableFrom(type) || String[].class.equals(type);
+    }
+
+    @Override
+    public long getSize(final Object t, final Class<?> type, final Type genericType,
+            final Annotation[] annotations, final MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(final Object t, final Class<?> type, final Type genericType,
+            final Annotation[] annotations, final MediaType mediaType,
+            final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream)
+            throws IOException {
+        final JsonWriter writer = new JsonWriter(new OutputStreamWriter(entityStream,
+                StandardCharsets.UTF_8));
+        if (t instanceof PhysicalTopology) {
+            JsonEntityWriter.write(writer, (PhysicalTopology) t);
+        } else if (t instanceof PhysicalHost) {
+            JsonEntityWriter.write(writer, (PhysicalHost) t);
+        } else if (t instanceof PhysicalStore) {
+            JsonEntityWriter.write(writer, (PhysicalStore) t);
+        } else if (t instanceof VirtualMachine) {
+            JsonEntityWriter.write(writer, (VirtualMachine) t);
+        } else if (t instanceof TopologyDiff) {
+            JsonEntityWriter.write(writer, (TopologyDiff) t);
+        } else {
+            writer.beginArray();
+            for (final String id : (String[]) t) {
+                JsonEntityWriter.writeString(writer, id);
+            }
+            writer.endArray();
+        }
+        // Flush without closing, the container owns the stream.
+        writer.flush();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param topology
+     *            The topology to write.
+     */
+    private static void write(final JsonWriter writer, final PhysicalTopology topology) {
+        writer.beginObject();
+        writer.writeName(JsonEntityWriter.FIELD_ID);
+        JsonEntityWriter.writeString(writer, topology.getRoot().getUniqueIdentifier());
+        writer.writeName(JsonEntityWriter.FIELD_DATACENTERS);
+        writer.beginArray();
+        for (final PhysicalDataCenter datacenter : topology.getDataCenters()) {
+            writer.beginObject();
+            writer.writeName(JsonEntityWriter.FIELD_ID);
+            JsonEntityWriter.writeString(writer, datacenter.getUniqueIdentifier());
+            writer.writeName(JsonEntityWriter.FIELD_RACKS);
+            writer.beginArray();
+            for (final PhysicalRack rack : datacenter.getRacks()) {
+                JsonEntityWriter.write(writer, rack);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param rack
+     *            The rack to write.
+     */
+    private static void write(final JsonWriter writer, final PhysicalRack rack) {
+        writer.beginObject();
+        writer.writeName(JsonEntityWriter.FIELD_ID);
+        JsonEntityWriter.writeString(writer, rack.getUniqueIdentifier());
+        JsonEntityWriter.writeStores(writer, rack.getDisks());
+        writer.writeName(JsonEntityWriter.FIELD_HOSTS);
+        writer.beginArray();
+        for (final PhysicalHost host : rack.getCPUs()) {
+            JsonEntityWriter.write(writer, host);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param host
+     *            The host to write.
+     */
+    private static void write(final JsonWriter writer, final PhysicalHost host) {
+        writer.beginObject();
+        writer.writeName(JsonEntityWriter.FIELD_ID);
+        JsonEntityWriter.writeString(writer, host.getUniqueIdentifier());
+        writer.writeName(JsonEntityWriter.FIELD_CPU_USAGE);
+        writer.writeValue(host.getCpuUsage());
+        writer.writeName(JsonEntityWriter.FIELD_MEM_USAGE);
+        writer.writeValue(host.getMemUsage());
+        JsonEntityWriter.writeStores(writer, host.getDisks());
+        writer.endObject();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param stores
+     *            The datastores to write as the stores field.
+     */
+    private static void writeStores(final JsonWriter writer, final List<PhysicalStore> stores) {
+        writer.writeName(JsonEntityWriter.FIELD_STORES);
+        writer.beginArray();
+        for (final PhysicalStore store : stores) {
+            JsonEntityWriter.write(writer, store);
+        }
+        writer.endArray();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param store
+     *            The datastore to write.
+     */
+    private static void write(final JsonWriter writer, final PhysicalStore store) {
+        writer.beginObject();
+        writer.writeName(JsonEntityWriter.FIELD_ID);
+        JsonEntityWriter.writeString(writer, store.getUniqueIdentifier());
+        writer.writeName(JsonEntityWriter.FIELD_CAPACITY);
+        writer.writeValue(store.getCapacity());
+        writer.writeName(JsonEntityWriter.FIELD_USED);
+        writer.writeValue(store.getUsed());
+        writer.endObject();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param vm
+     *            The VM to write.
+     */
+    private static void write(final JsonWriter writer, final VirtualMachine vm) {
+        writer.beginObject();
+        writer.writeName(JsonEntityWriter.FIELD_ID);
+        JsonEntityWriter.writeString(writer, vm.getUniqueIdentifier());
+        writer.writeName(JsonEntityWriter.FIELD_HOSTNAME);
+        JsonEntityWriter.writeString(writer, vm.getHostname());
+        writer.writeName(JsonEntityWriter.FIELD_STATUS);
+        JsonEntityWriter.writeString(writer, vm.getStatus() == null ? null : vm.getStatus()
+                .toString());
+        writer.writeName(JsonEntityWriter.FIELD_HOST);
+        JsonEntityWriter.writeString(writer, vm.getHost());
+        writer.writeName(JsonEntityWriter.FIELD_STORES);
+        writer.beginArray();
+        if (vm.getStores() != null) {
+            for (final String store : vm.getStores()) {
+                JsonEntityWriter.writeString(writer, store);
+            }
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param diff
+     *            The topology diff to write.
+     */
+    private static void write(final JsonWriter writer, final TopologyDiff diff) {
+        writer.beginObject();
+        writer.writeName(JsonEntityWriter.FIELD_FROM);
+        writer.writeValue(diff.getFromVersion());
+        writer.writeName(JsonEntityWriter.FIELD_TO);
+        writer.writeValue(diff.getToVersion());
+        JsonEntityWriter.writeStates(writer, JsonEntityWriter.FIELD_ADDED, diff.getAdded());
+        JsonEntityWriter.writeStates(writer, JsonEntityWriter.FIELD_CHANGED, diff.getChanged());
+        JsonEntityWriter.writeStates(writer, JsonEntityWriter.FIELD_REMOVED, diff.getRemoved());
+        writer.endObject();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param name
+     *            The name of the field.
+     * @param states
+     *            The resources to write.
+     */
+    private static void writeStates(final JsonWriter writer, final String name,
+            final List<ResourceState> states) {
+        writer.writeName(name);
+        writer.beginArray();
+        for (final ResourceState state : states) {
+            writer.beginObject();
+            writer.writeName(JsonEntityWriter.FIELD_KIND);
+            JsonEntityWriter.writeString(writer, state.getKind());
+            writer.writeName(JsonEntityWriter.FIELD_ID);
+            JsonEntityWriter.writeString(writer, state.getId());
+            if (state.getParentId() != null) {
+                writer.writeName(JsonEntityWriter.FIELD_PARENT);
+                JsonEntityWriter.writeString(writer, state.getParentId());
+            }
+            for (final Map.Entry<String, String> entry : state.getAttributes().entrySet()) {
+                writer.writeName(entry.getKey());
+                JsonEntityWriter.writeString(writer, entry.getValue());
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    /**
+     * @param writer
+     *            The writer.
+     * @param value
+     *            The string to write, may be <code>null</code>.
+     */
+    private static void writeString(final JsonWriter writer, final String value) {
+        if (value == null) {
+            writer.writeNull();
+        } else {
+            writer.writeValue(value);
+        }
+    }
+}
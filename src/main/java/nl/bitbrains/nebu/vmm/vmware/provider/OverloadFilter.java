@@ -0,0 +1,44 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.Provider;
+
+import nl.bitbrains.nebu.vmm.vmware.server.WorkerQueueMonitor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Rejects requests with 503 Service Unavailable while the worker queue of the
+ * server is longer than configured, so clients back off instead of waiting
+ * behind a growing backlog of blocking VMware calls.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@Provider
+@PreMatching
+public class OverloadFilter implements ContainerRequestFilter {
+
+    /**
+     * Logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) throws IOException {
+        final WorkerQueueMonitor monitor = WorkerQueueMonitor.getInstance();
+        if (monitor.isOverloaded()) {
+            OverloadFilter.logger.warn("Rejecting request, {} tasks queued.", monitor.getQueued());
+            requestContext.abortWith(Response.status(Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, monitor.getRetryAfterSeconds()).build());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package nl.bitbrains.nebu.vmm.vmware.provider;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -9,7 +10,11 @@ import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -17,8 +22,6 @@ import nl.bitbrains.nebu.common.VirtualMachine;
 import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalResource;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
-import nl.bitbrains.nebu.common.topology.factory.TopologyFactories;
-import nl.bitbrains.nebu.common.util.xml.XMLConverter;
 import nl.bitbrains.nebu.vmm.vmware.api.Singleton;
 import nl.bitbrains.nebu.vmm.vmware.entity.VMTemplate;
 import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
@@ -30,7 +33,6 @@ import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.JDOMException;
 
 /**
  * Provides the /phys part of the VMM REST API.
@@ -105,24 +107,13 @@ public class PhysicalTopologyProvider {
                                              template);
         PhysicalTopologyProvider.logger.info("VM will have hostname {}", hostnameNoSpace);
 
-        final String vmid = vmtemplate.getTemplate();
         try {
-            final VirtualMachine vm = Singleton.getVmware().getVirtualMachineInfo(vmid);
-            final PhysicalHost host = Singleton.getVmware().getHostInfo(uuid);
-            final List<String> vappstrings = vmtemplate.getDestVApps();
-            Collections.shuffle(vappstrings);
-            final VirtualApplication dest = Singleton.getVmware()
-                    .selectVirtualApplicationFromHost(host, vappstrings);
-            VmBootStatus task;
-            if (store == null) {
-                task = Singleton.getVmware().createVM(vm, dest, uuid, hostnameNoSpace);
-                PhysicalTopologyProvider.logger.info("VM is not assigned a specific store.");
-            } else {
-                task = Singleton.getVmware().createVM(vm, dest, uuid, hostnameNoSpace, store);
-                PhysicalTopologyProvider.logger.info("VM will use store {}.", store);
-            }
+            final VmBootStatus task = PhysicalTopologyProvider.launch(vmtemplate,
+                                                                      uuid,
+                                                                      hostnameNoSpace,
+                                                                      store,
+                                                                      null);
             taskid = task.getUniqueIdentifier();
-            VmBootStatus.addStatus(task);
         } catch (VMwareException | NoSuchVMException | VMLaunchException e) {
             PhysicalTopologyProvider.logger.catching(Level.ERROR, e);
             return Response.status(Status.INTERNAL_SERVER_ERROR).build();
@@ -131,6 +122,63 @@ public class PhysicalTopologyProvider {
         return Response.created(new URI(VmBootStatusProvider.PATH + "/" + taskid)).build();
     }
 
+    /**
+     * Starts a task that launches a new VM from a template and registers its
+     * {@link VmBootStatus}.
+     * 
+     * @param vmtemplate
+     *            The vmm template to use to launch this new VM.
+     * @param hostId
+     *            The vSphere HostSystem ID where the new VM should be placed.
+     * @param hostname
+     *            The hostname the new VM should have.
+     * @param store
+     *            The vSphere id of the datastore the new VM should use, may be
+     *            <code>null</code>.
+     * @param dest
+     *            The vApp the new VM should be part of, or <code>null</code>
+     *            to select one that can use the host.
+     * @return The {@link VmBootStatus} of the task.
+     * @throws VMwareException
+     *             If the template VM or the host cannot be read.
+     * @throws NoSuchVMException
+     *             If the template VM does not exist.
+     * @throws VMLaunchException
+     *             If the task cannot be started.
+     */
+    static VmBootStatus launch(final VMTemplate vmtemplate, final String hostId,
+            final String hostname, final String store, final VirtualApplication dest)
+            throws VMwareException, NoSuchVMException, VMLaunchException {
+        final String vmid = vmtemplate.getTemplate();
+        final VirtualMachine vm = Singleton.getVmware().getVirtualMachineInfo(vmid);
+        VirtualApplication vapp = dest;
+        if (vapp == null) {
+            final PhysicalHost host = Singleton.getVmware().getHostInfo(hostId);
+            // Shuffle a copy, the template is shared by concurrent requests.
+            final List<String> vappstrings = new ArrayList<String>(vmtemplate.getDestVApps());
+            Collections.shuffle(vappstrings);
+            vapp = Singleton.getVmware().selectVirtualApplicationFromHost(host, vappstrings);
+        }
+        VmBootStatus task;
+        if (store == null) {
+            task = Singleton.getVmware().createVM(vm, vapp, hostId, hostname);
+            PhysicalTopologyProvider.logger.info("VM is not assigned a specific store.");
+        } else {
+            task = Singleton.getVmware().createVM(vm, vapp, hostId, hostname, store);
+            PhysicalTopologyProvider.logger.info("VM will use store {}.", store);
+        }
+        VmBootStatus.addStatus(task);
+        ResponseCache.getInstance().invalidateAll();
+        // The deployment changes the topology again when it is done.
+        task.whenDone(new Runnable() {
+            @Override
+            public void run() {
+                ResponseCache.getInstance().invalidateAll();
+            }
+        });
+        return task;
+    }
+
     /**
      * Retrieves a {@link PhysicalResource} that matches the given ID.
      * 
@@ -139,13 +187,27 @@ public class PhysicalTopologyProvider {
      * @param type
      *            The type of the {@link PhysicalResource}. Currently,
      *            {@link PhysicalHost} and {@link PhysicalStore} are supported.
+     * @param headers
+     *            The headers of the request, used to choose between XML and
+     *            JSON.
      * @return The {@link PhysicalResource}.
      */
     @Path(PhysicalTopologyProvider.PATH_UUID)
     @GET
+    @Compressed
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
     public Response getPhysForResource(@PathParam("uuid") final String uuid,
-            @QueryParam("type") final String type) {
+            @QueryParam("type") final String type, @Context final HttpHeaders headers) {
         PhysicalTopologyProvider.logger.info("Getting topology for resource {}.", uuid);
+        final MediaType mediaType = Representations.mediaType(headers);
+        final String key = ResponseCache.key(mediaType,
+                                             PhysicalTopologyProvider.PATH + "/" + uuid,
+                                             "type=" + type);
+        final String coding = ResponseCompression.getInstance().select(headers);
+        final Response cached = ResponseCache.getInstance().get(key, coding);
+        if (cached != null) {
+            return cached;
+        }
         try {
             if (type == null) {
                 PhysicalTopologyProvider.logger.warn("No resource type given.");
@@ -154,19 +216,25 @@ public class PhysicalTopologyProvider {
                 PhysicalTopologyProvider.logger.info("Resource is of type {}.",
                                                      PhysicalTopologyProvider.STORE_INFO);
                 final PhysicalStore store = Singleton.getVmware().getStoreInfo(uuid);
-                return Response.ok(XMLConverter.convertJDOMElementW3CDocument(TopologyFactories
-                        .createDefault().getPhysicalStoreFactory().toXML(store))).build();
+                return ResponseCache.getInstance().put(key,
+                                                       store,
+                                                       mediaType,
+                                                       Collections.<String, String> emptyMap(),
+                                                       coding);
             } else if (type.equals(PhysicalTopologyProvider.HOST_INFO)) {
                 PhysicalTopologyProvider.logger.info("Resource is of type {}.",
                                                      PhysicalTopologyProvider.HOST_INFO);
                 final PhysicalHost host = Singleton.getVmware().getHostInfo(uuid);
-                return Response.ok(XMLConverter.convertJDOMElementW3CDocument(TopologyFactories
-                        .createDefault().getPhysicalCPUFactory().toXML(host))).build();
+                return ResponseCache.getInstance().put(key,
+                                                       host,
+                                                       mediaType,
+                                                       Collections.<String, String> emptyMap(),
+                                                       coding);
             } else {
                 PhysicalTopologyProvider.logger.warn("Invalid resource type: {}.", type);
                 return Response.status(Status.NOT_FOUND).build();
             }
-        } catch (final JDOMException | VMwareException e) {
+        } catch (final VMwareException e) {
             PhysicalTopologyProvider.logger.catching(Level.ERROR, e);
             return Response.status(Status.INTERNAL_SERVER_ERROR).build();
         }
@@ -0,0 +1,52 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Chooses between the XML and JSON representation of a response. XML stays
+ * the default, JSON is only used when the client prefers it.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class Representations {
+
+    /**
+     * Private constructor. This class only has static methods.
+     */
+    private Representations() {
+    }
+
+    /**
+     * @param headers
+     *            The headers of the request, may be <code>null</code>.
+     * @return <code>true</code> iff the Accept header prefers JSON over XML.
+     */
+    public static boolean prefersJson(final HttpHeaders headers) {
+        if (headers == null) {
+            return false;
+        }
+        for (final MediaType type : headers.getAcceptableMediaTypes()) {
+            if (type.isWildcardType() || MediaType.APPLICATION_XML_TYPE.isCompatible(type)
+                    || MediaType.TEXT_XML_TYPE.isCompatible(type)) {
+                return false;
+            }
+            if (MediaType.APPLICATION_JSON_TYPE.isCompatible(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param headers
+     *            The headers of the request, may be <code>null</code>.
+     * @return The JSON media type iff the Accept header prefers JSON over
+     *         XML, the XML media type otherwise.
+     */
+    public static MediaType mediaType(final HttpHeaders headers) {
+        return Representations.prefersJson(headers) ? MediaType.APPLICATION_JSON_TYPE
+                : MediaType.APPLICATION_XML_TYPE;
+    }
+}
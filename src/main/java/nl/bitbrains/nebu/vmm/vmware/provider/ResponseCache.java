@@ -0,0 +1,426 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEvent;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyListener;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps the serialized bytes of recent responses of the read endpoints, so
+ * identical requests within a short time are answered from memory without
+ * calling VMware or building XML. A compressed copy is kept for each coding
+ * that clients ask for, so a response is compressed once per version instead
+ * of once per request. Entries expire after a fixed time and the least
+ * recently used entries are evicted when the cache is full. Launching,
+ * moving or killing a VM and changes reported by the
+ * {@link nl.bitbrains.nebu.vmm.vmware.topology.TopologyFeed} clear the
+ * cache.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class ResponseCache implements TopologyListener {
+
+    /**
+     * Logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    private static final ResponseCache INSTANCE = new ResponseCache(
+            ResponseCompression.getInstance());
+
+    /**
+     * A cached response.
+     */
+    private static final class Entry {
+        private final byte[] body;
+        private final MediaType type;
+        private final Map<String, String> headers;
+        private final long expires;
+        private final Map<String, byte[]> encoded;
+
+        /**
+         * Creates a new {@link Entry}.
+         * 
+         * @param body
+         *            The serialized entity.
+         * @param type
+         *            The media type of the entity.
+         * @param headers
+         *            The headers of the response.
+         * @param expires
+         *            The time in milliseconds after which the entry is
+         *            stale.
+         */
+        private Entry(final byte[] body, final MediaType type, final Map<String, String> headers,
+                final long expires) {
+            this.body = body;
+            this.type = type;
+            this.headers = headers;
+            this.expires = expires;
+            this.encoded = new HashMap<String, byte[]>(2);
+        }
+
+        /**
+         * @return The size in bytes of the entity and its compressed copies.
+         */
+        private long size() {
+            long size = this.body.length;
+            for (final byte[] copy : this.encoded.values()) {
+                size += copy.length;
+            }
+            return size;
+        }
+
+        /**
+         * @param entity
+         *            The entity or one of its compressed copies.
+         * @param coding
+         *            The coding of the entity, <code>null</code> if it is not
+         *            compressed.
+         * @return A response with the entity and the cached headers.
+         */
+        private Response toResponse(final byte[] entity, final String coding) {
+            final ResponseBuilder builder = Response.ok(entity, this.type);
+            for (final Map.Entry<String, String> header : this.headers.entrySet()) {
+                builder.header(header.getKey(), header.getValue());
+            }
+            if (coding != null) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, coding);
+            }
+            return builder.build();
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries;
+    private final ResponseCompression compression;
+    private long ttlMillis;
+    private long maxBytes;
+    private long bytes;
+
+    /**
+     * Creates a disabled {@link ResponseCache}, use {@link #getInstance()}
+     * outside of tests.
+     * 
+     * @param compression
+     *            The compression settings of the cached responses.
+     */
+    ResponseCache(final ResponseCompression compression) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        this.compression = compression;
+    }
+
+    /**
+     * @return The cache shared by all providers.
+     */
+    public static ResponseCache getInstance() {
+        return ResponseCache.INSTANCE;
+    }
+
+    /**
+     * Sets the lifetime and size of the cache and clears it.
+     * 
+     * @param ttlMillis
+     *            The time in milliseconds a response is kept, 0 disables
+     *            the cache.
+     * @param maxBytes
+     *            The maximum total size of the cached responses in bytes, 0
+     *            disables the cache.
+     */
+    public synchronized void configure(final long ttlMillis, final long maxBytes) {
+        this.ttlMillis = Math.max(0, ttlMillis);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.invalidateAll();
+    }
+
+    /**
+     * @return <code>true</code> iff responses are cached.
+     */
+    public synchronized boolean isEnabled() {
+        return this.ttlMillis > 0 && this.maxBytes > 0;
+    }
+
+    /**
+     * Composes the key of a response.
+     * 
+     * @param type
+     *            The media type of the response.
+     * @param path
+     *            The path of the request.
+     * @param params
+     *            The parameters of the request that change the response, as
+     *            name=value.
+     * @return The key.
+     */
+    public static String key(final MediaType type, final String path, final String... params) {
+        final StringBuilder key = new StringBuilder(path);
+        char separator = '?';
+        for (final String param : params) {
+            key.append(separator).append(param);
+            separator = '&';
+        }
+        return key.append(' ').append(type).toString();
+    }
+
+    /**
+     * @param key
+     *            The key of the response, see
+     *            {@link #key(MediaType, String, String...)}.
+     * @param coding
+     *            The coding chosen by {@link ResponseCompression}, may be
+     *            <code>null</code>.
+     * @return The cached response, <code>null</code> if there is none.
+     */
+    public Response get(final String key, final String coding) {
+        return this.get(key, coding, System.currentTimeMillis());
+    }
+
+    /**
+     * @param key
+     *            The key of the response.
+     * @param coding
+     *            The coding chosen by {@link ResponseCompression}, may be
+     *            <code>null</code>.
+     * @param now
+     *            The current time in milliseconds.
+     * @return The cached response, <code>null</code> if there is none or it
+     *         expired.
+     */
+    Response get(final String key, final String coding, final long now) {
+        final Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expires <= now) {
+                this.remove(key);
+                return null;
+            }
+        }
+        return this.respond(key, entry, coding);
+    }
+
+    /**
+     * Serializes an entity, caches it and returns it as a response. If the
+     * cache is disabled or the entity cannot be serialized, the entity is
+     * returned as is.
+     * 
+     * @param key
+     *            The key of the response, see
+     *            {@link #key(MediaType, String, String...)}.
+     * @param entity
+     *            The entity of the response, written by the
+     *            {@link XmlEntityWriter} or the {@link JsonEntityWriter}.
+     * @param type
+     *            The media type of the response.
+     * @param headers
+     *            The headers of the response.
+     * @param coding
+     *            The coding chosen by {@link ResponseCompression}, may be
+     *            <code>null</code>.
+     * @return The response.
+     */
+    public Response put(final String key, final Object entity, final MediaType type,
+            final Map<String, String> headers, final String coding) {
+        return this.put(key, entity, type, headers, coding, System.currentTimeMillis());
+    }
+
+    /**
+     * @param key
+     *            The key of the response.
+     * @param entity
+     *            The entity of the response.
+     * @param type
+     *            The media type of the response.
+     * @param headers
+     *            The headers of the response.
+     * @param coding
+     *            The coding chosen by {@link ResponseCompression}, may be
+     *            <code>null</code>.
+     * @param now
+     *            The current time in milliseconds.
+     * @return The response.
+     */
+    Response put(final String key, final Object entity, final MediaType type,
+            final Map<String, String> headers, final String coding, final long now) {
+        final long ttl;
+        synchronized (this) {
+            ttl = this.isEnabled() ? this.ttlMillis : 0;
+        }
+        if (ttl > 0) {
+            try {
+                final Entry entry = new Entry(ResponseCache.render(entity, type), type,
+                        Collections.unmodifiableMap(new LinkedHashMap<String, String>(headers)),
+                        now + ttl);
+                this.store(key, entry);
+                return this.respond(key, entry, coding);
+            } catch (final IOException e) {
+                ResponseCache.logger.catching(Level.WARN, e);
+            }
+        }
+        final ResponseBuilder builder = Response.ok(entity, type);
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Removes the responses of a path and the paths below it.
+     * 
+     * @param path
+     *            The path of the requests.
+     */
+    public synchronized void invalidate(final String path) {
+        final Iterator<Map.Entry<String, Entry>> entries = this.entries.entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<String, Entry> entry = entries.next();
+            final String key = entry.getKey();
+            if (key.startsWith(path)) {
+                final char next = key.charAt(path.length());
+                if (next == '/' || next == '?' || next == ' ') {
+                    this.bytes -= entry.getValue().size();
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all responses.
+     */
+    public synchronized void invalidateAll() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * @return The number of cached responses.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public void onEvent(final TopologyEvent event) {
+        this.invalidateAll();
+    }
+
+    /**
+     * @param key
+     *            The key of the entry.
+     * @param entry
+     *            The entry.
+     * @param coding
+     *            The coding the client accepts, may be <code>null</code>.
+     * @return A response with the entity of the entry, compressed if the
+     *         client accepts it and the entity is large enough.
+     */
+    private Response respond(final String key, final Entry entry, final String coding) {
+        if (!this.compression.isWorthwhile(coding, entry.body.length)) {
+            return entry.toResponse(entry.body, null);
+        }
+        byte[] encoded;
+        synchronized (this) {
+            encoded = entry.encoded.get(coding);
+        }
+        if (encoded == null) {
+            // Compress outside the lock, a concurrent request for the same
+            // entry at worst compresses it twice.
+            encoded = ResponseCompression.encode(entry.body, coding);
+            synchronized (this) {
+                if (this.entries.get(key) == entry && !entry.encoded.containsKey(coding)) {
+                    entry.encoded.put(coding, encoded);
+                    this.bytes += encoded.length;
+                    this.evict();
+                }
+            }
+        }
+        return entry.toResponse(encoded, coding);
+    }
+
+    /**
+     * Adds an entry and evicts the least recently used entries until the
+     * cache fits.
+     * 
+     * @param key
+     *            The key of the entry.
+     * @param entry
+     *            The entry.
+     */
+    private synchronized void store(final String key, final Entry entry) {
+        if (entry.body.length > this.maxBytes) {
+            return;
+        }
+        this.remove(key);
+        this.entries.put(key, entry);
+        this.bytes += entry.body.length;
+        this.evict();
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits.
+     */
+    private void evict() {
+        final Iterator<Entry> eldest = this.entries.values().iterator();
+        while (this.bytes > this.maxBytes && eldest.hasNext()) {
+            this.bytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @param key
+     *            The key of the entry to remove.
+     */
+    private void remove(final String key) {
+        final Entry entry = this.entries.remove(key);
+        if (entry != null) {
+            this.bytes -= entry.size();
+        }
+    }
+
+    /**
+     * @param entity
+     *            The entity.
+     * @param type
+     *            The media type to write.
+     * @return The entity as written to a response.
+     * @throws IOException
+     *             If the entity cannot be written.
+     */
+    private static byte[] render(final Object entity, final MediaType type) throws IOException {
+        final MessageBodyWriter<Object> writer = MediaType.APPLICATION_JSON_TYPE
+                .isCompatible(type) ? new JsonEntityWriter() : new XmlEntityWriter();
+        if (!writer.isWriteable(entity.getClass(), entity.getClass(), new Annotation[0], type)) {
+            throw new IOException("Cannot write " + entity.getClass().getName() + " as " + type);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(entity,
+                       entity.getClass(),
+                       entity.getClass(),
+                       new Annotation[0],
+                       type,
+                       null,
+                       out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,186 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+
+/**
+ * Negotiates the compression of the read endpoints with the Accept-Encoding
+ * header of a request. Responses are compressed with gzip or deflate when
+ * they are at least a minimal size, smaller responses are not worth the CPU
+ * time.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class ResponseCompression {
+
+    /**
+     * The gzip content coding.
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * The deflate content coding.
+     */
+    public static final String DEFLATE = "deflate";
+
+    private static final ResponseCompression INSTANCE = new ResponseCompression();
+
+    private volatile boolean enabled;
+    private volatile int minSize;
+
+    /**
+     * Creates a disabled {@link ResponseCompression}, use
+     * {@link #getInstance()} outside of tests.
+     */
+    ResponseCompression() {
+    }
+
+    /**
+     * @return The compression settings shared by all providers.
+     */
+    public static ResponseCompression getInstance() {
+        return ResponseCompression.INSTANCE;
+    }
+
+    /**
+     * @param enabled
+     *            Whether responses may be compressed.
+     * @param minSize
+     *            The minimal size in bytes of a compressed response.
+     */
+    public void configure(final boolean enabled, final int minSize) {
+        this.enabled = enabled;
+        this.minSize = Math.max(0, minSize);
+    }
+
+    /**
+     * @return The minimal size in bytes of a compressed response.
+     */
+    public int getMinSize() {
+        return this.minSize;
+    }
+
+    /**
+     * @param headers
+     *            The headers of the request, may be <code>null</code>.
+     * @return The coding to use, {@link #GZIP} or {@link #DEFLATE}, or
+     *         <code>null</code> if the response is not compressed.
+     */
+    public String select(final HttpHeaders headers) {
+        if (!this.enabled || headers == null) {
+            return null;
+        }
+        return ResponseCompression.select(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * @param coding
+     *            The coding chosen by {@link #select(HttpHeaders)}.
+     * @param size
+     *            The size of the response in bytes.
+     * @return <code>true</code> iff the response should be compressed.
+     */
+    public boolean isWorthwhile(final String coding, final int size) {
+        return this.enabled && coding != null && size >= this.minSize;
+    }
+
+    /**
+     * Picks the supported coding with the highest quality from an
+     * Accept-Encoding header, preferring gzip.
+     * 
+     * @param acceptEncoding
+     *            The value of the header, may be <code>null</code>.
+     * @return {@link #GZIP}, {@link #DEFLATE}, or <code>null</code> if the
+     *         client accepts neither.
+     */
+    static String select(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        Double gzip = null;
+        Double deflate = null;
+        double any = 0;
+        for (final String part : acceptEncoding.split(",")) {
+            final String[] fields = part.split(";");
+            final String coding = fields[0].trim().toLowerCase();
+            final double quality = ResponseCompression.quality(fields);
+            if (ResponseCompression.GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzip = quality;
+            } else if (ResponseCompression.DEFLATE.equals(coding)) {
+                deflate = quality;
+            } else if ("*".equals(coding)) {
+                any = quality;
+            }
+        }
+        final double gzipQuality = gzip == null ? any : gzip;
+        final double deflateQuality = deflate == null ? any : deflate;
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return ResponseCompression.GZIP;
+        }
+        return deflateQuality > 0 ? ResponseCompression.DEFLATE : null;
+    }
+
+    /**
+     * @param fields
+     *            A coding followed by its parameters.
+     * @return The q parameter, 1 if it is missing or invalid.
+     */
+    private static double quality(final String[] fields) {
+        for (int i = 1; i < fields.length; i++) {
+            final String field = fields[i].trim();
+            if (field.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(field.substring(2));
+                } catch (final NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @param out
+     *            The stream to write the compressed bytes to.
+     * @param coding
+     *            {@link #GZIP} or {@link #DEFLATE}.
+     * @return A stream that compresses what is written to it. Use
+     *         {@link DeflaterOutputStream#finish()} to complete it without
+     *         closing the given stream.
+     * @throws IOException
+     *             If the stream cannot be created.
+     */
+    public static DeflaterOutputStream wrap(final OutputStream out, final String coding)
+            throws IOException {
+        if (ResponseCompression.GZIP.equals(coding)) {
+            return new GZIPOutputStream(out);
+        }
+        return new DeflaterOutputStream(out);
+    }
+
+    /**
+     * @param body
+     *            The bytes to compress.
+     * @param coding
+     *            {@link #GZIP} or {@link #DEFLATE}.
+     * @return The compressed bytes.
+     */
+    public static byte[] encode(final byte[] body, final String coding) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try {
+            final DeflaterOutputStream compressed = ResponseCompression.wrap(out, coding);
+            compressed.write(body);
+            compressed.close();
+        } catch (final IOException e) {
+            // A ByteArrayOutputStream does not throw.
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,142 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.IOException;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEvent;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEventFactory;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyFeed;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyListener;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Provides the topology event stream of the vmm vmware REST API. Clients
+ * keep a connection open and receive a server-sent event for every host or
+ * datastore that appears, disappears, crosses the load threshold or changes
+ * its space, instead of polling the topology.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@Path(TopologyEventProvider.PATH)
+public class TopologyEventProvider {
+
+    /**
+     * The logger for this class.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    /**
+     * The provider path.
+     */
+    public static final String PATH = "/events/topology";
+
+    /**
+     * Name of the event that tells a client that it missed events and should
+     * fetch the full topology again.
+     */
+    public static final String EVENT_RESYNC = "resync";
+
+    /**
+     * Writes the events of the feed to one client.
+     */
+    private static final class Subscriber implements TopologyListener {
+        private final TopologyFeed feed;
+        private final EventOutput output;
+        private final TopologyEventFactory factory;
+        private final XMLOutputter outputter;
+
+        /**
+         * Creates a new {@link Subscriber}.
+         * 
+         * @param feed
+         *            The feed the subscriber listens to.
+         * @param output
+         *            The stream to the client.
+         */
+        private Subscriber(final TopologyFeed feed, final EventOutput output) {
+            this.feed = feed;
+            this.output = output;
+            this.factory = new TopologyEventFactory();
+            this.outputter = new XMLOutputter(Format.getCompactFormat());
+        }
+
+        @Override
+        public void onEvent(final TopologyEvent event) {
+            this.write(new OutboundEvent.Builder().name(event.getType())
+                    .id(Long.toString(event.getSequence()))
+                    .mediaType(MediaType.APPLICATION_XML_TYPE)
+                    .data(String.class, this.outputter.outputString(this.factory.toXML(event)))
+                    .build());
+        }
+
+        /**
+         * Writes an event to the client, and unsubscribes if the client is
+         * gone.
+         * 
+         * @param event
+         *            The event.
+         */
+        private synchronized void write(final OutboundEvent event) {
+            if (this.output.isClosed()) {
+                this.feed.unsubscribe(this);
+                return;
+            }
+            try {
+                this.output.write(event);
+            } catch (final IOException e) {
+                TopologyEventProvider.logger.catching(Level.DEBUG, e);
+                this.feed.unsubscribe(this);
+                try {
+                    this.output.close();
+                } catch (final IOException ignored) {
+                    TopologyEventProvider.logger.catching(Level.DEBUG, ignored);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a stream of topology events. A client that reconnects with the
+     * id of the last event it received first gets the events it missed, or a
+     * <code>resync</code> event if they are no longer kept.
+     * 
+     * @param lastEventId
+     *            The id of the last event the client received, may be
+     *            <code>null</code>.
+     * @return The event stream.
+     */
+    @GET
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public EventOutput getTopologyEvents(
+            @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) final Long lastEventId) {
+        TopologyEventProvider.logger.info("Opening topology event stream after event {}.",
+                                          lastEventId);
+        final TopologyFeed feed = TopologyFeed.getInstance();
+        final EventOutput output = new EventOutput();
+        final Subscriber subscriber = new Subscriber(feed, output);
+        // Hold the subscriber, not the feed, so the resync is written before
+        // any event is delivered without blocking other subscribers.
+        synchronized (subscriber) {
+            if (!feed.subscribeIfKept(subscriber, lastEventId)) {
+                subscriber.write(new OutboundEvent.Builder()
+                        .name(TopologyEventProvider.EVENT_RESYNC).data(String.class, "")
+                        .build());
+            }
+        }
+        return output;
+    }
+}
@@ -1,33 +1,61 @@
 package nl.bitbrains.nebu.vmm.vmware.provider;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
-import nl.bitbrains.nebu.common.cache.CacheException;
-import nl.bitbrains.nebu.common.cache.CacheManager;
-import nl.bitbrains.nebu.common.topology.PhysicalRoot;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalTopology;
-import nl.bitbrains.nebu.common.topology.factory.TopologyFactories;
-import nl.bitbrains.nebu.common.topology.factory.TopologyFactory;
 import nl.bitbrains.nebu.common.util.xml.XMLConverter;
 import nl.bitbrains.nebu.vmm.vmware.api.Singleton;
 import nl.bitbrains.nebu.vmm.vmware.entity.VMTemplate;
 import nl.bitbrains.nebu.vmm.vmware.entity.VMTemplateFactory;
+import nl.bitbrains.nebu.vmm.vmware.entity.VMTemplateStore;
+import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
+import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
+import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
+import nl.bitbrains.nebu.vmm.vmware.exception.VMLaunchException;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
+import nl.bitbrains.nebu.vmm.vmware.placement.Assignment;
+import nl.bitbrains.nebu.vmm.vmware.placement.AssignmentFactory;
+import nl.bitbrains.nebu.vmm.vmware.placement.Placement;
+import nl.bitbrains.nebu.vmm.vmware.placement.PlacementEngine;
+import nl.bitbrains.nebu.vmm.vmware.placement.PlacementFactory;
+import nl.bitbrains.nebu.vmm.vmware.placement.PlacementStrategies;
+import nl.bitbrains.nebu.vmm.vmware.placement.PlacementStrategy;
+import nl.bitbrains.nebu.vmm.vmware.placement.ReservationLedger;
+import nl.bitbrains.nebu.vmm.vmware.placement.VmDemand;
+import nl.bitbrains.nebu.vmm.vmware.placement.VmDemandFactory;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyDiff;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyHistory;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.JDOMException;
 import org.w3c.dom.Document;
 
 /**
@@ -65,26 +93,82 @@ public class VMTemplateProvider {
     public static final String UUID_PHYS_PATH = VMTemplateProvider.UUID_PATH + "/phys";
 
     /**
-     * Map key for VM templates.
+     * Placement path.
      */
-    public static final String CACHE_KEY_TEMPLATES = "templateCache";
+    public static final String UUID_PLACE_PATH = VMTemplateProvider.UUID_PATH + "/place";
+
+    /**
+     * Batch placement path.
+     */
+    public static final String UUID_PLACE_BATCH_PATH = VMTemplateProvider.UUID_PATH
+            + "/placebatch";
+
+    /**
+     * Time in milliseconds after which a reservation of a placed VM is
+     * released if its deployment did not complete.
+     */
+    public static final long RESERVATION_MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Response header that holds the version of a topology.
+     */
+    public static final String HEADER_TOPOLOGY_VERSION = "X-Topology-Version";
+
+    /**
+     * Number of versions of each topology kept for diffs.
+     */
+    public static final int TOPOLOGY_VERSIONS = 16;
+
+    /**
+     * Recent versions of the topology of each template.
+     */
+    private static final TopologyHistory topologies = new TopologyHistory(
+            VMTemplateProvider.TOPOLOGY_VERSIONS);
+
+    /**
+     * Resources promised to placed VMs that are not yet running.
+     */
+    private static final ReservationLedger reservations = new ReservationLedger(
+            VMTemplateProvider.RESERVATION_MAX_AGE);
+
+    /**
+     * Held while placements are chosen and reserved, so concurrent
+     * placements see each other's reservations.
+     */
+    private static final Object placementLock = new Object();
+
+    /**
+     * The VM templates known to the system.
+     */
+    private static final VMTemplateStore templates = new VMTemplateStore();
 
     /**
      * Gets the cache, also accessible for other classes.
      * 
      * @return the map of applications currently known to the system.
      */
-    @SuppressWarnings("unchecked")
     public static final Map<String, VMTemplate> getCache() {
-        Map<String, VMTemplate> map;
-        try {
-            map = (Map<String, VMTemplate>) CacheManager
-                    .get(VMTemplateProvider.CACHE_KEY_TEMPLATES);
-        } catch (final CacheException | IllegalArgumentException e) {
-            map = new HashMap<String, VMTemplate>();
-            CacheManager.put(VMTemplateProvider.CACHE_KEY_TEMPLATES, map);
-        }
-        return map;
+        return VMTemplateProvider.templates;
+    }
+
+    /**
+     * Loads the VM templates stored in a journal and keeps later changes in
+     * it, so templates survive a restart.
+     * 
+     * @param journal
+     *            The journal file, created if it does not exist.
+     * @throws IOException
+     *             If the journal cannot be read or written.
+     */
+    public static void openTemplateJournal(final File journal) throws IOException {
+        VMTemplateProvider.templates.open(journal);
+    }
+
+    /**
+     * @return the resources promised to placed VMs that are not yet running.
+     */
+    public static ReservationLedger getReservations() {
+        return VMTemplateProvider.reservations;
     }
 
     /**
@@ -108,6 +192,7 @@ public class VMTemplateProvider {
                     .fromXML(XMLConverter.convertW3CDocumentJDOMElement(doc)).withUuid(uuid)
                     .build();
             VMTemplateProvider.getCache().put(template.getUniqueIdentifier(), template);
+            ResponseCache.getInstance().invalidate(VMTemplateProvider.PATH + "/" + uuid);
             VMTemplateProvider.logger.info("Created new VM template with uuid {}.", uuid);
             rep = Response.created(null).build();
         } catch (final ParseException e) {
@@ -119,15 +204,37 @@ public class VMTemplateProvider {
 
     /**
      * Retrieves a {@link PhysicalTopology} object that contains all resources
-     * available to this {@link VMTemplate}.
+     * available to this {@link VMTemplate}. The version of the topology is
+     * returned in the {@link #HEADER_TOPOLOGY_VERSION} header. Clients that
+     * hold a recent version can pass it to receive only the racks, hosts and
+     * datastores that changed since, as a {@link TopologyDiff}. If that
+     * version is no longer kept, the full topology is returned.
      * 
      * @param uuid
      *            The UUID of the {@link VMTemplate}.
-     * @return A {@link PhysicalTopology}.
+     * @param since
+     *            The version of the topology the client holds, may be
+     *            <code>null</code>.
+     * @param headers
+     *            The headers of the request, used to choose between XML and
+     *            JSON.
+     * @return A {@link PhysicalTopology} or a {@link TopologyDiff}.
      */
     @Path(VMTemplateProvider.UUID_PHYS_PATH)
     @GET
-    public Response getTemplatePhys(@PathParam(VMTemplateProvider.UUID_NAME) final String uuid) {
+    @Compressed
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public Response getTemplatePhys(@PathParam(VMTemplateProvider.UUID_NAME) final String uuid,
+            @QueryParam("since") final Long since, @Context final HttpHeaders headers) {
+        final MediaType mediaType = Representations.mediaType(headers);
+        final String key = ResponseCache.key(mediaType,
+                                             VMTemplateProvider.PATH + "/" + uuid + "/phys",
+                                             "since=" + since);
+        final String coding = ResponseCompression.getInstance().select(headers);
+        final Response cached = ResponseCache.getInstance().get(key, coding);
+        if (cached != null) {
+            return cached;
+        }
         // TODO Remove Pokemon catch.
         try {
             final VMTemplate template = VMTemplateProvider.getCache().get(uuid);
@@ -141,23 +248,264 @@ public class VMTemplateProvider {
                     VMTemplateProvider.logger.catching(Level.ERROR, e1);
                     return Response.status(Status.INTERNAL_SERVER_ERROR).build();
                 }
-                try {
-                    final TopologyFactory<PhysicalRoot> factory = TopologyFactories.createDefault()
-                            .getPhysicalRootFactory();
+                final long version = VMTemplateProvider.topologies.record(uuid, topology);
+                final TopologyDiff diff = since == null ? null : VMTemplateProvider.topologies
+                        .diff(uuid, since);
+                if (diff != null) {
+                    VMTemplateProvider.logger.info("Returning diff {} to {} for template {}.",
+                                                   since,
+                                                   version,
+                                                   uuid);
+                } else {
                     VMTemplateProvider.logger.info("Returning topology {} for VM template {}.",
                                                    topology,
                                                    uuid);
-                    return Response.ok(XMLConverter.convertJDOMElementW3CDocument(factory
-                            .toXML(topology.getRoot()))).build();
-                } catch (final JDOMException e) {
-                    VMTemplateProvider.logger.catching(Level.ERROR, e);
-                    return Response.status(Status.INTERNAL_SERVER_ERROR).build();
                 }
+                return ResponseCache.getInstance()
+                        .put(key,
+                             diff == null ? topology : diff,
+                             mediaType,
+                             Collections.singletonMap(VMTemplateProvider.HEADER_TOPOLOGY_VERSION,
+                                                      Long.toString(version)),
+                             coding);
             }
             return Response.status(Status.NOT_FOUND).build();
+        } catch (final BackendUnavailableException | DeadlineExceededException e) {
+            throw e;
         } catch (final Exception e) {
             VMTemplateProvider.logger.catching(e);
             return null;
         }
     }
+
+    /**
+     * Chooses the best hosts and datastores for a new VM from a
+     * {@link VMTemplate}, so clients do not have to fetch and process the
+     * {@link PhysicalTopology} themselves. If a hostname is given, a VM is
+     * launched on the best candidate right away.
+     * 
+     * @param uuid
+     *            The UUID of the {@link VMTemplate}.
+     * @param strategy
+     *            The name of the {@link PlacementStrategy} to use, the
+     *            default strategy if <code>null</code>.
+     * @param count
+     *            The maximum number of candidates to return.
+     * @param hostname
+     *            The hostname of the VM to launch, <code>null</code> to only
+     *            return the candidates.
+     * @return The ranked candidates, or the location of the start task of
+     *         the launched VM.
+     * @throws URISyntaxException
+     *             When the created URI cannot be composed.
+     */
+    @Path(VMTemplateProvider.UUID_PLACE_PATH)
+    @POST
+    public Response placeTemplate(@PathParam(VMTemplateProvider.UUID_NAME) final String uuid,
+            @QueryParam("strategy") final String strategy,
+            @QueryParam("count") @DefaultValue("1") final int count,
+            @QueryParam("hostname") final String hostname) throws URISyntaxException {
+        final VMTemplate template = VMTemplateProvider.getCache().get(uuid);
+        if (template == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        final PlacementStrategy scoring = PlacementStrategies.get(strategy);
+        if (scoring == null) {
+            VMTemplateProvider.logger.warn("Unknown placement strategy {}.", strategy);
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        if (hostname != null && template.getTemplate() == null) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        final long readAt = System.currentTimeMillis();
+        final PhysicalTopology topology;
+        try {
+            topology = Singleton.getVmware().getPhysicalTopologyForVapps(template.getDestVApps());
+        } catch (final VMwareException e) {
+            VMTemplateProvider.logger.catching(Level.ERROR, e);
+            return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+        }
+        final String reservation = UUID.randomUUID().toString();
+        VmDemand demand = null;
+        if (hostname != null) {
+            demand = new VmDemand(hostname.replaceAll(" ", "-"), VmDemand.DEFAULT_CPU,
+                    VmDemand.DEFAULT_MEM, 0);
+        }
+        final List<Placement> placements;
+        synchronized (VMTemplateProvider.placementLock) {
+            VMTemplateProvider.reservations.refreshed(readAt);
+            placements = PlacementEngine.rank(topology,
+                                              scoring,
+                                              hostname == null ? count : 1,
+                                              VMTemplateProvider.reservations);
+            if (demand != null && !placements.isEmpty()) {
+                VMTemplateProvider.reservations.reserve(reservation,
+                                                        placements.get(0).getHostId(),
+                                                        placements.get(0).getStoreId(),
+                                                        demand);
+            }
+        }
+        VMTemplateProvider.logger.info("Found {} placements for VM template {}.",
+                                       placements.size(),
+                                       uuid);
+        if (demand != null) {
+            if (placements.isEmpty()) {
+                return Response.status(Status.CONFLICT).build();
+            }
+            final Placement best = placements.get(0);
+            try {
+                final VmBootStatus task = PhysicalTopologyProvider.launch(template,
+                                                                          best.getHostId(),
+                                                                          demand.getHostname(),
+                                                                          best.getStoreId(),
+                                                                          null);
+                VMTemplateProvider.reservations.track(reservation, task);
+                return Response.created(new URI(VmBootStatusProvider.PATH + "/"
+                        + task.getUniqueIdentifier())).build();
+            } catch (VMwareException | NoSuchVMException | VMLaunchException e) {
+                VMTemplateProvider.reservations.release(reservation);
+                VMTemplateProvider.logger.catching(Level.ERROR, e);
+                return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+            }
+        }
+        return Response.ok(new PlacementFactory().toXML(placements)).build();
+    }
+
+    /**
+     * Places a batch of VMs from a {@link VMTemplate} jointly, so they are
+     * spread according to the projected load instead of all landing on the
+     * host that looked best before the batch. Each VM gets a host, a
+     * datastore and a destination vApp. The resources of the placed VMs are
+     * reserved until a topology read after their deployment completed.
+     * 
+     * @param doc
+     *            A {@link Document} that lists the VMs, see
+     *            {@link VmDemandFactory}.
+     * @param uuid
+     *            The UUID of the {@link VMTemplate}.
+     * @param strategy
+     *            The name of the {@link PlacementStrategy} to use, the
+     *            default strategy if <code>null</code>.
+     * @param deploy
+     *            Whether to launch the VMs right away.
+     * @return The assignment of every VM.
+     */
+    @Path(VMTemplateProvider.UUID_PLACE_BATCH_PATH)
+    @POST
+    public Response placeBatch(final Document doc,
+            @PathParam(VMTemplateProvider.UUID_NAME) final String uuid,
+            @QueryParam("strategy") final String strategy,
+            @QueryParam("deploy") @DefaultValue("false") final boolean deploy) {
+        final VMTemplate template = VMTemplateProvider.getCache().get(uuid);
+        if (template == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        final PlacementStrategy scoring = PlacementStrategies.get(strategy);
+        if (scoring == null || deploy && template.getTemplate() == null) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        final List<VmDemand> demands;
+        final long readAt = System.currentTimeMillis();
+        final PhysicalTopology topology;
+        try {
+            demands = new VmDemandFactory().fromXML(XMLConverter
+                    .convertW3CDocumentJDOMElement(doc));
+            topology = Singleton.getVmware().getPhysicalTopologyForVapps(template.getDestVApps());
+        } catch (final ParseException e) {
+            VMTemplateProvider.logger.catching(Level.ERROR, e);
+            return Response.status(Status.BAD_REQUEST).build();
+        } catch (final VMwareException e) {
+            VMTemplateProvider.logger.catching(Level.ERROR, e);
+            return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+        }
+        final List<Assignment> assignments;
+        final Map<Assignment, String> reserved = new HashMap<Assignment, String>();
+        synchronized (VMTemplateProvider.placementLock) {
+            VMTemplateProvider.reservations.refreshed(readAt);
+            assignments = PlacementEngine.assign(topology,
+                                                 scoring,
+                                                 demands,
+                                                 VMTemplateProvider.reservations);
+            for (final Assignment assignment : assignments) {
+                if (assignment.getHostId() != null) {
+                    final String id = UUID.randomUUID().toString();
+                    VMTemplateProvider.reservations.reserve(id,
+                                                            assignment.getHostId(),
+                                                            assignment.getStoreId(),
+                                                            assignment.getDemand());
+                    reserved.put(assignment, id);
+                }
+            }
+        }
+        final Map<String, PhysicalHost> hosts = new HashMap<String, PhysicalHost>();
+        for (final PhysicalHost host : topology.getCPUs()) {
+            hosts.put(host.getUniqueIdentifier(), host);
+        }
+        final Map<String, VirtualApplication> vapps = new HashMap<String, VirtualApplication>();
+        for (final Assignment assignment : assignments) {
+            if (assignment.getHostId() != null) {
+                VMTemplateProvider.deployReserved(template,
+                                                  assignment,
+                                                  reserved.get(assignment),
+                                                  hosts,
+                                                  vapps,
+                                                  deploy);
+            }
+        }
+        VMTemplateProvider.logger.info("Placed {} VMs from VM template {}.",
+                                       assignments.size(),
+                                       uuid);
+        return Response.ok(new AssignmentFactory().toXML(assignments)).build();
+    }
+
+    /**
+     * Selects the destination vApp of a placed VM whose resources are
+     * reserved, and optionally launches it. If no vApp is found or the launch
+     * fails, the reservation is released. Without deployment the reservation
+     * expires after {@link #RESERVATION_MAX_AGE}.
+     * 
+     * @param template
+     *            The {@link VMTemplate} of the VM.
+     * @param assignment
+     *            The placement of the VM, which is updated with the vApp and
+     *            the task.
+     * @param reservation
+     *            The id of the reservation of the VM.
+     * @param hosts
+     *            The hosts of the topology by id.
+     * @param vapps
+     *            The vApp selected for each host so far, by host id.
+     * @param deploy
+     *            Whether to launch the VM.
+     */
+    private static void deployReserved(final VMTemplate template, final Assignment assignment,
+            final String reservation, final Map<String, PhysicalHost> hosts,
+            final Map<String, VirtualApplication> vapps, final boolean deploy) {
+        final String hostId = assignment.getHostId();
+        if (!vapps.containsKey(hostId)) {
+            vapps.put(hostId, Singleton.getVmware()
+                    .selectVirtualApplicationFromHost(hosts.get(hostId), template.getDestVApps()));
+        }
+        final VirtualApplication vapp = vapps.get(hostId);
+        if (vapp == null) {
+            VMTemplateProvider.reservations.release(reservation);
+            return;
+        }
+        assignment.setVappId(vapp.getUniqueIdentifier());
+        if (deploy) {
+            try {
+                final VmBootStatus task = PhysicalTopologyProvider.launch(template,
+                                                                          hostId,
+                                                                          assignment.getDemand()
+                                                                                  .getHostname(),
+                                                                          assignment.getStoreId(),
+                                                                          vapp);
+                assignment.setTaskId(task.getUniqueIdentifier());
+                VMTemplateProvider.reservations.track(reservation, task);
+            } catch (VMwareException | NoSuchVMException | VMLaunchException e) {
+                VMTemplateProvider.reservations.release(reservation);
+                VMTemplateProvider.logger.catching(Level.ERROR, e);
+            }
+        }
+    }
 }
@@ -9,13 +9,14 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import nl.bitbrains.nebu.common.VirtualMachine;
 import nl.bitbrains.nebu.common.factories.StringFactory;
-import nl.bitbrains.nebu.common.factories.VirtualMachineFactory;
 import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
 import nl.bitbrains.nebu.common.util.xml.XMLConverter;
@@ -27,7 +28,6 @@ import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.Element;
 import org.jdom2.JDOMException;
 
 /**
@@ -74,13 +74,17 @@ public class VirtualResourceProvider {
      * Returns a list of all virtual machine uuids known to the virtual machine
      * manager.
      * 
+     * @param headers
+     *            The headers of the request, used to choose between XML and
+     *            JSON.
      * @return A list of virtual machine uuids.
      * @throws JDOMException
      *             When things go wrong with JDOM parsing.
      */
     @GET
-    @Produces(MediaType.APPLICATION_XML)
-    public Response getVirtualResources() throws JDOMException {
+    @Compressed
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public Response getVirtualResources(@Context final HttpHeaders headers) throws JDOMException {
         VirtualResourceProvider.logger.info("Retrieving virtual resources.");
         List<String> list = null;
         try {
@@ -89,8 +93,12 @@ public class VirtualResourceProvider {
             VirtualResourceProvider.logger.catching(Level.ERROR, e);
             return Response.status(Status.INTERNAL_SERVER_ERROR).build();
         }
-        final Element xml = XMLConverter.convertCollectionToJDOMElement(list, new StringFactory());
-        return Response.ok(XMLConverter.convertJDOMElementW3CDocument(xml)).build();
+        if (Representations.prefersJson(headers)) {
+            return Response.ok(list.toArray(new String[list.size()]),
+                               MediaType.APPLICATION_JSON_TYPE).build();
+        }
+        return Response.ok(XMLConverter.convertCollectionToJDOMElement(list, new StringFactory()))
+                .build();
     }
 
     /**
@@ -99,18 +107,20 @@ public class VirtualResourceProvider {
      * @param uuid
      *            The uuid of the virtual machine whose information needs to be
      *            retrieved.
+     * @param headers
+     *            The headers of the request, used to choose between XML and
+     *            JSON.
      * @return Information about a given virtual machine.
      * @throws NotFoundException
      *             When there is no VM with the given uuid.
-     * @throws JDOMException
-     *             When things go wrong with JDOM parsing.
      */
     @GET
     @Path(VirtualResourceProvider.PATH_UUID)
-    @Produces(MediaType.APPLICATION_XML)
+    @Compressed
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
     public Response getVirtualMachineInfo(
-            @PathParam(VirtualResourceProvider.UUID_PARAM_NAME) final String uuid)
-            throws JDOMException {
+            @PathParam(VirtualResourceProvider.UUID_PARAM_NAME) final String uuid,
+            @Context final HttpHeaders headers) {
         VirtualResourceProvider.logger.info("Retrieving information about VM with id {}.", uuid);
         VirtualMachine vm = null;
         try {
@@ -120,13 +130,9 @@ public class VirtualResourceProvider {
             throw new NotFoundException(e.getMessage(), e);
         }
 
-        final VirtualMachineFactory vmf = new VirtualMachineFactory();
-        final Element xml = vmf.toXML(vm);
-
         VirtualResourceProvider.logger.info("Retrieved VM object with id {}.",
                                             vm.getUniqueIdentifier());
-
-        return Response.ok(XMLConverter.convertJDOMElementW3CDocument(xml)).build();
+        return Response.ok(vm, Representations.mediaType(headers)).build();
     }
 
     /**
@@ -149,6 +155,7 @@ public class VirtualResourceProvider {
             return Response.status(Status.INTERNAL_SERVER_ERROR).build();
         }
         vmware.killVM(vm);
+        ResponseCache.getInstance().invalidateAll();
         return Response.ok().build();
     }
 
@@ -232,6 +239,7 @@ public class VirtualResourceProvider {
         }
         try {
             vmware.moveVMToHost(vm, host);
+            ResponseCache.getInstance().invalidateAll();
         } catch (final VMwareException e) {
             VirtualResourceProvider.logger.error("Could not move VM {} to host {}.",
                                                  vm.getUniqueIdentifier(),
@@ -265,6 +273,7 @@ public class VirtualResourceProvider {
         }
         try {
             vmware.moveVMToStore(vm, store);
+            ResponseCache.getInstance().invalidateAll();
         } catch (final VMwareException e) {
             VirtualResourceProvider.logger.error("Could not move VM {} to store {}.",
                                                  vm.getUniqueIdentifier(),
@@ -6,13 +6,11 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Response;
 
 import nl.bitbrains.nebu.common.factories.StringFactory;
-import nl.bitbrains.nebu.common.util.xml.XMLConverter;
 import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
 import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus.Status;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.JDOMException;
 
 /**
  * Provides the status URI of the vmm vmware REST API.
@@ -40,20 +38,17 @@ public class VmBootStatusProvider {
      *            The ID of the {@link VmBootStatus}.
      * @return The ID of the newly booted virtual machine, or an error code if
      *         the virtual machine is not yet ready.
-     * @throws JDOMException
-     *             If an error occurs in the XML conversion.
      */
     @GET
     @Path("{sha1}")
-    public Response getStatus(@PathParam("sha1") final String sha1) throws JDOMException {
+    public Response getStatus(@PathParam("sha1") final String sha1) {
         VmBootStatusProvider.logger.info("Retrieving status information on task {}.", sha1);
 
         final VmBootStatus status = VmBootStatus.getStatus(sha1);
         if (status != null) {
             if (status.getStatus() == Status.SUCCESS) {
                 VmBootStatusProvider.logger.info("Task {} is {}.", sha1, Status.SUCCESS.name());
-                return Response.ok(XMLConverter.convertJDOMElementW3CDocument((new StringFactory()
-                        .toXML(status.getVmId())))).build();
+                return Response.ok(new StringFactory().toXML(status.getVmId())).build();
             } else {
                 VmBootStatusProvider.logger.warn("Task {} is not in the {} state.",
                                                  sha1,
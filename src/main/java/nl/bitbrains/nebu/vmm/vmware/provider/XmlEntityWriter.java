@@ -0,0 +1,90 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import nl.bitbrains.nebu.common.VirtualMachine;
+import nl.bitbrains.nebu.common.factories.VirtualMachineFactory;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.common.topology.factory.TopologyFactories;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyDiff;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyDiffFactory;
+
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Writes JDOM elements, topologies, hosts, datastores, VMs and topology
+ * diffs as XML. The JDOM tree is serialized straight to the response, so it
+ * is not copied into a W3C DOM document first.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@Provider
+@Produces({ MediaType.APPLICATION_XML, MediaType.TEXT_XML })
+public class XmlEntityWriter implements MessageBodyWriter<Object> {
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType,
+            final Annotation[] annotations, final MediaType mediaType) {
+        return Element.class.isAssignableFrom(type)
+                || PhysicalTopology.class.isAssignableFrom(type)
+                || PhysicalHost.class.isAssignableFrom(type)
+                || PhysicalStore.class.isAssignableFrom(type)
+                || VirtualMachine.class.isAssignableFrom(type)
+                || TopologyDiff.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(final Object t, final Class<?> type, final Type genericType,
+            final Annotation[] annotations, final MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(final Object t, final Class<?> type, final Type genericType,
+            final Annotation[] annotations, final MediaType mediaType,
+            final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream)
+            throws IOException {
+        // The outputter flushes but does not close, the container owns the
+        // stream.
+        new XMLOutputter(Format.getCompactFormat()).output(XmlEntityWriter.toXML(t),
+                                                           entityStream);
+    }
+
+    /**
+     * @param t
+     *            An object accepted by
+     *            {@link #isWriteable(Class, Type, Annotation[], MediaType)}.
+     * @return The object as XML.
+     */
+    private static Element toXML(final Object t) {
+        if (t instanceof PhysicalTopology) {
+            return TopologyFactories.createDefault().getPhysicalRootFactory()
+                    .toXML(((PhysicalTopology) t).getRoot());
+        } else if (t instanceof PhysicalHost) {
+            return TopologyFactories.createDefault().getPhysicalCPUFactory()
+                    .toXML((PhysicalHost) t);
+        } else if (t instanceof PhysicalStore) {
+            return TopologyFactories.createDefault().getPhysicalStoreFactory()
+                    .toXML((PhysicalStore) t);
+        } else if (t instanceof VirtualMachine) {
+            return new VirtualMachineFactory().toXML((VirtualMachine) t);
+        } else if (t instanceof TopologyDiff) {
+            return new TopologyDiffFactory().toXML((TopologyDiff) t);
+        }
+        return (Element) t;
+    }
+}
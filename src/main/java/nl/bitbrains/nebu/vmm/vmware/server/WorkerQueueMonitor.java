@@ -0,0 +1,90 @@
+package nl.bitbrains.nebu.vmm.vmware.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.threadpool.AbstractThreadPool;
+import org.glassfish.grizzly.threadpool.ThreadPoolProbe;
+
+/**
+ * Keeps track of the number of tasks that wait in the queue of the Grizzly
+ * worker pool. Requests that are taken from a queue that is longer than the
+ * configured maximum are rejected by
+ * {@link nl.bitbrains.nebu.vmm.vmware.provider.OverloadFilter}, which
+ * drains the backlog quickly instead of running every queued request against
+ * VMware.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class WorkerQueueMonitor extends ThreadPoolProbe.Adapter {
+
+    private static final WorkerQueueMonitor INSTANCE = new WorkerQueueMonitor();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile int maxPending;
+    private volatile int retryAfterSeconds = 1;
+
+    /**
+     * Private constructor, use {@link #getInstance()}.
+     */
+    private WorkerQueueMonitor() {
+    }
+
+    /**
+     * @return The monitor of the worker pool.
+     */
+    public static WorkerQueueMonitor getInstance() {
+        return WorkerQueueMonitor.INSTANCE;
+    }
+
+    /**
+     * Sets the limits used to decide whether the server is overloaded.
+     * 
+     * @param maxPending
+     *            The number of queued tasks above which requests are
+     *            rejected, or 0 to never reject.
+     * @param retryAfterSeconds
+     *            The Retry-After value of rejected requests.
+     */
+    public void configure(final int maxPending, final int retryAfterSeconds) {
+        this.maxPending = maxPending;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return <code>true</code> iff more tasks are queued than allowed.
+     */
+    public boolean isOverloaded() {
+        final int max = this.maxPending;
+        return max > 0 && this.queued.get() > max;
+    }
+
+    /**
+     * @return The number of queued tasks.
+     */
+    public int getQueued() {
+        return this.queued.get();
+    }
+
+    /**
+     * @return The Retry-After value of rejected requests in seconds.
+     */
+    public int getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+
+    @Override
+    public void onTaskQueueEvent(final AbstractThreadPool threadPool, final Runnable task) {
+        this.queued.incrementAndGet();
+    }
+
+    @Override
+    public void onTaskDequeueEvent(final AbstractThreadPool threadPool, final Runnable task) {
+        this.queued.decrementAndGet();
+    }
+
+    @Override
+    public void onTaskCancelEvent(final AbstractThreadPool threadPool, final Runnable task) {
+        this.queued.decrementAndGet();
+    }
+}
@@ -0,0 +1,100 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The state of a single rack, host or datastore in a topology snapshot. Two
+ * states are equal iff the resource has the same parent and attributes.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class ResourceState {
+
+    public static final String KIND_RACK = "rack";
+    public static final String KIND_HOST = "host";
+    public static final String KIND_STORE = "store";
+
+    private final String kind;
+    private final String id;
+    private final String parentId;
+    private final Map<String, String> attributes;
+
+    /**
+     * Creates a new {@link ResourceState}.
+     * 
+     * @param kind
+     *            The kind of resource, one of the <code>KIND_</code>
+     *            constants.
+     * @param id
+     *            The id of the resource.
+     * @param parentId
+     *            The id of the resource that contains it.
+     * @param attributes
+     *            The attributes of the resource, in output order.
+     */
+    public ResourceState(final String kind, final String id, final String parentId,
+            final Map<String, String> attributes) {
+        this.kind = kind;
+        this.id = id;
+        this.parentId = parentId;
+        this.attributes = Collections.unmodifiableMap(new LinkedHashMap<String, String>(
+                attributes));
+    }
+
+    /**
+     * @return the kind of resource.
+     */
+    public String getKind() {
+        return this.kind;
+    }
+
+    /**
+     * @return the id of the resource.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the id of the resource that contains it.
+     */
+    public String getParentId() {
+        return this.parentId;
+    }
+
+    /**
+     * @return the attributes of the resource.
+     */
+    public Map<String, String> getAttributes() {
+        return this.attributes;
+    }
+
+    /**
+     * @return the key of the resource in a snapshot.
+     */
+    String getKey() {
+        return this.kind + ":" + this.id;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ResourceState)) {
+            return false;
+        }
+        final ResourceState other = (ResourceState) obj;
+        return this.kind.equals(other.kind) && this.id.equals(other.id)
+                && (this.parentId == null ? other.parentId == null : this.parentId
+                        .equals(other.parentId)) && this.attributes.equals(other.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.getKey().hashCode() * 31 + this.attributes.hashCode();
+    }
+}
@@ -0,0 +1,97 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The racks, hosts and datastores that were added, changed or removed
+ * between two {@link TopologySnapshot} versions.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyDiff {
+
+    private final long fromVersion;
+    private final long toVersion;
+    private final List<ResourceState> added;
+    private final List<ResourceState> changed;
+    private final List<ResourceState> removed;
+
+    /**
+     * Computes the difference between two snapshots.
+     * 
+     * @param from
+     *            The older snapshot.
+     * @param to
+     *            The newer snapshot.
+     */
+    public TopologyDiff(final TopologySnapshot from, final TopologySnapshot to) {
+        this.fromVersion = from.getVersion();
+        this.toVersion = to.getVersion();
+        final List<ResourceState> added = new ArrayList<ResourceState>();
+        final List<ResourceState> changed = new ArrayList<ResourceState>();
+        final List<ResourceState> removed = new ArrayList<ResourceState>();
+        final Map<String, ResourceState> old = from.getStates();
+        for (final ResourceState state : to.getStates().values()) {
+            final ResourceState previous = old.get(state.getKey());
+            if (previous == null) {
+                added.add(state);
+            } else if (!previous.equals(state)) {
+                changed.add(state);
+            }
+        }
+        for (final ResourceState state : old.values()) {
+            if (!to.getStates().containsKey(state.getKey())) {
+                removed.add(state);
+            }
+        }
+        this.added = Collections.unmodifiableList(added);
+        this.changed = Collections.unmodifiableList(changed);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * @return the version the difference starts from.
+     */
+    public long getFromVersion() {
+        return this.fromVersion;
+    }
+
+    /**
+     * @return the version the difference leads to.
+     */
+    public long getToVersion() {
+        return this.toVersion;
+    }
+
+    /**
+     * @return the resources that were added, in their new state.
+     */
+    public List<ResourceState> getAdded() {
+        return this.added;
+    }
+
+    /**
+     * @return the resources that changed, in their new state.
+     */
+    public List<ResourceState> getChanged() {
+        return this.changed;
+    }
+
+    /**
+     * @return the resources that were removed, in their last state.
+     */
+    public List<ResourceState> getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * @return <code>true</code> iff nothing changed.
+     */
+    public boolean isEmpty() {
+        return this.added.isEmpty() && this.changed.isEmpty() && this.removed.isEmpty();
+    }
+}
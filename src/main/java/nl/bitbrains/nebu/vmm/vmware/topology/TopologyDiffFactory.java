@@ -0,0 +1,95 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Element;
+
+/**
+ * Converts {@link TopologyDiff} objects to XML.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyDiffFactory {
+
+    public static final String TAG_ELEMENT_ROOT = "topologydiff";
+    public static final String TAG_ADDED = "added";
+    public static final String TAG_CHANGED = "changed";
+    public static final String TAG_REMOVED = "removed";
+    public static final String ATTRIBUTE_FROM = "from";
+    public static final String ATTRIBUTE_TO = "to";
+    public static final String ATTRIBUTE_ID = "id";
+    public static final String ATTRIBUTE_PARENT = "parent";
+
+    /**
+     * Empty default constructor.
+     */
+    public TopologyDiffFactory() {
+
+    }
+
+    /**
+     * Converts the {@link TopologyDiff} to XML. Added and changed resources
+     * carry all their attributes, removed resources only their id.
+     * 
+     * @param object
+     *            to convert to XML.
+     * @return the created XML element.
+     */
+    public final Element toXML(final TopologyDiff object) {
+        final Element elem = new Element(TopologyDiffFactory.TAG_ELEMENT_ROOT);
+        elem.setAttribute(TopologyDiffFactory.ATTRIBUTE_FROM,
+                          Long.toString(object.getFromVersion()));
+        elem.setAttribute(TopologyDiffFactory.ATTRIBUTE_TO, Long.toString(object.getToVersion()));
+        elem.addContent(TopologyDiffFactory.toXML(TopologyDiffFactory.TAG_ADDED,
+                                                  object.getAdded(),
+                                                  true));
+        elem.addContent(TopologyDiffFactory.toXML(TopologyDiffFactory.TAG_CHANGED,
+                                                  object.getChanged(),
+                                                  true));
+        elem.addContent(TopologyDiffFactory.toXML(TopologyDiffFactory.TAG_REMOVED,
+                                                  object.getRemoved(),
+                                                  false));
+        return elem;
+    }
+
+    /**
+     * @param tag
+     *            The name of the element.
+     * @param states
+     *            The resources to put in the element.
+     * @param full
+     *            Whether to include the parent and attributes.
+     * @return The element.
+     */
+    private static Element toXML(final String tag, final List<ResourceState> states,
+            final boolean full) {
+        final Element elem = new Element(tag);
+        for (final ResourceState state : states) {
+            elem.addContent(TopologyDiffFactory.toXML(state, full));
+        }
+        return elem;
+    }
+
+    /**
+     * @param state
+     *            A resource.
+     * @param full
+     *            Whether to include the parent and attributes.
+     * @return An element named after the kind of the resource.
+     */
+    static Element toXML(final ResourceState state, final boolean full) {
+        final Element elem = new Element(state.getKind());
+        elem.setAttribute(TopologyDiffFactory.ATTRIBUTE_ID, state.getId());
+        if (full) {
+            if (state.getParentId() != null) {
+                elem.setAttribute(TopologyDiffFactory.ATTRIBUTE_PARENT, state.getParentId());
+            }
+            for (final Map.Entry<String, String> entry : state.getAttributes().entrySet()) {
+                elem.setAttribute(entry.getKey(), entry.getValue());
+            }
+        }
+        return elem;
+    }
+}
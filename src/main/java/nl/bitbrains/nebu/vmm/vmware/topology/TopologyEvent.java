@@ -0,0 +1,60 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+/**
+ * A change of a single host or datastore, as published on the
+ * {@link TopologyFeed}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyEvent {
+
+    public static final String HOST_ADDED = "hostadded";
+    public static final String HOST_REMOVED = "hostremoved";
+    public static final String HOST_OVERLOADED = "hostoverloaded";
+    public static final String HOST_RECOVERED = "hostrecovered";
+    public static final String STORE_ADDED = "storeadded";
+    public static final String STORE_REMOVED = "storeremoved";
+    public static final String STORE_CHANGED = "storechanged";
+
+    private final long sequence;
+    private final String type;
+    private final ResourceState resource;
+
+    /**
+     * Creates a new {@link TopologyEvent}.
+     * 
+     * @param sequence
+     *            The position of the event in the feed.
+     * @param type
+     *            The type of change, one of the constants of this class.
+     * @param resource
+     *            The state of the resource after the change.
+     */
+    public TopologyEvent(final long sequence, final String type, final ResourceState resource) {
+        this.sequence = sequence;
+        this.type = type;
+        this.resource = resource;
+    }
+
+    /**
+     * @return the position of the event in the feed.
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * @return the type of change.
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the state of the resource after the change.
+     */
+    public ResourceState getResource() {
+        return this.resource;
+    }
+}
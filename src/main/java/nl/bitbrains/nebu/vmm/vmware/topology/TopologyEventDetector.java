@@ -0,0 +1,166 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+
+/**
+ * Turns the stream of inventory updates into {@link TopologyEvent}s. Keeps
+ * the last known state of every host and datastore and only publishes an
+ * event when a resource appears or disappears, when the load of a host
+ * crosses the threshold, or when the space of a datastore changes by more
+ * than a fraction of its capacity.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyEventDetector {
+
+    /**
+     * How far below the threshold the load of an overloaded host must drop
+     * before it is recovered, so hosts near the threshold do not flap.
+     */
+    public static final double HYSTERESIS = 0.05;
+
+    private final TopologyFeed feed;
+    private final double loadThreshold;
+    private final double spaceChange;
+    private final Map<String, Boolean> overloaded;
+    private final Map<String, PhysicalStore> stores;
+
+    /**
+     * Creates a detector that knows no resources yet.
+     * 
+     * @param feed
+     *            The feed to publish to.
+     * @param loadThreshold
+     *            The CPU or memory usage above which a host is overloaded.
+     * @param spaceChange
+     *            The fraction of its capacity by which the used space of a
+     *            datastore must change to be published.
+     */
+    public TopologyEventDetector(final TopologyFeed feed, final double loadThreshold,
+            final double spaceChange) {
+        this.feed = feed;
+        this.loadThreshold = loadThreshold;
+        this.spaceChange = spaceChange;
+        this.overloaded = new HashMap<String, Boolean>();
+        this.stores = new HashMap<String, PhysicalStore>();
+    }
+
+    /**
+     * Processes the current state of a host.
+     * 
+     * @param host
+     *            The host with its current load.
+     */
+    public synchronized void updateHost(final PhysicalHost host) {
+        final String id = host.getUniqueIdentifier();
+        final double load = Math.max(host.getCpuUsage(), host.getMemUsage());
+        final Boolean wasOverloaded = this.overloaded.get(id);
+        final ResourceState state = TopologySnapshot.toState(host, null);
+        if (wasOverloaded == null) {
+            final boolean isOverloaded = load >= this.loadThreshold;
+            this.overloaded.put(id, isOverloaded);
+            this.feed.publish(TopologyEvent.HOST_ADDED, state);
+            if (isOverloaded) {
+                this.feed.publish(TopologyEvent.HOST_OVERLOADED, state);
+            }
+        } else if (!wasOverloaded && load >= this.loadThreshold) {
+            this.overloaded.put(id, true);
+            this.feed.publish(TopologyEvent.HOST_OVERLOADED, state);
+        } else if (wasOverloaded && load < this.loadThreshold - TopologyEventDetector.HYSTERESIS) {
+            this.overloaded.put(id, false);
+            this.feed.publish(TopologyEvent.HOST_RECOVERED, state);
+        }
+    }
+
+    /**
+     * Processes the removal of a host, or the loss of its connection.
+     * 
+     * @param id
+     *            The vSphere id of the host.
+     */
+    public synchronized void removeHost(final String id) {
+        if (this.overloaded.remove(id) != null) {
+            this.feed.publish(TopologyEvent.HOST_REMOVED, TopologyEventDetector.idOnly(
+                    ResourceState.KIND_HOST, id));
+        }
+    }
+
+    /**
+     * Processes the current space of a datastore.
+     * 
+     * @param store
+     *            The datastore with its current space.
+     */
+    public synchronized void updateStore(final PhysicalStore store) {
+        final String id = store.getUniqueIdentifier();
+        final PhysicalStore last = this.stores.get(id);
+        if (last == null) {
+            this.stores.put(id, store);
+            this.feed.publish(TopologyEvent.STORE_ADDED, TopologySnapshot.toState(store, null));
+        } else if (last.getCapacity() != store.getCapacity()
+                || Math.abs(last.getUsed() - store.getUsed()) >= this.spaceChange
+                        * store.getCapacity()) {
+            this.stores.put(id, store);
+            this.feed.publish(TopologyEvent.STORE_CHANGED, TopologySnapshot.toState(store, null));
+        }
+    }
+
+    /**
+     * Processes the removal of a datastore.
+     * 
+     * @param id
+     *            The vSphere id of the datastore.
+     */
+    public synchronized void removeStore(final String id) {
+        if (this.stores.remove(id) != null) {
+            this.feed.publish(TopologyEvent.STORE_REMOVED, TopologyEventDetector.idOnly(
+                    ResourceState.KIND_STORE, id));
+        }
+    }
+
+    /**
+     * Removes all hosts and datastores that are not in the given sets. Used
+     * after a full resynchronisation, which does not report removals.
+     * 
+     * @param hostIds
+     *            The vSphere ids of the hosts that still exist.
+     * @param storeIds
+     *            The vSphere ids of the datastores that still exist.
+     */
+    public synchronized void retain(final Set<String> hostIds, final Set<String> storeIds) {
+        for (final Iterator<String> it = this.overloaded.keySet().iterator(); it.hasNext();) {
+            final String id = it.next();
+            if (!hostIds.contains(id)) {
+                it.remove();
+                this.feed.publish(TopologyEvent.HOST_REMOVED, TopologyEventDetector.idOnly(
+                        ResourceState.KIND_HOST, id));
+            }
+        }
+        for (final Iterator<String> it = this.stores.keySet().iterator(); it.hasNext();) {
+            final String id = it.next();
+            if (!storeIds.contains(id)) {
+                it.remove();
+                this.feed.publish(TopologyEvent.STORE_REMOVED, TopologyEventDetector.idOnly(
+                        ResourceState.KIND_STORE, id));
+            }
+        }
+    }
+
+    /**
+     * @param kind
+     *            The kind of resource.
+     * @param id
+     *            The id of the resource.
+     * @return A state without parent or attributes.
+     */
+    private static ResourceState idOnly(final String kind, final String id) {
+        return new ResourceState(kind, id, null, new HashMap<String, String>());
+    }
+}
@@ -0,0 +1,40 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import org.jdom2.Element;
+
+/**
+ * Converts {@link TopologyEvent} objects to XML.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyEventFactory {
+
+    public static final String TAG_ELEMENT_ROOT = "event";
+    public static final String ATTRIBUTE_TYPE = "type";
+    public static final String ATTRIBUTE_SEQUENCE = "seq";
+
+    /**
+     * Empty default constructor.
+     */
+    public TopologyEventFactory() {
+
+    }
+
+    /**
+     * Converts the {@link TopologyEvent} to XML. The resource is a child
+     * element in the same form as in a {@link TopologyDiff}.
+     * 
+     * @param object
+     *            to convert to XML.
+     * @return the created XML element.
+     */
+    public final Element toXML(final TopologyEvent object) {
+        final Element elem = new Element(TopologyEventFactory.TAG_ELEMENT_ROOT);
+        elem.setAttribute(TopologyEventFactory.ATTRIBUTE_TYPE, object.getType());
+        elem.setAttribute(TopologyEventFactory.ATTRIBUTE_SEQUENCE,
+                          Long.toString(object.getSequence()));
+        elem.addContent(TopologyDiffFactory.toXML(object.getResource(), true));
+        return elem;
+    }
+}
@@ -0,0 +1,281 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nl.bitbrains.nebu.vmm.vmware.api.BackendExecutors;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Distributes {@link TopologyEvent}s to the subscribed listeners. The most
+ * recent events are kept, so a subscriber that reconnects can catch up on
+ * the events it missed.
+ * 
+ * <p>
+ * Publishing only appends the event to the kept events and to a queue per
+ * listener. Each queue is emptied by a task on the executor of the feed, one
+ * event at a time and in order, so a slow listener delays only itself.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class TopologyFeed {
+
+    /**
+     * The number of events kept for subscribers that reconnect.
+     */
+    public static final int BACKLOG = 256;
+
+    /**
+     * The {@link Logger} for this object.
+     */
+    private static Logger logger = LogManager.getLogger();
+
+    private static final TopologyFeed INSTANCE = new TopologyFeed(TopologyFeed.BACKLOG,
+            new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    BackendExecutors.getTaskExecutor().execute(command);
+                }
+            });
+
+    /**
+     * Delivers the events of one listener, in order and one at a time.
+     */
+    private final class Subscription implements Runnable {
+        private final TopologyListener listener;
+        private final Queue<TopologyEvent> pending;
+        private final AtomicBoolean scheduled;
+        private volatile boolean cancelled;
+
+        /**
+         * Creates a new {@link Subscription}.
+         * 
+         * @param listener
+         *            The listener.
+         */
+        private Subscription(final TopologyListener listener) {
+            this.listener = listener;
+            this.pending = new ConcurrentLinkedQueue<TopologyEvent>();
+            this.scheduled = new AtomicBoolean();
+        }
+
+        /**
+         * Starts delivering the pending events, unless that is already going
+         * on.
+         */
+        private void schedule() {
+            if (this.pending.isEmpty() || !this.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                TopologyFeed.this.executor.execute(this);
+            } catch (final RejectedExecutionException e) {
+                this.scheduled.set(false);
+                TopologyFeed.logger.catching(Level.WARN, e);
+            }
+        }
+
+        @Override
+        public void run() {
+            TopologyEvent event = this.pending.poll();
+            while (event != null && !this.cancelled) {
+                try {
+                    this.listener.onEvent(event);
+                } catch (final RuntimeException e) {
+                    TopologyFeed.logger.catching(Level.WARN, e);
+                }
+                event = this.pending.poll();
+            }
+            this.scheduled.set(false);
+            if (!this.cancelled) {
+                // Events queued after the last poll would otherwise wait for
+                // the next publish.
+                this.schedule();
+            }
+        }
+    }
+
+    private final List<Subscription> subscriptions;
+    private final TopologyEvent[] backlog;
+    private final Executor executor;
+    private long sequence;
+
+    /**
+     * Creates a feed without listeners that delivers events on the thread
+     * that publishes them.
+     * 
+     * @param size
+     *            The number of events to keep, at least 1.
+     */
+    public TopologyFeed(final int size) {
+        this(size, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    /**
+     * Creates a feed without listeners.
+     * 
+     * @param size
+     *            The number of events to keep, at least 1.
+     * @param executor
+     *            Runs the tasks that deliver events to the listeners.
+     */
+    public TopologyFeed(final int size, final Executor executor) {
+        this.subscriptions = new CopyOnWriteArrayList<Subscription>();
+        this.backlog = new TopologyEvent[Math.max(1, size)];
+        this.executor = executor;
+    }
+
+    /**
+     * @return The feed of the changes seen by the inventory watcher.
+     */
+    public static TopologyFeed getInstance() {
+        return TopologyFeed.INSTANCE;
+    }
+
+    /**
+     * Publishes an event to all listeners.
+     * 
+     * @param type
+     *            The type of change, one of the {@link TopologyEvent}
+     *            constants.
+     * @param resource
+     *            The state of the resource after the change.
+     * @return The published event.
+     */
+    public TopologyEvent publish(final String type, final ResourceState resource) {
+        final TopologyEvent event;
+        synchronized (this) {
+            this.sequence++;
+            event = new TopologyEvent(this.sequence, type, resource);
+            this.backlog[(int) (this.sequence % this.backlog.length)] = event;
+            for (final Subscription subscription : this.subscriptions) {
+                subscription.pending.add(event);
+            }
+        }
+        for (final Subscription subscription : this.subscriptions) {
+            subscription.schedule();
+        }
+        return event;
+    }
+
+    /**
+     * Adds a listener. If the listener has seen events before, the kept
+     * events that followed are delivered to it first, before any new event.
+     * 
+     * @param listener
+     *            The listener.
+     * @param lastSeen
+     *            The sequence number of the last event the listener has
+     *            seen, or <code>null</code> to only receive new events.
+     */
+    public void subscribe(final TopologyListener listener, final Long lastSeen) {
+        final Subscription subscription = new Subscription(listener);
+        synchronized (this) {
+            this.add(subscription, lastSeen);
+        }
+        subscription.schedule();
+    }
+
+    /**
+     * Adds a listener that has seen the events up to the given one, if all
+     * events after it are still kept. Otherwise the listener only receives
+     * new events.
+     * 
+     * @param listener
+     *            The listener.
+     * @param lastSeen
+     *            The sequence number of the last event the listener has
+     *            seen, or <code>null</code> to only receive new events.
+     * @return <code>false</code> iff events after the given one were lost.
+     */
+    public boolean subscribeIfKept(final TopologyListener listener, final Long lastSeen) {
+        final Subscription subscription = new Subscription(listener);
+        final boolean kept;
+        synchronized (this) {
+            kept = lastSeen == null || this.isKept(lastSeen);
+            this.add(subscription, kept ? lastSeen : null);
+        }
+        subscription.schedule();
+        return kept;
+    }
+
+    /**
+     * Queues the kept events a new subscription missed and starts queueing
+     * new events for it. The caller holds the lock of the feed.
+     * 
+     * @param subscription
+     *            The new subscription.
+     * @param lastSeen
+     *            The sequence number of the last event the listener has
+     *            seen, or <code>null</code> to only receive new events.
+     */
+    private void add(final Subscription subscription, final Long lastSeen) {
+        if (lastSeen != null) {
+            subscription.pending.addAll(this.getSince(lastSeen));
+        }
+        this.subscriptions.add(subscription);
+    }
+
+    /**
+     * @param lastSeen
+     *            The sequence number of the last event a listener has seen.
+     * @return <code>true</code> iff all events after it are still kept.
+     *         Sequence numbers that were not handed out by this feed, for
+     *         example by a feed before a restart, are never kept.
+     */
+    public synchronized boolean isKept(final long lastSeen) {
+        return lastSeen <= this.sequence && lastSeen >= this.sequence - this.backlog.length;
+    }
+
+    /**
+     * Removes a listener. Events that were not yet delivered to it are
+     * dropped.
+     * 
+     * @param listener
+     *            The listener.
+     */
+    public void unsubscribe(final TopologyListener listener) {
+        for (final Subscription subscription : this.subscriptions) {
+            if (subscription.listener == listener) {
+                subscription.cancelled = true;
+                this.subscriptions.remove(subscription);
+            }
+        }
+    }
+
+    /**
+     * @param lastSeen
+     *            A sequence number.
+     * @return The kept events after the given sequence number, oldest first.
+     */
+    public synchronized List<TopologyEvent> getSince(final long lastSeen) {
+        final List<TopologyEvent> events = new ArrayList<TopologyEvent>();
+        final long first = Math.max(lastSeen + 1, this.sequence - this.backlog.length + 1);
+        for (long seq = Math.max(1, first); seq <= this.sequence; seq++) {
+            events.add(this.backlog[(int) (seq % this.backlog.length)]);
+        }
+        return events;
+    }
+
+    /**
+     * @return The number of subscribed listeners.
+     */
+    public int getListenerCount() {
+        return this.subscriptions.size();
+    }
+}
@@ -0,0 +1,129 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+
+/**
+ * Keeps the most recent versions of each topology served by the VMM, so
+ * clients that already hold a version can ask only for what changed since.
+ * A topology only gets a new version when its content changes. Versions are
+ * unique across all topologies and start at the time the history was created,
+ * so a version handed out before a restart is unknown afterwards instead of
+ * naming a different topology.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyHistory {
+
+    /**
+     * Number of bits of a version below the creation time of the history.
+     */
+    private static final int EPOCH_SHIFT = 20;
+
+    private final ConcurrentMap<String, Deque<TopologySnapshot>> histories;
+    private final AtomicLong versions;
+    private final int size;
+
+    /**
+     * Creates an empty {@link TopologyHistory}.
+     * 
+     * @param size
+     *            The number of versions kept per topology, at least 1.
+     */
+    public TopologyHistory(final int size) {
+        this(size, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates an empty {@link TopologyHistory}.
+     * 
+     * @param size
+     *            The number of versions kept per topology, at least 1.
+     * @param epochMillis
+     *            The time in milliseconds the versions start at.
+     */
+    TopologyHistory(final int size, final long epochMillis) {
+        this.histories = new ConcurrentHashMap<String, Deque<TopologySnapshot>>();
+        this.versions = new AtomicLong(epochMillis << TopologyHistory.EPOCH_SHIFT);
+        this.size = Math.max(1, size);
+    }
+
+    /**
+     * Records the current state of a topology.
+     * 
+     * @param key
+     *            The name of the topology, for example the UUID of a VM
+     *            template.
+     * @param topology
+     *            The current topology.
+     * @return The version of the topology, which is the previous version if
+     *         nothing changed.
+     */
+    public long record(final String key, final PhysicalTopology topology) {
+        final Deque<TopologySnapshot> history = this.getHistory(key);
+        final TopologySnapshot candidate = TopologySnapshot.of(0, topology);
+        synchronized (history) {
+            final TopologySnapshot latest = history.peekLast();
+            if (latest != null && latest.sameContent(candidate)) {
+                return latest.getVersion();
+            }
+            final TopologySnapshot snapshot = candidate.withVersion(this.versions
+                    .incrementAndGet());
+            history.addLast(snapshot);
+            while (history.size() > this.size) {
+                history.removeFirst();
+            }
+            return snapshot.getVersion();
+        }
+    }
+
+    /**
+     * @param key
+     *            The name of the topology.
+     * @param since
+     *            A version the client holds.
+     * @return What changed between the given version and the latest one, or
+     *         <code>null</code> if the given version is not kept.
+     */
+    public TopologyDiff diff(final String key, final long since) {
+        final Deque<TopologySnapshot> history = this.histories.get(key);
+        if (history == null) {
+            return null;
+        }
+        synchronized (history) {
+            final TopologySnapshot latest = history.peekLast();
+            final Iterator<TopologySnapshot> it = history.iterator();
+            while (it.hasNext()) {
+                final TopologySnapshot snapshot = it.next();
+                if (snapshot.getVersion() == since) {
+                    return new TopologyDiff(snapshot, latest);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param key
+     *            The name of the topology.
+     * @return The versions of the topology, oldest first.
+     */
+    private Deque<TopologySnapshot> getHistory(final String key) {
+        Deque<TopologySnapshot> history = this.histories.get(key);
+        if (history == null) {
+            final Deque<TopologySnapshot> created = new ArrayDeque<TopologySnapshot>();
+            history = this.histories.putIfAbsent(key, created);
+            if (history == null) {
+                history = created;
+            }
+        }
+        return history;
+    }
+}
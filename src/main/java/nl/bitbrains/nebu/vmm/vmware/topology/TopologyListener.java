@@ -0,0 +1,19 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+/**
+ * Receives the events published on a {@link TopologyFeed}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface TopologyListener {
+
+    /**
+     * Called for every event, in order. Implementations should not block, as
+     * the publisher waits for all listeners.
+     * 
+     * @param event
+     *            The event.
+     */
+    void onEvent(TopologyEvent event);
+}
@@ -0,0 +1,152 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+
+/**
+ * A flattened, immutable copy of a {@link PhysicalTopology} at a version,
+ * which can be compared to other versions cheaply.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologySnapshot {
+
+    public static final String ATTRIBUTE_CPU_USAGE = "cpuusage";
+    public static final String ATTRIBUTE_MEM_USAGE = "memusage";
+    public static final String ATTRIBUTE_CAPACITY = "capacity";
+    public static final String ATTRIBUTE_USED = "used";
+
+    private final long version;
+    private final Map<String, ResourceState> states;
+
+    /**
+     * Creates a new {@link TopologySnapshot}.
+     * 
+     * @param version
+     *            The version of the snapshot.
+     * @param states
+     *            The unmodifiable states of the resources by key.
+     */
+    private TopologySnapshot(final long version, final Map<String, ResourceState> states) {
+        this.version = version;
+        this.states = states;
+    }
+
+    /**
+     * Takes a snapshot of a topology.
+     * 
+     * @param version
+     *            The version of the snapshot.
+     * @param topology
+     *            The topology.
+     * @return The snapshot.
+     */
+    public static TopologySnapshot of(final long version, final PhysicalTopology topology) {
+        final Map<String, ResourceState> states = new LinkedHashMap<String, ResourceState>();
+        for (final PhysicalDataCenter datacenter : topology.getDataCenters()) {
+            for (final PhysicalRack rack : datacenter.getRacks()) {
+                TopologySnapshot.put(states, new ResourceState(ResourceState.KIND_RACK, rack
+                        .getUniqueIdentifier(), datacenter.getUniqueIdentifier(),
+                        new HashMap<String, String>()));
+                for (final PhysicalStore store : rack.getDisks()) {
+                    TopologySnapshot.put(states,
+                                         TopologySnapshot.toState(store, rack
+                                                 .getUniqueIdentifier()));
+                }
+                for (final PhysicalHost host : rack.getCPUs()) {
+                    TopologySnapshot.put(states,
+                                         TopologySnapshot.toState(host, rack
+                                                 .getUniqueIdentifier()));
+                    for (final PhysicalStore store : host.getDisks()) {
+                        TopologySnapshot.put(states,
+                                             TopologySnapshot.toState(store, host
+                                                     .getUniqueIdentifier()));
+                    }
+                }
+            }
+        }
+        return new TopologySnapshot(version, Collections.unmodifiableMap(states));
+    }
+
+    /**
+     * @param newVersion
+     *            The version of the copy.
+     * @return A snapshot with the same content and the given version.
+     */
+    TopologySnapshot withVersion(final long newVersion) {
+        return new TopologySnapshot(newVersion, this.states);
+    }
+
+    /**
+     * @return the version of the snapshot.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the states of the resources by key.
+     */
+    Map<String, ResourceState> getStates() {
+        return this.states;
+    }
+
+    /**
+     * @param other
+     *            Another snapshot.
+     * @return <code>true</code> iff both snapshots hold the same resources in
+     *         the same state.
+     */
+    public boolean sameContent(final TopologySnapshot other) {
+        return this.states.equals(other.states);
+    }
+
+    /**
+     * @param states
+     *            The map to add the state to.
+     * @param state
+     *            The state.
+     */
+    private static void put(final Map<String, ResourceState> states, final ResourceState state) {
+        states.put(state.getKey(), state);
+    }
+
+    /**
+     * @param host
+     *            A host.
+     * @param parentId
+     *            The id of its rack.
+     * @return The state of the host.
+     */
+    static ResourceState toState(final PhysicalHost host, final String parentId) {
+        final Map<String, String> attributes = new LinkedHashMap<String, String>();
+        attributes.put(TopologySnapshot.ATTRIBUTE_CPU_USAGE, Double.toString(host.getCpuUsage()));
+        attributes.put(TopologySnapshot.ATTRIBUTE_MEM_USAGE, Double.toString(host.getMemUsage()));
+        return new ResourceState(ResourceState.KIND_HOST, host.getUniqueIdentifier(), parentId,
+                attributes);
+    }
+
+    /**
+     * @param store
+     *            A datastore.
+     * @param parentId
+     *            The id of the host or rack that holds it.
+     * @return The state of the datastore.
+     */
+    static ResourceState toState(final PhysicalStore store, final String parentId) {
+        final Map<String, String> attributes = new LinkedHashMap<String, String>();
+        attributes.put(TopologySnapshot.ATTRIBUTE_CAPACITY, Long.toString(store.getCapacity()));
+        attributes.put(TopologySnapshot.ATTRIBUTE_USED, Long.toString(store.getUsed()));
+        return new ResourceState(ResourceState.KIND_STORE, store.getUniqueIdentifier(), parentId,
+                attributes);
+    }
+}
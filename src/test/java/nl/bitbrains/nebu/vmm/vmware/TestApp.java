@@ -0,0 +1,97 @@
+package nl.bitbrains.nebu.vmm.vmware;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import nl.bitbrains.nebu.vmm.vmware.config.ServerTuning;
+import nl.bitbrains.nebu.vmm.vmware.provider.Compressed;
+import nl.bitbrains.nebu.vmm.vmware.provider.CompressionInterceptor;
+import nl.bitbrains.nebu.vmm.vmware.provider.ResponseCache;
+import nl.bitbrains.nebu.vmm.vmware.provider.ResponseCompression;
+import nl.bitbrains.nebu.vmm.vmware.server.WorkerQueueMonitor;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyFeed;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestApp {
+
+    private static final String BODY;
+
+    static {
+        final char[] chars = new char[8192];
+        Arrays.fill(chars, 'x');
+        BODY = "<xml>" + new String(chars) + "</xml>";
+    }
+
+    @Path("large")
+    public static class LargeResource {
+        @GET
+        @Compressed
+        @Produces(MediaType.APPLICATION_XML)
+        public String get() {
+            return TestApp.BODY;
+        }
+    }
+
+    private HttpServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            this.port = socket.getLocalPort();
+        }
+        this.server = GrizzlyHttpServerFactory.createHttpServer(URI.create("http://localhost:"
+                + this.port), new ResourceConfig(LargeResource.class,
+                CompressionInterceptor.class), false);
+        App.tuneServer(this.server, new ServerTuning());
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.server.shutdownNow();
+        ResponseCompression.getInstance().configure(false, 0);
+        TopologyFeed.getInstance().unsubscribe(ResponseCache.getInstance());
+        ResponseCache.getInstance().configure(0, 0);
+        WorkerQueueMonitor.getInstance().configure(0, 1);
+    }
+
+    @Test
+    public void testDeflatedResponseIsNotCompressedAgain() throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:"
+                + this.port + "/large").openConnection();
+        connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.5");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals(ResponseCompression.DEFLATE,
+                            connection.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = new InflaterInputStream(connection.getInputStream())) {
+            final byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+        }
+        Assert.assertEquals(TestApp.BODY, new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,48 @@
+package nl.bitbrains.nebu.vmm.vmware.api;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBackendExecutors {
+
+    @After
+    public void tearDown() {
+        BackendExecutors.setVirtualThreads(false);
+    }
+
+    @Test
+    public void testPlatformThreadFactory() {
+        final Thread thread = BackendExecutors.newThreadFactory("test").newThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        Assert.assertTrue(thread.isDaemon());
+        Assert.assertEquals("test-0", thread.getName());
+    }
+
+    @Test
+    public void testTaskExecutorRunsTasks() throws Exception {
+        final Future<String> future = BackendExecutors.getTaskExecutor()
+                .submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return Thread.currentThread().getName();
+                    }
+                });
+        Assert.assertTrue(future.get(5, TimeUnit.SECONDS).startsWith("nebu-vmm-backend-"));
+    }
+
+    @Test
+    public void testVirtualThreadsOnlyWhenSupported() {
+        Assert.assertEquals(BackendExecutors.isVirtualThreadSupported(),
+                            BackendExecutors.setVirtualThreads(true));
+        Assert.assertEquals(BackendExecutors.isVirtualThreadSupported(),
+                            BackendExecutors.isVirtualThreads());
+    }
+}
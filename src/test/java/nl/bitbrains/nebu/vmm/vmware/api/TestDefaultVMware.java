@@ -2,18 +2,36 @@ package nl.bitbrains.nebu.vmm.vmware.api;
 
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import nl.bitbrains.nebu.common.VirtualMachine;
 import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
 import nl.bitbrains.nebu.common.topology.PhysicalTopology;
 import nl.bitbrains.nebu.vmm.vmware.api.DefaultVMware;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.BackendGuard;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.Deadline;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.RetryPolicy;
 import nl.bitbrains.nebu.vmm.vmware.api.vcloud.VCloud;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.DatastoreSample;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.DatastoreTelemetry;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.HostPerformance;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.HostPerformanceHistory;
 import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphere;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VappHostIndex;
+import nl.bitbrains.nebu.vmm.vmware.config.IsolationTuning;
+import nl.bitbrains.nebu.vmm.vmware.config.RetryTuning;
+import nl.bitbrains.nebu.vmm.vmware.config.VSphereTuning;
 import nl.bitbrains.nebu.vmm.vmware.converter.PhysicalResourceConverter;
 import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
 import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
 import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMLaunchException;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
@@ -26,14 +44,14 @@ import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import com.vmware.vcloud.sdk.VCloudException;
-import com.vmware.vim25.mo.Datastore;
-import com.vmware.vim25.mo.HostSystem;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(PhysicalResourceConverter.class)
@@ -45,12 +63,8 @@ public class TestDefaultVMware {
     @Mock
     VCloud vcloud;
     @Mock
-    Datastore store;
-    @Mock
     PhysicalStore pStore;
     @Mock
-    HostSystem host;
-    @Mock
     PhysicalHost pHost;
     @Mock
     VirtualMachine vm;
@@ -83,14 +97,73 @@ public class TestDefaultVMware {
         this.vmware.getPhysicalTopologyFromResourcePool(poolname);
     }
 
+    @Test
+    public void testGetPhysicalTopologyFromResourcePoolRetried() throws VMwareException,
+            RemoteException {
+        final RetryTuning tuning = new RetryTuning();
+        tuning.setMaxAttempts(2);
+        tuning.setInitialBackoffMillis(0);
+        this.vmware.setRetryPolicy(new RetryPolicy(tuning));
+        final String poolname = "poolname";
+        Mockito.when(this.vsphere.getPhysicalTopologyFromResourcePoolName(Matchers.eq(poolname)))
+                .thenThrow(new RemoteException()).thenReturn(null);
+        this.vmware.getPhysicalTopologyFromResourcePool(poolname);
+        Mockito.verify(this.vsphere, Mockito.times(2))
+                .getPhysicalTopologyFromResourcePoolName(poolname);
+    }
+
+    @Test
+    public void testOpenVSphereCircuitKeepsVCloudAvailable() throws VMwareException,
+            RemoteException {
+        final IsolationTuning tuning = new IsolationTuning();
+        tuning.setFailureRate(1);
+        tuning.setMinimumCalls(1);
+        this.vmware.setVSphereGuard(new BackendGuard(VSphereTuning.CLIENT_TYPE, tuning));
+        Mockito.when(this.vsphere.getPhysicalTopologyFromResourcePoolName(Matchers.anyString()))
+                .thenThrow(new RemoteException());
+        try {
+            this.vmware.getPhysicalTopologyFromResourcePool("poolname");
+            Assert.fail();
+        } catch (final VMwareException e) {
+            // Expected, opens the circuit.
+        }
+        try {
+            this.vmware.getPhysicalTopologyFromResourcePool("poolname");
+            Assert.fail();
+        } catch (final BackendUnavailableException e) {
+            Mockito.verify(this.vsphere).getPhysicalTopologyFromResourcePoolName("poolname");
+        }
+        Assert.assertNotNull(this.vmware.getAllVapps());
+    }
+
+    @Test
+    public void testGetPhysicalTopologyFromResourcePoolDeadline() throws VMwareException,
+            RemoteException {
+        Mockito.when(this.vsphere.getPhysicalTopologyFromResourcePoolName(Matchers.anyString()))
+                .thenAnswer(new Answer<PhysicalTopology>() {
+                    @Override
+                    public PhysicalTopology answer(final InvocationOnMock invocation)
+                            throws InterruptedException {
+                        Thread.sleep(10000);
+                        return null;
+                    }
+                });
+        Deadline.set(Deadline.after(50));
+        final long start = System.nanoTime();
+        try {
+            this.vmware.getPhysicalTopologyFromResourcePool("poolname");
+            Assert.fail();
+        } catch (final DeadlineExceededException e) {
+            Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            Deadline.set(null);
+        }
+    }
+
     @Test
     public void testGetStoreInfo() throws VMwareException {
         final String uuid = "uuid";
-        Mockito.when(this.vsphere.searchItemsById(Matchers.eq(VSphere.TYPE_DATASTORE),
-                                                  Matchers.eq(uuid))).thenReturn(this.store);
-        PowerMockito.mockStatic(PhysicalResourceConverter.class);
-        PowerMockito.when(PhysicalResourceConverter.toPhysicalStore(Matchers.eq(this.store)))
-                .thenReturn(this.pStore);
+        Mockito.when(this.vsphere.getPhysicalStore(Matchers.eq(uuid))).thenReturn(this.pStore);
         final PhysicalStore resStore = this.vmware.getStoreInfo(uuid);
 
         Assert.assertEquals(this.pStore, resStore);
@@ -105,11 +178,7 @@ public class TestDefaultVMware {
     @Test
     public void testGetHostInfo() throws VMwareException {
         final String uuid = "uuid";
-        Mockito.when(this.vsphere.searchItemsById(Matchers.eq(VSphere.TYPE_HOST), Matchers.eq(uuid)))
-                .thenReturn(this.host);
-        PowerMockito.when(PhysicalResourceConverter.toPhysicalHost(Matchers.eq(this.host),
-                                                                   Matchers.anyBoolean()))
-                .thenReturn(this.pHost);
+        Mockito.when(this.vsphere.getPhysicalHost(Matchers.eq(uuid))).thenReturn(this.pHost);
         final PhysicalHost resHost = this.vmware.getHostInfo(uuid);
 
         Assert.assertEquals(this.pHost, resHost);
@@ -386,6 +455,114 @@ public class TestDefaultVMware {
         Assert.assertEquals(this.vapp, vapp);
     }
 
+    @Test
+    public void testSelectVirtualApplicationFromHostIndexed() throws VCloudException,
+            RemoteException, VMwareException {
+        final String vappId = "id";
+        final String hostId = "host-1";
+        final List<String> possibleVapps = new ArrayList<String>();
+        final List<VirtualApplication> vapps = new ArrayList<VirtualApplication>();
+        possibleVapps.add(vappId);
+        vapps.add(this.vapp);
+        final Map<String, Set<String>> hosts = new HashMap<String, Set<String>>();
+        hosts.put("name (id)", Collections.singleton(hostId));
+
+        Mockito.when(this.vapp.getName()).thenReturn("name");
+        Mockito.when(this.vapp.getUniqueIdentifier()).thenReturn(vappId);
+        Mockito.when(this.pHost.getUniqueIdentifier()).thenReturn(hostId);
+        Mockito.when(this.vcloud.getAllVapps()).thenReturn(vapps);
+        Mockito.when(this.vsphere.getHostIdsForVapps(Matchers.anyCollectionOf(String.class)))
+                .thenReturn(hosts);
+        this.vmware.setVappHostIndex(new VappHostIndex());
+
+        for (int i = 0; i < 2; i++) {
+            final VirtualApplication vapp = this.vmware
+                    .selectVirtualApplicationFromHost(this.pHost, possibleVapps);
+            Assert.assertEquals(this.vapp, vapp);
+        }
+        Mockito.verify(this.vcloud).getAllVapps();
+        Mockito.verify(this.vsphere).getHostIdsForVapps(Matchers.anyCollectionOf(String.class));
+        Mockito.verify(this.vsphere, Mockito.never())
+                .hostHasVapp(Matchers.any(PhysicalHost.class), Matchers.anyString());
+    }
+
+    @Test
+    public void testSelectVirtualApplicationFromHostNotFoundFallsBack() throws VCloudException,
+            RemoteException, VMwareException {
+        final String vappId = "id";
+        final List<String> possibleVapps = Collections.singletonList(vappId);
+        final List<VirtualApplication> vapps = Collections.singletonList(this.vapp);
+
+        Mockito.when(this.vapp.getName()).thenReturn("name");
+        Mockito.when(this.vapp.getUniqueIdentifier()).thenReturn(vappId);
+        Mockito.when(this.vcloud.getAllVapps()).thenReturn(vapps);
+        Mockito.when(this.vsphere.getHostIdsForVapps(Matchers.anyCollectionOf(String.class)))
+                .thenReturn(new HashMap<String, Set<String>>());
+        Mockito.when(this.vsphere.hostHasVapp(this.pHost, "name (id)")).thenReturn(true);
+        final VappHostIndex index = new VappHostIndex();
+        this.vmware.setVappHostIndex(index);
+
+        Assert.assertEquals(this.vapp, this.vmware.selectVirtualApplicationFromHost(this.pHost,
+                                                                                    possibleVapps));
+        Assert.assertFalse(index.isIndexed("name (id)"));
+        Mockito.verify(this.vsphere).hostHasVapp(this.pHost, "name (id)");
+    }
+
+    @Test
+    public void testSampleHostPerformance() throws RemoteException, VMwareException {
+        final HostPerformance performance = new HostPerformance(0, 0.5, 0, 0, 0);
+        Mockito.when(this.vsphere.queryHostPerformance())
+                .thenReturn(Collections.singletonMap("host-1", performance));
+        this.vmware.sampleHostPerformance();
+        final HostPerformanceHistory history = new HostPerformanceHistory(2);
+        this.vmware.setPerformanceHistory(history);
+        this.vmware.sampleHostPerformance();
+
+        Mockito.verify(this.vsphere).queryHostPerformance();
+        Mockito.verify(this.vsphere).setPerformanceHistory(history);
+        Assert.assertEquals(1, history.getSampleCount("host-1"));
+    }
+
+    @Test
+    public void testSampleDatastores() throws RemoteException, VMwareException {
+        final DatastoreSample sample = new DatastoreSample(100, 50, 60, 1, 2);
+        Mockito.when(this.vsphere.queryDatastoreTelemetry())
+                .thenReturn(Collections.singletonMap("store-1", sample));
+        this.vmware.sampleDatastores();
+        final DatastoreTelemetry telemetry = new DatastoreTelemetry(2);
+        this.vmware.setDatastoreTelemetry(telemetry, 1000);
+        this.vmware.sampleDatastores();
+
+        Mockito.verify(this.vsphere).queryDatastoreTelemetry();
+        Assert.assertEquals(50, telemetry.getLatest("store-1").getFreeSpace());
+    }
+
+    @Test
+    public void testGetStoreInfoFromTelemetry() throws VMwareException {
+        final String uuid = "uuid";
+        final DatastoreTelemetry telemetry = new DatastoreTelemetry(2);
+        telemetry.record(Collections.singletonMap(uuid, new DatastoreSample(100, 50, 60, 1, 2)));
+        this.vmware.setDatastoreTelemetry(telemetry, TimeUnit.MINUTES.toMillis(1));
+        PowerMockito.mockStatic(PhysicalResourceConverter.class);
+        PowerMockito.when(PhysicalResourceConverter
+                .toPhysicalStore(Matchers.eq(uuid), Matchers.any(DatastoreSample.class)))
+                .thenReturn(this.pStore);
+
+        Assert.assertEquals(this.pStore, this.vmware.getStoreInfo(uuid));
+        Mockito.verify(this.vsphere, Mockito.never()).getPhysicalStore(Matchers.anyString());
+    }
+
+    @Test
+    public void testGetStoreInfoStaleTelemetry() throws VMwareException {
+        final String uuid = "uuid";
+        final DatastoreTelemetry telemetry = new DatastoreTelemetry(2);
+        telemetry.record(0, Collections.singletonMap(uuid, new DatastoreSample(100, 50, 60, 1, 2)));
+        this.vmware.setDatastoreTelemetry(telemetry, TimeUnit.MINUTES.toMillis(1));
+        Mockito.when(this.vsphere.getPhysicalStore(Matchers.eq(uuid))).thenReturn(this.pStore);
+
+        Assert.assertEquals(this.pStore, this.vmware.getStoreInfo(uuid));
+    }
+
     @Test
     public void testGetVCloudNull() {
         this.vmware.setVcloud(null);
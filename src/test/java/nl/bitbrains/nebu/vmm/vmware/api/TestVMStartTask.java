@@ -82,4 +82,16 @@ public class TestVMStartTask {
         Mockito.verify(this.vsphere).moveVMToStorage(this.vmName, this.storeid);
         Mockito.verify(this.vcloud).powerOnVM(Matchers.eq(this.newVMId));
     }
+
+    @Test
+    public void testTaskRunFails() throws VCloudException, TimeoutException {
+        Mockito.when(this.vcloud.createVM(Matchers.any(VirtualMachine.class),
+                                          Matchers.any(VirtualApplication.class),
+                                          Matchers.anyString()))
+                .thenThrow(new TimeoutException());
+        this.startTask.syncRun();
+
+        Mockito.verify(this.progress).setStatus(VmBootStatus.Status.FAILURE);
+        Mockito.verify(this.progress, Mockito.never()).setStatus(VmBootStatus.Status.SUCCESS);
+    }
 }
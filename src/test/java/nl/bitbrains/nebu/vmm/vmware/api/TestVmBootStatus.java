@@ -1,5 +1,7 @@
 package nl.bitbrains.nebu.vmm.vmware.api;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
 
 import org.junit.Assert;
@@ -47,4 +49,33 @@ public class TestVmBootStatus {
         Assert.assertEquals(status, this.bootStatus.getStatus());
     }
 
+    @Test
+    public void testWhenDoneRunsOnceOnCompletion() {
+        final AtomicInteger runs = new AtomicInteger();
+        this.bootStatus.whenDone(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+        this.bootStatus.setStatus(VmBootStatus.Status.PROCESSESING);
+        Assert.assertEquals(0, runs.get());
+        this.bootStatus.setStatus(VmBootStatus.Status.FAILURE);
+        this.bootStatus.setStatus(VmBootStatus.Status.FAILURE);
+        Assert.assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testWhenDoneAfterCompletion() {
+        final AtomicInteger runs = new AtomicInteger();
+        this.bootStatus.setStatus(VmBootStatus.Status.SUCCESS);
+        this.bootStatus.whenDone(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+        Assert.assertEquals(1, runs.get());
+    }
+
 }
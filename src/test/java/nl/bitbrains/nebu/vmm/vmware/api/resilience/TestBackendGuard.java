@@ -0,0 +1,135 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import nl.bitbrains.nebu.vmm.vmware.api.BackendExecutors;
+import nl.bitbrains.nebu.vmm.vmware.config.IsolationTuning;
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class TestBackendGuard {
+
+    @Mock
+    Callable<String> call;
+
+    private IsolationTuning tuning;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        this.tuning = new IsolationTuning();
+    }
+
+    @Test
+    public void testUnlimitedPassesThrough() throws Exception {
+        Mockito.when(this.call.call()).thenReturn("result");
+        Assert.assertEquals("result", BackendGuard.unlimited("test").call(this.call));
+    }
+
+    @Test
+    public void testOpenCircuitRejects() throws Exception {
+        this.tuning.setFailureRate(0.5);
+        this.tuning.setMinimumCalls(2);
+        final BackendGuard guard = new BackendGuard("test", this.tuning);
+        Mockito.when(this.call.call()).thenThrow(new RemoteException());
+        for (int i = 0; i < 2; i++) {
+            try {
+                guard.call(this.call);
+                Assert.fail();
+            } catch (final RemoteException e) {
+                // Expected.
+            }
+        }
+        try {
+            guard.call(this.call);
+            Assert.fail();
+        } catch (final BackendUnavailableException e) {
+            Assert.assertTrue(e.getRetryAfterSeconds() > 0);
+        }
+        Mockito.verify(this.call, Mockito.times(2)).call();
+    }
+
+    @Test
+    public void testMissingVMIsNoFailure() throws Exception {
+        this.tuning.setFailureRate(0.5);
+        this.tuning.setMinimumCalls(2);
+        final BackendGuard guard = new BackendGuard("test", this.tuning);
+        Mockito.when(this.call.call()).thenThrow(new NoSuchVMException("vm"));
+        for (int i = 0; i < 3; i++) {
+            try {
+                guard.call(this.call);
+                Assert.fail();
+            } catch (final NoSuchVMException e) {
+                // Expected.
+            }
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, guard.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void testSlowCallsIgnoredWithoutSlowCalls() throws Exception {
+        this.tuning.setFailureRate(0.5);
+        this.tuning.setMinimumCalls(2);
+        this.tuning.setSlowCallMillis(1);
+        final BackendGuard guard = new BackendGuard("test", this.tuning);
+        final BackendGuard moves = guard.withoutSlowCalls();
+        final Callable<String> slow = new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                Thread.sleep(20);
+                return "moved";
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("moved", moves.call(slow));
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, guard.getCircuitBreaker().getState());
+        for (int i = 0; i < 3; i++) {
+            guard.call(slow);
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, moves.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void testFullBulkheadRejects() throws Exception {
+        this.tuning.setMaxConcurrent(1);
+        final BackendGuard guard = new BackendGuard("test", this.tuning);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final Future<String> blocked = BackendExecutors.getTaskExecutor()
+                .submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return guard.call(new Callable<String>() {
+                            @Override
+                            public String call() throws InterruptedException {
+                                started.countDown();
+                                finish.await();
+                                return "first";
+                            }
+                        });
+                    }
+                });
+        started.await();
+        try {
+            guard.call(this.call);
+            Assert.fail();
+        } catch (final BackendUnavailableException e) {
+            Mockito.verifyZeroInteractions(this.call);
+        } finally {
+            finish.countDown();
+        }
+        Assert.assertEquals("first", blocked.get());
+        Assert.assertEquals(1, guard.getBulkhead().available());
+    }
+}
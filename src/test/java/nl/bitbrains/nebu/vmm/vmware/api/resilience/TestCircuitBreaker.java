@@ -0,0 +1,99 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.vmm.vmware.config.IsolationTuning;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCircuitBreaker {
+
+    private IsolationTuning tuning;
+
+    @Before
+    public void setUp() {
+        this.tuning = new IsolationTuning();
+        this.tuning.setFailureRate(0.5);
+        this.tuning.setMinimumCalls(4);
+        this.tuning.setOpenSeconds(30);
+    }
+
+    private void record(final CircuitBreaker breaker, final boolean failed, final int times) {
+        for (int i = 0; i < times; i++) {
+            Assert.assertTrue(breaker.allow());
+            breaker.onResult(failed, 0);
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", new IsolationTuning());
+        this.record(breaker, true, 100);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testStaysClosedBelowMinimumCalls() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", this.tuning);
+        this.record(breaker, true, 3);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testStaysClosedBelowFailureRate() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", this.tuning);
+        this.record(breaker, false, 3);
+        this.record(breaker, true, 1);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testOpensAtFailureRate() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", this.tuning);
+        this.record(breaker, false, 2);
+        this.record(breaker, true, 2);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allow());
+        Assert.assertTrue(breaker.getRetryAfterSeconds() > 0);
+        Assert.assertTrue(breaker.getRetryAfterSeconds() <= 30);
+    }
+
+    @Test
+    public void testSlowCallsCountAsFailures() {
+        this.tuning.setSlowCallMillis(100);
+        final CircuitBreaker breaker = new CircuitBreaker("test", this.tuning);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(breaker.allow());
+            breaker.onResult(false, TimeUnit.MILLISECONDS.toNanos(200));
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenLetsOneTrialThrough() throws InterruptedException {
+        this.tuning.setOpenSeconds(1);
+        final CircuitBreaker breaker = new CircuitBreaker("test", this.tuning);
+        this.record(breaker, true, 4);
+        Thread.sleep(1100);
+        Assert.assertTrue(breaker.allow());
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allow());
+        breaker.onResult(false, 0);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.allow());
+    }
+
+    @Test
+    public void testFailedTrialOpensAgain() throws InterruptedException {
+        this.tuning.setOpenSeconds(1);
+        final CircuitBreaker breaker = new CircuitBreaker("test", this.tuning);
+        this.record(breaker, true, 4);
+        Thread.sleep(1100);
+        Assert.assertTrue(breaker.allow());
+        breaker.onResult(true, 0);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allow());
+    }
+}
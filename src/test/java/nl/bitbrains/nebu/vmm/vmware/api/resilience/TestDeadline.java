@@ -0,0 +1,49 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDeadline {
+
+    @After
+    public void tearDown() {
+        Deadline.set(null);
+    }
+
+    @Test
+    public void testNotExpired() {
+        final Deadline deadline = Deadline.after(10000);
+        Assert.assertFalse(deadline.isExpired());
+        Assert.assertTrue(deadline.remainingMillis() > 0);
+        Assert.assertTrue(deadline.remainingMillis() <= 10000);
+        deadline.check();
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void testExpired() {
+        final Deadline deadline = Deadline.after(0);
+        Assert.assertTrue(deadline.isExpired());
+        Assert.assertEquals(0, deadline.remainingMillis());
+        deadline.check();
+    }
+
+    @Test
+    public void testCurrent() {
+        Assert.assertNull(Deadline.current());
+        Deadline.checkCurrent();
+        final Deadline deadline = Deadline.after(1000);
+        Deadline.set(deadline);
+        Assert.assertSame(deadline, Deadline.current());
+        Deadline.set(null);
+        Assert.assertNull(Deadline.current());
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void testCheckCurrentExpired() {
+        Deadline.set(Deadline.after(0));
+        Deadline.checkCurrent();
+    }
+}
@@ -0,0 +1,138 @@
+package nl.bitbrains.nebu.vmm.vmware.api.resilience;
+
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+
+import nl.bitbrains.nebu.vmm.vmware.config.RetryTuning;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.vmware.vcloud.sdk.VCloudException;
+import com.vmware.vim25.InvalidProperty;
+
+public class TestRetryPolicy {
+
+    @Mock
+    Callable<String> call;
+
+    private RetryTuning tuning;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        this.tuning = new RetryTuning();
+        this.tuning.setMaxAttempts(3);
+        this.tuning.setInitialBackoffMillis(0);
+        this.tuning.setBudget(1);
+    }
+
+    @Test(expected = RemoteException.class)
+    public void testNoneDoesNotRetry() throws Exception {
+        Mockito.when(this.call.call()).thenThrow(new RemoteException());
+        try {
+            RetryPolicy.none().call(this.call);
+        } finally {
+            Mockito.verify(this.call).call();
+        }
+    }
+
+    @Test
+    public void testRetriesTransientError() throws Exception {
+        Mockito.when(this.call.call()).thenThrow(new RemoteException("timeout"))
+                .thenThrow(new SocketTimeoutException()).thenReturn("result");
+        Assert.assertEquals("result", new RetryPolicy(this.tuning).call(this.call));
+        Mockito.verify(this.call, Mockito.times(3)).call();
+    }
+
+    @Test(expected = InvalidProperty.class)
+    public void testServerFaultNotRetried() throws Exception {
+        Mockito.when(this.call.call()).thenThrow(new InvalidProperty());
+        try {
+            new RetryPolicy(this.tuning).call(this.call);
+        } finally {
+            Mockito.verify(this.call).call();
+        }
+    }
+
+    private VCloudException vcloudError(final int status) {
+        final VCloudException e = Mockito.mock(VCloudException.class);
+        Mockito.when(e.getMajorErrorCode()).thenReturn(status);
+        return e;
+    }
+
+    @Test
+    public void testRetriesVCloudServerError() throws Exception {
+        Mockito.when(this.call.call()).thenThrow(this.vcloudError(503))
+                .thenThrow(this.vcloudError(429)).thenReturn("result");
+        Assert.assertEquals("result", new RetryPolicy(this.tuning).call(this.call));
+        Mockito.verify(this.call, Mockito.times(3)).call();
+    }
+
+    @Test
+    public void testVCloudStatusClassification() {
+        final RetryPolicy policy = new RetryPolicy(this.tuning);
+        Assert.assertTrue(policy.isTransient(this.vcloudError(500)));
+        Assert.assertTrue(policy.isTransient(this.vcloudError(504)));
+        Assert.assertTrue(policy.isTransient(this.vcloudError(429)));
+        Assert.assertFalse(policy.isTransient(this.vcloudError(400)));
+        Assert.assertFalse(policy.isTransient(this.vcloudError(404)));
+    }
+
+    @Test
+    public void testVCloudClientErrorNotRetried() throws Exception {
+        final VCloudException error = this.vcloudError(400);
+        Mockito.when(this.call.call()).thenThrow(error);
+        try {
+            new RetryPolicy(this.tuning).call(this.call);
+            Assert.fail();
+        } catch (final VCloudException e) {
+            Assert.assertSame(error, e);
+        }
+        Mockito.verify(this.call).call();
+    }
+
+    @Test(expected = RemoteException.class)
+    public void testMaxAttempts() throws Exception {
+        Mockito.when(this.call.call()).thenThrow(new RemoteException());
+        try {
+            new RetryPolicy(this.tuning).call(this.call);
+        } finally {
+            Mockito.verify(this.call, Mockito.times(3)).call();
+        }
+    }
+
+    @Test
+    public void testBudgetExhausted() throws Exception {
+        this.tuning.setMaxAttempts(2);
+        this.tuning.setBudget(0);
+        Mockito.when(this.call.call()).thenThrow(new RemoteException());
+        final RetryPolicy policy = new RetryPolicy(this.tuning);
+        int calls = 0;
+        for (int i = 0; i < 20; i++) {
+            try {
+                policy.call(this.call);
+            } catch (final RemoteException e) {
+                calls++;
+            }
+        }
+        Assert.assertEquals(20, calls);
+        Mockito.verify(this.call, Mockito.times(30)).call();
+    }
+
+    @Test
+    public void testBackoffBounded() {
+        this.tuning.setInitialBackoffMillis(100);
+        this.tuning.setMaxBackoffMillis(300);
+        final RetryPolicy policy = new RetryPolicy(this.tuning);
+        for (int attempt = 1; attempt < 40; attempt++) {
+            final long backoff = policy.backoff(attempt);
+            Assert.assertTrue(backoff >= 0 && backoff <= 300);
+        }
+    }
+}
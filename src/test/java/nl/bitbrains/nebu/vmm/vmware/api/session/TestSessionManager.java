@@ -0,0 +1,87 @@
+package nl.bitbrains.nebu.vmm.vmware.api.session;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class TestSessionManager {
+
+    @Mock
+    RefreshableSession session;
+    @Mock
+    ScheduledExecutorService scheduler;
+    @Mock
+    Callable<String> call;
+
+    private SessionManager manager;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        this.manager = new SessionManager(this.scheduler);
+    }
+
+    @Test
+    public void testCallWithoutSession() throws Exception {
+        Mockito.when(this.call.call()).thenReturn("result");
+        Assert.assertEquals("result", this.manager.callWithReauth(null, this.call));
+    }
+
+    @Test
+    public void testRetryOnceAfterExpiry() throws Exception {
+        final IOException expired = new IOException("expired");
+        Mockito.when(this.call.call()).thenThrow(expired).thenReturn("result");
+        Mockito.when(this.session.isExpired(expired)).thenReturn(true);
+        Mockito.when(this.session.reconnect()).thenReturn(true);
+
+        Assert.assertEquals("result", this.manager.callWithReauth(this.session, this.call));
+        Mockito.verify(this.session).reconnect();
+        Mockito.verify(this.call, Mockito.times(2)).call();
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoRetryOnOtherErrors() throws Exception {
+        Mockito.when(this.call.call()).thenThrow(new IOException());
+        try {
+            this.manager.callWithReauth(this.session, this.call);
+        } finally {
+            Mockito.verify(this.session, Mockito.never()).reconnect();
+        }
+    }
+
+    @Test
+    public void testReconnectOncePerGeneration() {
+        Mockito.when(this.session.reconnect()).thenReturn(true);
+        Assert.assertTrue(this.manager.reconnect(this.session, 0));
+        Assert.assertTrue(this.manager.reconnect(this.session, 0));
+        Mockito.verify(this.session).reconnect();
+    }
+
+    @Test
+    public void testRefreshSchedulesNext() {
+        Mockito.when(this.session.keepAlive()).thenReturn(true);
+        this.manager.refresh(this.session, 1000, SessionManager.INITIAL_BACKOFF_MILLIS);
+        Mockito.verify(this.scheduler).schedule(Matchers.any(Runnable.class),
+                                                Matchers.eq(1000L),
+                                                Matchers.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFailedRefreshBacksOff() {
+        Mockito.when(this.session.keepAlive()).thenReturn(false);
+        Mockito.when(this.session.reconnect()).thenReturn(false);
+        this.manager.refresh(this.session, 1000, 4000);
+        Mockito.verify(this.scheduler).schedule(Matchers.any(Runnable.class),
+                                                Matchers.eq(4000L),
+                                                Matchers.eq(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,269 @@
+package nl.bitbrains.nebu.vmm.vmware.api.simulator;
+
+import java.net.MalformedURLException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.bitbrains.nebu.common.VirtualMachine;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.DatastoreTelemetry;
+import nl.bitbrains.nebu.vmm.vmware.api.vsphere.HostPerformanceHistory;
+import nl.bitbrains.nebu.vmm.vmware.config.VSphereTuning;
+import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
+import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
+import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
+import nl.bitbrains.nebu.vmm.vmware.exception.VMLaunchException;
+import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
+
+import org.jdom2.Element;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSimulatedVMware {
+
+    private SimulatorConfiguration config;
+    private SimulatedVMware vmware;
+
+    @Before
+    public void setUp() throws RemoteException, MalformedURLException {
+        this.config = new SimulatorConfiguration();
+        this.config.setClusters(2);
+        this.config.setHosts(4);
+        this.config.setDatastores(6);
+        this.config.setSharedDatastores(2);
+        this.config.setVapps(2);
+        this.config.setVmsPerVapp(1);
+        this.config.setCallLatencyMillis(0);
+        this.config.setCallJitterMillis(0);
+        this.config.setDeployDurationMillis(0);
+        this.config.setMoveDurationMillis(0);
+        this.vmware = this.newVMware(new VSphereTuning());
+    }
+
+    @After
+    public void tearDown() {
+        this.vmware.shutdown();
+    }
+
+    private SimulatedVMware newVMware(final VSphereTuning tuning) throws RemoteException,
+            MalformedURLException {
+        tuning.setVappIndexRefreshSeconds(0);
+        if (this.vmware != null) {
+            this.vmware.shutdown();
+        }
+        final SimulatedVMware simulator = new SimulatedVMware(this.config);
+        simulator.setVSphereTuning(tuning);
+        simulator.init();
+        return simulator;
+    }
+
+    private void awaitStatus(final VmBootStatus status, final VmBootStatus.Status expected)
+            throws InterruptedException {
+        for (int i = 0; i < 500 && status.getStatus() != expected; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, status.getStatus());
+    }
+
+    private List<String> vappIds() throws VMwareException {
+        final List<String> ids = new ArrayList<String>();
+        for (final VirtualApplication vapp : this.vmware.getAllVapps()) {
+            ids.add(vapp.getUniqueIdentifier());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testFromXMLDefaults() {
+        final SimulatorConfiguration parsed = SimulatorConfiguration.fromXML(null);
+        Assert.assertEquals(new SimulatorConfiguration().getHosts(), parsed.getHosts());
+    }
+
+    @Test
+    public void testFromXML() {
+        final Element elem = new Element("client");
+        elem.addContent(new Element(SimulatorConfiguration.TAG_HOSTS).setText("16"));
+        elem.addContent(new Element(SimulatorConfiguration.TAG_MOVE_DURATION).setText("10"));
+        final SimulatorConfiguration parsed = SimulatorConfiguration.fromXML(elem);
+        Assert.assertEquals(16, parsed.getHosts());
+        Assert.assertEquals(10, parsed.getMoveDurationMillis());
+    }
+
+    @Test
+    public void testGetAllVapps() throws VMwareException {
+        Assert.assertEquals(2, this.vmware.getAllVapps().size());
+    }
+
+    @Test
+    public void testInitialVms() throws VMwareException {
+        Assert.assertEquals(2, this.vmware.getVirtualResourceList().size());
+    }
+
+    @Test
+    public void testTopologyFromResourcePool() throws VMwareException {
+        final PhysicalTopology topology = this.vmware
+                .getPhysicalTopologyFromResourcePool(SimulatedInventory.getPoolName(0));
+        Assert.assertEquals(2, topology.getCPUs().size());
+    }
+
+    @Test(expected = VMwareException.class)
+    public void testTopologyFromUnknownResourcePool() throws VMwareException {
+        this.vmware.getPhysicalTopologyFromResourcePool("unknown");
+    }
+
+    @Test
+    public void testTopologyForVapps() throws VMwareException {
+        Assert.assertEquals(4, this.vmware.getPhysicalTopologyForVapps(this.vappIds()).getCPUs()
+                .size());
+    }
+
+    @Test
+    public void testTopologyWithPooledSessions() throws VMwareException, RemoteException,
+            MalformedURLException {
+        final VSphereTuning tuning = new VSphereTuning();
+        tuning.setSessions(2);
+        this.vmware = this.newVMware(tuning);
+        Assert.assertEquals(4, this.vmware.getPhysicalTopologyForVapps(this.vappIds()).getCPUs()
+                .size());
+    }
+
+    @Test
+    public void testHostPerformanceSampledUntilShutdown() throws RemoteException,
+            MalformedURLException, InterruptedException {
+        final VSphereTuning tuning = new VSphereTuning();
+        tuning.setPerfSampleSeconds(1);
+        this.vmware = this.newVMware(tuning);
+        final HostPerformanceHistory history = this.vmware.getPerformanceHistory();
+        for (int i = 0; i < 500 && history.getSampleCount("host-0") == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, history.getSampleCount("host-0"));
+
+        this.vmware.shutdown();
+        Thread.sleep(1200);
+        Assert.assertEquals(1, history.getSampleCount("host-0"));
+    }
+
+    @Test
+    public void testDatastoresSampledUntilShutdown() throws RemoteException,
+            MalformedURLException, InterruptedException {
+        final VSphereTuning tuning = new VSphereTuning();
+        tuning.setStoreSampleSeconds(1);
+        this.vmware = this.newVMware(tuning);
+        final DatastoreTelemetry telemetry = this.vmware.getDatastoreTelemetry();
+        for (int i = 0; i < 500 && telemetry.getLatestTime("datastore-0") == 0; i++) {
+            Thread.sleep(10);
+        }
+        final long sampledAt = telemetry.getLatestTime("datastore-0");
+        Assert.assertTrue(sampledAt > 0);
+
+        this.vmware.shutdown();
+        Thread.sleep(1200);
+        Assert.assertEquals(sampledAt, telemetry.getLatestTime("datastore-0"));
+    }
+
+    @Test
+    public void testSelectVirtualApplicationFromHost() throws VMwareException {
+        final PhysicalHost host = this.vmware.getHostInfo("host-1");
+        final VirtualApplication vapp = this.vmware.selectVirtualApplicationFromHost(host, this
+                .vappIds());
+        Assert.assertNotNull(vapp);
+        Assert.assertEquals("vapp-1", vapp.getName());
+    }
+
+    @Test
+    public void testLocalStoresFollowHostCluster() throws VMwareException, RemoteException,
+            MalformedURLException {
+        this.config.setHosts(3);
+        this.config.setDatastores(5);
+        this.vmware = this.newVMware(new VSphereTuning());
+
+        final PhysicalHost host = this.vmware.getHostInfo("host-0");
+        Assert.assertEquals(1, host.getDisks().size());
+        Assert.assertEquals("datastore-3", host.getDisks().get(0).getUniqueIdentifier());
+        final PhysicalTopology topology = this.vmware
+                .getPhysicalTopologyFromResourcePool(SimulatedInventory.getPoolName(0));
+        int localStores = 0;
+        for (final PhysicalHost clusterHost : topology.getCPUs()) {
+            localStores += clusterHost.getDisks().size();
+        }
+        Assert.assertEquals(2, topology.getCPUs().size());
+        Assert.assertEquals(2, localStores);
+    }
+
+    @Test
+    public void testHostLoadFollowsVms() throws VMwareException {
+        final PhysicalHost host = this.vmware.getHostInfo("host-0");
+        final SimulatedInventory.Host simulated = this.vmware.getInventory().getHost("host-0");
+        Assert.assertEquals(this.vmware.getInventory().getCpuUsage(simulated),
+                            host.getCpuUsage(),
+                            0.01);
+    }
+
+    @Test(expected = VMwareException.class)
+    public void testGetUnknownHost() throws VMwareException {
+        this.vmware.getHostInfo("unknown");
+    }
+
+    @Test
+    public void testCreateVM() throws VMwareException, NoSuchVMException, VMLaunchException,
+            InterruptedException {
+        final String templateId = this.vmware.getVirtualResourceList().get(0);
+        final VirtualMachine template = this.vmware.getVirtualMachineInfo(templateId);
+        final VirtualApplication dest = this.vmware.getAllVapps().get(0);
+        final VmBootStatus status = this.vmware.createVM(template, dest, "host-0", "new-vm");
+        this.awaitStatus(status, VmBootStatus.Status.SUCCESS);
+        final VirtualMachine vm = this.vmware.getVirtualMachineInfo(status.getVmId());
+        Assert.assertEquals("new-vm", vm.getHostname());
+        Assert.assertEquals(VirtualMachine.Status.ON, vm.getStatus());
+        Assert.assertEquals(3, this.vmware.getVirtualResourceList().size());
+    }
+
+    @Test
+    public void testCreateVMUnknownHost() throws VMwareException, NoSuchVMException,
+            VMLaunchException, InterruptedException {
+        final String templateId = this.vmware.getVirtualResourceList().get(0);
+        final VirtualMachine template = this.vmware.getVirtualMachineInfo(templateId);
+        final VmBootStatus status = this.vmware.createVM(template, this.vmware.getAllVapps()
+                .get(0), "unknown", "new-vm");
+        this.awaitStatus(status, VmBootStatus.Status.FAILURE);
+    }
+
+    @Test
+    public void testKillVM() throws VMwareException, NoSuchVMException {
+        final String id = this.vmware.getVirtualResourceList().get(0);
+        this.vmware.killVM(this.vmware.getVirtualMachineInfo(id));
+        Assert.assertFalse(this.vmware.getVirtualResourceList().contains(id));
+    }
+
+    @Test
+    public void testMoveVMToHost() throws VMwareException, NoSuchVMException,
+            InterruptedException {
+        final String id = this.vmware.getVirtualResourceList().get(0);
+        final VirtualMachine vm = this.vmware.getVirtualMachineInfo(id);
+        final String target = vm.getHost().equals("host-0") ? "host-2" : "host-0";
+        this.vmware.moveVMToHost(vm, this.vmware.getHostInfo(target));
+        // vSphere returns before the migration has finished.
+        for (int i = 0; i < 500 && !target.equals(this.vmware.getVirtualMachineInfo(id)
+                .getHost()); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(target, this.vmware.getVirtualMachineInfo(id).getHost());
+    }
+
+    @Test
+    public void testGetVmIdFromName() throws VMwareException, NoSuchVMException {
+        final List<String> ids = this.vmware.getVirtualResourceList();
+        final String name = this.vmware.getVirtualMachineInfo(ids.get(0)).getHostname();
+        Assert.assertEquals(ids.get(0), this.vmware.getVmIdFromName(ids, name));
+    }
+
+    @Test(expected = NoSuchVMException.class)
+    public void testGetVmIdFromUnknownName() throws VMwareException, NoSuchVMException {
+        this.vmware.getVmIdFromName(this.vmware.getVirtualResourceList(), "unknown");
+    }
+}
@@ -7,6 +7,9 @@ import java.security.UnrecoverableKeyException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import javax.xml.bind.UnmarshalException;
@@ -15,6 +18,7 @@ import nl.bitbrains.nebu.common.VirtualMachine;
 import nl.bitbrains.nebu.vmm.vmware.api.VMStartTask;
 import nl.bitbrains.nebu.vmm.vmware.api.vcloud.FakeSSLSocketFactory;
 import nl.bitbrains.nebu.vmm.vmware.api.vcloud.VCloud;
+import nl.bitbrains.nebu.vmm.vmware.config.VCloudTuning;
 import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
 import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
 
@@ -550,4 +554,35 @@ public class TestVCloud {
 
         Mockito.verify(this.vm).delete();
     }
+
+    @Test
+    public void testConnectionEvictorScheduledAndStopped() {
+        final VCloudTuning tuning = new VCloudTuning();
+        tuning.setIdleEvictionSeconds(30);
+        this.vcloud.setTuning(tuning);
+        final ScheduledExecutorService scheduler = Mockito.mock(ScheduledExecutorService.class);
+        final ScheduledFuture<?> future = Mockito.mock(ScheduledFuture.class);
+        Mockito.doReturn(future).when(scheduler)
+                .scheduleWithFixedDelay(Matchers.any(Runnable.class),
+                                        Matchers.eq(15L),
+                                        Matchers.eq(15L),
+                                        Matchers.eq(TimeUnit.SECONDS));
+
+        this.vcloud.startConnectionEvictor(scheduler);
+        this.vcloud.stopConnectionEvictor();
+
+        Mockito.verify(future).cancel(false);
+    }
+
+    @Test
+    public void testConnectionEvictorDisabled() {
+        final VCloudTuning tuning = new VCloudTuning();
+        tuning.setIdleEvictionSeconds(0);
+        this.vcloud.setTuning(tuning);
+        final ScheduledExecutorService scheduler = Mockito.mock(ScheduledExecutorService.class);
+
+        this.vcloud.startConnectionEvictor(scheduler);
+
+        Mockito.verifyZeroInteractions(scheduler);
+    }
 }
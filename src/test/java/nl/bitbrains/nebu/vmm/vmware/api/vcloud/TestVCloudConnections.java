@@ -0,0 +1,56 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vcloud;
+
+import nl.bitbrains.nebu.vmm.vmware.config.VCloudTuning;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings("deprecation")
+public class TestVCloudConnections {
+
+    @Test
+    public void testConfigurePool() {
+        final PoolingClientConnectionManager manager = new PoolingClientConnectionManager();
+        final DefaultHttpClient client = new DefaultHttpClient(manager);
+        final VCloudTuning tuning = new VCloudTuning();
+        tuning.setMaxConnections(12);
+        tuning.setMaxConnectionsPerRoute(6);
+        VCloudConnections.configure(client, tuning);
+        Assert.assertEquals(12, manager.getMaxTotal());
+        Assert.assertEquals(6, manager.getDefaultMaxPerRoute());
+        manager.shutdown();
+    }
+
+    @Test
+    public void testConfigureNullClient() {
+        VCloudConnections.configure(null, new VCloudTuning());
+        VCloudConnections.evictIdle(null, 1);
+    }
+
+    @Test
+    public void testKeepAliveWithoutHeader() {
+        final ConnectionKeepAliveStrategy strategy = VCloudConnections.keepAliveStrategy(30);
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                HttpStatus.SC_OK, "OK");
+        Assert.assertEquals(30000, strategy.getKeepAliveDuration(response,
+                                                                 new BasicHttpContext()));
+    }
+
+    @Test
+    public void testKeepAliveCappedByServer() {
+        final ConnectionKeepAliveStrategy strategy = VCloudConnections.keepAliveStrategy(30);
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                HttpStatus.SC_OK, "OK");
+        response.addHeader("Keep-Alive", "timeout=5");
+        Assert.assertEquals(5000, strategy.getKeepAliveDuration(response,
+                                                                new BasicHttpContext()));
+    }
+}
@@ -0,0 +1,59 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vcloud;
+
+import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.vmware.vcloud.sdk.VCloudException;
+
+public class TestVCloudSessionRefresher {
+
+    @Mock
+    VCloud vcloud;
+
+    private VCloudSessionRefresher refresher;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        this.refresher = new VCloudSessionRefresher(this.vcloud, "user", "password", "url");
+    }
+
+    private VCloudException withStatus(final int status) {
+        final VCloudException e = Mockito.mock(VCloudException.class);
+        Mockito.when(e.getMajorErrorCode()).thenReturn(status);
+        return e;
+    }
+
+    @Test
+    public void testUnauthorizedIsExpired() {
+        Assert.assertTrue(this.refresher.isExpired(this.withStatus(401)));
+    }
+
+    @Test
+    public void testForbiddenIsExpired() {
+        Assert.assertTrue(this.refresher.isExpired(this.withStatus(403)));
+    }
+
+    @Test
+    public void testWrappedUnauthorizedIsExpired() {
+        Assert.assertTrue(this.refresher.isExpired(new VMwareException("wrapped", this
+                .withStatus(401))));
+    }
+
+    @Test
+    public void testOtherStatusIsNotExpired() {
+        Assert.assertFalse(this.refresher.isExpired(this.withStatus(500)));
+    }
+
+    @Test
+    public void testAuthenticationMessageIsNotExpired() {
+        Assert.assertFalse(this.refresher.isExpired(new RuntimeException(
+                "authentication of the template failed")));
+    }
+}
@@ -0,0 +1,73 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestClusterMembership {
+
+    private ClusterMembership membership;
+
+    @Before
+    public void setUp() {
+        this.membership = new ClusterMembership(60000);
+    }
+
+    @Test
+    public void testUnknownPool() {
+        Assert.assertFalse(this.membership.isCurrent("pool"));
+        Assert.assertFalse(this.membership.contains("pool", "host-1"));
+        Assert.assertNull(this.membership.getHostIds("pool"));
+        Assert.assertFalse(this.membership.isCurrent(null));
+    }
+
+    @Test
+    public void testContains() {
+        this.membership.update("a", Arrays.asList("host-1", "host-2"));
+        this.membership.update("b", Arrays.asList("host-2", "host-3"));
+        Assert.assertTrue(this.membership.isCurrent("a"));
+        Assert.assertTrue(this.membership.contains("a", "host-1"));
+        Assert.assertTrue(this.membership.contains("a", "host-2"));
+        Assert.assertFalse(this.membership.contains("a", "host-3"));
+        Assert.assertTrue(this.membership.contains("b", "host-3"));
+        Assert.assertFalse(this.membership.contains("b", "host-4"));
+        Assert.assertFalse(this.membership.contains("a", null));
+    }
+
+    @Test
+    public void testGetHostIds() {
+        this.membership.update("a", Arrays.asList("host-1", "host-2"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("host-1", "host-2")),
+                            this.membership.getHostIds("a"));
+    }
+
+    @Test
+    public void testUpdateReplaces() {
+        this.membership.update("a", Arrays.asList("host-1"));
+        this.membership.update("a", Arrays.asList("host-2"));
+        Assert.assertFalse(this.membership.contains("a", "host-1"));
+        Assert.assertTrue(this.membership.contains("a", "host-2"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        this.membership.update("a", Arrays.asList("host-1"));
+        this.membership.update("b", Arrays.asList("host-1"));
+        this.membership.invalidate("a");
+        Assert.assertFalse(this.membership.isCurrent("a"));
+        Assert.assertTrue(this.membership.isCurrent("b"));
+        this.membership.clear();
+        Assert.assertFalse(this.membership.isCurrent("b"));
+    }
+
+    @Test
+    public void testDisabled() {
+        final ClusterMembership disabled = new ClusterMembership(0);
+        disabled.update("a", Collections.singleton("host-1"));
+        Assert.assertFalse(disabled.isCurrent("a"));
+    }
+}
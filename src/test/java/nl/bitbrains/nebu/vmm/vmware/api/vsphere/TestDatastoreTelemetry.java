@@ -0,0 +1,111 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDatastoreTelemetry {
+
+    private static final double DELTA = 1e-6;
+
+    private DatastoreTelemetry telemetry;
+
+    @Before
+    public void setUp() {
+        this.telemetry = new DatastoreTelemetry(4);
+    }
+
+    private void record(final long time, final long free, final double latency) {
+        this.telemetry.record(time, Collections.singletonMap("store-1",
+                                                             new DatastoreSample(1000, free, 800,
+                                                                     latency, Double.NaN)));
+    }
+
+    @Test
+    public void testNotSampled() {
+        Assert.assertNull(this.telemetry.getLatest("store-1"));
+        Assert.assertEquals(0, this.telemetry.getLatestTime("store-1"));
+        Assert.assertEquals(0, this.telemetry.getGrowthRate("store-1"),
+                            TestDatastoreTelemetry.DELTA);
+        Assert.assertTrue(Double.isNaN(this.telemetry.getLatencyPercentile("store-1", 50)));
+        Assert.assertNull(this.telemetry.getLatest(null));
+    }
+
+    @Test
+    public void testLatest() {
+        this.record(1000, 600, 1);
+        this.record(2000, 500, 2);
+        final DatastoreSample latest = this.telemetry.getLatest("store-1");
+        Assert.assertEquals(500, latest.getFreeSpace());
+        Assert.assertEquals(1000, latest.getCapacity());
+        Assert.assertEquals(800, latest.getProvisioned());
+        Assert.assertEquals(2000, this.telemetry.getLatestTime("store-1"));
+    }
+
+    @Test
+    public void testGrowthRate() {
+        this.record(0, 900, 1);
+        this.record(1000, 800, 1);
+        this.record(2000, 700, 1);
+        Assert.assertEquals(100, this.telemetry.getGrowthRate("store-1"),
+                            TestDatastoreTelemetry.DELTA);
+    }
+
+    @Test
+    public void testGrowthRateSingleSample() {
+        this.record(0, 900, 1);
+        Assert.assertEquals(0, this.telemetry.getGrowthRate("store-1"),
+                            TestDatastoreTelemetry.DELTA);
+    }
+
+    @Test
+    public void testRingKeepsRecentSamples() {
+        for (int i = 0; i < 6; i++) {
+            this.record(i * 1000, 1000 - i * 100, i);
+        }
+        Assert.assertEquals(100, this.telemetry.getGrowthRate("store-1"),
+                            TestDatastoreTelemetry.DELTA);
+        Assert.assertEquals(2, this.telemetry.getLatencyPercentile("store-1", 0),
+                            TestDatastoreTelemetry.DELTA);
+        Assert.assertEquals(5, this.telemetry.getLatencyPercentile("store-1", 100),
+                            TestDatastoreTelemetry.DELTA);
+    }
+
+    @Test
+    public void testLatencyPercentile() {
+        this.record(0, 900, 4);
+        this.record(1000, 900, 1);
+        this.record(2000, 900, 3);
+        this.record(3000, 900, 2);
+        Assert.assertEquals(2, this.telemetry.getLatencyPercentile("store-1", 50),
+                            TestDatastoreTelemetry.DELTA);
+        Assert.assertEquals(4, this.telemetry.getLatencyPercentile("store-1", 95),
+                            TestDatastoreTelemetry.DELTA);
+    }
+
+    @Test
+    public void testLatencyUsesHighestOfReadAndWrite() {
+        this.telemetry.record(0, Collections.singletonMap("store-1",
+                                                          new DatastoreSample(1000, 900, 100, 2,
+                                                                  7)));
+        Assert.assertEquals(7, this.telemetry.getLatencyPercentile("store-1", 50),
+                            TestDatastoreTelemetry.DELTA);
+    }
+
+    @Test
+    public void testRemovedStoresForgotten() {
+        final Map<String, DatastoreSample> samples = new HashMap<String, DatastoreSample>();
+        samples.put("store-1", new DatastoreSample(1000, 900, 100, 1, 1));
+        samples.put("store-2", new DatastoreSample(1000, 900, 100, 1, 1));
+        this.telemetry.record(0, samples);
+        this.telemetry.record(1000, Collections.singletonMap("store-2",
+                                                             new DatastoreSample(1000, 800, 200,
+                                                                     1, 1)));
+        Assert.assertNull(this.telemetry.getLatest("store-1"));
+        Assert.assertNotNull(this.telemetry.getLatest("store-2"));
+    }
+}
@@ -0,0 +1,76 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHostPerformanceHistory {
+
+    private static final double DELTA = 1e-9;
+
+    private HostPerformanceHistory history;
+
+    @Before
+    public void setUp() {
+        this.history = new HostPerformanceHistory(2);
+    }
+
+    private void record(final String hostId, final double cpuUsage) {
+        this.history.record(Collections.singletonMap(hostId, new HostPerformance(0.01, cpuUsage,
+                1024, 2, Double.NaN)));
+    }
+
+    @Test
+    public void testNotSampled() {
+        Assert.assertNull(this.history.getSmoothed("host-1"));
+        Assert.assertNull(this.history.getSmoothed(null));
+        Assert.assertEquals(0, this.history.getSampleCount("host-1"));
+    }
+
+    @Test
+    public void testSmoothed() {
+        this.record("host-1", 0.2);
+        this.record("host-1", 0.4);
+        final HostPerformance smoothed = this.history.getSmoothed("host-1");
+        Assert.assertEquals(0.3, smoothed.getCpuUsage(), TestHostPerformanceHistory.DELTA);
+        Assert.assertEquals(0.01, smoothed.getCpuReady(), TestHostPerformanceHistory.DELTA);
+        Assert.assertEquals(1024, smoothed.getMemActiveKb(), TestHostPerformanceHistory.DELTA);
+        Assert.assertEquals(2, smoothed.getDiskLatencyMillis(), TestHostPerformanceHistory.DELTA);
+        Assert.assertTrue(Double.isNaN(smoothed.getNetworkKbps()));
+    }
+
+    @Test
+    public void testRingKeepsRecentSamples() {
+        this.record("host-1", 0.2);
+        this.record("host-1", 0.4);
+        this.record("host-1", 0.6);
+        Assert.assertEquals(2, this.history.getSampleCount("host-1"));
+        Assert.assertEquals(0.5,
+                            this.history.getSmoothed("host-1").getCpuUsage(),
+                            TestHostPerformanceHistory.DELTA);
+    }
+
+    @Test
+    public void testMissingValuesIgnored() {
+        this.record("host-1", 0.2);
+        this.record("host-1", Double.NaN);
+        Assert.assertEquals(0.2,
+                            this.history.getSmoothed("host-1").getCpuUsage(),
+                            TestHostPerformanceHistory.DELTA);
+    }
+
+    @Test
+    public void testRemovedHostsForgotten() {
+        final Map<String, HostPerformance> samples = new HashMap<String, HostPerformance>();
+        samples.put("host-1", new HostPerformance(0, 0.1, 0, 0, 0));
+        samples.put("host-2", new HostPerformance(0, 0.1, 0, 0, 0));
+        this.history.record(samples);
+        this.record("host-2", 0.3);
+        Assert.assertNull(this.history.getSmoothed("host-1"));
+        Assert.assertEquals(2, this.history.getSampleCount("host-2"));
+    }
+}
@@ -0,0 +1,182 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEvent;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEventDetector;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyFeed;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyListener;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.vim25.DatastoreSummary;
+import com.vmware.vim25.HostHardwareSummary;
+import com.vmware.vim25.HostListSummary;
+import com.vmware.vim25.HostListSummaryQuickStats;
+import com.vmware.vim25.HostRuntimeInfo;
+import com.vmware.vim25.HostSystemConnectionState;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.UpdateSet;
+
+public class TestInventoryWatcher {
+
+    private TopologyEventDetector detector;
+    private List<TopologyEvent> events;
+
+    @Before
+    public void setUp() {
+        final TopologyFeed feed = new TopologyFeed(16);
+        this.events = new ArrayList<TopologyEvent>();
+        feed.subscribe(new TopologyListener() {
+            @Override
+            public void onEvent(final TopologyEvent event) {
+                TestInventoryWatcher.this.events.add(event);
+            }
+        }, null);
+        this.detector = new TopologyEventDetector(feed, 0.8, 0.01);
+    }
+
+    private HostListSummary hostSummary(final int usedMhz,
+            final HostSystemConnectionState state) {
+        final HostHardwareSummary hardware = new HostHardwareSummary();
+        hardware.setCpuMhz(1000);
+        hardware.setNumCpuCores((short) 2);
+        hardware.setMemorySize(4L * 1024 * 1024 * 1024);
+        final HostListSummaryQuickStats quickStats = new HostListSummaryQuickStats();
+        quickStats.setOverallCpuUsage(usedMhz);
+        quickStats.setOverallMemoryUsage(1024);
+        final HostRuntimeInfo runtime = new HostRuntimeInfo();
+        runtime.setConnectionState(state);
+        final HostListSummary summary = new HostListSummary();
+        summary.setHardware(hardware);
+        summary.setQuickStats(quickStats);
+        summary.setRuntime(runtime);
+        return summary;
+    }
+
+    private DatastoreSummary storeSummary() {
+        final DatastoreSummary summary = new DatastoreSummary();
+        summary.setCapacity(100);
+        summary.setFreeSpace(40);
+        return summary;
+    }
+
+    private ObjectUpdate update(final ObjectUpdateKind kind, final String type, final String id,
+            final Object summary) {
+        final ManagedObjectReference mor = new ManagedObjectReference();
+        mor.setType(type);
+        mor.setVal(id);
+        final ObjectUpdate update = new ObjectUpdate();
+        update.setKind(kind);
+        update.setObj(mor);
+        if (summary != null) {
+            final PropertyChange change = new PropertyChange();
+            change.setName("summary");
+            change.setOp(PropertyChangeOp.assign);
+            change.setVal(summary);
+            update.setChangeSet(new PropertyChange[] { change });
+        }
+        return update;
+    }
+
+    private UpdateSet updateSet(final ObjectUpdate... updates) {
+        final PropertyFilterUpdate filter = new PropertyFilterUpdate();
+        filter.setObjectSet(updates);
+        final UpdateSet set = new UpdateSet();
+        set.setVersion("1");
+        set.setFilterSet(new PropertyFilterUpdate[] { filter });
+        return set;
+    }
+
+    private List<String> types() {
+        final List<String> types = new ArrayList<String>();
+        for (final TopologyEvent event : this.events) {
+            types.add(event.getType());
+        }
+        return types;
+    }
+
+    @Test
+    public void testEnter() {
+        final Set<String> hosts = new HashSet<String>();
+        final Set<String> stores = new HashSet<String>();
+        final HostListSummary host = this.hostSummary(500, HostSystemConnectionState.connected);
+        InventoryWatcher.apply(this.updateSet(this.update(ObjectUpdateKind.enter,
+                                                          VSphere.TYPE_HOST,
+                                                          "host-1",
+                                                          host),
+                                              this.update(ObjectUpdateKind.enter,
+                                                          VSphere.TYPE_DATASTORE,
+                                                          "store-1",
+                                                          this.storeSummary())),
+                               this.detector,
+                               hosts,
+                               stores);
+
+        Assert.assertEquals(Arrays.asList(TopologyEvent.HOST_ADDED, TopologyEvent.STORE_ADDED),
+                            this.types());
+        Assert.assertEquals("0.25", this.events.get(0).getResource().getAttributes()
+                .get("cpuusage"));
+        Assert.assertEquals("60", this.events.get(1).getResource().getAttributes().get("used"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("host-1")), hosts);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("store-1")), stores);
+    }
+
+    @Test
+    public void testModifyAndLeave() {
+        final HostListSummary idle = this.hostSummary(500, HostSystemConnectionState.connected);
+        final HostListSummary busy = this.hostSummary(1800, HostSystemConnectionState.connected);
+        InventoryWatcher.apply(this.updateSet(this.update(ObjectUpdateKind.enter,
+                                                          VSphere.TYPE_HOST,
+                                                          "host-1",
+                                                          idle),
+                                              this.update(ObjectUpdateKind.modify,
+                                                          VSphere.TYPE_HOST,
+                                                          "host-1",
+                                                          busy),
+                                              this.update(ObjectUpdateKind.leave,
+                                                          VSphere.TYPE_HOST,
+                                                          "host-1",
+                                                          null)),
+                               this.detector,
+                               null,
+                               null);
+
+        Assert.assertEquals(Arrays.asList(TopologyEvent.HOST_ADDED,
+                                          TopologyEvent.HOST_OVERLOADED,
+                                          TopologyEvent.HOST_REMOVED), this.types());
+    }
+
+    @Test
+    public void testDisconnectedHost() {
+        final HostListSummary connected = this.hostSummary(500,
+                                                           HostSystemConnectionState.connected);
+        final HostListSummary lost = this.hostSummary(0,
+                                                      HostSystemConnectionState.notResponding);
+        InventoryWatcher.apply(this.updateSet(this.update(ObjectUpdateKind.enter,
+                                                          VSphere.TYPE_HOST,
+                                                          "host-1",
+                                                          connected),
+                                              this.update(ObjectUpdateKind.modify,
+                                                          VSphere.TYPE_HOST,
+                                                          "host-1",
+                                                          lost)),
+                               this.detector,
+                               null,
+                               null);
+
+        Assert.assertEquals(Arrays.asList(TopologyEvent.HOST_ADDED, TopologyEvent.HOST_REMOVED),
+                            this.types());
+    }
+}
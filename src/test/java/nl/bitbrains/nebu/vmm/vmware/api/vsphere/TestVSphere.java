@@ -3,16 +3,26 @@ package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
 import java.net.MalformedURLException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
 import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.vmm.vmware.api.BackendExecutors;
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.Deadline;
 import nl.bitbrains.nebu.vmm.vmware.api.vsphere.VSphere;
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
 import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -20,6 +30,8 @@ import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import com.vmware.vim25.ArrayOfCheckResult;
@@ -29,6 +41,7 @@ import com.vmware.vim25.ClusterDrsVmConfigInfo;
 import com.vmware.vim25.ComputeResourceConfigSpec;
 import com.vmware.vim25.DatastoreHostMount;
 import com.vmware.vim25.DatastoreSummary;
+import com.vmware.vim25.ElementDescription;
 import com.vmware.vim25.HostHardwareSummary;
 import com.vmware.vim25.HostListSummary;
 import com.vmware.vim25.HostListSummaryQuickStats;
@@ -39,8 +52,17 @@ import com.vmware.vim25.ManagedObjectReference;
 import com.vmware.vim25.MethodFault;
 import com.vmware.vim25.NoActiveHostInCluster;
 import com.vmware.vim25.NoPermission;
+import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfEntityMetric;
+import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.PerfMetricIntSeries;
+import com.vmware.vim25.PerfMetricSeries;
+import com.vmware.vim25.PerfQuerySpec;
+import com.vmware.vim25.PerfSummaryType;
 import com.vmware.vim25.RuntimeFault;
 import com.vmware.vim25.TaskInfo;
+import com.vmware.vim25.TaskInfoState;
 import com.vmware.vim25.VirtualMachineMovePriority;
 import com.vmware.vim25.VirtualMachinePowerState;
 import com.vmware.vim25.VirtualMachineRelocateSpec;
@@ -53,11 +75,15 @@ import com.vmware.vim25.mo.Folder;
 import com.vmware.vim25.mo.HostSystem;
 import com.vmware.vim25.mo.InventoryNavigator;
 import com.vmware.vim25.mo.ManagedEntity;
+import com.vmware.vim25.mo.ManagedObject;
+import com.vmware.vim25.mo.PerformanceManager;
 import com.vmware.vim25.mo.ResourcePool;
+import com.vmware.vim25.mo.ServerConnection;
 import com.vmware.vim25.mo.ServiceInstance;
 import com.vmware.vim25.mo.Task;
 import com.vmware.vim25.mo.VirtualMachine;
 import com.vmware.vim25.mo.VirtualMachineProvisioningChecker;
+import com.vmware.vim25.mo.util.PropertyCollectorUtil;
 
 @RunWith(PowerMockRunner.class)
 public class TestVSphere {
@@ -247,6 +273,26 @@ public class TestVSphere {
         this.vsphere.init("", "", "not-an-url", 0);
     }
 
+    @Test
+    public void testInitKeepsSessionPool() throws RemoteException, MalformedURLException {
+        final VSphereSession session = Mockito.mock(VSphereSession.class);
+        Mockito.when(session.validate()).thenReturn(true);
+        final VSphereSessionPool sessionPool = new VSphereSessionPool(Arrays.asList(session),
+                Long.MAX_VALUE);
+        this.vsphere.setSessionPool(sessionPool);
+        this.vsphere.init("", "", "not-an-url", 0);
+        Mockito.verify(session).validate();
+        Assert.assertSame(sessionPool, this.vsphere.getSessionPool());
+    }
+
+    @Test(expected = RemoteException.class)
+    public void testInitSessionPoolLoginFails() throws RemoteException, MalformedURLException {
+        final VSphereSession session = Mockito.mock(VSphereSession.class);
+        this.vsphere.setSessionPool(new VSphereSessionPool(Arrays.asList(session),
+                Long.MAX_VALUE));
+        this.vsphere.init("", "", "not-an-url", 0);
+    }
+
     @Test
     public void testClusterFromResPool() throws InvalidProperty, RuntimeFault, RemoteException {
         this.vsphere.getClusterFromResourcePool(this.pool);
@@ -317,6 +363,151 @@ public class TestVSphere {
         Assert.assertTrue(pStore.getUniqueIdentifier().equals(this.store.getMOR().getVal()));
     }
 
+    @Test
+    @PrepareForTest(PropertyCollectorUtil.class)
+    public void testTopologyPrefetchesProperties() throws RemoteException {
+        this.mockForTopology();
+        final String id1 = "id1";
+        Mockito.when(this.mor2.getVal()).thenReturn(id1);
+        Mockito.when(this.mor.getVal()).thenReturn(id1);
+        Mockito.when(this.hostMount.getKey()).thenReturn(this.mor2);
+        final ServerConnection connection = Mockito.mock(ServerConnection.class);
+        Mockito.when(this.store.getServerConnection()).thenReturn(connection);
+        Mockito.when(this.system.getServerConnection()).thenReturn(connection);
+        this.summary.multipleHostAccess = false;
+        final Hashtable<String, Object> storeProps = new Hashtable<String, Object>();
+        storeProps.put("summary", this.summary);
+        storeProps.put("host", this.hostMounts);
+        final Hashtable<String, Object> hostProps = new Hashtable<String, Object>();
+        hostProps.put("summary", this.hostSummary);
+        PowerMockito.mockStatic(PropertyCollectorUtil.class);
+        Mockito.when(PropertyCollectorUtil.retrieveProperties(Matchers.any(ManagedObject[].class),
+                                                              Matchers.eq(VSphere.TYPE_DATASTORE),
+                                                              Matchers.any(String[].class)))
+                .thenReturn(new Hashtable[] { storeProps });
+        Mockito.when(PropertyCollectorUtil.retrieveProperties(Matchers.any(ManagedObject[].class),
+                                                              Matchers.eq(VSphere.TYPE_HOST),
+                                                              Matchers.any(String[].class)))
+                .thenReturn(new Hashtable[] { hostProps });
+
+        final PhysicalTopology topo = this.vsphere.getPhysicalTopologyFromResourcePool(this.pool);
+
+        Assert.assertEquals(1, topo.getCPUs().get(0).getDisks().size());
+        Mockito.verify(this.store, Mockito.never()).getSummary();
+        Mockito.verify(this.store, Mockito.never()).getHost();
+        Mockito.verify(this.system, Mockito.never()).getSummary();
+    }
+
+    private static PerfCounterInfo perfCounter(final int key, final String group,
+            final String name, final PerfSummaryType rollup) {
+        final ElementDescription groupInfo = new ElementDescription();
+        groupInfo.setKey(group);
+        final ElementDescription nameInfo = new ElementDescription();
+        nameInfo.setKey(name);
+        final PerfCounterInfo info = new PerfCounterInfo();
+        info.setKey(key);
+        info.setGroupInfo(groupInfo);
+        info.setNameInfo(nameInfo);
+        info.setRollupType(rollup);
+        return info;
+    }
+
+    private static PerfMetricIntSeries perfSeries(final int counterId, final long value) {
+        return TestVSphere.perfSeries(counterId, "", value);
+    }
+
+    private static PerfMetricIntSeries perfSeries(final int counterId, final String instance,
+            final long value) {
+        final PerfMetricId id = new PerfMetricId();
+        id.setCounterId(counterId);
+        id.setInstance(instance);
+        final PerfMetricIntSeries series = new PerfMetricIntSeries();
+        series.setId(id);
+        series.setValue(new long[] { value });
+        return series;
+    }
+
+    @Test
+    public void testQueryHostPerformance() throws RemoteException, VMwareException {
+        final PerformanceManager manager = Mockito.mock(PerformanceManager.class);
+        Mockito.when(this.instance.getPerformanceManager()).thenReturn(manager);
+        Mockito.when(manager.getPerfCounter()).thenReturn(new PerfCounterInfo[] {
+                TestVSphere.perfCounter(1, "cpu", "ready", PerfSummaryType.summation),
+                TestVSphere.perfCounter(2, "cpu", "usage", PerfSummaryType.average),
+                TestVSphere.perfCounter(3, "mem", "active", PerfSummaryType.average),
+                TestVSphere.perfCounter(4, "cpu", "usage", PerfSummaryType.maximum) });
+        Mockito.when(this.navigator.searchManagedEntities(VSphere.TYPE_HOST))
+                .thenReturn(new ManagedEntity[] { this.system });
+        Mockito.when(this.system.getMOR()).thenReturn(this.mor);
+        Mockito.when(this.mor.getVal()).thenReturn(this.val);
+        final PerfEntityMetric metric = new PerfEntityMetric();
+        metric.setEntity(this.mor);
+        metric.setValue(new PerfMetricSeries[] { TestVSphere.perfSeries(1, 2000),
+                TestVSphere.perfSeries(2, 2500), TestVSphere.perfSeries(3, 1024),
+                TestVSphere.perfSeries(4, 9000) });
+        Mockito.when(manager.queryPerf(Matchers.any(PerfQuerySpec[].class)))
+                .thenReturn(new PerfEntityMetricBase[] { metric });
+
+        final Map<String, HostPerformance> samples = this.vsphere.queryHostPerformance();
+
+        final HostPerformance performance = samples.get(this.val);
+        Assert.assertEquals(0.1, performance.getCpuReady(), 1e-9);
+        Assert.assertEquals(0.25, performance.getCpuUsage(), 1e-9);
+        Assert.assertEquals(1024, performance.getMemActiveKb(), 1e-9);
+        Assert.assertTrue(Double.isNaN(performance.getDiskLatencyMillis()));
+        Assert.assertTrue(Double.isNaN(performance.getNetworkKbps()));
+        Mockito.verify(manager).queryPerf(Matchers.any(PerfQuerySpec[].class));
+    }
+
+    @Test
+    public void testQueryDatastoreTelemetry() throws RemoteException, VMwareException {
+        final PerformanceManager manager = Mockito.mock(PerformanceManager.class);
+        Mockito.when(this.instance.getPerformanceManager()).thenReturn(manager);
+        Mockito.when(manager.getPerfCounter()).thenReturn(new PerfCounterInfo[] {
+                TestVSphere.perfCounter(1, "datastore", "totalReadLatency",
+                                        PerfSummaryType.average),
+                TestVSphere.perfCounter(2, "datastore", "totalWriteLatency",
+                                        PerfSummaryType.average) });
+        Mockito.when(this.navigator.searchManagedEntities(VSphere.TYPE_DATASTORE))
+                .thenReturn(new ManagedEntity[] { this.store });
+        Mockito.when(this.navigator.searchManagedEntities(VSphere.TYPE_HOST))
+                .thenReturn(new ManagedEntity[] { this.system, this.host });
+        Mockito.when(this.store.getMOR()).thenReturn(this.mor2);
+        Mockito.when(this.mor2.getVal()).thenReturn("store-1");
+        Mockito.when(this.system.getMOR()).thenReturn(this.mor);
+        Mockito.when(this.host.getMOR()).thenReturn(this.mor);
+        Mockito.when(this.store.getSummary()).thenReturn(this.summary);
+        Mockito.when(this.summary.getUrl()).thenReturn("ds:///vmfs/volumes/vol-1/");
+        Mockito.when(this.summary.getCapacity()).thenReturn(1000L);
+        Mockito.when(this.summary.getFreeSpace()).thenReturn(400L);
+        Mockito.when(this.summary.getUncommitted()).thenReturn(100L);
+        final PerfEntityMetric first = new PerfEntityMetric();
+        first.setValue(new PerfMetricSeries[] { TestVSphere.perfSeries(1, "vol-1", 3),
+                TestVSphere.perfSeries(2, "vol-1", 8), TestVSphere.perfSeries(1, "vol-2", 50) });
+        final PerfEntityMetric second = new PerfEntityMetric();
+        second.setValue(new PerfMetricSeries[] { TestVSphere.perfSeries(1, "vol-1", 5) });
+        Mockito.when(manager.queryPerf(Matchers.any(PerfQuerySpec[].class)))
+                .thenReturn(new PerfEntityMetricBase[] { first, second });
+
+        final Map<String, DatastoreSample> samples = this.vsphere.queryDatastoreTelemetry();
+
+        final DatastoreSample sample = samples.get("store-1");
+        Assert.assertEquals(1, samples.size());
+        Assert.assertEquals(1000, sample.getCapacity());
+        Assert.assertEquals(400, sample.getFreeSpace());
+        Assert.assertEquals(700, sample.getProvisioned());
+        Assert.assertEquals(5, sample.getReadLatencyMillis(), 1e-9);
+        Assert.assertEquals(8, sample.getWriteLatencyMillis(), 1e-9);
+        Mockito.verify(manager).queryPerf(Matchers.any(PerfQuerySpec[].class));
+    }
+
+    @Test
+    public void testGetVolumeId() {
+        Assert.assertEquals("vol-1", VSphere.getVolumeId("ds:///vmfs/volumes/vol-1/"));
+        Assert.assertEquals("vol-1", VSphere.getVolumeId("ds:///vmfs/volumes/vol-1"));
+        Assert.assertNull(VSphere.getVolumeId(null));
+    }
+
     @Test
     public void testTopologySkipLocalDisk() throws RemoteException {
         this.mockForTopology();
@@ -358,6 +549,38 @@ public class TestVSphere {
         this.vsphere.getPhysicalTopologyFromVappList(vappnames);
     }
 
+    @Test
+    public void testParallelTopologyStopsAtDeadline() throws VMwareException,
+            InterruptedException {
+        Assume.assumeTrue(BackendExecutors.setVirtualThreads(true));
+        final List<Deadline> seen = new CopyOnWriteArrayList<Deadline>();
+        final CountDownLatch interrupted = new CountDownLatch(2);
+        final VSphere slow = new VSphere() {
+            @Override
+            public PhysicalTopology getPhysicalTopologyFromVapp(final String vappname) {
+                seen.add(Deadline.current());
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        };
+        final Deadline deadline = Deadline.after(100);
+        Deadline.set(deadline);
+        try {
+            slow.getPhysicalTopologyFromVappList(Arrays.asList("a", "b"));
+            Assert.fail();
+        } catch (final DeadlineExceededException e) {
+            Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(Arrays.asList(deadline, deadline), seen);
+        } finally {
+            Deadline.set(null);
+            BackendExecutors.setVirtualThreads(false);
+        }
+    }
+
     @Test
     public void testSearchItemsByIdDatastore() {
         final String type = VSphere.TYPE_DATASTORE;
@@ -473,13 +696,15 @@ public class TestVSphere {
     }
 
     @Test(expected = NoSuchVMException.class)
-    public void testGetVirtualMachineHostInvalidName() throws RemoteException, NoSuchVMException {
+    public void testGetVirtualMachineHostInvalidName() throws RemoteException, NoSuchVMException,
+            VMwareException {
         final String vmname = "vm";
         this.vsphere.getVirtualMachineHost(vmname);
     }
 
     @Test
-    public void testGetVirtualMachineHostCorrectName() throws RemoteException, NoSuchVMException {
+    public void testGetVirtualMachineHostCorrectName() throws RemoteException, NoSuchVMException,
+            VMwareException {
         final String hostid = "hostid";
         this.mockSearchItems(VSphere.TYPE_VM, this.vm);
         Mockito.when(this.vm.getSummary()).thenReturn(this.vmSummary);
@@ -493,14 +718,57 @@ public class TestVSphere {
         Assert.assertEquals(hostid, id);
     }
 
+    @Test
+    public void testGetVirtualMachineHostUsesPooledSession() throws RemoteException,
+            NoSuchVMException, InterruptedException, VMwareException {
+        final InventoryNavigator pooledNavigator = Mockito.mock(InventoryNavigator.class);
+        final VSphereSession session = Mockito.mock(VSphereSession.class);
+        Mockito.when(session.getNavigator()).thenReturn(pooledNavigator);
+        final VSphereSessionPool sessionPool = new VSphereSessionPool(Arrays.asList(session),
+                Long.MAX_VALUE);
+        this.vsphere.setSessionPool(sessionPool);
+        Mockito.when(pooledNavigator.searchManagedEntity(VSphere.TYPE_VM, "vm"))
+                .thenReturn(this.vm);
+        Mockito.when(this.vm.getSummary()).thenReturn(this.vmSummary);
+        Mockito.when(this.vmSummary.getRuntime()).thenReturn(this.vmRuntimeInfo);
+        Mockito.when(this.vmRuntimeInfo.getHost()).thenReturn(this.mor);
+        Mockito.when(this.mor.getVal()).thenReturn("hostid");
+
+        Assert.assertEquals("hostid", this.vsphere.getVirtualMachineHost("vm"));
+        Mockito.verify(this.navigator, Mockito.never()).searchManagedEntity(Matchers.anyString(),
+                                                                            Matchers.anyString());
+        Assert.assertEquals(1, sessionPool.available());
+    }
+
+    @Test
+    public void testGetPhysicalHostUsesPooledSession() throws VMwareException {
+        final VSphereSession session = Mockito.mock(VSphereSession.class);
+        final VSphereSessionPool sessionPool = new VSphereSessionPool(Arrays.asList(session),
+                Long.MAX_VALUE);
+        final VSphere pooled = new VSphere() {
+            @Override
+            public ManagedEntity searchItemsById(final String type, final String id) {
+                Assert.assertEquals(0, sessionPool.available());
+                return null;
+            }
+        };
+        pooled.setSessionPool(sessionPool);
+
+        Assert.assertNull(pooled.getPhysicalHost("unknown"));
+        Assert.assertNull(pooled.getPhysicalStore("unknown"));
+        Assert.assertEquals(1, sessionPool.available());
+    }
+
     @Test(expected = NoSuchVMException.class)
-    public void testGetVirtualMachineStoresInvalidName() throws RemoteException, NoSuchVMException {
+    public void testGetVirtualMachineStoresInvalidName() throws RemoteException,
+            NoSuchVMException, VMwareException {
         final String vmname = "vm";
         this.vsphere.getVirtualMachineStores(vmname);
     }
 
     @Test
-    public void testGetVirtualMachineStoresCorrectname() throws RemoteException, NoSuchVMException {
+    public void testGetVirtualMachineStoresCorrectname() throws RemoteException,
+            NoSuchVMException, VMwareException {
         final String storeid = "storeid";
         this.mockSearchItems(VSphere.TYPE_VM, this.vm);
         Mockito.when(this.vm.getDatastores()).thenReturn(this.stores);
@@ -538,6 +806,22 @@ public class TestVSphere {
         Assert.assertTrue(res);
     }
 
+    @Test
+    public void testHostHasVappUsesClusterMembership() throws RemoteException {
+        final String poolname = "poolname";
+        final String hostid = "poolid";
+        final String vappname = "vappname";
+        this.mockHostHasVapp(poolname, hostid);
+
+        Mockito.when(this.resource.getHosts()).thenReturn(this.systems);
+        this.mockSearchItems(VSphere.TYPE_RESOURCEPOOL, this.pool);
+
+        Assert.assertTrue(this.vsphere.hostHasVapp(this.phost, vappname));
+        Assert.assertTrue(this.vsphere.hostHasVapp(this.phost, vappname));
+        Assert.assertTrue(this.vsphere.getClusterMembership().isCurrent(poolname));
+        Mockito.verify(this.resource, Mockito.times(1)).getHosts();
+    }
+
     @Test
     public void testHostHasVappValidNoPool() throws RemoteException {
         final String poolname = "poolname";
@@ -799,4 +1083,37 @@ public class TestVSphere {
 
         this.vsphere.disableDRS(this.vm, this.resource);
     }
+
+    @Test
+    public void testWaitForTaskWithDeadlineFinished() throws RemoteException,
+            InterruptedException {
+        Mockito.when(this.task.getTaskInfo()).thenReturn(this.taskinfo);
+        Mockito.when(this.taskinfo.getState()).thenReturn(TaskInfoState.running)
+                .thenReturn(TaskInfoState.success);
+        Deadline.set(Deadline.after(10000));
+        try {
+            this.vsphere.waitForTask(this.task);
+        } finally {
+            Deadline.set(null);
+        }
+        Mockito.verify(this.task, Mockito.never()).cancelTask();
+        Mockito.verify(this.task, Mockito.never()).waitForTask();
+    }
+
+    @Test
+    public void testWaitForTaskCancelledAtDeadline() throws RemoteException,
+            InterruptedException {
+        Mockito.when(this.task.getTaskInfo()).thenReturn(this.taskinfo);
+        Mockito.when(this.task.getMOR()).thenReturn(this.mor);
+        Mockito.when(this.taskinfo.getState()).thenReturn(TaskInfoState.running);
+        Deadline.set(Deadline.after(50));
+        try {
+            this.vsphere.waitForTask(this.task);
+            Assert.fail();
+        } catch (final DeadlineExceededException e) {
+            Mockito.verify(this.task).cancelTask();
+        } finally {
+            Deadline.set(null);
+        }
+    }
 }
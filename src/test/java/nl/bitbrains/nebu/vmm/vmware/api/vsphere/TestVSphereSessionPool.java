@@ -0,0 +1,154 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class TestVSphereSessionPool {
+
+    @Mock
+    VSphereSession first;
+    @Mock
+    VSphereSession second;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(this.first.validate()).thenReturn(true);
+        Mockito.when(this.second.validate()).thenReturn(true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPool() {
+        new VSphereSessionPool(Collections.<VSphereSession> emptyList(), 0);
+    }
+
+    @Test
+    public void testCheckoutAndRelease() throws InterruptedException, VMwareException {
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first,
+                                                                             this.second),
+                Long.MAX_VALUE);
+        final VSphereSession a = pool.checkout();
+        final VSphereSession b = pool.checkout();
+        Assert.assertNotSame(a, b);
+        Assert.assertEquals(0, pool.available());
+        pool.release(a);
+        pool.release(b);
+        Assert.assertEquals(2, pool.available());
+        Mockito.verify(this.first, Mockito.never()).validate();
+    }
+
+    @Test
+    public void testIdleSessionIsValidated() throws InterruptedException, VMwareException {
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first), 0);
+        pool.release(pool.checkout());
+        Mockito.verify(this.first).validate();
+    }
+
+    @Test
+    public void testForeignSessionIgnored() {
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first), 0);
+        pool.release(this.second);
+        Assert.assertEquals(1, pool.available());
+        Assert.assertSame(this.first, pool.getPrimary());
+    }
+
+    @Test(expected = VMwareException.class)
+    public void testCheckoutTimesOut() throws InterruptedException, VMwareException {
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first),
+                Long.MAX_VALUE, 10);
+        pool.checkout();
+        pool.checkout();
+    }
+
+    @Test
+    public void testStaleSessionIsValidated() throws InterruptedException, VMwareException {
+        Mockito.when(this.first.isStale()).thenReturn(true);
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first),
+                Long.MAX_VALUE);
+        pool.release(pool.checkout());
+        Mockito.verify(this.first).validate();
+    }
+
+    @Test
+    public void testFailedHealthCheckIsNotHandedOut() throws InterruptedException,
+            VMwareException {
+        Mockito.when(this.first.validate()).thenReturn(false);
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first), 0);
+        try {
+            pool.checkout();
+            Assert.fail();
+        } catch (final BackendUnavailableException e) {
+            Assert.assertEquals(VSphereSessionPool.RETRY_AFTER_SECONDS,
+                                e.getRetryAfterSeconds());
+        }
+        Assert.assertEquals(1, pool.available());
+        Mockito.verify(this.first).markStale();
+    }
+
+    @Test
+    public void testReconnectValidatesAllSessions() throws InterruptedException,
+            VMwareException {
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first,
+                                                                             this.second),
+                Long.MAX_VALUE);
+        final VSphereSession held = pool.checkout();
+        Assert.assertTrue(pool.reconnect());
+        Mockito.verify(this.first).validate();
+        Mockito.verify(this.second).validate();
+        pool.release(held);
+        Assert.assertEquals(2, pool.available());
+    }
+
+    @Test
+    public void testReconnectFails() {
+        Mockito.when(this.second.validate()).thenReturn(false);
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first,
+                                                                             this.second),
+                Long.MAX_VALUE);
+        Assert.assertFalse(pool.reconnect());
+    }
+
+    @Test
+    public void testReconnectFailedSessionOnly() {
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first,
+                                                                             this.second),
+                Long.MAX_VALUE);
+        Assert.assertTrue(pool.reconnect(this.second));
+        Mockito.verify(this.second).validate();
+        Mockito.verify(this.first, Mockito.never()).validate();
+        Mockito.verify(this.first).markStale();
+    }
+
+    @Test
+    public void testReconnectUnknownSessionUsesPrimary() {
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first,
+                                                                             this.second),
+                Long.MAX_VALUE);
+        Assert.assertTrue(pool.reconnect(null));
+        Mockito.verify(this.first).validate();
+        Mockito.verify(this.second, Mockito.never()).validate();
+    }
+
+    @Test
+    public void testKeepAliveValidatesIdleSessions() throws InterruptedException,
+            VMwareException {
+        final VSphereSessionPool pool = new VSphereSessionPool(Arrays.asList(this.first,
+                                                                             this.second),
+                Long.MAX_VALUE);
+        final VSphereSession held = pool.checkout();
+        Assert.assertTrue(pool.keepAlive());
+        Mockito.verify(held, Mockito.never()).validate();
+        Mockito.verify(held == this.first ? this.second : this.first).validate();
+        Assert.assertEquals(1, pool.available());
+    }
+}
@@ -0,0 +1,87 @@
+package nl.bitbrains.nebu.vmm.vmware.api.vsphere;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestVappHostIndex {
+
+    private VappHostIndex index;
+
+    @Before
+    public void setUp() {
+        this.index = new VappHostIndex();
+        final Map<String, Set<String>> hosts = new HashMap<String, Set<String>>();
+        hosts.put("a", new HashSet<String>(Arrays.asList("host-1", "host-2")));
+        hosts.put("b", new HashSet<String>(Arrays.asList("host-2")));
+        hosts.put("c", Collections.<String> emptySet());
+        this.index.replace(Arrays.asList(new VirtualApplication("id-a"),
+                                         new VirtualApplication("id-b")), hosts);
+    }
+
+    @Test
+    public void testEmpty() {
+        final VappHostIndex empty = new VappHostIndex();
+        Assert.assertFalse(empty.isIndexed("a"));
+        Assert.assertFalse(empty.hostHasVapp("host-1", "a"));
+        Assert.assertTrue(empty.getVapps("host-1").isEmpty());
+        Assert.assertTrue(empty.getVirtualApplications().isEmpty());
+        Assert.assertEquals(0, empty.getBuiltAt());
+    }
+
+    @Test
+    public void testReplace() {
+        Assert.assertTrue(this.index.isIndexed("a"));
+        Assert.assertTrue(this.index.isIndexed("c"));
+        Assert.assertTrue(this.index.getBuiltAt() > 0);
+        this.index.replace(Collections.<VirtualApplication> emptyList(), Collections
+                .singletonMap("d", Collections.singleton("host-1")));
+        Assert.assertFalse(this.index.isIndexed("a"));
+        Assert.assertTrue(this.index.hostHasVapp("host-1", "d"));
+    }
+
+    @Test
+    public void testHostHasVapp() {
+        Assert.assertTrue(this.index.hostHasVapp("host-1", "a"));
+        Assert.assertTrue(this.index.hostHasVapp("host-2", "b"));
+        Assert.assertFalse(this.index.hostHasVapp("host-1", "b"));
+        Assert.assertFalse(this.index.hostHasVapp("host-3", "a"));
+    }
+
+    @Test
+    public void testGetVapps() {
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b")),
+                            this.index.getVapps("host-2"));
+        Assert.assertEquals(Collections.singleton("a"), this.index.getVapps("host-1"));
+    }
+
+    @Test
+    public void testMerge() {
+        this.index.merge(Collections.<VirtualApplication> emptyList(), Collections
+                .singletonMap("b", Collections.singleton("host-1")));
+        Assert.assertTrue(this.index.hostHasVapp("host-1", "a"));
+        Assert.assertTrue(this.index.hostHasVapp("host-1", "b"));
+        Assert.assertFalse(this.index.hostHasVapp("host-2", "b"));
+    }
+
+    @Test
+    public void testVirtualApplications() {
+        Assert.assertEquals(Arrays.asList("id-c"), this.index.getMissing(Arrays.asList("id-a",
+                                                                                       "id-c")));
+        this.index.merge(Arrays.asList(new VirtualApplication("id-a"),
+                                       new VirtualApplication("id-c")),
+                         Collections.<String, Set<String>> emptyMap());
+        Assert.assertEquals(3, this.index.getVirtualApplications().size());
+        Assert.assertTrue(this.index.getMissing(Arrays.asList("id-a", "id-c")).isEmpty());
+        Assert.assertFalse(this.index.isIndexed("id-c"));
+    }
+}
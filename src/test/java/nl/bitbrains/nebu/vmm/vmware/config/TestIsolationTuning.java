@@ -0,0 +1,36 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestIsolationTuning {
+
+    @Test
+    public void testDefaultsWithoutElement() {
+        final IsolationTuning tuning = IsolationTuning.fromXML(null);
+        Assert.assertEquals(0, tuning.getMaxConcurrent());
+        Assert.assertEquals(0, tuning.getFailureRate(), 0);
+    }
+
+    @Test
+    public void testFromXML() {
+        final Element client = new Element(ConfigurationElements.TAG_CLIENT);
+        client.addContent(new Element(IsolationTuning.TAG_MAX_CONCURRENT).setText("8"));
+        client.addContent(new Element(IsolationTuning.TAG_FAILURE_RATE).setText("0.5"));
+        client.addContent(new Element(IsolationTuning.TAG_SLOW_CALL).setText("2000"));
+        client.addContent(new Element(IsolationTuning.TAG_OPEN_TIME).setText("10"));
+        final IsolationTuning tuning = IsolationTuning.fromXML(client);
+        Assert.assertEquals(8, tuning.getMaxConcurrent());
+        Assert.assertEquals(0.5, tuning.getFailureRate(), 0);
+        Assert.assertEquals(2000, tuning.getSlowCallMillis());
+        Assert.assertEquals(10, tuning.getOpenSeconds());
+    }
+
+    @Test
+    public void testFailureRateClamped() {
+        final IsolationTuning tuning = new IsolationTuning();
+        tuning.setFailureRate(2);
+        Assert.assertEquals(1, tuning.getFailureRate(), 0);
+    }
+}
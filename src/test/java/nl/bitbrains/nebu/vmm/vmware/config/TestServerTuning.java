@@ -0,0 +1,55 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestServerTuning {
+
+    @Test
+    public void testDefaultsWithoutElement() {
+        final ServerTuning tuning = ServerTuning.fromXML(null);
+        final ServerTuning defaults = new ServerTuning();
+        Assert.assertEquals(defaults.getWorkers(), tuning.getWorkers());
+        Assert.assertEquals(defaults.getMaxPending(), tuning.getMaxPending());
+        Assert.assertEquals(defaults.isCompression(), tuning.isCompression());
+        Assert.assertNull(tuning.getTemplateJournal());
+    }
+
+    @Test
+    public void testFromXML() {
+        final Element server = new Element(ConfigurationElements.TAG_SERVER);
+        server.addContent(new Element("port").setText("8080"));
+        server.addContent(new Element(ServerTuning.TAG_WORKERS).setText("12"));
+        server.addContent(new Element(ServerTuning.TAG_SELECTORS).setText("2"));
+        server.addContent(new Element(ServerTuning.TAG_MAX_PENDING).setText("40"));
+        server.addContent(new Element(ServerTuning.TAG_KEEPALIVE).setText("-1"));
+        server.addContent(new Element(ServerTuning.TAG_COMPRESSION).setText("false"));
+        server.addContent(new Element(ServerTuning.TAG_CACHE_TTL).setText("500"));
+        server.addContent(new Element(ServerTuning.TAG_CACHE_SIZE).setText("4096"));
+        server.addContent(new Element(ServerTuning.TAG_TEMPLATE_JOURNAL).setText("t.journal"));
+        final ServerTuning tuning = ServerTuning.fromXML(server);
+        Assert.assertEquals(12, tuning.getWorkers());
+        Assert.assertEquals(2, tuning.getSelectors());
+        Assert.assertEquals(40, tuning.getMaxPending());
+        Assert.assertEquals(-1, tuning.getKeepAliveSeconds());
+        Assert.assertFalse(tuning.isCompression());
+        Assert.assertEquals(500, tuning.getCacheTtlMillis());
+        Assert.assertEquals(4096, tuning.getCacheSize());
+        Assert.assertEquals("t.journal", tuning.getTemplateJournal());
+    }
+
+    @Test
+    public void testWorkersAtLeastOne() {
+        final ServerTuning tuning = new ServerTuning();
+        tuning.setWorkers(0);
+        Assert.assertEquals(1, tuning.getWorkers());
+    }
+
+    @Test
+    public void testCacheTtlNotNegative() {
+        final ServerTuning tuning = new ServerTuning();
+        tuning.setCacheTtlMillis(-1);
+        Assert.assertEquals(0, tuning.getCacheTtlMillis());
+    }
+}
@@ -0,0 +1,30 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestVCloudTuning {
+
+    @Test
+    public void testDefaultsWithoutElement() {
+        final VCloudTuning tuning = VCloudTuning.fromXML(null);
+        final VCloudTuning defaults = new VCloudTuning();
+        Assert.assertEquals(defaults.getMaxConnections(), tuning.getMaxConnections());
+        Assert.assertEquals(defaults.getIdleEvictionSeconds(), tuning.getIdleEvictionSeconds());
+    }
+
+    @Test
+    public void testFromXML() {
+        final Element client = new Element(ConfigurationElements.TAG_CLIENT);
+        client.addContent(new Element(VCloudTuning.TAG_MAX_CONNECTIONS).setText("8"));
+        client.addContent(new Element(VCloudTuning.TAG_MAX_CONNECTIONS_PER_ROUTE).setText("4"));
+        client.addContent(new Element(VCloudTuning.TAG_CONNECTION_KEEPALIVE).setText("5"));
+        client.addContent(new Element(VCloudTuning.TAG_IDLE_EVICTION).setText("0"));
+        final VCloudTuning tuning = VCloudTuning.fromXML(client);
+        Assert.assertEquals(8, tuning.getMaxConnections());
+        Assert.assertEquals(4, tuning.getMaxConnectionsPerRoute());
+        Assert.assertEquals(5, tuning.getConnectionKeepAliveSeconds());
+        Assert.assertEquals(0, tuning.getIdleEvictionSeconds());
+    }
+}
@@ -0,0 +1,59 @@
+package nl.bitbrains.nebu.vmm.vmware.config;
+
+import org.jdom2.Element;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestVSphereTuning {
+
+    @Test
+    public void testDefaultsWithoutElement() {
+        final VSphereTuning tuning = VSphereTuning.fromXML(null);
+        Assert.assertEquals(1, tuning.getSessions());
+        Assert.assertEquals(60, tuning.getSessionHealthCheckSeconds());
+        Assert.assertEquals(300, tuning.getVappIndexRefreshSeconds());
+        Assert.assertEquals(60, tuning.getMembershipRefreshSeconds());
+        Assert.assertEquals(0, tuning.getPerfSampleSeconds());
+        Assert.assertEquals(6, tuning.getPerfWindow());
+        Assert.assertEquals(0, tuning.getStoreSampleSeconds());
+        Assert.assertEquals(60, tuning.getStoreWindow());
+        Assert.assertEquals(0, tuning.getTopologyFeedSeconds());
+        Assert.assertEquals(0.85, tuning.getLoadThreshold(), 0);
+        Assert.assertEquals(0.01, tuning.getSpaceChange(), 0);
+    }
+
+    @Test
+    public void testFromXML() {
+        final Element client = new Element(ConfigurationElements.TAG_CLIENT);
+        client.addContent(new Element(VSphereTuning.TAG_SESSIONS).setText("4"));
+        client.addContent(new Element(VSphereTuning.TAG_SESSION_HEALTH_CHECK).setText("10"));
+        client.addContent(new Element(VSphereTuning.TAG_VAPP_INDEX_REFRESH).setText("0"));
+        client.addContent(new Element(VSphereTuning.TAG_MEMBERSHIP_REFRESH).setText("5"));
+        client.addContent(new Element(VSphereTuning.TAG_PERF_SAMPLE).setText("20"));
+        client.addContent(new Element(VSphereTuning.TAG_PERF_WINDOW).setText("0"));
+        client.addContent(new Element(VSphereTuning.TAG_STORE_SAMPLE).setText("30"));
+        client.addContent(new Element(VSphereTuning.TAG_STORE_WINDOW).setText("1"));
+        client.addContent(new Element(VSphereTuning.TAG_TOPOLOGY_FEED).setText("60"));
+        client.addContent(new Element(VSphereTuning.TAG_LOAD_THRESHOLD).setText("0.9"));
+        client.addContent(new Element(VSphereTuning.TAG_SPACE_CHANGE).setText("-1"));
+        final VSphereTuning tuning = VSphereTuning.fromXML(client);
+        Assert.assertEquals(4, tuning.getSessions());
+        Assert.assertEquals(10, tuning.getSessionHealthCheckSeconds());
+        Assert.assertEquals(0, tuning.getVappIndexRefreshSeconds());
+        Assert.assertEquals(5, tuning.getMembershipRefreshSeconds());
+        Assert.assertEquals(20, tuning.getPerfSampleSeconds());
+        Assert.assertEquals(1, tuning.getPerfWindow());
+        Assert.assertEquals(30, tuning.getStoreSampleSeconds());
+        Assert.assertEquals(2, tuning.getStoreWindow());
+        Assert.assertEquals(60, tuning.getTopologyFeedSeconds());
+        Assert.assertEquals(0.9, tuning.getLoadThreshold(), 0);
+        Assert.assertEquals(0, tuning.getSpaceChange(), 0);
+    }
+
+    @Test
+    public void testSessionsAtLeastOne() {
+        final VSphereTuning tuning = new VSphereTuning();
+        tuning.setSessions(0);
+        Assert.assertEquals(1, tuning.getSessions());
+    }
+}
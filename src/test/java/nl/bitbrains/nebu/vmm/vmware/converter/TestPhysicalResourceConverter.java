@@ -0,0 +1,94 @@
+package nl.bitbrains.nebu.vmm.vmware.converter;
+
+import java.rmi.RemoteException;
+
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.vmware.vim25.DatastoreSummary;
+import com.vmware.vim25.HostHardwareSummary;
+import com.vmware.vim25.HostListSummary;
+import com.vmware.vim25.HostListSummaryQuickStats;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.mo.Datastore;
+import com.vmware.vim25.mo.HostSystem;
+
+public class TestPhysicalResourceConverter {
+
+    @Mock
+    HostSystem system;
+    @Mock
+    Datastore store;
+    @Mock
+    ManagedObjectReference hostMor;
+    @Mock
+    ManagedObjectReference storeMor;
+
+    private HostListSummary hostSummary;
+    private DatastoreSummary storeSummary;
+
+    @Before
+    public void setUp() throws RemoteException {
+        MockitoAnnotations.initMocks(this);
+        final HostHardwareSummary hardware = new HostHardwareSummary();
+        hardware.setCpuMhz(1000);
+        hardware.setNumCpuCores((short) 2);
+        hardware.setMemorySize(4L * 1024 * 1024 * 1024);
+        final HostListSummaryQuickStats quickStats = new HostListSummaryQuickStats();
+        quickStats.setOverallCpuUsage(500);
+        quickStats.setOverallMemoryUsage(1024);
+        this.hostSummary = new HostListSummary();
+        this.hostSummary.setHardware(hardware);
+        this.hostSummary.setQuickStats(quickStats);
+        this.storeSummary = new DatastoreSummary();
+        this.storeSummary.setCapacity(100);
+        this.storeSummary.setFreeSpace(40);
+        this.storeSummary.setMultipleHostAccess(false);
+
+        Mockito.when(this.hostMor.getVal()).thenReturn("host-1");
+        Mockito.when(this.storeMor.getVal()).thenReturn("store-1");
+        Mockito.when(this.system.getMOR()).thenReturn(this.hostMor);
+        Mockito.when(this.system.getSummary()).thenReturn(this.hostSummary);
+        Mockito.when(this.system.getDatastores()).thenReturn(new Datastore[] { this.store });
+        Mockito.when(this.store.getMOR()).thenReturn(this.storeMor);
+        Mockito.when(this.store.getSummary()).thenReturn(this.storeSummary);
+    }
+
+    @Test
+    public void testToPhysicalStoreFromSummary() {
+        final PhysicalStore pStore = PhysicalResourceConverter.toPhysicalStore("store-1",
+                                                                               this.storeSummary);
+        Assert.assertEquals("store-1", pStore.getUniqueIdentifier());
+    }
+
+    @Test
+    public void testToPhysicalHostFromSummary() {
+        final PhysicalHost pHost = PhysicalResourceConverter.toPhysicalHost("host-1",
+                                                                            this.hostSummary);
+        Assert.assertEquals("host-1", pHost.getUniqueIdentifier());
+        Assert.assertTrue(pHost.getDisks().isEmpty());
+    }
+
+    @Test
+    public void testToPhysicalHostFetchesSummariesOnce() {
+        final PhysicalHost pHost = PhysicalResourceConverter.toPhysicalHost(this.system, true);
+        Assert.assertEquals("host-1", pHost.getUniqueIdentifier());
+        Assert.assertEquals(1, pHost.getDisks().size());
+        Mockito.verify(this.system, Mockito.times(1)).getSummary();
+        Mockito.verify(this.store, Mockito.times(1)).getSummary();
+    }
+
+    @Test
+    public void testToPhysicalHostSkipsSharedStores() {
+        this.storeSummary.setMultipleHostAccess(true);
+        final PhysicalHost pHost = PhysicalResourceConverter.toPhysicalHost(this.system, true);
+        Assert.assertTrue(pHost.getDisks().isEmpty());
+    }
+}
@@ -0,0 +1,152 @@
+package nl.bitbrains.nebu.vmm.vmware.entity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestVMTemplateStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File journal;
+    private VMTemplateStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        this.journal = new File(this.folder.getRoot(), "templates.journal");
+        this.store = new VMTemplateStore();
+        this.store.open(this.journal);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+    }
+
+    private VMTemplate template(final String uuid, final String name) {
+        return new VMTemplateBuilder().withUuid(uuid).withName(name).withTemplate("vm-7")
+                .withSrcVapp("vapp-1").withDestVapp("vapp-2").build();
+    }
+
+    private VMTemplateStore reopen() throws IOException {
+        this.store.close();
+        final VMTemplateStore reopened = new VMTemplateStore();
+        reopened.open(this.journal);
+        return reopened;
+    }
+
+    @Test
+    public void testInMemoryWithoutJournal() {
+        final VMTemplateStore memory = new VMTemplateStore();
+        memory.put("a", this.template("a", "name"));
+        Assert.assertEquals("name", memory.get("a").getName());
+    }
+
+    @Test
+    public void testTemplatesSurviveRestart() throws IOException {
+        this.store.put("a", this.template("a", "first"));
+        this.store.put("b", this.template("b", "second"));
+
+        this.store = this.reopen();
+
+        Assert.assertEquals(2, this.store.size());
+        final VMTemplate template = this.store.get("a");
+        Assert.assertEquals("a", template.getUniqueIdentifier());
+        Assert.assertEquals("first", template.getName());
+        Assert.assertEquals("vm-7", template.getTemplate());
+        Assert.assertEquals("vapp-1", template.getScrVApp());
+        Assert.assertEquals("vapp-2", template.getDestVApps().get(0));
+    }
+
+    @Test
+    public void testLastPutWins() throws IOException {
+        this.store.put("a", this.template("a", "first"));
+        this.store.put("a", this.template("a", "second"));
+
+        this.store = this.reopen();
+
+        Assert.assertEquals("second", this.store.get("a").getName());
+    }
+
+    @Test
+    public void testRemoveSurvivesRestart() throws IOException {
+        this.store.put("a", this.template("a", "first"));
+        this.store.remove("a");
+
+        this.store = this.reopen();
+
+        Assert.assertFalse(this.store.containsKey("a"));
+    }
+
+    @Test
+    public void testIncompleteRecordIsDropped() throws IOException {
+        this.store.put("a", this.template("a", "first"));
+        this.store.put("b", this.template("b", "second"));
+        this.store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(this.journal, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        this.store = this.reopen();
+        this.store.put("c", this.template("c", "third"));
+        this.store = this.reopen();
+
+        Assert.assertEquals("first", this.store.get("a").getName());
+        Assert.assertNull(this.store.get("b"));
+        Assert.assertEquals("third", this.store.get("c").getName());
+    }
+
+    @Test
+    public void testJournalIsCompacted() throws IOException {
+        for (int i = 0; i < 255; i++) {
+            this.store.put("a", this.template("a", "name-" + i));
+        }
+        final long length = this.journal.length();
+        this.store.put("a", this.template("a", "last"));
+
+        Assert.assertTrue(this.journal.length() < length / 100);
+        this.store = this.reopen();
+        Assert.assertEquals(1, this.store.size());
+        Assert.assertEquals("last", this.store.get("a").getName());
+    }
+
+    @Test
+    public void testJournalKeptWhenCompactionFails() throws IOException {
+        final File tmp = new File(this.journal.getPath() + ".tmp");
+        Assert.assertTrue(tmp.mkdir());
+        for (int i = 0; i < 256; i++) {
+            this.store.put("a", this.template("a", "name-" + i));
+        }
+        this.store.put("b", this.template("b", "other"));
+        Assert.assertTrue(tmp.delete());
+
+        this.store = this.reopen();
+        Assert.assertEquals(2, this.store.size());
+        Assert.assertEquals("name-255", this.store.get("a").getName());
+        Assert.assertEquals("other", this.store.get("b").getName());
+    }
+
+    @Test
+    public void testFailedAppendLeavesJournalReadable() throws IOException {
+        final StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 70000; i++) {
+            key.append('k');
+        }
+        this.store.put("a", this.template("a", "first"));
+        this.store.put(key.toString(), this.template("b", "too long"));
+        this.store.put("c", this.template("c", "third"));
+
+        this.store = this.reopen();
+        Assert.assertEquals("first", this.store.get("a").getName());
+        Assert.assertNull(this.store.get(key.toString()));
+        Assert.assertEquals("third", this.store.get("c").getName());
+    }
+}
@@ -1,5 +1,7 @@
 package nl.bitbrains.nebu.vmm.vmware.exception;
 
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+import nl.bitbrains.nebu.vmm.vmware.exception.DeadlineExceededException;
 import nl.bitbrains.nebu.vmm.vmware.exception.NoPhysicalTopologyException;
 import nl.bitbrains.nebu.vmm.vmware.exception.NoSuchVMException;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMLaunchException;
@@ -20,6 +22,23 @@ public class TestExceptions {
         this.exception = new Exception();
     }
 
+    @Test
+    public void testBackendUnavailableException() {
+        final BackendUnavailableException e = new BackendUnavailableException(this.message, 5);
+
+        Assert.assertNotNull(e);
+        Assert.assertEquals(this.message, e.getMessage());
+        Assert.assertEquals(5, e.getRetryAfterSeconds());
+    }
+
+    @Test
+    public void testDeadlineExceededException() {
+        final DeadlineExceededException e = new DeadlineExceededException(this.message);
+
+        Assert.assertNotNull(e);
+        Assert.assertEquals(this.message, e.getMessage());
+    }
+
     @Test
     public void testNoPhysicalTopologyException() {
         final NoPhysicalTopologyException e = new NoPhysicalTopologyException(this.message);
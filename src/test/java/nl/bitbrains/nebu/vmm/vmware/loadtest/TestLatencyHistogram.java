@@ -0,0 +1,73 @@
+package nl.bitbrains.nebu.vmm.vmware.loadtest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        this.histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertEquals(0, this.histogram.getCount());
+        Assert.assertEquals(0, this.histogram.getPercentile(99));
+        Assert.assertEquals(0.0, this.histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void testSmallValuesExact() {
+        for (int i = 1; i <= 50; i++) {
+            this.histogram.record(i, TimeUnit.MICROSECONDS);
+        }
+        Assert.assertEquals(50, this.histogram.getCount());
+        Assert.assertEquals(25, this.histogram.getPercentile(50));
+        Assert.assertEquals(50, this.histogram.getPercentile(100));
+        Assert.assertEquals(25.5, this.histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void testPercentilesWithinError() {
+        for (int i = 1; i <= 100000; i++) {
+            this.histogram.record(i, TimeUnit.MICROSECONDS);
+        }
+        Assert.assertEquals(50000, this.histogram.getPercentile(50), 50000 * 0.04);
+        Assert.assertEquals(99000, this.histogram.getPercentile(99), 99000 * 0.04);
+        Assert.assertEquals(99900, this.histogram.getPercentile(99.9), 99900 * 0.04);
+        Assert.assertEquals(100000, this.histogram.getMax());
+    }
+
+    @Test
+    public void testUnitConversion() {
+        this.histogram.record(3, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(3000, this.histogram.getMax());
+    }
+
+    @Test
+    public void testBucketsContiguous() {
+        for (long value = 0; value < 100000; value++) {
+            final int index = LatencyHistogram.indexOf(value);
+            Assert.assertTrue(value <= LatencyHistogram.upperBoundOf(index));
+            if (index > 0) {
+                Assert.assertTrue(value > LatencyHistogram.upperBoundOf(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        final LatencyHistogram other = new LatencyHistogram();
+        this.histogram.record(10, TimeUnit.MICROSECONDS);
+        other.record(20, TimeUnit.MICROSECONDS);
+        this.histogram.add(other);
+        Assert.assertEquals(2, this.histogram.getCount());
+        Assert.assertEquals(20, this.histogram.getMax());
+    }
+}
@@ -0,0 +1,212 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenterBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalRackBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRootBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPlacementEngine {
+
+    private PhysicalTopology topology;
+    private PhysicalRack rack;
+
+    @Before
+    public void setUp() {
+        this.topology = new PhysicalTopology(new PhysicalRootBuilder().withUuid("root").build());
+        final PhysicalDataCenter datacenter = new PhysicalDataCenterBuilder().withUuid("dc")
+                .build();
+        this.topology.addDataCenter(datacenter);
+        this.rack = new PhysicalRackBuilder().withUuid("rack").build();
+        this.topology.addRackToDataCenter(this.rack, datacenter);
+    }
+
+    private PhysicalHost addHost(final String uuid, final double cpu, final double mem) {
+        final PhysicalHost host = new PhysicalHostBuilder().withUuid(uuid).withCpuUsage(cpu)
+                .withMemUsage(mem).build();
+        this.topology.addCPUToRack(host, this.rack);
+        return host;
+    }
+
+    private PhysicalStore store(final String uuid, final long capacity, final long used) {
+        return new PhysicalStoreBuilder().withUuid(uuid).withCapacity(capacity).withUsed(used)
+                .build();
+    }
+
+    @Test
+    public void testSpreadPrefersLeastLoadedHost() {
+        this.addHost("busy", 0.8, 0.2);
+        this.addHost("idle", 0.1, 0.3);
+        this.addHost("full", 0.1, 0.9);
+
+        final List<Placement> placements = PlacementEngine.rank(this.topology,
+                                                                new SpreadStrategy(),
+                                                                2);
+
+        Assert.assertEquals(2, placements.size());
+        Assert.assertEquals("idle", placements.get(0).getHostId());
+        Assert.assertEquals("busy", placements.get(1).getHostId());
+    }
+
+    @Test
+    public void testPackPrefersMostLoadedHostBelowLimit() {
+        this.addHost("busy", 0.8, 0.2);
+        this.addHost("idle", 0.1, 0.3);
+        this.addHost("full", 0.1, 0.9);
+
+        final List<Placement> placements = PlacementEngine.rank(this.topology,
+                                                                new PackStrategy(),
+                                                                10);
+
+        Assert.assertEquals(2, placements.size());
+        Assert.assertEquals("busy", placements.get(0).getHostId());
+        Assert.assertEquals("idle", placements.get(1).getHostId());
+    }
+
+    @Test
+    public void testBestOfLocalAndSharedStore() {
+        final PhysicalHost host = this.addHost("host", 0.1, 0.1);
+        this.topology.addDiskToHost(this.store("local", 100, 90), host);
+        this.topology.addDiskToRack(this.store("shared", 100, 20), this.rack);
+        this.topology.addDiskToRack(this.store("empty", 0, 0), this.rack);
+
+        final Placement placement = PlacementEngine.rank(this.topology, new SpreadStrategy(), 1)
+                .get(0);
+
+        Assert.assertEquals("shared", placement.getStoreId());
+        Assert.assertEquals(0.8, placement.getStoreScore(), 1e-9);
+    }
+
+    @Test
+    public void testHostWithoutStore() {
+        this.addHost("host", 0.1, 0.1);
+
+        final Placement placement = PlacementEngine.rank(this.topology, new SpreadStrategy(), 1)
+                .get(0);
+
+        Assert.assertEquals("host", placement.getHostId());
+        Assert.assertNull(placement.getStoreId());
+    }
+
+    @Test
+    public void testEmptyTopology() {
+        Assert.assertTrue(PlacementEngine.rank(this.topology, new SpreadStrategy(), 5).isEmpty());
+    }
+
+    @Test
+    public void testStrategiesByName() {
+        Assert.assertTrue(PlacementStrategies.get(null) instanceof SpreadStrategy);
+        Assert.assertTrue(PlacementStrategies
+                .get(PlacementStrategies.PACK) instanceof PackStrategy);
+        Assert.assertNull(PlacementStrategies.get("unknown"));
+    }
+
+    @Test
+    public void testAssignSpreadsBatch() {
+        this.addHost("host-1", 0.1, 0.1);
+        this.addHost("host-2", 0.1, 0.1);
+        final List<VmDemand> demands = Arrays.asList(new VmDemand("a", 0.3, 0.1, 0),
+                                                     new VmDemand("b", 0.3, 0.1, 0));
+
+        final List<Assignment> assignments = PlacementEngine.assign(this.topology,
+                                                                    new SpreadStrategy(),
+                                                                    demands,
+                                                                    null);
+
+        Assert.assertEquals(2, assignments.size());
+        Assert.assertNotNull(assignments.get(0).getHostId());
+        Assert.assertNotNull(assignments.get(1).getHostId());
+        Assert.assertNotEquals(assignments.get(0).getHostId(), assignments.get(1).getHostId());
+    }
+
+    @Test
+    public void testAssignLargestFirst() {
+        this.addHost("host-1", 0.5, 0.1);
+        this.addHost("host-2", 0.2, 0.1);
+        final VmDemand small = new VmDemand("small", 0.2, 0.1, 0);
+        final VmDemand large = new VmDemand("large", 0.7, 0.1, 0);
+
+        final List<Assignment> assignments = PlacementEngine.assign(this.topology,
+                                                                    new PackStrategy(1.01),
+                                                                    Arrays.asList(small, large),
+                                                                    null);
+
+        Assert.assertEquals(small, assignments.get(0).getDemand());
+        Assert.assertEquals("host-1", assignments.get(0).getHostId());
+        Assert.assertEquals("host-2", assignments.get(1).getHostId());
+    }
+
+    @Test
+    public void testAssignDoesNotOvercommit() {
+        this.addHost("host-1", 0.5, 0.1);
+        final List<VmDemand> demands = Arrays.asList(new VmDemand("a", 0.4, 0.1, 0),
+                                                     new VmDemand("b", 0.4, 0.1, 0));
+
+        final List<Assignment> assignments = PlacementEngine.assign(this.topology,
+                                                                    new SpreadStrategy(),
+                                                                    demands,
+                                                                    null);
+
+        Assert.assertEquals("host-1", assignments.get(0).getHostId());
+        Assert.assertNull(assignments.get(1).getHostId());
+    }
+
+    @Test
+    public void testAssignProjectsStoreSpace() {
+        final PhysicalHost host = this.addHost("host-1", 0.1, 0.1);
+        this.topology.addDiskToHost(this.store("local", 100, 0), host);
+        this.topology.addDiskToRack(this.store("shared", 100, 30), this.rack);
+        final List<VmDemand> demands = Arrays.asList(new VmDemand("a", 0.1, 0.1, 60),
+                                                     new VmDemand("b", 0.1, 0.1, 60));
+
+        final List<Assignment> assignments = PlacementEngine.assign(this.topology,
+                                                                    new SpreadStrategy(),
+                                                                    demands,
+                                                                    null);
+
+        Assert.assertEquals("local", assignments.get(0).getStoreId());
+        Assert.assertEquals("shared", assignments.get(1).getStoreId());
+    }
+
+    @Test
+    public void testAssignWithoutFittingStore() {
+        final PhysicalHost host = this.addHost("host-1", 0.1, 0.1);
+        this.topology.addDiskToHost(this.store("local", 100, 90), host);
+
+        final List<Assignment> assignments = PlacementEngine.assign(this.topology,
+                                                                    new SpreadStrategy(),
+                                                                    Arrays.asList(new VmDemand(
+                                                                            "a", 0.1, 0.1, 20)),
+                                                                    null);
+
+        Assert.assertNull(assignments.get(0).getHostId());
+    }
+
+    @Test
+    public void testRankSeesReservations() {
+        this.addHost("host-1", 0.1, 0.1);
+        this.addHost("host-2", 0.2, 0.1);
+        final ReservationLedger ledger = new ReservationLedger(TimeUnit.MINUTES.toMillis(1));
+        ledger.reserve("vm", "host-1", null, new VmDemand("vm", 0.3, 0.1, 0));
+
+        final List<Placement> placements = PlacementEngine.rank(this.topology,
+                                                                new SpreadStrategy(),
+                                                                1,
+                                                                ledger);
+
+        Assert.assertEquals("host-2", placements.get(0).getHostId());
+    }
+}
@@ -0,0 +1,104 @@
+package nl.bitbrains.nebu.vmm.vmware.placement;
+
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
+import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus.Status;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReservationLedger {
+
+    private static final double DELTA = 1e-9;
+
+    private ReservationLedger ledger;
+
+    @Before
+    public void setUp() {
+        this.ledger = new ReservationLedger(TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @After
+    public void tearDown() {
+        VmBootStatus.clearStatusList();
+    }
+
+    @Test
+    public void testReserve() {
+        this.ledger.reserve("a", "host-1", "store-1", new VmDemand("a", 0.1, 0.2, 100));
+        this.ledger.reserve("b", "host-1", null, new VmDemand("b", 0.3, 0.1, 50));
+        this.ledger.reserve("c", "host-2", "store-1", new VmDemand("c", 0.5, 0.5, 10));
+
+        Assert.assertEquals(0.4, this.ledger.getCpu("host-1"), TestReservationLedger.DELTA);
+        Assert.assertEquals(0.3, this.ledger.getMem("host-1"), TestReservationLedger.DELTA);
+        Assert.assertEquals(110, this.ledger.getBytes("store-1"));
+        Assert.assertEquals(0, this.ledger.getCpu("host-3"), TestReservationLedger.DELTA);
+        Assert.assertEquals(3, this.ledger.size());
+    }
+
+    @Test
+    public void testRelease() {
+        this.ledger.reserve("a", "host-1", "store-1", new VmDemand("a", 0.1, 0.2, 100));
+        this.ledger.release("a");
+
+        Assert.assertEquals(0, this.ledger.getCpu("host-1"), TestReservationLedger.DELTA);
+        Assert.assertEquals(0, this.ledger.size());
+    }
+
+    @Test
+    public void testKeptUntilRefreshAfterDeploymentCompletes() throws InterruptedException {
+        final VmBootStatus task = new VmBootStatus();
+        this.ledger.reserve(task.getUniqueIdentifier(),
+                            "host-1",
+                            null,
+                            new VmDemand("a", 0.1, 0.2, 0));
+        this.ledger.track(task.getUniqueIdentifier(), task);
+        final long before = System.currentTimeMillis();
+        Thread.sleep(5);
+
+        task.setStatus(Status.SUCCESS);
+        this.ledger.refreshed(before);
+        Assert.assertEquals(1, this.ledger.size());
+
+        Thread.sleep(5);
+        this.ledger.refreshed(System.currentTimeMillis());
+        Assert.assertEquals(0, this.ledger.size());
+    }
+
+    @Test
+    public void testKeptWhileDeploying() {
+        final VmBootStatus task = new VmBootStatus();
+        this.ledger.reserve(task.getUniqueIdentifier(),
+                            "host-1",
+                            null,
+                            new VmDemand("a", 0.1, 0.2, 0));
+        this.ledger.track(task.getUniqueIdentifier(), task);
+        this.ledger.refreshed(System.currentTimeMillis() + 1000);
+
+        Assert.assertEquals(1, this.ledger.size());
+    }
+
+    @Test
+    public void testReleasedWhenDeploymentFails() {
+        final VmBootStatus task = new VmBootStatus();
+        this.ledger.reserve(task.getUniqueIdentifier(),
+                            "host-1",
+                            null,
+                            new VmDemand("a", 0.1, 0.2, 0));
+        this.ledger.track(task.getUniqueIdentifier(), task);
+        task.setStatus(Status.FAILURE);
+
+        Assert.assertEquals(0, this.ledger.getCpu("host-1"), TestReservationLedger.DELTA);
+    }
+
+    @Test
+    public void testExpires() {
+        final ReservationLedger expiring = new ReservationLedger(0);
+        expiring.reserve("a", "host-1", null, new VmDemand("a", 0.1, 0.2, 0));
+
+        Assert.assertEquals(0, expiring.size());
+    }
+}
@@ -0,0 +1,20 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import nl.bitbrains.nebu.vmm.vmware.exception.BackendUnavailableException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBackendUnavailableMapper {
+
+    @Test
+    public void testToResponse() {
+        final Response resp = new BackendUnavailableMapper()
+                .toResponse(new BackendUnavailableException("vsphere is unavailable.", 7));
+        Assert.assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), resp.getStatus());
+        Assert.assertEquals(7, resp.getMetadata().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+}
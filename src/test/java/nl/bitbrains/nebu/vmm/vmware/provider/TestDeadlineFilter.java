@@ -0,0 +1,70 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.Response;
+
+import nl.bitbrains.nebu.vmm.vmware.api.resilience.Deadline;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class TestDeadlineFilter {
+
+    @Mock
+    ContainerRequestContext request;
+    @Mock
+    ContainerResponseContext response;
+
+    private DeadlineFilter filter;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        this.filter = new DeadlineFilter();
+    }
+
+    @After
+    public void tearDown() {
+        Deadline.set(null);
+    }
+
+    @Test
+    public void testNoHeader() throws IOException {
+        Deadline.set(Deadline.after(1000));
+        this.filter.filter(this.request);
+        Assert.assertNull(Deadline.current());
+        Mockito.verify(this.request, Mockito.never()).abortWith(Matchers.any(Response.class));
+    }
+
+    @Test
+    public void testHeaderSetsDeadline() throws IOException {
+        Mockito.when(this.request.getHeaderString(DeadlineFilter.HEADER)).thenReturn("5000");
+        this.filter.filter(this.request);
+        final Deadline deadline = Deadline.current();
+        Assert.assertNotNull(deadline);
+        Assert.assertTrue(deadline.remainingMillis() <= 5000);
+        this.filter.filter(this.request, this.response);
+        Assert.assertNull(Deadline.current());
+    }
+
+    @Test
+    public void testInvalidHeader() throws IOException {
+        Mockito.when(this.request.getHeaderString(DeadlineFilter.HEADER)).thenReturn("soon");
+        this.filter.filter(this.request);
+        final ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        Mockito.verify(this.request).abortWith(captor.capture());
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), captor.getValue()
+                .getStatus());
+        Assert.assertNull(Deadline.current());
+    }
+}
@@ -0,0 +1,65 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import nl.bitbrains.nebu.vmm.vmware.entity.VmBootStatus;
+import nl.bitbrains.nebu.vmm.vmware.server.WorkerQueueMonitor;
+
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestOverloadFilter extends JerseyTest {
+
+    private final WorkerQueueMonitor monitor = WorkerQueueMonitor.getInstance();
+
+    @Override
+    protected Application configure() {
+        return new ResourceConfig(VmBootStatusProvider.class, OverloadFilter.class);
+    }
+
+    @After
+    public void resetMonitor() {
+        while (this.monitor.getQueued() > 0) {
+            this.monitor.onTaskDequeueEvent(null, null);
+        }
+        this.monitor.configure(0, 1);
+    }
+
+    private Response getStatus() {
+        final VmBootStatus status = new VmBootStatus();
+        VmBootStatus.addStatus(status);
+        return this.target(VmBootStatusProvider.PATH + "/" + status.getUniqueIdentifier())
+                .request().get();
+    }
+
+    @Test
+    public void testNotOverloaded() {
+        this.monitor.configure(2, 1);
+        Assert.assertEquals(Response.Status.ACCEPTED.getStatusCode(), this.getStatus().getStatus());
+    }
+
+    @Test
+    public void testDisabled() {
+        this.monitor.configure(0, 1);
+        for (int i = 0; i < 10; i++) {
+            this.monitor.onTaskQueueEvent(null, null);
+        }
+        Assert.assertEquals(Response.Status.ACCEPTED.getStatusCode(), this.getStatus().getStatus());
+    }
+
+    @Test
+    public void testOverloaded() {
+        this.monitor.configure(2, 5);
+        for (int i = 0; i < 3; i++) {
+            this.monitor.onTaskQueueEvent(null, null);
+        }
+        final Response resp = this.getStatus();
+        Assert.assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), resp.getStatus());
+        Assert.assertEquals("5", resp.getHeaderString(HttpHeaders.RETRY_AFTER));
+    }
+}
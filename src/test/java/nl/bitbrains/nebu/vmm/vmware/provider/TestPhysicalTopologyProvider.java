@@ -60,7 +60,7 @@ public class TestPhysicalTopologyProvider extends JerseyTest {
     protected Application configure() {
         MockitoAnnotations.initMocks(this);
         PowerMockito.mockStatic(VMTemplateProvider.class);
-        return new ResourceConfig(PhysicalTopologyProvider.class);
+        return new ResourceConfig(PhysicalTopologyProvider.class, XmlEntityWriter.class);
     }
 
     private void setUpTemplateCache(final String key, final VMTemplate value) throws CacheException {
@@ -257,6 +257,27 @@ public class TestPhysicalTopologyProvider extends JerseyTest {
         Assert.assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
     }
 
+    @Test
+    public void testGetPhysForHostCached() throws VMwareException {
+        ResponseCache.getInstance().configure(60000, 1 << 20);
+        try {
+            Singleton.setVmware(this.vmw);
+            final PhysicalHost realHost = this.createPhysicalHost();
+            Mockito.when(this.vmw.getHostInfo(Matchers.anyString())).thenReturn(realHost);
+
+            final String uuid = "this-is-a-cached-uuid";
+            for (int i = 0; i < 2; i++) {
+                final Response resp = this.target(PhysicalTopologyProvider.PATH + "/" + uuid)
+                        .queryParam("type", PhysicalTopologyProvider.HOST_INFO).request().get();
+                Assert.assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+            }
+
+            Mockito.verify(this.vmw, Mockito.times(1)).getHostInfo(uuid);
+        } finally {
+            ResponseCache.getInstance().configure(0, 0);
+        }
+    }
+
     @Test
     public void testGetPhysForStore() throws VMwareException {
         Singleton.setVmware(this.vmw);
@@ -0,0 +1,179 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import nl.bitbrains.nebu.vmm.vmware.topology.ResourceState;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEvent;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyFeed;
+
+import org.jdom2.Element;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestResponseCache {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    private ResponseCompression compression;
+    private ResponseCache cache;
+
+    @Before
+    public void setUp() {
+        this.compression = new ResponseCompression();
+        this.cache = new ResponseCache(this.compression);
+        this.cache.configure(1000, 1 << 20);
+    }
+
+    private String key(final String path) {
+        return ResponseCache.key(MediaType.APPLICATION_XML_TYPE, path, "type=host");
+    }
+
+    private Response put(final String path, final String name, final long now) {
+        return this.cache.put(this.key(path),
+                              new Element(name),
+                              MediaType.APPLICATION_XML_TYPE,
+                              TestResponseCache.NO_HEADERS,
+                              null,
+                              now);
+    }
+
+    private String body(final Response resp) {
+        return new String((byte[]) resp.getEntity(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testKey() {
+        Assert.assertEquals("/phys/a?type=host&since=3 application/xml",
+                            ResponseCache.key(MediaType.APPLICATION_XML_TYPE,
+                                              "/phys/a",
+                                              "type=host",
+                                              "since=3"));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final Response put = this.put("/phys/a", "host", 0);
+        final Response cached = this.cache.get(this.key("/phys/a"), null, 10);
+
+        Assert.assertEquals("<host />", this.body(put));
+        Assert.assertEquals("<host />", this.body(cached));
+        Assert.assertEquals(MediaType.APPLICATION_XML_TYPE, cached.getMediaType());
+    }
+
+    @Test
+    public void testHeadersAreKept() {
+        this.cache.put(this.key("/vmtemplates/a/phys"),
+                       new Element("root"),
+                       MediaType.APPLICATION_XML_TYPE,
+                       Collections.singletonMap("X-Topology-Version", "7"),
+                       null,
+                       0);
+
+        Assert.assertEquals("7", this.cache.get(this.key("/vmtemplates/a/phys"), null, 10)
+                .getHeaderString("X-Topology-Version"));
+    }
+
+    @Test
+    public void testExpires() {
+        this.put("/phys/a", "host", 0);
+
+        Assert.assertNull(this.cache.get(this.key("/phys/a"), null, 1000));
+        Assert.assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        final int size = this.body(this.put("/phys/a", "host", 0)).length();
+        this.cache.configure(1000, 2 * size);
+        this.put("/phys/a", "host", 0);
+        this.put("/phys/b", "host", 0);
+        this.cache.get(this.key("/phys/a"), null, 1);
+        this.put("/phys/c", "host", 0);
+
+        Assert.assertNotNull(this.cache.get(this.key("/phys/a"), null, 1));
+        Assert.assertNull(this.cache.get(this.key("/phys/b"), null, 1));
+        Assert.assertNotNull(this.cache.get(this.key("/phys/c"), null, 1));
+    }
+
+    @Test
+    public void testInvalidatePath() {
+        this.put("/vmtemplates/a/phys", "root", 0);
+        this.put("/vmtemplates/ab/phys", "root", 0);
+
+        this.cache.invalidate("/vmtemplates/a");
+
+        Assert.assertNull(this.cache.get(this.key("/vmtemplates/a/phys"), null, 1));
+        Assert.assertNotNull(this.cache.get(this.key("/vmtemplates/ab/phys"), null, 1));
+    }
+
+    @Test
+    public void testTopologyEventClears() {
+        final TopologyFeed feed = new TopologyFeed(4);
+        feed.subscribe(this.cache, null);
+        this.put("/phys/a", "host", 0);
+
+        feed.publish(TopologyEvent.HOST_REMOVED, new ResourceState(ResourceState.KIND_HOST, "a",
+                null, new HashMap<String, String>()));
+
+        Assert.assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void testDisabledReturnsEntity() {
+        this.cache.configure(0, 1 << 20);
+        final Element elem = new Element("host");
+        final Response resp = this.cache.put(this.key("/phys/a"),
+                                             elem,
+                                             MediaType.APPLICATION_XML_TYPE,
+                                             TestResponseCache.NO_HEADERS,
+                                             null,
+                                             0);
+
+        Assert.assertSame(elem, resp.getEntity());
+        Assert.assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void testCompressedCopyIsKept() throws IOException {
+        this.compression.configure(true, 0);
+        final Response put = this.cache.put(this.key("/phys/a"),
+                                            new Element("host"),
+                                            MediaType.APPLICATION_XML_TYPE,
+                                            TestResponseCache.NO_HEADERS,
+                                            ResponseCompression.GZIP,
+                                            0);
+        final Response cached = this.cache.get(this.key("/phys/a"), ResponseCompression.GZIP, 1);
+
+        Assert.assertEquals(ResponseCompression.GZIP,
+                            cached.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        Assert.assertSame(put.getEntity(), cached.getEntity());
+        final GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(
+                (byte[]) cached.getEntity()));
+        final byte[] body = new byte[64];
+        final int length = in.read(body);
+        Assert.assertEquals("<host />", new String(body, 0, length, StandardCharsets.UTF_8));
+        Assert.assertEquals("<host />", this.body(this.cache.get(this.key("/phys/a"), null, 1)));
+    }
+
+    @Test
+    public void testSmallResponseIsNotCompressed() {
+        this.compression.configure(true, 1024);
+        this.put("/phys/a", "host", 0);
+
+        final Response cached = this.cache.get(this.key("/phys/a"), ResponseCompression.GZIP, 1);
+
+        Assert.assertNull(cached.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        Assert.assertEquals("<host />", this.body(cached));
+    }
+}
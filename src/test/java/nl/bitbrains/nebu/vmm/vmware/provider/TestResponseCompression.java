@@ -0,0 +1,85 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestResponseCompression {
+
+    private static final String BODY = "<root><host id=\"host-1\" /></root>";
+
+    private String decode(final InputStream in) throws IOException {
+        final byte[] body = new byte[256];
+        int length = 0;
+        int read;
+        while ((read = in.read(body, length, body.length - length)) > 0) {
+            length += read;
+        }
+        return new String(body, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSelectGzip() {
+        Assert.assertEquals(ResponseCompression.GZIP, ResponseCompression.select("gzip, deflate"));
+    }
+
+    @Test
+    public void testSelectByQuality() {
+        Assert.assertEquals(ResponseCompression.DEFLATE,
+                            ResponseCompression.select("gzip;q=0.5, deflate"));
+    }
+
+    @Test
+    public void testSelectRefused() {
+        Assert.assertNull(ResponseCompression.select("gzip;q=0, identity"));
+    }
+
+    @Test
+    public void testSelectWildcard() {
+        Assert.assertEquals(ResponseCompression.GZIP, ResponseCompression.select("*"));
+        Assert.assertEquals(ResponseCompression.DEFLATE,
+                            ResponseCompression.select("gzip;q=0, *;q=0.3"));
+    }
+
+    @Test
+    public void testSelectMissing() {
+        Assert.assertNull(ResponseCompression.select(null));
+        Assert.assertNull(ResponseCompression.select("br"));
+    }
+
+    @Test
+    public void testSelectDisabled() {
+        Assert.assertNull(new ResponseCompression().select(null));
+    }
+
+    @Test
+    public void testEncodeGzip() throws IOException {
+        final byte[] encoded = ResponseCompression.encode(TestResponseCompression.BODY
+                .getBytes(StandardCharsets.UTF_8), ResponseCompression.GZIP);
+        Assert.assertEquals(TestResponseCompression.BODY,
+                            this.decode(new GZIPInputStream(new ByteArrayInputStream(encoded))));
+    }
+
+    @Test
+    public void testEncodeDeflate() throws IOException {
+        final byte[] encoded = ResponseCompression.encode(TestResponseCompression.BODY
+                .getBytes(StandardCharsets.UTF_8), ResponseCompression.DEFLATE);
+        final InputStream in = new InflaterInputStream(new ByteArrayInputStream(encoded));
+        Assert.assertEquals(TestResponseCompression.BODY, this.decode(in));
+    }
+
+    @Test
+    public void testIsWorthwhile() {
+        final ResponseCompression compression = new ResponseCompression();
+        compression.configure(true, 100);
+        Assert.assertTrue(compression.isWorthwhile(ResponseCompression.GZIP, 100));
+        Assert.assertFalse(compression.isWorthwhile(ResponseCompression.GZIP, 99));
+        Assert.assertFalse(compression.isWorthwhile(null, 1000));
+    }
+}
@@ -0,0 +1,62 @@
+package nl.bitbrains.nebu.vmm.vmware.provider;
+
+import java.util.HashMap;
+
+import javax.ws.rs.core.Application;
+
+import nl.bitbrains.nebu.vmm.vmware.topology.ResourceState;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyEvent;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyFeed;
+
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.media.sse.EventInput;
+import org.glassfish.jersey.media.sse.InboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTopologyEventProvider extends JerseyTest {
+
+    @Override
+    protected Application configure() {
+        return new ResourceConfig(TopologyEventProvider.class).register(SseFeature.class);
+    }
+
+    @Override
+    protected void configureClient(final ClientConfig config) {
+        config.register(SseFeature.class);
+    }
+
+    private InboundEvent readFirst(final long lastEventId) {
+        final EventInput input = this.target(TopologyEventProvider.PATH)
+                .request(SseFeature.SERVER_SENT_EVENTS)
+                .header(SseFeature.LAST_EVENT_ID_HEADER, lastEventId).get(EventInput.class);
+        try {
+            return input.read();
+        } finally {
+            input.close();
+        }
+    }
+
+    @Test
+    public void testReplayAfterLastEventId() {
+        final TopologyEvent event = TopologyFeed.getInstance()
+                .publish(TopologyEvent.HOST_REMOVED, new ResourceState(ResourceState.KIND_HOST,
+                        "host-42", null, new HashMap<String, String>()));
+
+        final InboundEvent inbound = this.readFirst(event.getSequence() - 1);
+
+        Assert.assertEquals(TopologyEvent.HOST_REMOVED, inbound.getName());
+        Assert.assertEquals(Long.toString(event.getSequence()), inbound.getId());
+        Assert.assertTrue(inbound.readData(String.class).contains("id=\"host-42\""));
+    }
+
+    @Test
+    public void testResyncForUnknownEventId() {
+        final InboundEvent inbound = this.readFirst(Long.MAX_VALUE);
+
+        Assert.assertEquals(TopologyEventProvider.EVENT_RESYNC, inbound.getName());
+    }
+}
@@ -1,6 +1,9 @@
 package nl.bitbrains.nebu.vmm.vmware.provider;
 
 import java.text.ParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Application;
@@ -8,6 +11,13 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import nl.bitbrains.nebu.common.factories.IntegerFactory;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenterBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalRackBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRootBuilder;
 import nl.bitbrains.nebu.common.topology.PhysicalTopology;
 import nl.bitbrains.nebu.common.topology.factory.TopologyFactories;
 import nl.bitbrains.nebu.common.util.xml.XMLConverter;
@@ -17,8 +27,13 @@ import nl.bitbrains.nebu.vmm.vmware.api.VMware;
 import nl.bitbrains.nebu.vmm.vmware.entity.VMTemplate;
 import nl.bitbrains.nebu.vmm.vmware.entity.VMTemplateBuilder;
 import nl.bitbrains.nebu.vmm.vmware.entity.VMTemplateFactory;
+import nl.bitbrains.nebu.vmm.vmware.entity.VirtualApplication;
 import nl.bitbrains.nebu.vmm.vmware.exception.VMwareException;
+import nl.bitbrains.nebu.vmm.vmware.placement.AssignmentFactory;
+import nl.bitbrains.nebu.vmm.vmware.placement.PlacementFactory;
+import nl.bitbrains.nebu.vmm.vmware.placement.VmDemandFactory;
 import nl.bitbrains.nebu.vmm.vmware.provider.VMTemplateProvider;
+import nl.bitbrains.nebu.vmm.vmware.topology.TopologyDiffFactory;
 
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTest;
@@ -49,7 +64,8 @@ public class TestVMTemplateProvider extends JerseyTest {
     protected Application configure() {
         MockitoAnnotations.initMocks(this);
         Singleton.setVmware(this.vmw);
-        return new ResourceConfig(VMTemplateProvider.class);
+        return new ResourceConfig(VMTemplateProvider.class, JsonEntityWriter.class,
+                XmlEntityWriter.class);
     }
 
     private PhysicalTopology getBasicTopology() {
@@ -143,8 +159,8 @@ public class TestVMTemplateProvider extends JerseyTest {
     }
 
     @Test
-    public void testPutAndGetTemplateJDOMException() throws ParseException, JDOMException,
-            VMwareException {
+    public void testPutAndGetTemplateWithoutDomConversion() throws ParseException,
+            JDOMException, VMwareException {
         final String uuid = "this-is-a-new-uuid";
 
         final PhysicalTopology topology = this.getBasicTopology();
@@ -161,6 +177,188 @@ public class TestVMTemplateProvider extends JerseyTest {
         final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/phys").request()
                 .get();
 
-        Assert.assertEquals(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), resp.getStatus());
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        Assert.assertEquals(MediaType.APPLICATION_XML_TYPE, resp.getMediaType());
+        PowerMockito.verifyStatic(Mockito.never());
+        XMLConverter.convertJDOMElementW3CDocument(Matchers.any(Element.class));
+    }
+
+    private PhysicalTopology getTopologyWithHosts() {
+        final PhysicalTopology topology = new PhysicalTopology(new PhysicalRootBuilder()
+                .withUuid("root").build());
+        final PhysicalDataCenter datacenter = new PhysicalDataCenterBuilder().withUuid("dc")
+                .build();
+        topology.addDataCenter(datacenter);
+        final PhysicalRack rack = new PhysicalRackBuilder().withUuid("rack").build();
+        topology.addRackToDataCenter(rack, datacenter);
+        topology.addCPUToRack(new PhysicalHostBuilder().withUuid("busy").withCpuUsage(0.7)
+                .withMemUsage(0.1).build(), rack);
+        topology.addCPUToRack(new PhysicalHostBuilder().withUuid("idle").withCpuUsage(0.1)
+                .withMemUsage(0.1).build(), rack);
+        return topology;
+    }
+
+    @Test
+    public void testPlaceTemplate() throws JDOMException, VMwareException {
+        final String uuid = "this-is-a-placed-uuid";
+        Mockito.when(this.vmw.getPhysicalTopologyForVapps(Matchers.anyListOf(String.class)))
+                .thenReturn(this.getTopologyWithHosts());
+
+        this.target(VMTemplateProvider.PATH + "/" + uuid).request()
+                .put(this.getBasicTemplateAsEntity());
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/place")
+                .queryParam("count", 2).request().post(null);
+        final Element placements = XMLConverter.convertW3CDocumentJDOMElement(resp
+                .readEntity(Document.class));
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        Assert.assertEquals(2, placements.getChildren(PlacementFactory.TAG_PLACEMENT).size());
+        Assert.assertEquals("idle", placements.getChildren(PlacementFactory.TAG_PLACEMENT).get(0)
+                .getAttributeValue(PlacementFactory.ATTRIBUTE_HOST));
+    }
+
+    @Test
+    public void testPlaceNonExistingTemplate() {
+        final String uuid = "this-uuid-does-not-exist";
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/place")
+                .request().post(null);
+
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), resp.getStatus());
+    }
+
+    @Test
+    public void testPlaceUnknownStrategy() throws JDOMException {
+        final String uuid = "this-is-a-placed-uuid";
+
+        this.target(VMTemplateProvider.PATH + "/" + uuid).request()
+                .put(this.getBasicTemplateAsEntity());
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/place")
+                .queryParam("strategy", "unknown").request().post(null);
+
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), resp.getStatus());
+    }
+
+    @Test
+    public void testPlaceAndDeployWithoutCandidates() throws JDOMException, VMwareException {
+        final String uuid = "this-is-a-placed-uuid";
+        Mockito.when(this.vmw.getPhysicalTopologyForVapps(Matchers.anyListOf(String.class)))
+                .thenReturn(this.getBasicTopology());
+
+        this.target(VMTemplateProvider.PATH + "/" + uuid).request()
+                .put(this.getBasicTemplateAsEntity());
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/place")
+                .queryParam("hostname", "vm-1").request().post(null);
+
+        Assert.assertEquals(Response.Status.CONFLICT.getStatusCode(), resp.getStatus());
+    }
+
+    private Entity<Document> getBatchAsEntity(final String... hostnames) throws JDOMException {
+        final Element vms = new Element(VmDemandFactory.TAG_ELEMENT_ROOT);
+        for (final String hostname : hostnames) {
+            vms.addContent(new Element(VmDemandFactory.TAG_VM)
+                    .setAttribute(VmDemandFactory.ATTRIBUTE_HOSTNAME, hostname)
+                    .setAttribute(VmDemandFactory.ATTRIBUTE_CPU, "0.3"));
+        }
+        return Entity.entity(XMLConverter.convertJDOMElementW3CDocument(vms), MediaType.TEXT_XML);
+    }
+
+    @Test
+    public void testPlaceBatch() throws JDOMException, VMwareException {
+        final String uuid = "this-is-a-batch-uuid";
+        Mockito.when(this.vmw.getPhysicalTopologyForVapps(Matchers.anyListOf(String.class)))
+                .thenReturn(this.getTopologyWithHosts());
+        Mockito.when(this.vmw.selectVirtualApplicationFromHost(Matchers.any(PhysicalHost.class),
+                                                               Matchers.anyListOf(String.class)))
+                .thenReturn(new VirtualApplication("destvapp"));
+
+        this.target(VMTemplateProvider.PATH + "/" + uuid).request()
+                .put(this.getBasicTemplateAsEntity());
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/placebatch")
+                .request().post(this.getBatchAsEntity("vm-1", "vm-2", "vm-3"));
+        final List<Element> assignments = XMLConverter.convertW3CDocumentJDOMElement(resp
+                .readEntity(Document.class)).getChildren(AssignmentFactory.TAG_ASSIGNMENT);
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        Assert.assertEquals(3, assignments.size());
+        final Element first = assignments.get(0);
+        Assert.assertEquals("vm-1", first.getAttributeValue(AssignmentFactory.ATTRIBUTE_HOSTNAME));
+        Assert.assertEquals("destvapp", first.getAttributeValue(AssignmentFactory.ATTRIBUTE_VAPP));
+        final Set<String> hosts = new HashSet<String>();
+        for (final Element assignment : assignments) {
+            hosts.add(assignment.getAttributeValue(AssignmentFactory.ATTRIBUTE_HOST));
+        }
+        Assert.assertEquals(2, hosts.size());
+    }
+
+    @Test
+    public void testPlaceBatchInvalidBody() throws JDOMException {
+        final String uuid = "this-is-a-batch-uuid";
+
+        this.target(VMTemplateProvider.PATH + "/" + uuid).request()
+                .put(this.getBasicTemplateAsEntity());
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/placebatch")
+                .request().post(this.wrapObject(new IntegerFactory(), 5));
+
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), resp.getStatus());
+    }
+
+    @Test
+    public void testGetTemplatePhysSince() throws JDOMException, VMwareException {
+        final String uuid = "this-is-a-versioned-uuid";
+        Mockito.when(this.vmw.getPhysicalTopologyForVapps(Matchers.anyListOf(String.class)))
+                .thenReturn(this.getTopologyWithHosts());
+
+        this.target(VMTemplateProvider.PATH + "/" + uuid).request()
+                .put(this.getBasicTemplateAsEntity());
+        final Response full = this.target(VMTemplateProvider.PATH + "/" + uuid + "/phys")
+                .request().get();
+        final String version = full.getHeaderString(VMTemplateProvider.HEADER_TOPOLOGY_VERSION);
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/phys")
+                .queryParam("since", version).request().get();
+        final Element diff = XMLConverter.convertW3CDocumentJDOMElement(resp
+                .readEntity(Document.class));
+
+        Assert.assertNotNull(version);
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        Assert.assertEquals(version,
+                            resp.getHeaderString(VMTemplateProvider.HEADER_TOPOLOGY_VERSION));
+        Assert.assertEquals(TopologyDiffFactory.TAG_ELEMENT_ROOT, diff.getName());
+        Assert.assertTrue(diff.getChild(TopologyDiffFactory.TAG_CHANGED).getChildren().isEmpty());
+    }
+
+    @Test
+    public void testGetTemplatePhysUnknownVersion() throws ParseException, JDOMException,
+            VMwareException {
+        final String uuid = "this-is-a-versioned-uuid";
+        final PhysicalTopology topology = this.getBasicTopology();
+        Mockito.when(this.vmw.getPhysicalTopologyForVapps(Matchers.anyListOf(String.class)))
+                .thenReturn(topology);
+
+        this.target(VMTemplateProvider.PATH + "/" + uuid).request()
+                .put(this.getBasicTemplateAsEntity());
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/phys")
+                .queryParam("since", -1).request().get();
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        Assert.assertEquals(topology, this.getTopologyFromResponse(resp));
+    }
+
+    @Test
+    public void testGetTemplatePhysJson() throws JDOMException, VMwareException {
+        final String uuid = "this-is-a-json-uuid";
+        Mockito.when(this.vmw.getPhysicalTopologyForVapps(Matchers.anyListOf(String.class)))
+                .thenReturn(this.getTopologyWithHosts());
+
+        this.target(VMTemplateProvider.PATH + "/" + uuid).request()
+                .put(this.getBasicTemplateAsEntity());
+        final Response resp = this.target(VMTemplateProvider.PATH + "/" + uuid + "/phys")
+                .request(MediaType.APPLICATION_JSON).get();
+        final String json = resp.readEntity(String.class);
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        Assert.assertEquals(MediaType.APPLICATION_JSON_TYPE, resp.getMediaType());
+        Assert.assertNotNull(resp.getHeaderString(VMTemplateProvider.HEADER_TOPOLOGY_VERSION));
+        Assert.assertTrue(json.startsWith("{\"id\":\"root\",\"datacenters\":[{\"id\":\"dc\""));
+        Assert.assertTrue(json.contains("{\"id\":\"busy\",\"cpuusage\":0.7,\"memusage\":0.1"));
     }
 }
@@ -1,10 +1,17 @@
 package nl.bitbrains.nebu.vmm.vmware.provider;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import javax.ws.rs.core.Application;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import nl.bitbrains.nebu.common.VirtualMachine;
@@ -43,7 +50,8 @@ public class TestVirtualResourceProvider extends JerseyTest {
     @Override
     protected Application configure() {
         MockitoAnnotations.initMocks(this);
-        return new ResourceConfig(VirtualResourceProvider.class);
+        return new ResourceConfig(VirtualResourceProvider.class, JsonEntityWriter.class,
+                XmlEntityWriter.class, CompressionInterceptor.class);
     }
 
     @Test
@@ -100,6 +108,58 @@ public class TestVirtualResourceProvider extends JerseyTest {
         Assert.assertEquals(vm.getHost(), res.getHost());
     }
 
+    @Test
+    public void testGetVirtualResourcesJson() throws VMwareException {
+        Singleton.setVmware(this.vmw);
+
+        Mockito.when(this.vmw.getVirtualResourceList()).thenReturn(Arrays.asList("vm-1", "vm-2"));
+        final Response resp = this.target(VirtualResourceProvider.PATH)
+                .request(MediaType.APPLICATION_JSON).get();
+
+        Assert.assertEquals(MediaType.APPLICATION_JSON_TYPE, resp.getMediaType());
+        Assert.assertEquals("[\"vm-1\",\"vm-2\"]", resp.readEntity(String.class));
+    }
+
+    @Test
+    public void testGetVirtualResourcesGzip() throws VMwareException, IOException {
+        Singleton.setVmware(this.vmw);
+        ResponseCompression.getInstance().configure(true, 0);
+        try {
+            Mockito.when(this.vmw.getVirtualResourceList()).thenReturn(Arrays.asList("vm-1",
+                                                                                     "vm-2"));
+            final Response resp = this.target(VirtualResourceProvider.PATH)
+                    .request(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.ACCEPT_ENCODING, ResponseCompression.GZIP).get();
+
+            Assert.assertEquals(ResponseCompression.GZIP,
+                                resp.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+            final GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(
+                    resp.readEntity(byte[].class)));
+            final byte[] body = new byte[64];
+            final int length = in.read(body);
+            Assert.assertEquals("[\"vm-1\",\"vm-2\"]",
+                                new String(body, 0, length, StandardCharsets.UTF_8));
+        } finally {
+            ResponseCompression.getInstance().configure(false, 0);
+        }
+    }
+
+    @Test
+    public void testGetVirtualMachineJson() throws VMwareException, NoSuchVMException {
+        Singleton.setVmware(this.vmw);
+
+        final String uuid = "test-uuid";
+        final VirtualMachine vm = new VirtualMachineBuilder().withUuid(uuid).withHost("host-1")
+                .build();
+        Mockito.when(this.vmw.getVirtualMachineInfo(Matchers.eq(uuid))).thenReturn(vm);
+
+        final String json = this.target("virt/" + uuid).request(MediaType.APPLICATION_JSON)
+                .get(String.class);
+
+        Assert.assertTrue(json.startsWith("{\"id\":\"test-uuid\""));
+        Assert.assertTrue(json.contains("\"host\":\"host-1\""));
+    }
+
     @Test
     public void testDeleteVM() {
         Singleton.setVmware(this.vmw);
@@ -17,7 +17,7 @@ public class TestVmBootStatusProvider extends JerseyTest {
     @Override
     protected Application configure() {
         MockitoAnnotations.initMocks(this);
-        return new ResourceConfig(VmBootStatusProvider.class);
+        return new ResourceConfig(VmBootStatusProvider.class, XmlEntityWriter.class);
     }
 
     @Test
@@ -0,0 +1,101 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTopologyEventDetector {
+
+    private TopologyEventDetector detector;
+    private List<String> types;
+
+    @Before
+    public void setUp() {
+        final TopologyFeed feed = new TopologyFeed(16);
+        this.types = new ArrayList<String>();
+        feed.subscribe(new TopologyListener() {
+            @Override
+            public void onEvent(final TopologyEvent event) {
+                TestTopologyEventDetector.this.types.add(event.getType());
+            }
+        }, null);
+        this.detector = new TopologyEventDetector(feed, 0.8, 0.1);
+    }
+
+    private PhysicalHost host(final double cpu, final double mem) {
+        return new PhysicalHostBuilder().withUuid("host").withCpuUsage(cpu).withMemUsage(mem)
+                .build();
+    }
+
+    private PhysicalStore store(final long capacity, final long used) {
+        return new PhysicalStoreBuilder().withUuid("store").withCapacity(capacity)
+                .withUsed(used).build();
+    }
+
+    @Test
+    public void testHostLifecycle() {
+        this.detector.updateHost(this.host(0.1, 0.1));
+        this.detector.updateHost(this.host(0.2, 0.1));
+        this.detector.removeHost("host");
+        this.detector.removeHost("host");
+
+        Assert.assertEquals(Arrays.asList(TopologyEvent.HOST_ADDED, TopologyEvent.HOST_REMOVED),
+                            this.types);
+    }
+
+    @Test
+    public void testHostCrossesThreshold() {
+        this.detector.updateHost(this.host(0.1, 0.1));
+        this.detector.updateHost(this.host(0.1, 0.9));
+        this.detector.updateHost(this.host(0.1, 0.95));
+        this.detector.updateHost(this.host(0.1, 0.78));
+        this.detector.updateHost(this.host(0.1, 0.7));
+
+        Assert.assertEquals(Arrays.asList(TopologyEvent.HOST_ADDED,
+                                          TopologyEvent.HOST_OVERLOADED,
+                                          TopologyEvent.HOST_RECOVERED), this.types);
+    }
+
+    @Test
+    public void testHostAddedOverloaded() {
+        this.detector.updateHost(this.host(0.9, 0.1));
+
+        Assert.assertEquals(Arrays.asList(TopologyEvent.HOST_ADDED,
+                                          TopologyEvent.HOST_OVERLOADED), this.types);
+    }
+
+    @Test
+    public void testStoreSpaceChange() {
+        this.detector.updateStore(this.store(1000, 100));
+        this.detector.updateStore(this.store(1000, 150));
+        this.detector.updateStore(this.store(1000, 200));
+        this.detector.updateStore(this.store(2000, 200));
+        this.detector.removeStore("store");
+
+        Assert.assertEquals(Arrays.asList(TopologyEvent.STORE_ADDED,
+                                          TopologyEvent.STORE_CHANGED,
+                                          TopologyEvent.STORE_CHANGED,
+                                          TopologyEvent.STORE_REMOVED), this.types);
+    }
+
+    @Test
+    public void testRetain() {
+        this.detector.updateHost(this.host(0.1, 0.1));
+        this.detector.updateStore(this.store(1000, 100));
+        this.detector.retain(new HashSet<String>(), new HashSet<String>(Arrays.asList("store")));
+
+        Assert.assertEquals(Arrays.asList(TopologyEvent.HOST_ADDED,
+                                          TopologyEvent.STORE_ADDED,
+                                          TopologyEvent.HOST_REMOVED), this.types);
+    }
+}
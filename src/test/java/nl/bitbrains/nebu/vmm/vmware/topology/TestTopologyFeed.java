@@ -0,0 +1,151 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.vmm.vmware.api.BackendExecutors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTopologyFeed {
+
+    private TopologyFeed feed;
+    private List<TopologyEvent> received;
+    private TopologyListener listener;
+
+    @Before
+    public void setUp() {
+        this.feed = new TopologyFeed(2);
+        this.received = new ArrayList<TopologyEvent>();
+        this.listener = new TopologyListener() {
+            @Override
+            public void onEvent(final TopologyEvent event) {
+                TestTopologyFeed.this.received.add(event);
+            }
+        };
+    }
+
+    private TopologyEvent publish(final String id) {
+        return this.feed.publish(TopologyEvent.HOST_ADDED, new ResourceState(
+                ResourceState.KIND_HOST, id, null, new HashMap<String, String>()));
+    }
+
+    @Test
+    public void testPublishInOrder() {
+        this.feed.subscribe(this.listener, null);
+        final TopologyEvent first = this.publish("a");
+        final TopologyEvent second = this.publish("b");
+
+        Assert.assertEquals(1, first.getSequence());
+        Assert.assertEquals(2, second.getSequence());
+        Assert.assertEquals(2, this.received.size());
+        Assert.assertSame(first, this.received.get(0));
+        Assert.assertSame(second, this.received.get(1));
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        this.feed.subscribe(this.listener, null);
+        this.feed.unsubscribe(this.listener);
+        this.publish("a");
+
+        Assert.assertTrue(this.received.isEmpty());
+        Assert.assertEquals(0, this.feed.getListenerCount());
+    }
+
+    @Test
+    public void testReplayMissed() {
+        this.publish("a");
+        this.publish("b");
+        this.publish("c");
+        this.feed.subscribe(this.listener, 2L);
+
+        Assert.assertEquals(1, this.received.size());
+        Assert.assertEquals("c", this.received.get(0).getResource().getId());
+    }
+
+    @Test
+    public void testIsKept() {
+        this.publish("a");
+        this.publish("b");
+        this.publish("c");
+
+        Assert.assertFalse(this.feed.isKept(0));
+        Assert.assertTrue(this.feed.isKept(1));
+        Assert.assertTrue(this.feed.isKept(3));
+        Assert.assertFalse(this.feed.isKept(4));
+        Assert.assertEquals(2, this.feed.getSince(0).size());
+    }
+
+    @Test
+    public void testFailingListener() {
+        this.feed.subscribe(new TopologyListener() {
+            @Override
+            public void onEvent(final TopologyEvent event) {
+                throw new IllegalStateException();
+            }
+        }, null);
+        this.feed.subscribe(this.listener, null);
+        this.publish("a");
+
+        Assert.assertEquals(1, this.received.size());
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockPublish() throws InterruptedException {
+        final TopologyFeed async = new TopologyFeed(2, BackendExecutors.getTaskExecutor());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(2);
+        final List<String> slowReceived = Collections.synchronizedList(new ArrayList<String>());
+        async.subscribe(new TopologyListener() {
+            @Override
+            public void onEvent(final TopologyEvent event) {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowReceived.add(event.getResource().getId());
+            }
+        }, null);
+        async.subscribe(new TopologyListener() {
+            @Override
+            public void onEvent(final TopologyEvent event) {
+                delivered.countDown();
+            }
+        }, null);
+        for (final String id : new String[] { "a", "b" }) {
+            async.publish(TopologyEvent.HOST_ADDED, new ResourceState(ResourceState.KIND_HOST,
+                    id, null, new HashMap<String, String>()));
+        }
+
+        Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (int i = 0; i < 100 && slowReceived.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        synchronized (slowReceived) {
+            Assert.assertEquals(2, slowReceived.size());
+            Assert.assertEquals("a", slowReceived.get(0));
+            Assert.assertEquals("b", slowReceived.get(1));
+        }
+    }
+
+    @Test
+    public void testSubscribeIfKept() {
+        this.publish("a");
+        this.publish("b");
+        this.publish("c");
+
+        Assert.assertFalse(this.feed.subscribeIfKept(this.listener, 0L));
+        Assert.assertTrue(this.received.isEmpty());
+        this.publish("d");
+        Assert.assertEquals(1, this.received.size());
+    }
+}
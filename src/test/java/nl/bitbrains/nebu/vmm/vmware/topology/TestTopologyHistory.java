@@ -0,0 +1,116 @@
+package nl.bitbrains.nebu.vmm.vmware.topology;
+
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenterBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalRackBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRootBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTopologyHistory {
+
+    private TopologyHistory history;
+
+    @Before
+    public void setUp() {
+        this.history = new TopologyHistory(2);
+    }
+
+    private PhysicalTopology topology(final double busyCpu, final boolean withSecondHost) {
+        final PhysicalTopology topology = new PhysicalTopology(new PhysicalRootBuilder()
+                .withUuid("root").build());
+        final PhysicalDataCenter datacenter = new PhysicalDataCenterBuilder().withUuid("dc")
+                .build();
+        topology.addDataCenter(datacenter);
+        final PhysicalRack rack = new PhysicalRackBuilder().withUuid("rack").build();
+        topology.addRackToDataCenter(rack, datacenter);
+        final PhysicalHost busy = new PhysicalHostBuilder().withUuid("busy")
+                .withCpuUsage(busyCpu).withMemUsage(0.5).build();
+        topology.addCPUToRack(busy, rack);
+        topology.addDiskToHost(new PhysicalStoreBuilder().withUuid("local").withCapacity(100)
+                .withUsed(10).build(), busy);
+        if (withSecondHost) {
+            topology.addCPUToRack(new PhysicalHostBuilder().withUuid("idle").withCpuUsage(0.1)
+                    .withMemUsage(0.1).build(), rack);
+        }
+        return topology;
+    }
+
+    @Test
+    public void testUnchangedKeepsVersion() {
+        final long first = this.history.record("t", this.topology(0.5, false));
+        final long second = this.history.record("t", this.topology(0.5, false));
+
+        Assert.assertEquals(first, second);
+        Assert.assertTrue(this.history.diff("t", first).isEmpty());
+    }
+
+    @Test
+    public void testChangedHost() {
+        final long first = this.history.record("t", this.topology(0.5, false));
+        final long second = this.history.record("t", this.topology(0.7, false));
+
+        final TopologyDiff diff = this.history.diff("t", first);
+
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(first, diff.getFromVersion());
+        Assert.assertEquals(second, diff.getToVersion());
+        Assert.assertTrue(diff.getAdded().isEmpty());
+        Assert.assertTrue(diff.getRemoved().isEmpty());
+        Assert.assertEquals(1, diff.getChanged().size());
+        final ResourceState host = diff.getChanged().get(0);
+        Assert.assertEquals(ResourceState.KIND_HOST, host.getKind());
+        Assert.assertEquals("busy", host.getId());
+        Assert.assertEquals("rack", host.getParentId());
+        Assert.assertEquals("0.7", host.getAttributes().get(TopologySnapshot.ATTRIBUTE_CPU_USAGE));
+    }
+
+    @Test
+    public void testAddedAndRemovedHost() {
+        final long first = this.history.record("t", this.topology(0.5, false));
+        final long second = this.history.record("t", this.topology(0.5, true));
+        this.history.record("t", this.topology(0.5, false));
+
+        Assert.assertEquals("idle", this.history.diff("t", first).getAdded().get(0).getId());
+        Assert.assertEquals("idle", this.history.diff("t", second).getRemoved().get(0).getId());
+    }
+
+    @Test
+    public void testOldVersionsForgotten() {
+        final long first = this.history.record("t", this.topology(0.1, false));
+        this.history.record("t", this.topology(0.2, false));
+        this.history.record("t", this.topology(0.3, false));
+
+        Assert.assertNull(this.history.diff("t", first));
+    }
+
+    @Test
+    public void testUnknownTopology() {
+        Assert.assertNull(this.history.diff("unknown", 1));
+    }
+
+    @Test
+    public void testVersionsUniqueAcrossTopologies() {
+        final long first = this.history.record("a", this.topology(0.1, false));
+        final long second = this.history.record("b", this.topology(0.1, false));
+
+        Assert.assertNotEquals(first, second);
+        Assert.assertNull(this.history.diff("b", first));
+    }
+
+    @Test
+    public void testVersionsUnknownAfterRestart() {
+        final long before = new TopologyHistory(2, 1000).record("t", this.topology(0.1, false));
+        final TopologyHistory restarted = new TopologyHistory(2, 2000);
+        restarted.record("t", this.topology(0.1, false));
+
+        Assert.assertNull(restarted.diff("t", before));
+    }
+}